@@ -1,5 +1,7 @@
 package com.qunjie.axis.utils;
 
+import com.qunjie.common.metrics.IntegrationMetrics;
+import com.qunjie.common.resilience.Resilience;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.axiom.om.OMAbstractFactory;
 import org.apache.axiom.om.OMElement;
@@ -68,7 +70,10 @@ public class CallWebServiceUtil {
             }
             sender.getOptions().setProperty(HTTPConstants.HTTP_HEADERS, headers);
 
-            OMElement resultEle = sender.sendReceive(method);
+            ServiceClient client = sender;
+            OMElement resultEle = IntegrationMetrics.timed(Resilience.FANWEI, methodName,
+                    () -> Resilience.call(Resilience.FANWEI, AxisFault.class, () -> client.sendReceive(method)),
+                    r -> IntegrationMetrics.SUCCESS);
             System.out.println("调用wsdl接口结果：" + resultEle);
             result = resultEle.toString();
         } catch (Exception e) {
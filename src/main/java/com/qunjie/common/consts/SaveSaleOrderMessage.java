@@ -21,4 +21,5 @@ public class SaveSaleOrderMessage {
     public static final String ERROR2 = "保存失败！";
     public static final String ERROR3 = "保存成功，提交失败！";
     public static final String ERROR4 = "保存、提交成功,审核失败！";
+    public static final String ERROR5 = "客户、销售员或物料在金蝶中不存在，未保存！";
 }
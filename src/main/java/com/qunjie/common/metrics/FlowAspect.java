@@ -0,0 +1,45 @@
+package com.qunjie.common.metrics;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.common.metrics.FlowAspect
+ * Description: 标记外部调用所属业务流程：controller方法、定时任务、事件监听，流程名为 类名.方法名
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class FlowAspect {
+
+    @Pointcut("within(com.qunjie..*) && (@within(org.springframework.web.bind.annotation.RestController)" +
+            " || @within(org.springframework.stereotype.Controller))")
+    public void controller(){}
+
+    @Pointcut("within(com.qunjie..*) && @annotation(org.springframework.scheduling.annotation.Scheduled)")
+    public void scheduled(){}
+
+    @Pointcut("within(com.qunjie..*) && (execution(* org.springframework.context.ApplicationListener+.onApplicationEvent(..))" +
+            " || @annotation(org.springframework.context.event.EventListener))")
+    public void listener(){}
+
+    @Around("controller() || scheduled() || listener()")
+    public Object around(ProceedingJoinPoint joinPoint) throws Throwable {
+        String flow = joinPoint.getSignature().getDeclaringType().getSimpleName() + "." + joinPoint.getSignature().getName();
+        IntegrationMetrics.Flow scope = IntegrationMetrics.flow(flow);
+        try {
+            return joinPoint.proceed();
+        } finally {
+            scope.close();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.qunjie.common.metrics;
+
+import com.qunjie.common.resilience.DependencyUnavailableException;
+import com.qunjie.common.resilience.Resilience;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.common.metrics.IntegrationMetrics
+ * Description: 外部系统调用指标：按系统、接口(url/表单/方法)、结果(errorCode/http状态/异常)、调用业务流程统计耗时，
+ *              以及crm调用许可等待时间、限流重试次数，经/actuator/prometheus采集
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+public class IntegrationMetrics {
+
+    public static final String CALL = "integration.call";
+    public static final String RETRY = "integration.retry";
+    public static final String QUOTA_WAIT = "crm.quota.wait";
+    public static final String QUOTA_REJECTED = "crm.quota.rejected";
+    public static final String RATE_LIMITED = "crm.quota.rate.limited";
+
+    public static final String SUCCESS = "0";
+    public static final String FAIL = "fail";
+    public static final String EXCEPTION = "exception";
+    public static final String UNAVAILABLE = "unavailable";
+    public static final String NONE = "none";
+
+    private static volatile MeterRegistry registry = Metrics.globalRegistry;
+
+    /**
+     * 当前线程所属业务流程(controller方法、定时任务、事件监听、泛微webservice操作)
+     */
+    private static final ThreadLocal<String> FLOW = new ThreadLocal<>();
+
+    private IntegrationMetrics() {}
+
+    public static void init(MeterRegistry meterRegistry) {
+        registry = meterRegistry;
+    }
+
+    /**
+     * 业务流程作用域，关闭时恢复外层流程
+     */
+    public static class Flow implements AutoCloseable {
+
+        private final String previous;
+
+        private Flow(String previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            if (previous == null) {
+                FLOW.remove();
+            } else {
+                FLOW.set(previous);
+            }
+        }
+    }
+
+    /**
+     * 标记当前线程的业务流程，已在某流程中时保留外层流程(以入口为准)
+     */
+    public static Flow flow(String name) {
+        String previous = FLOW.get();
+        if (previous == null) {
+            FLOW.set(name);
+        }
+        return new Flow(previous);
+    }
+
+    public static String currentFlow() {
+        String flow = FLOW.get();
+        return flow == null ? NONE : flow;
+    }
+
+    /**
+     * 提交到线程池的任务沿用提交线程的业务流程
+     */
+    public static Runnable wrap(Runnable task) {
+        String flow = FLOW.get();
+        if (flow == null) {
+            return task;
+        }
+        return () -> {
+            Flow scope = flow(flow);
+            try {
+                task.run();
+            } finally {
+                scope.close();
+            }
+        };
+    }
+
+    /**
+     * 经executor执行的任务沿用当前线程(调用此方法时)的业务流程
+     */
+    public static Executor wrap(Executor executor) {
+        String flow = FLOW.get();
+        if (flow == null) {
+            return executor;
+        }
+        return task -> executor.execute(() -> {
+            Flow scope = flow(flow);
+            try {
+                task.run();
+            } finally {
+                scope.close();
+            }
+        });
+    }
+
+    /**
+     * 记录一次外部调用
+     *
+     * @param system   系统名，同Resilience中的系统名
+     * @param endpoint 接口url路径、k3cloud方法.表单、webservice方法
+     * @param result   errorCode、http状态码、fail、unavailable或exception
+     * @param nanos    耗时(纳秒)
+     */
+    public static void record(String system, String endpoint, String result, long nanos) {
+        Timer.builder(CALL)
+                .tag("system", system)
+                .tag("endpoint", endpoint)
+                .tag("result", result == null ? EXCEPTION : result)
+                .tag("flow", currentFlow())
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 执行并记录一次外部调用，熔断/并发已满/超时记为unavailable，其他异常记为exception
+     *
+     * @param result 由返回值得到结果标签
+     */
+    public static <T, E extends Exception> T timed(String system, String endpoint, Resilience.Call<T, E> call,
+                                                   Function<? super T, String> result) throws E {
+        long start = System.nanoTime();
+        try {
+            T value = call.call();
+            record(system, endpoint, result.apply(value), System.nanoTime() - start);
+            return value;
+        } catch (DependencyUnavailableException e) {
+            record(system, endpoint, UNAVAILABLE, System.nanoTime() - start);
+            throw e;
+        } catch (Exception | Error e) {
+            record(system, endpoint, EXCEPTION, System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    /**
+     * 限流、token过期等原因的重试
+     */
+    public static void retry(String system, String reason) {
+        Counter.builder(RETRY)
+                .tag("system", system)
+                .tag("reason", reason)
+                .tag("flow", currentFlow())
+                .register(registry)
+                .increment();
+    }
+
+    public static void quotaWait(String lane, long nanos) {
+        Timer.builder(QUOTA_WAIT).tag("lane", lane).register(registry).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public static void quotaRejected() {
+        Counter.builder(QUOTA_REJECTED).tag("flow", currentFlow()).register(registry).increment();
+    }
+
+    public static void rateLimited() {
+        Counter.builder(RATE_LIMITED).tag("flow", currentFlow()).register(registry).increment();
+    }
+}
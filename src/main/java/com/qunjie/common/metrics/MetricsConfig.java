@@ -0,0 +1,195 @@
+package com.qunjie.common.metrics;
+
+import com.qunjie.axis.service.OAService;
+import com.qunjie.axis.service.TestService;
+import com.qunjie.common.resilience.CircuitBreaker;
+import com.qunjie.common.resilience.Resilience;
+import com.qunjie.crm.cache.CrmReferenceCache;
+import com.qunjie.crm.query.service.CrmQueryService;
+import com.qunjie.crm.utils.CrmQuotaGate;
+import com.qunjie.jindie.log.K3CloudLogWriter;
+import com.qunjie.jindie.session.K3CloudClientPool;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.Filter;
+import javax.servlet.http.HttpServletRequest;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.common.metrics.MetricsConfig
+ * Description: 注册IntegrationMetrics使用的MeterRegistry，以及crm调用许可、熔断、参考数据缓存、合并查询的状态指标；
+ *              泛微通过axis2 webservice调用，不经过spring mvc，按SOAPAction标记业务流程
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+@Configuration
+public class MetricsConfig {
+
+    private static final List<String> SYSTEMS = Arrays.asList(Resilience.CRM, Resilience.K3CLOUD, Resilience.FANWEI, Resilience.OCEAN);
+
+    private static final List<String> CACHES = Arrays.asList(CrmReferenceCache.PRODUCT, CrmReferenceCache.ACCOUNT,
+            CrmReferenceCache.PARTNER, CrmReferenceCache.MARKETING_EVENT, CrmReferenceCache.USER_VALUE);
+
+    /**
+     * services.xml中发布的webservice操作，SOAPAction由客户端传入，不在其中的记为unknown，避免产生无限多的指标
+     */
+    private static final Set<String> SOAP_OPERATIONS = new HashSet<>();
+
+    static {
+        for (Class<?> service : Arrays.asList(OAService.class, TestService.class)) {
+            for (Method method : service.getMethods()) {
+                SOAP_OPERATIONS.add(method.getName());
+            }
+        }
+    }
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private CrmReferenceCache crmReferenceCache;
+
+    @Autowired
+    private CrmQueryService crmQueryService;
+
+    @Autowired
+    private K3CloudClientPool k3CloudClientPool;
+
+    @Autowired
+    private K3CloudLogWriter k3CloudLogWriter;
+
+    @PostConstruct
+    public void init() {
+        IntegrationMetrics.init(meterRegistry);
+
+        FunctionCounter.builder("crm.quota.acquired", CrmQuotaGate.class, c -> CrmQuotaGate.getAcquiredCount())
+                .register(meterRegistry);
+        Gauge.builder("crm.quota.wait.max", CrmQuotaGate.class, c -> CrmQuotaGate.getMaxWaitMillis())
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        for (CrmQuotaGate.Lane lane : CrmQuotaGate.Lane.values()) {
+            Gauge.builder("crm.quota.queued", lane, CrmQuotaGate::getQueued)
+                    .tag("lane", lane.name())
+                    .register(meterRegistry);
+        }
+
+        for (String system : SYSTEMS) {
+            // 0 CLOSED, 1 OPEN, 2 HALF_OPEN
+            Gauge.builder("resilience.state", system, s -> resilienceStat(s, "state",
+                    v -> CircuitBreaker.State.valueOf(String.valueOf(v)).ordinal()))
+                    .tag("system", system)
+                    .register(meterRegistry);
+            Gauge.builder("resilience.in.flight", system, s -> resilienceStat(s, "inFlight", v -> ((Number) v).doubleValue()))
+                    .tag("system", system)
+                    .register(meterRegistry);
+            FunctionCounter.builder("resilience.rejected", system, s -> resilienceStat(s, "rejected", v -> ((Number) v).doubleValue()))
+                    .tag("system", system)
+                    .register(meterRegistry);
+            FunctionCounter.builder("resilience.timeouts", system, s -> resilienceStat(s, "timeouts", v -> ((Number) v).doubleValue()))
+                    .tag("system", system)
+                    .register(meterRegistry);
+        }
+
+        for (String cache : CACHES) {
+            for (String result : Arrays.asList("localHits", "redisHits", "misses", "loadFailures")) {
+                FunctionCounter.builder("crm.cache.requests", crmReferenceCache, c -> cacheStat(c, cache, result))
+                        .tag("cache", cache)
+                        .tag("result", result)
+                        .register(meterRegistry);
+            }
+            Gauge.builder("crm.cache.size", crmReferenceCache, c -> cacheStat(c, cache, "size"))
+                    .tag("cache", cache)
+                    .register(meterRegistry);
+        }
+
+        FunctionCounter.builder("crm.query.single.flight", crmQueryService, CrmQueryService::getSingleFlightExecutedCount)
+                .tag("result", "executed")
+                .register(meterRegistry);
+        FunctionCounter.builder("crm.query.single.flight", crmQueryService, CrmQueryService::getSingleFlightSharedCount)
+                .tag("result", "shared")
+                .register(meterRegistry);
+
+        Gauge.builder("k3cloud.pool.clients", k3CloudClientPool, K3CloudClientPool::getIdle)
+                .tag("state", "idle")
+                .register(meterRegistry);
+        Gauge.builder("k3cloud.pool.clients", k3CloudClientPool, K3CloudClientPool::getBorrowed)
+                .tag("state", "borrowed")
+                .register(meterRegistry);
+
+        Gauge.builder("k3cloud.log.queued", k3CloudLogWriter, K3CloudLogWriter::getQueued)
+                .register(meterRegistry);
+        FunctionCounter.builder("k3cloud.log", k3CloudLogWriter, K3CloudLogWriter::getWritten)
+                .tag("result", "written")
+                .register(meterRegistry);
+        FunctionCounter.builder("k3cloud.log", k3CloudLogWriter, K3CloudLogWriter::getFailed)
+                .tag("result", "failed")
+                .register(meterRegistry);
+        FunctionCounter.builder("k3cloud.log", k3CloudLogWriter, K3CloudLogWriter::getDropped)
+                .tag("result", "dropped")
+                .register(meterRegistry);
+    }
+
+    private static double resilienceStat(String system, String key, ToDoubleFunction<Object> converter) {
+        Map<String, Object> stat = Resilience.stats().get(system);
+        if (stat == null || stat.get(key) == null) {
+            return 0;
+        }
+        return converter.applyAsDouble(stat.get(key));
+    }
+
+    private static double cacheStat(CrmReferenceCache cache, String cacheName, String key) {
+        Map<String, Long> stat = cache.stats().get(cacheName);
+        if (stat == null || stat.get(key) == null) {
+            return 0;
+        }
+        return stat.get(key);
+    }
+
+    /**
+     * 泛微调用的webservice操作作为业务流程，如 axis2.SaveSaleOrder
+     */
+    @Bean
+    public FilterRegistrationBean<Filter> axisFlowFilter() {
+        FilterRegistrationBean<Filter> registrationBean = new FilterRegistrationBean<>();
+        registrationBean.setFilter((request, response, chain) -> {
+            String action = request instanceof HttpServletRequest
+                    ? ((HttpServletRequest) request).getHeader("SOAPAction") : null;
+            IntegrationMetrics.Flow scope = IntegrationMetrics.flow("axis2." + soapOperation(action));
+            try {
+                chain.doFilter(request, response);
+            } finally {
+                scope.close();
+            }
+        });
+        registrationBean.addUrlPatterns("/services/*");
+        return registrationBean;
+    }
+
+    /**
+     * "urn:SaveSaleOrder"、"http://xxx/SaveSaleOrder" 取操作名，不是已发布的操作时为unknown
+     */
+    static String soapOperation(String action) {
+        action = StringUtils.strip(action, "\"");
+        if (StringUtils.isBlank(action)) {
+            return "unknown";
+        }
+        String operation = action.substring(Math.max(action.lastIndexOf(':'), action.lastIndexOf('/')) + 1);
+        return SOAP_OPERATIONS.contains(operation) ? operation : "unknown";
+    }
+}
@@ -0,0 +1,133 @@
+package com.qunjie.common.resilience;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.common.resilience.CircuitBreaker
+ * Description: 按最近N次调用失败比例熔断：CLOSED正常放行；失败比例超限转OPEN，直接拒绝；
+ *              openDuration后转HALF_OPEN放行少量试探调用，全部成功恢复CLOSED，任一失败重新OPEN
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+
+    private final ResilienceConfig.Policy policy;
+
+    /**
+     * 最近windowSize次调用结果，true为失败
+     */
+    private final boolean[] window;
+
+    private int position;
+
+    private int calls;
+
+    private int failures;
+
+    private State state = State.CLOSED;
+
+    private long openedAt;
+
+    /**
+     * 半开状态已放行、已成功的试探调用数
+     */
+    private int halfOpenPermitted;
+
+    private int halfOpenSucceeded;
+
+    public CircuitBreaker(String name, ResilienceConfig.Policy policy) {
+        this.name = name;
+        this.policy = policy;
+        this.window = new boolean[Math.max(1, policy.getWindowSize())];
+    }
+
+    /**
+     * 是否允许调用
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < policy.getOpenDuration()) {
+                return false;
+            }
+            transition(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermitted >= policy.getHalfOpenCalls()) {
+                return false;
+            }
+            halfOpenPermitted++;
+        }
+        return true;
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            if (++halfOpenSucceeded >= policy.getHalfOpenCalls()) {
+                transition(State.CLOSED);
+            }
+            return;
+        }
+        record(false);
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            transition(State.OPEN);
+            return;
+        }
+        record(true);
+        if (state == State.CLOSED && calls >= policy.getMinimumCalls()
+                && failures * 100 >= policy.getFailureRateThreshold() * calls) {
+            transition(State.OPEN);
+        }
+    }
+
+    /**
+     * 已放行的调用被调用方放弃(如取消)，不计入统计；半开状态归还试探名额
+     */
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN && halfOpenPermitted > halfOpenSucceeded) {
+            halfOpenPermitted--;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void record(boolean failed) {
+        if (calls == window.length) {
+            if (window[position]) {
+                failures--;
+            }
+        } else {
+            calls++;
+        }
+        window[position] = failed;
+        if (failed) {
+            failures++;
+        }
+        position = (position + 1) % window.length;
+    }
+
+    private void transition(State to) {
+        Resilience.LOG.warn("{} circuit breaker {} -> {}", name, state, to);
+        state = to;
+        if (to == State.OPEN) {
+            openedAt = System.currentTimeMillis();
+        }
+        halfOpenPermitted = 0;
+        halfOpenSucceeded = 0;
+        if (to == State.CLOSED) {
+            calls = 0;
+            failures = 0;
+            position = 0;
+        }
+    }
+}
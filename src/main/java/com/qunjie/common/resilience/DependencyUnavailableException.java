@@ -0,0 +1,24 @@
+package com.qunjie.common.resilience;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.common.resilience.DependencyUnavailableException
+ * Description: 外部系统已熔断、并发已满或调用超时，未等待结果直接失败
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+@SuppressWarnings("serial")
+public class DependencyUnavailableException extends RuntimeException {
+
+    private final String system;
+
+    public DependencyUnavailableException(String system, String msg) {
+        super(system + ":" + msg);
+        this.system = system;
+    }
+
+    public String getSystem() {
+        return system;
+    }
+}
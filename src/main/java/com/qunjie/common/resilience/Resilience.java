@@ -0,0 +1,333 @@
+package com.qunjie.common.resilience;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.common.resilience.Resilience
+ * Description: 外部系统调用保护：每个系统独立的并发隔离(信号量)、熔断和超时，
+ *              一个系统变慢或不可用时快速失败，不占满其他系统共用的tomcat/axis2线程
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+public class Resilience {
+
+    static final Logger LOG = LoggerFactory.getLogger(Resilience.class);
+
+    public static final String CRM = "crm";
+    public static final String K3CLOUD = "k3cloud";
+    public static final String FANWEI = "fanwei";
+    public static final String OCEAN = "ocean";
+
+    /**
+     * 实际执行的调用
+     */
+    @FunctionalInterface
+    public interface Call<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    private static volatile ResilienceConfig config = new ResilienceConfig();
+
+    private static final Map<String, Dependency> dependencies = new ConcurrentHashMap<>();
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    /**
+     * 配置了timeout的系统在此线程池中执行，调用线程最多等待timeout
+     */
+    private static final ExecutorService timeoutExecutor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "resilience-call-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Resilience() {}
+
+    public static synchronized void init(ResilienceConfig resilienceConfig) {
+        config = resilienceConfig;
+        dependencies.clear();
+        LOG.info("resilience init, enabled:{} systems:{}", resilienceConfig.isEnabled(), resilienceConfig.getSystems().keySet());
+    }
+
+    /**
+     * 受保护地调用外部系统，call抛出的异常计为失败
+     *
+     * @param system 系统名
+     * @param exceptionType call抛出的受检异常类型
+     * @throws DependencyUnavailableException 熔断、并发已满或超时
+     */
+    public static <T, E extends Exception> T call(String system, Class<E> exceptionType, Call<T, E> call) throws E {
+        return call(system, exceptionType, call, true, null);
+    }
+
+    /**
+     * 同call，超时后调用仍在后台执行，其晚到的结果交给abandoned释放(如关闭http响应)
+     */
+    public static <T, E extends Exception> T call(String system, Class<E> exceptionType, Call<T, E> call,
+                                                   Consumer<? super T> abandoned) throws E {
+        return call(system, exceptionType, call, true, abandoned);
+    }
+
+    /**
+     * 只经过熔断和并发限制，不使用配置的timeout，由客户端自身超时结束调用；
+     * 用于非幂等的写操作，避免调用方超时返回后请求仍在执行、重试时重复写入
+     */
+    public static <T, E extends Exception> T callWithoutTimeout(String system, Class<E> exceptionType, Call<T, E> call) throws E {
+        return call(system, exceptionType, call, false, null);
+    }
+
+    private static <T, E extends Exception> T call(String system, Class<E> exceptionType, Call<T, E> call,
+                                                    boolean timed, Consumer<? super T> abandoned) throws E {
+        if (!config.isEnabled()) {
+            return call.call();
+        }
+        Dependency dependency = dependency(system);
+        if (!dependency.acquireBulkhead()) {
+            dependency.rejected.incrementAndGet();
+            throw new DependencyUnavailableException(system, "并发调用数已达上限" + dependency.policy.getMaxConcurrent());
+        }
+        boolean handedOff = false;
+        try {
+            if (!dependency.breaker.tryAcquire()) {
+                dependency.rejected.incrementAndGet();
+                throw new DependencyUnavailableException(system, "已熔断，暂停调用");
+            }
+            AtomicBoolean recorded = new AtomicBoolean();
+            long timeout = timed ? dependency.policy.getTimeout() : 0;
+            if (timeout <= 0) {
+                return invoke(dependency, call, recorded);
+            }
+            // 结果由调用方取走还是被放弃，只有一方能置位
+            AtomicBoolean claimed = new AtomicBoolean();
+            Future<T> future = timeoutExecutor.submit(() -> {
+                try {
+                    T value = invoke(dependency, call, recorded);
+                    if (!claimed.compareAndSet(false, true)) {
+                        abandon(dependency, value, abandoned);
+                    }
+                    return value;
+                } finally {
+                    dependency.bulkhead.release();
+                }
+            });
+            handedOff = true;
+            return await(dependency, future, timeout, exceptionType, recorded, claimed);
+        } finally {
+            if (!handedOff) {
+                dependency.bulkhead.release();
+            }
+        }
+    }
+
+    /**
+     * 异步调用前检查熔断和并发限制，不使用配置的timeout(由异步调用自身超时结束)；
+     * 返回的许可在调用结束时经success、failure或ignore释放
+     *
+     * @param system 系统名
+     * @throws DependencyUnavailableException 熔断或并发已满
+     */
+    public static Permit acquire(String system) {
+        if (!config.isEnabled()) {
+            return new Permit(null);
+        }
+        Dependency dependency = dependency(system);
+        if (!dependency.acquireBulkhead()) {
+            dependency.rejected.incrementAndGet();
+            throw new DependencyUnavailableException(system, "并发调用数已达上限" + dependency.policy.getMaxConcurrent());
+        }
+        if (!dependency.breaker.tryAcquire()) {
+            dependency.bulkhead.release();
+            dependency.rejected.incrementAndGet();
+            throw new DependencyUnavailableException(system, "已熔断，暂停调用");
+        }
+        return new Permit(dependency);
+    }
+
+    /**
+     * 异步调用占用的并发数和熔断试探名额，只有第一次释放生效
+     */
+    public static class Permit {
+
+        private final Dependency dependency;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(Dependency dependency) {
+            this.dependency = dependency;
+        }
+
+        public void success() {
+            release(CircuitBreaker::onSuccess);
+        }
+
+        public void failure() {
+            release(CircuitBreaker::onFailure);
+        }
+
+        /**
+         * 调用方取消、本地构造请求失败等，不计入熔断统计
+         */
+        public void ignore() {
+            release(CircuitBreaker::onIgnored);
+        }
+
+        private void release(Consumer<CircuitBreaker> outcome) {
+            if (dependency == null || !released.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                outcome.accept(dependency.breaker);
+            } finally {
+                dependency.bulkhead.release();
+            }
+        }
+    }
+
+    private static <T> void abandon(Dependency dependency, T value, Consumer<? super T> abandoned) {
+        if (abandoned == null || value == null) {
+            return;
+        }
+        try {
+            abandoned.accept(value);
+        } catch (RuntimeException e) {
+            LOG.warn("release abandoned {} result error: {}", dependency.name, e.getMessage());
+        }
+    }
+
+    private static <T, E extends Exception> T invoke(Dependency dependency, Call<T, E> call, AtomicBoolean recorded) throws E {
+        try {
+            T value = call.call();
+            if (recorded.compareAndSet(false, true)) {
+                dependency.breaker.onSuccess();
+            }
+            return value;
+        } catch (Exception | Error e) {
+            if (recorded.compareAndSet(false, true)) {
+                dependency.breaker.onFailure();
+            }
+            throw e;
+        }
+    }
+
+    private static <T, E extends Exception> T await(Dependency dependency, Future<T> future, long timeout,
+                                                   Class<E> exceptionType, AtomicBoolean recorded,
+                                                   AtomicBoolean claimed) throws E {
+        try {
+            return future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            if (!claimed.compareAndSet(false, true)) {
+                // 超时的同时调用已成功返回，结果归调用方
+                return result(dependency, future, exceptionType);
+            }
+            // 超时计为失败；不取消底层调用，其占用的并发数直到真正结束才释放，避免慢系统无限增加线程
+            if (recorded.compareAndSet(false, true)) {
+                dependency.breaker.onFailure();
+            }
+            dependency.timeouts.incrementAndGet();
+            throw new DependencyUnavailableException(dependency.name, "调用超时" + timeout + "ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DependencyUnavailableException(dependency.name, "等待调用结果被中断");
+        } catch (ExecutionException e) {
+            throw unwrap(e, exceptionType);
+        }
+    }
+
+    private static <T, E extends Exception> T result(Dependency dependency, Future<T> future, Class<E> exceptionType) throws E {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DependencyUnavailableException(dependency.name, "等待调用结果被中断");
+        } catch (ExecutionException e) {
+            throw unwrap(e, exceptionType);
+        }
+    }
+
+    private static <E extends Exception> E unwrap(ExecutionException e, Class<E> exceptionType) {
+        Throwable cause = e.getCause();
+        if (exceptionType.isInstance(cause)) {
+            return exceptionType.cast(cause);
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        throw new CompletionException(cause);
+    }
+
+    private static Dependency dependency(String system) {
+        return dependencies.computeIfAbsent(system, name -> new Dependency(name, config.policy(name)));
+    }
+
+    /**
+     * 各系统熔断状态、正在调用数、拒绝次数、超时次数
+     */
+    public static Map<String, Map<String, Object>> stats() {
+        Map<String, Map<String, Object>> result = new LinkedHashMap<>();
+        dependencies.forEach((name, dependency) -> {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("state", dependency.breaker.getState().name());
+            map.put("inFlight", dependency.policy.getMaxConcurrent() - dependency.bulkhead.availablePermits());
+            map.put("rejected", dependency.rejected.get());
+            map.put("timeouts", dependency.timeouts.get());
+            result.put(name, map);
+        });
+        return result;
+    }
+
+    private static class Dependency {
+
+        private final String name;
+
+        private final ResilienceConfig.Policy policy;
+
+        private final Semaphore bulkhead;
+
+        private final CircuitBreaker breaker;
+
+        private final AtomicLong rejected = new AtomicLong();
+
+        private final AtomicLong timeouts = new AtomicLong();
+
+        private Dependency(String name, ResilienceConfig.Policy policy) {
+            this.name = name;
+            this.policy = policy;
+            this.bulkhead = new Semaphore(policy.getMaxConcurrent());
+            this.breaker = new CircuitBreaker(name, policy);
+        }
+
+        private boolean acquireBulkhead() {
+            if (policy.getMaxWait() <= 0) {
+                return bulkhead.tryAcquire();
+            }
+            try {
+                return bulkhead.tryAcquire(policy.getMaxWait(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.qunjie.common.resilience;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.common.resilience.ResilienceConfig
+ * Description: 外部系统(纷享销客crm、金蝶k3cloud、泛微oa、巨量引擎ocean)熔断、并发隔离、超时配置，
+ *              systems中按系统名单独配置，未配置的项使用defaults
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+@ConfigurationProperties(prefix = "resilience")
+@Configuration
+@Data
+public class ResilienceConfig {
+
+    private boolean enabled = true;
+
+    private Policy defaults = new Policy(50, 10, 20, 30000L, 3, 10, 0L, 0L);
+
+    /**
+     * 系统名 -> 单独配置
+     */
+    private Map<String, Policy> systems = new HashMap<>();
+
+    public Policy policy(String system) {
+        Policy policy = systems.get(system);
+        if (policy == null) {
+            return defaults;
+        }
+        return new Policy(
+                policy.getFailureRateThreshold() == null ? defaults.getFailureRateThreshold() : policy.getFailureRateThreshold(),
+                policy.getMinimumCalls() == null ? defaults.getMinimumCalls() : policy.getMinimumCalls(),
+                policy.getWindowSize() == null ? defaults.getWindowSize() : policy.getWindowSize(),
+                policy.getOpenDuration() == null ? defaults.getOpenDuration() : policy.getOpenDuration(),
+                policy.getHalfOpenCalls() == null ? defaults.getHalfOpenCalls() : policy.getHalfOpenCalls(),
+                policy.getMaxConcurrent() == null ? defaults.getMaxConcurrent() : policy.getMaxConcurrent(),
+                policy.getMaxWait() == null ? defaults.getMaxWait() : policy.getMaxWait(),
+                policy.getTimeout() == null ? defaults.getTimeout() : policy.getTimeout());
+    }
+
+    @PostConstruct
+    public void init() {
+        Resilience.init(this);
+    }
+
+    @Data
+    public static class Policy {
+
+        /**
+         * 最近windowSize次调用失败比例(百分比)达到此值时熔断
+         */
+        private Integer failureRateThreshold;
+
+        /**
+         * 统计窗口内至少调用多少次才计算失败比例
+         */
+        private Integer minimumCalls;
+
+        /**
+         * 统计最近多少次调用
+         */
+        private Integer windowSize;
+
+        /**
+         * 熔断持续时间(毫秒)，之后放行halfOpenCalls次试探调用
+         */
+        private Long openDuration;
+
+        /**
+         * 半开状态试探调用次数，全部成功才恢复
+         */
+        private Integer halfOpenCalls;
+
+        /**
+         * 同时进行的最大调用数
+         */
+        private Integer maxConcurrent;
+
+        /**
+         * 并发已满时等待的最长时间(毫秒)，0不等待直接失败
+         */
+        private Long maxWait;
+
+        /**
+         * 单次调用超时(毫秒)，0不限制(依赖客户端自身超时)
+         */
+        private Long timeout;
+
+        public Policy() {
+        }
+
+        public Policy(Integer failureRateThreshold, Integer minimumCalls, Integer windowSize, Long openDuration,
+                      Integer halfOpenCalls, Integer maxConcurrent, Long maxWait, Long timeout) {
+            this.failureRateThreshold = failureRateThreshold;
+            this.minimumCalls = minimumCalls;
+            this.windowSize = windowSize;
+            this.openDuration = openDuration;
+            this.halfOpenCalls = halfOpenCalls;
+            this.maxConcurrent = maxConcurrent;
+            this.maxWait = maxWait;
+            this.timeout = timeout;
+        }
+    }
+}
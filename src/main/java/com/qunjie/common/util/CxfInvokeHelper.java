@@ -2,10 +2,14 @@ package com.qunjie.common.util;/**
  * Created by whs on 2021/1/6.
  */
 
+import com.qunjie.common.metrics.IntegrationMetrics;
+import com.qunjie.common.resilience.Resilience;
 import org.apache.cxf.endpoint.Client;
 import org.apache.cxf.jaxws.endpoint.dynamic.JaxWsDynamicClientFactory;
 import org.apache.cxf.transport.http.HTTPConduit;
 import org.apache.cxf.transports.http.configuration.HTTPClientPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Copyright (C),2020-2021,群杰印章物联网
@@ -20,7 +24,24 @@ import org.apache.cxf.transports.http.configuration.HTTPClientPolicy;
  */
 public class CxfInvokeHelper {
 
+    private static final Logger LOG = LoggerFactory.getLogger(CxfInvokeHelper.class);
+
     public static String invoke(String wsdlUrl,String methodName,Object... args){
+        Object[] objects;
+        try {
+            // 获取wsdl、调用接口都经过泛微oa的熔断和并发限制
+            objects = IntegrationMetrics.timed(Resilience.FANWEI, methodName,
+                    () -> Resilience.call(Resilience.FANWEI, Exception.class, () -> doInvoke(wsdlUrl, methodName, args)),
+                    r -> IntegrationMetrics.SUCCESS);
+            LOG.info("{} 返回数据:{}", methodName, objects[0]);
+        } catch (java.lang.Exception e) {
+            LOG.error("invoke {} {} error, details:", wsdlUrl, methodName, e);
+            throw new IllegalStateException("调用" + wsdlUrl + "的" + methodName + "失败:" + e.getMessage(), e);
+        }
+        return objects[0].toString();
+    }
+
+    private static Object[] doInvoke(String wsdlUrl,String methodName,Object... args) throws java.lang.Exception {
         // 创建动态客户端
         JaxWsDynamicClientFactory dcf = JaxWsDynamicClientFactory.newInstance();
         Client client = dcf.createClient(wsdlUrl);
@@ -32,14 +53,7 @@ public class CxfInvokeHelper {
         conduit.setClient(policy);
         // 需要密码的情况需要加上用户名和密码
         // client.getOutInterceptors().add(new ClientLoginInterceptor(USER_NAME, PASS_WORD));
-        Object[] objects = new Object[0];
-        try {
-            // invoke("方法名",参数1,参数2,参数3....);
-            objects = client.invoke(methodName, args);
-            System.out.println("返回数据:" + objects[0]);
-        } catch (java.lang.Exception e) {
-            e.printStackTrace();
-        }
-        return objects[0].toString();
+        // invoke("方法名",参数1,参数2,参数3....);
+        return client.invoke(methodName, args);
     }
 }
@@ -3,15 +3,19 @@ package com.qunjie.crm.account.service;
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
-import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.qunjie.crm.cache.CrmReferenceCache;
+import com.qunjie.crm.utils.JsonCodec;
 import com.qunjie.crm.account.model.AccountModel;
 import com.qunjie.crm.exception.AccessTokenException;
 import com.qunjie.crm.query.args.QueryFilterField;
 import com.qunjie.crm.query.results.QueryResult;
+import com.qunjie.crm.query.service.CrmQueryBatch;
 import com.qunjie.crm.query.service.CrmQueryService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -39,7 +43,32 @@ public class AccountService {
     @Autowired
     private CrmQueryService crmQueryService;
 
+    @Autowired
+    private CrmReferenceCache referenceCache;
+
+    private static final Type ACCOUNT_LIST = new TypeToken<List<AccountModel>>(){}.getType();
+
+    /**
+     * 只取AccountModel用到的字段
+     */
+    private static final List<String> PROJECTION = CrmQueryService.projection(NAME, "lock_status");
+
+    /**
+     * 按名称查询未锁定的客户，结果走基础数据缓存
+     */
     public List<AccountModel> queryAccountByName(String name) throws AccessTokenException {
+        return referenceCache.get(CrmReferenceCache.ACCOUNT, name, ACCOUNT_LIST, () -> loadAccountByName(name));
+    }
+
+    /**
+     * 先从单据级批量结果中取，批量结果中没有时按名称查询
+     */
+    public List<AccountModel> queryAccountByName(CrmQueryBatch batch, String name) throws AccessTokenException {
+        QueryResult batched = CrmQueryBatch.get(batch, DATAOBJECTAPINAME, NAME, name);
+        return batched != null ? toModels(batched) : queryAccountByName(name);
+    }
+
+    private List<AccountModel> loadAccountByName(String name) throws AccessTokenException {
         List<QueryFilterField> list = new ArrayList<>();
         QueryFilterField queryFilterField = new QueryFilterField();
         queryFilterField.setOperator(OPERATOR);
@@ -48,14 +77,18 @@ public class AccountService {
         fieldValues.add(name);
         queryFilterField.setField_values(fieldValues);
         list.add(queryFilterField);
+        return toModels(crmQueryService.query(DATAOBJECTAPINAME, list, PROJECTION));
+    }
+
+    private static List<AccountModel> toModels(QueryResult query) {
         List<AccountModel> accountModels= null;
-        QueryResult query = crmQueryService.query(DATAOBJECTAPINAME, list);
         if (query.getErrorCode() == 0){
+            accountModels = new ArrayList<>();
             JSONObject data = query.getData();
             if (!data.isEmpty()){
                 JSONArray jsonArray = data.getJSONArray("dataList");
                 if (jsonArray != null && jsonArray.size() > 0){
-                    accountModels = JSON.parseArray(new Gson().toJson(jsonArray), AccountModel.class)
+                    accountModels = JSON.parseArray(JsonCodec.toJson(jsonArray), AccountModel.class)
                             .stream().filter(e -> e.getLock_status() == 0).collect(Collectors.toList());
                 }
             }
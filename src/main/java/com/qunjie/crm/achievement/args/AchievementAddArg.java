@@ -9,6 +9,7 @@ import com.qunjie.crm.exception.AccessTokenException;
 import com.qunjie.crm.partnerObj.model.PartnerObjModel;
 import com.qunjie.crm.partnerObj.service.PartnerObjService;
 import com.qunjie.crm.query.results.QueryResult;
+import com.qunjie.crm.query.service.CrmQueryBatch;
 import com.qunjie.crm.saleorder.service.SaleOrderService;
 import com.qunjie.crm.utils.DefaultValues;
 import com.qunjie.jindie.huikuan.constants.HuikuanFieldName;
@@ -85,6 +86,13 @@ public class AchievementAddArg extends BaseArg {
         private List<String> owner = new ArrayList<>();
 
         public Map<String,String> valueOf(List<WorkflowRequestTableField> detail){
+            return valueOf(detail, null);
+        }
+
+        /**
+         * @param batch 单据级批量查询结果，销售订单、合作伙伴先从中取，可为null
+         */
+        public Map<String,String> valueOf(List<WorkflowRequestTableField> detail, CrmQueryBatch batch){
             Map<String,String> map = new HashMap<>();
             if (!CollectionUtils.isEmpty(detail)) {
                 detail.forEach(e -> {
@@ -94,7 +102,7 @@ public class AchievementAddArg extends BaseArg {
                                 if (!StringUtils.isBlank(e.getFieldValue())){
                                     SaleOrderService saleOrderService = SpringBeanUtils.getBean(SaleOrderService.class);
                                     try {
-                                        QueryResult queryResult = saleOrderService.saleOrderQueryBy(e.getFieldValue());
+                                        QueryResult queryResult = saleOrderService.saleOrderQueryBy(batch, e.getFieldValue());
                                         if (queryResult != null && queryResult.getErrorCode() == 0) {
                                             String id = queryResult.getData().getJSONArray("dataList").getJSONObject(0).getString("_id");
                                             String account_id = queryResult.getData().getJSONArray("dataList").getJSONObject(0).getString("account_id");
@@ -115,7 +123,7 @@ public class AchievementAddArg extends BaseArg {
                                 if (!StringUtils.isBlank(e.getFieldValue())) {
                                     try {
                                         PartnerObjService partnerObjService = SpringBeanUtils.getBean(PartnerObjService.class);
-                                        List<PartnerObjModel> partnerObjModels = partnerObjService.queryPartnerObjByName(e.getFieldValue());
+                                        List<PartnerObjModel> partnerObjModels = partnerObjService.queryPartnerObjByName(batch, e.getFieldValue());
                                         if (!CollectionUtils.isEmpty(partnerObjModels)) {
                                             this.field_I24W5__c = partnerObjModels.get(0).get_id();
                                         }
@@ -6,15 +6,21 @@ import com.qunjie.axis.model.WorkflowRequestTableField;
 import com.qunjie.common.email.DefaultEmailAddress;
 import com.qunjie.common.email.event.SendEmailEvent;
 import com.qunjie.common.email.service.EmailServiceHelper;
+import com.qunjie.common.metrics.IntegrationMetrics;
 import com.qunjie.common.response.ApiResult;
+import com.qunjie.common.util.SpringBeanUtils;
 import com.qunjie.crm.achievement.args.AchievementAddArg;
 import com.qunjie.crm.achievement.constants.AchievementFieldName;
 import com.qunjie.crm.achievement.event.AchievementEvent;
 import com.qunjie.crm.beans.results.CrmAddResult;
 import com.qunjie.crm.exception.AccessTokenException;
 import com.qunjie.crm.manager.impl.AchievementManagerImpl;
+import com.qunjie.crm.partnerObj.service.PartnerObjService;
+import com.qunjie.crm.query.service.CrmQueryBatch;
+import com.qunjie.crm.query.service.CrmQueryService;
 import com.qunjie.crm.saleTarget.event.SaleTargetEvent;
 import com.qunjie.crm.saleTarget.model.SaleTargetModel;
+import com.qunjie.crm.saleorder.service.SaleOrderService;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -135,15 +141,21 @@ public class AchievementCrmService {
         List<String> AddSuccessIds = new CopyOnWriteArrayList<>();     //插入成功的数据id
         List<SaleTargetEvent> saleTargetEvents = new CopyOnWriteArrayList<>();     //销售业绩管理
         CountDownLatch countDownLatch = new CountDownLatch(details.size());
+        //明细中的销售订单号、合作伙伴各一次IN查询，各线程先从批量结果中取
+        CrmQueryBatch batch = SpringBeanUtils.getBean(CrmQueryService.class).newBatch()
+                .load(SaleOrderService.DATAOBJECTAPINAME, SaleOrderService.FIELD_CLVED__C,
+                        CrmQueryBatch.values(details, name -> AchievementFieldName.valuesOf(name) == AchievementFieldName.HTBHX))
+                .load(PartnerObjService.DATAOBJECTAPINAME, PartnerObjService.NAME,
+                        CrmQueryBatch.values(details, name -> AchievementFieldName.valuesOf(name) == AchievementFieldName.HZHB));
         for (List<WorkflowRequestTableField> detail : details) {
-            poolExecutor.execute(()->{
+            poolExecutor.execute(IntegrationMetrics.wrap(()->{
                 try {
-                    AchievementAdd(detail,list1,list2,list3,list4,flag,AddSuccessIds,mains,saleTargetEvents);
+                    AchievementAdd(detail,batch,list1,list2,list3,list4,flag,AddSuccessIds,mains,saleTargetEvents);
                 } catch (AccessTokenException e) {
                     e.printStackTrace();
                 }
                 countDownLatch.countDown();
-            });
+            }));
         }
         countDownLatch.await();
         if (flag.get()){
@@ -168,11 +180,11 @@ public class AchievementCrmService {
         }
     }
 
-    private void AchievementAdd(List<WorkflowRequestTableField> e,List<String> list1,List<String> list2,List<String> list3,List<String> list4,
+    private void AchievementAdd(List<WorkflowRequestTableField> e,CrmQueryBatch batch,List<String> list1,List<String> list2,List<String> list3,List<String> list4,
                                 AtomicBoolean flag,List<String> AddSuccessIds,List<WorkflowRequestTableField> mains,List<SaleTargetEvent> saleTargetEvents) throws AccessTokenException {
         boolean f = true;
         AchievementAddArg.AchievementObjectData objectData = new AchievementAddArg.AchievementObjectData();
-        Map<String, String> map = objectData.valueOf(e);
+        Map<String, String> map = objectData.valueOf(e, batch);
         objectData.valueOfMain(mains);
         if (StringUtils.isBlank(objectData.getField_xH1XV__c())){
             list1.add(map.get(AchievementFieldName.HTBHX.name()));
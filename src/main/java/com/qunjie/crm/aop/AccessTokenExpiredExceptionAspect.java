@@ -1,10 +1,13 @@
 package com.qunjie.crm.aop;
 
-import com.google.gson.Gson;
+import com.qunjie.common.metrics.IntegrationMetrics;
+import com.qunjie.common.resilience.Resilience;
 import com.qunjie.crm.beans.results.BaseResult;
 import com.qunjie.crm.exception.AccessTokenException;
 import com.qunjie.crm.manager.AccessTokenManager;
 import com.qunjie.crm.utils.Constants;
+import com.qunjie.crm.utils.CrmQuotaGate;
+import com.qunjie.crm.utils.JsonCodec;
 import com.qunjie.mysql.mapper.CrmHuikuanLogMapper;
 import com.qunjie.mysql.mapper.CrmLoggerMapper;
 import com.qunjie.mysql.mapper.CrmSaleOrderLogMapper;
@@ -22,6 +25,10 @@ import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 
 @Aspect
@@ -96,6 +103,16 @@ public class AccessTokenExpiredExceptionAspect {
         String typeName = joinPoint.getSignature().getDeclaringTypeName();
         String methodName = joinPoint.getSignature().getName();
 
+        if (result instanceof CompletableFuture) {
+            // 异步调用在结果返回后判断，重置token会访问redis，不在http回调、许可放行线程上执行
+            ((CompletableFuture<?>) result).thenAcceptAsync(r -> resetExpiredToken(typeName, methodName, r),
+                    CrmQuotaGate.asyncExecutor());
+            return;
+        }
+        resetExpiredToken(typeName, methodName, result);
+    }
+
+    private void resetExpiredToken(String typeName, String methodName, Object result) {
         if (result instanceof BaseResult) {
             BaseResult baseResult = (BaseResult) result;
             try {
@@ -132,32 +149,86 @@ public class AccessTokenExpiredExceptionAspect {
         }
     }
 
+    /**
+     * 执行目标方法，返回30004(超出调用频率)时按CrmQuotaGate指数退避+随机抖动重试，超过最大重试次数返回最后一次结果；
+     * 目标方法返回CompletableFuture(异步调用)时在结果返回后同样判断，退避不占用线程；
+     * 异步重试在crm-async线程执行，沿用调用线程的队列和业务流程
+     *
+     * @param joinPoint
+     * @return
+     * @throws Throwable
+     */
+    private Object proceedWithBackoff(ProceedingJoinPoint joinPoint) throws Throwable {
+        Object proceed = joinPoint.proceed(joinPoint.getArgs());
+        if (proceed instanceof CompletableFuture) {
+            return retryAsync(joinPoint, (CompletableFuture<?>) proceed, 0, CrmQuotaGate.asyncExecutor());
+        }
+        int attempt = 0;
+        while (isRateLimited(proceed) && attempt < CrmQuotaGate.maxRetries()) {
+            IntegrationMetrics.retry(Resilience.CRM, String.valueOf(CrmQuotaGate.RATE_LIMITED_CODE));
+            CrmQuotaGate.backoff(attempt++);
+            proceed = joinPoint.proceed(joinPoint.getArgs());
+        }
+        return proceed;
+    }
+
+    private CompletableFuture<Object> retryAsync(ProceedingJoinPoint joinPoint, CompletableFuture<?> future, int attempt,
+                                                 Executor executor) {
+        return future.thenComposeAsync(result -> {
+            if (!isRateLimited(result) || attempt >= CrmQuotaGate.maxRetries()) {
+                return CompletableFuture.completedFuture(result);
+            }
+            IntegrationMetrics.retry(Resilience.CRM, String.valueOf(CrmQuotaGate.RATE_LIMITED_CODE));
+            return CrmQuotaGate.backoffAsync(attempt).thenComposeAsync(v -> {
+                Object proceed;
+                try {
+                    proceed = joinPoint.proceed(joinPoint.getArgs());
+                } catch (Throwable e) {
+                    throw new CompletionException(e);
+                }
+                return retryAsync(joinPoint, (CompletableFuture<?>) proceed, attempt + 1, executor);
+            }, executor);
+        }, executor);
+    }
+
+    private static boolean isRateLimited(Object result) {
+        return result instanceof BaseResult && ((BaseResult) result).getErrorCode() == CrmQuotaGate.RATE_LIMITED_CODE;
+    }
+
+    /**
+     * 执行目标方法(含30004重试)并写调用日志，非BaseResult的返回按访问失败记录；
+     * 异步调用在结果返回后写日志，不在http回调、许可放行线程上写库
+     */
+    private Object proceedAndLog(ProceedingJoinPoint joinPoint, Consumer<BaseResult> log) throws Throwable {
+        Object proceed = proceedWithBackoff(joinPoint);
+        if (proceed instanceof CompletableFuture) {
+            ((CompletableFuture<?>) proceed).whenCompleteAsync((result, e) -> {
+                try {
+                    log.accept(result instanceof BaseResult ? (BaseResult) result : null);
+                } catch (RuntimeException ex) {
+                    LOG.error("write crm call log error, method:{}, details:", joinPoint.getSignature().getName(), ex);
+                }
+            }, CrmQuotaGate.asyncExecutor());
+            return proceed;
+        }
+        log.accept(proceed instanceof BaseResult ? (BaseResult) proceed : null);
+        return proceed;
+    }
+
     @Around("CrmAdd()||CrmCanceled()||CrmModify()")
     public Object around(ProceedingJoinPoint joinPoint) throws Throwable {
         String methodName = joinPoint.getSignature().getName();
         Object[] args = joinPoint.getArgs();
-        String s = new Gson().toJson(args);
-        Object proceed = joinPoint.proceed(joinPoint.getArgs());
-        if (proceed instanceof BaseResult){
-            BaseResult baseResult = (BaseResult) proceed;
-            int errorCode = baseResult.getErrorCode();
-            String errorMessage = baseResult.getErrorMessage();
-            while (errorCode == 30004){//20s内请求超过60次
-                Thread.sleep(2*1000);
-                proceed = joinPoint.proceed(joinPoint.getArgs());
-                if (proceed instanceof BaseResult){
-                    BaseResult proceed1 = (BaseResult) proceed;
-                    errorCode = proceed1.getErrorCode();
-                    errorMessage = proceed1.getErrorMessage();
-                }else {
-                    throw new Exception("未知错误！！");
-                }
+        String s = JsonCodec.toJson(args);
+        return proceedAndLog(joinPoint, baseResult -> {
+            if (baseResult != null){
+                int errorCode = baseResult.getErrorCode();
+                String errorMessage = baseResult.getErrorMessage();
+                crmLoggerMapper.add(new LoggerEntity(null,new Date(),s,errorCode,errorMessage,methodName));
+            }else {
+                crmLoggerMapper.add(new LoggerEntity(null,new Date(),s,404,"crm访问失败",methodName));
             }
-            crmLoggerMapper.add(new LoggerEntity(null,new Date(),s,errorCode,errorMessage,methodName));
-        }else {
-            crmLoggerMapper.add(new LoggerEntity(null,new Date(),s,404,"crm访问失败",methodName));
-        }
-        return proceed;
+        });
     }
 
 
@@ -165,28 +236,16 @@ public class AccessTokenExpiredExceptionAspect {
     public Object around4(ProceedingJoinPoint joinPoint) throws Throwable {
         String methodName = joinPoint.getSignature().getName();
         Object[] args = joinPoint.getArgs();
-        String s = new Gson().toJson(args);
-        Object proceed = joinPoint.proceed(joinPoint.getArgs());
-        if (proceed instanceof BaseResult){
-            BaseResult baseResult = (BaseResult) proceed;
-            int errorCode = baseResult.getErrorCode();
-            String errorMessage = baseResult.getErrorMessage();
-            while (errorCode == 30004){//20s内请求超过60次
-                Thread.sleep(2*1000);
-                proceed = joinPoint.proceed(joinPoint.getArgs());
-                if (proceed instanceof BaseResult){
-                    BaseResult proceed1 = (BaseResult) proceed;
-                    errorCode = proceed1.getErrorCode();
-                    errorMessage = proceed1.getErrorMessage();
-                }else {
-                    throw new Exception("未知错误！！");
-                }
+        String s = JsonCodec.toJson(args);
+        return proceedAndLog(joinPoint, baseResult -> {
+            if (baseResult != null){
+                int errorCode = baseResult.getErrorCode();
+                String errorMessage = baseResult.getErrorMessage();
+                crmSaleOrderLogMapper.add(new LoggerEntity(null,new Date(),s,errorCode,errorMessage,methodName));
+            }else {
+                crmSaleOrderLogMapper.add(new LoggerEntity(null,new Date(),s,404,"crm访问失败",methodName));
             }
-            crmSaleOrderLogMapper.add(new LoggerEntity(null,new Date(),s,errorCode,errorMessage,methodName));
-        }else {
-            crmSaleOrderLogMapper.add(new LoggerEntity(null,new Date(),s,404,"crm访问失败",methodName));
-        }
-        return proceed;
+        });
     }
 
     @Around("pointcutInvoice()")
@@ -194,28 +253,16 @@ public class AccessTokenExpiredExceptionAspect {
         Object target = joinPoint.getTarget();
         String methodName = joinPoint.getSignature().getName();
         Object[] args = joinPoint.getArgs();
-        String s = new Gson().toJson(args);
-        Object proceed = joinPoint.proceed(joinPoint.getArgs());
-        if (proceed instanceof BaseResult){
-            BaseResult baseResult = (BaseResult) proceed;
-            int errorCode = baseResult.getErrorCode();
-            String errorMessage = baseResult.getErrorMessage();
-            while (errorCode == 30004){//20s内请求超过60次
-                Thread.sleep(2*1000);
-                proceed = joinPoint.proceed(joinPoint.getArgs());
-                if (proceed instanceof BaseResult){
-                    BaseResult proceed1 = (BaseResult) proceed;
-                    errorCode = proceed1.getErrorCode();
-                    errorMessage = proceed1.getErrorMessage();
-                }else {
-                    throw new Exception("未知错误！！");
-                }
+        String s = JsonCodec.toJson(args);
+        return proceedAndLog(joinPoint, baseResult -> {
+            if (baseResult != null){
+                int errorCode = baseResult.getErrorCode();
+                String errorMessage = baseResult.getErrorMessage();
+                crmInvoiceLogService.AddLog(new InvoiceLog(null,new Date(),s,errorMessage,methodName,target.getClass().getName(),"开票推送纷享销客"));
+            }else {
+                crmInvoiceLogService.AddLog(new InvoiceLog(null,new Date(),s,"crm访问失败",methodName,target.getClass().getName(),"开票推送纷享销客"));
             }
-            crmInvoiceLogService.AddLog(new InvoiceLog(null,new Date(),s,errorMessage,methodName,target.getClass().getName(),"开票推送纷享销客"));
-        }else {
-            crmInvoiceLogService.AddLog(new InvoiceLog(null,new Date(),s,"crm访问失败",methodName,target.getClass().getName(),"开票推送纷享销客"));
-        }
-        return proceed;
+        });
     }
 
     @Around("PointcutHuikuan()")
@@ -223,28 +270,16 @@ public class AccessTokenExpiredExceptionAspect {
         Object target = joinPoint.getTarget();
         String methodName = joinPoint.getSignature().getName();
         Object[] args = joinPoint.getArgs();
-        String s = new Gson().toJson(args);
-        Object proceed = joinPoint.proceed(joinPoint.getArgs());
-        if (proceed instanceof BaseResult){
-            BaseResult baseResult = (BaseResult) proceed;
-            int errorCode = baseResult.getErrorCode();
-            String errorMessage = baseResult.getErrorMessage();
-            while (errorCode == 30004){//20s内请求超过60次
-                Thread.sleep(2*1000);
-                proceed = joinPoint.proceed(joinPoint.getArgs());
-                if (proceed instanceof BaseResult){
-                    BaseResult proceed1 = (BaseResult) proceed;
-                    errorCode = proceed1.getErrorCode();
-                    errorMessage = proceed1.getErrorMessage();
-                }else {
-                    throw new Exception("未知错误！！");
-                }
+        String s = JsonCodec.toJson(args);
+        return proceedAndLog(joinPoint, baseResult -> {
+            if (baseResult != null){
+                int errorCode = baseResult.getErrorCode();
+                String errorMessage = baseResult.getErrorMessage();
+                crmHuikuanLogMapper.add(new CrmHuikuanLog(null,new Date(),s,errorMessage,methodName,target.getClass().getName(),"回款推送纷享销客"));
+            }else {
+                crmHuikuanLogMapper.add(new CrmHuikuanLog(null,new Date(),s,"crm访问失败",methodName,target.getClass().getName(),"回款推送纷享销客"));
             }
-            crmHuikuanLogMapper.add(new CrmHuikuanLog(null,new Date(),s,errorMessage,methodName,target.getClass().getName(),"回款推送纷享销客"));
-        }else {
-            crmHuikuanLogMapper.add(new CrmHuikuanLog(null,new Date(),s,"crm访问失败",methodName,target.getClass().getName(),"回款推送纷享销客"));
-        }
-        return proceed;
+        });
     }
 
     @Around("PointcutAchievement()")
@@ -252,28 +287,16 @@ public class AccessTokenExpiredExceptionAspect {
         Object target = joinPoint.getTarget();
         String methodName = joinPoint.getSignature().getName();
         Object[] args = joinPoint.getArgs();
-        String s = new Gson().toJson(args);
-        Object proceed = joinPoint.proceed(joinPoint.getArgs());
-        if (proceed instanceof BaseResult){
-            BaseResult baseResult = (BaseResult) proceed;
-            int errorCode = baseResult.getErrorCode();
-            String errorMessage = baseResult.getErrorMessage();
-            while (errorCode == 30004){//20s内请求超过60次
-                Thread.sleep(2*1000);
-                proceed = joinPoint.proceed(joinPoint.getArgs());
-                if (proceed instanceof BaseResult){
-                    BaseResult proceed1 = (BaseResult) proceed;
-                    errorCode = proceed1.getErrorCode();
-                    errorMessage = proceed1.getErrorMessage();
-                }else {
-                    throw new Exception("未知错误！！");
-                }
+        String s = JsonCodec.toJson(args);
+        return proceedAndLog(joinPoint, baseResult -> {
+            if (baseResult != null){
+                int errorCode = baseResult.getErrorCode();
+                String errorMessage = baseResult.getErrorMessage();
+                crmHuikuanLogMapper.add(new CrmHuikuanLog(null,new Date(),s,errorMessage,methodName,target.getClass().getName(),"业绩拆分推送纷享销客"));
+            }else {
+                crmHuikuanLogMapper.add(new CrmHuikuanLog(null,new Date(),s,"crm访问失败",methodName,target.getClass().getName(),"业绩拆分推送纷享销客"));
             }
-            crmHuikuanLogMapper.add(new CrmHuikuanLog(null,new Date(),s,errorMessage,methodName,target.getClass().getName(),"业绩拆分推送纷享销客"));
-        }else {
-            crmHuikuanLogMapper.add(new CrmHuikuanLog(null,new Date(),s,"crm访问失败",methodName,target.getClass().getName(),"业绩拆分推送纷享销客"));
-        }
-        return proceed;
+        });
     }
 
     @Around("PointcutLeadsObj()")
@@ -281,28 +304,16 @@ public class AccessTokenExpiredExceptionAspect {
         Object target = joinPoint.getTarget();
         String methodName = joinPoint.getSignature().getName();
         Object[] args = joinPoint.getArgs();
-        String s = new Gson().toJson(args);
-        Object proceed = joinPoint.proceed(joinPoint.getArgs());
-        if (proceed instanceof BaseResult){
-            BaseResult baseResult = (BaseResult) proceed;
-            int errorCode = baseResult.getErrorCode();
-            String errorMessage = baseResult.getErrorMessage();
-            while (errorCode == 30004){//20s内请求超过60次
-                Thread.sleep(2*1000);
-                proceed = joinPoint.proceed(joinPoint.getArgs());
-                if (proceed instanceof BaseResult){
-                    BaseResult proceed1 = (BaseResult) proceed;
-                    errorCode = proceed1.getErrorCode();
-                    errorMessage = proceed1.getErrorMessage();
-                }else {
-                    throw new Exception("未知错误！！");
-                }
+        String s = JsonCodec.toJson(args);
+        return proceedAndLog(joinPoint, baseResult -> {
+            if (baseResult != null){
+                int errorCode = baseResult.getErrorCode();
+                String errorMessage = baseResult.getErrorMessage();
+                crmHuikuanLogMapper.add(new CrmHuikuanLog(null,new Date(),s,errorMessage,methodName,target.getClass().getName(),"销售线索送纷享销客"));
+            }else {
+                crmHuikuanLogMapper.add(new CrmHuikuanLog(null,new Date(),s,"crm访问失败",methodName,target.getClass().getName(),"销售线索推送纷享销客"));
             }
-            crmHuikuanLogMapper.add(new CrmHuikuanLog(null,new Date(),s,errorMessage,methodName,target.getClass().getName(),"销售线索送纷享销客"));
-        }else {
-            crmHuikuanLogMapper.add(new CrmHuikuanLog(null,new Date(),s,"crm访问失败",methodName,target.getClass().getName(),"销售线索推送纷享销客"));
-        }
-        return proceed;
+        });
     }
 
     @Around("PointcutCustomData()")
@@ -310,27 +321,15 @@ public class AccessTokenExpiredExceptionAspect {
         Object target = joinPoint.getTarget();
         String methodName = joinPoint.getSignature().getName();
         Object[] args = joinPoint.getArgs();
-        String s = new Gson().toJson(args);
-        Object proceed = joinPoint.proceed(joinPoint.getArgs());
-        if (proceed instanceof BaseResult){
-            BaseResult baseResult = (BaseResult) proceed;
-            int errorCode = baseResult.getErrorCode();
-            String errorMessage = baseResult.getErrorMessage();
-            while (errorCode == 30004){//20s内请求超过60次
-                Thread.sleep(2*1000);
-                proceed = joinPoint.proceed(joinPoint.getArgs());
-                if (proceed instanceof BaseResult){
-                    BaseResult proceed1 = (BaseResult) proceed;
-                    errorCode = proceed1.getErrorCode();
-                    errorMessage = proceed1.getErrorMessage();
-                }else {
-                    throw new Exception("未知错误！！");
-                }
+        String s = JsonCodec.toJson(args);
+        return proceedAndLog(joinPoint, baseResult -> {
+            if (baseResult != null){
+                int errorCode = baseResult.getErrorCode();
+                String errorMessage = baseResult.getErrorMessage();
+                crmHuikuanLogMapper.add(new CrmHuikuanLog(null,new Date(),s,errorMessage,methodName,target.getClass().getName(),"自定义接口"));
+            }else {
+                crmHuikuanLogMapper.add(new CrmHuikuanLog(null,new Date(),s,"crm访问失败",methodName,target.getClass().getName(),"自定义接口"));
             }
-            crmHuikuanLogMapper.add(new CrmHuikuanLog(null,new Date(),s,errorMessage,methodName,target.getClass().getName(),"自定义接口"));
-        }else {
-            crmHuikuanLogMapper.add(new CrmHuikuanLog(null,new Date(),s,"crm访问失败",methodName,target.getClass().getName(),"自定义接口"));
-        }
-        return proceed;
+        });
     }
 }
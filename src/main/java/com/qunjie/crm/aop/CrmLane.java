@@ -0,0 +1,25 @@
+package com.qunjie.crm.aop;
+
+import com.qunjie.crm.utils.CrmQuotaGate;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.crm.aop.CrmLane
+ * Description: 标记方法(或类中所有方法)内的纷享销客调用走哪条许可队列，未标记的调用按交互请求处理
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+@Documented
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CrmLane {
+
+    CrmQuotaGate.Lane value() default CrmQuotaGate.Lane.BULK;
+}
@@ -0,0 +1,42 @@
+package com.qunjie.crm.aop;
+
+import com.qunjie.crm.utils.CrmQuotaGate;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.crm.aop.CrmLaneAspect
+ * Description: 执行@CrmLane标记的方法期间，当前线程的纷享销客调用使用注解指定的队列，方法上的注解优先于类上的
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+public class CrmLaneAspect {
+
+    @Around("within(com.qunjie..*) && (@annotation(com.qunjie.crm.aop.CrmLane) || @within(com.qunjie.crm.aop.CrmLane))")
+    public Object around(ProceedingJoinPoint joinPoint) throws Throwable {
+        CrmLane crmLane = AnnotationUtils.findAnnotation(((MethodSignature) joinPoint.getSignature()).getMethod(), CrmLane.class);
+        if (crmLane == null) {
+            crmLane = AnnotationUtils.findAnnotation(joinPoint.getTarget().getClass(), CrmLane.class);
+        }
+        if (crmLane == null) {
+            return joinPoint.proceed();
+        }
+        CrmQuotaGate.LaneScope scope = CrmQuotaGate.lane(crmLane.value());
+        try {
+            return joinPoint.proceed();
+        } finally {
+            scope.close();
+        }
+    }
+}
@@ -11,6 +11,7 @@ import com.qunjie.mysql.mapper.CrmAttendanceMapper;
 import com.qunjie.mysql.mapper.UserValueMapper;
 import com.qunjie.mysql.model.CrmAttendance;
 import com.qunjie.mysql.model.UserValue;
+import com.qunjie.crm.aop.CrmLane;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -34,6 +35,7 @@ import java.util.stream.Collectors;
  * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
  * 修改人姓名           修改时间           版本号          描述
  */
+@CrmLane
 @Component
 @Slf4j
 public class AttendanceService {
@@ -0,0 +1,328 @@
+package com.qunjie.crm.cache;
+
+import com.qunjie.crm.config.CrmCacheConfig;
+import com.qunjie.crm.utils.JsonCodec;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.crm.cache.CrmReferenceCache
+ * Description: crm基础数据读穿透缓存：本地缓存 -> redis -> 查询crm/数据库，查询结果逐级写回；
+ *              查不到的数据(空集合)按negativeTtl缓存，查询失败(返回null)不缓存。
+ *              缓存的对象在多个线程间共享，调用方不要修改。
+ *              清除缓存时经redis发布订阅通知其他节点清除本地缓存
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+@Component
+public class CrmReferenceCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CrmReferenceCache.class);
+
+    public static final String PRODUCT = "product";
+    public static final String ACCOUNT = "account";
+    public static final String PARTNER = "partner";
+    public static final String MARKETING_EVENT = "marketingEvent";
+    public static final String USER_VALUE = "userValue";
+
+    /**
+     * 查询数据，返回null表示查询失败不缓存
+     */
+    @FunctionalInterface
+    public interface Loader<T, E extends Exception> {
+        T load() throws E;
+    }
+
+    /**
+     * 每次SCAN及批量删除的key数
+     */
+    private static final int SCAN_COUNT = 500;
+
+    /**
+     * 本节点标识，忽略自己发出的清除通知
+     */
+    private final String node = UUID.randomUUID().toString();
+
+    @Autowired
+    private CrmCacheConfig cacheConfig;
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    private RTopic<String> topic;
+
+    private Integer listenerId;
+
+    private final Map<String, LocalCache<String, Object>> caches = new ConcurrentHashMap<>();
+
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void subscribe() {
+        if (!cacheConfig.isRedisEnabled()) {
+            return;
+        }
+        try {
+            topic = redissonClient.getTopic(cacheConfig.getRedisKeyPrefix() + "invalidate", StringCodec.INSTANCE);
+            listenerId = topic.addListener((channel, message) -> onInvalidation(message));
+        } catch (RuntimeException e) {
+            // 订阅失败只影响其他节点修改后本地缓存的及时性，本地缓存仍按ttl过期
+            LOG.warn("subscribe crm reference cache invalidation error, details:", e);
+        }
+    }
+
+    @PreDestroy
+    public void unsubscribe() {
+        if (topic != null && listenerId != null) {
+            topic.removeListener(listenerId);
+        }
+    }
+
+    /**
+     * 读取缓存，未命中时调用loader查询并写入缓存
+     *
+     * @param cacheName 缓存名，对应fs.cache.specs中的配置
+     * @param key 缓存key
+     * @param type 数据类型，redis中按json保存
+     * @param loader 查询数据
+     */
+    @SuppressWarnings("unchecked")
+    public <T, E extends Exception> T get(String cacheName, String key, Type type, Loader<T, E> loader) throws E {
+        if (!cacheConfig.isEnabled() || key == null) {
+            return loader.load();
+        }
+        Stats stat = stats(cacheName);
+        LocalCache<String, Object> local = local(cacheName);
+        LocalCache.Entry<Object> entry = local.get(key);
+        if (entry != null) {
+            stat.localHits.incrementAndGet();
+            return (T) entry.getValue();
+        }
+
+        CrmCacheConfig.Spec spec = cacheConfig.spec(cacheName);
+        String json = readRedis(cacheName, key);
+        if (json != null) {
+            T value = JsonCodec.gson().fromJson(json, type);
+            if (value != null) {
+                stat.redisHits.incrementAndGet();
+                local.put(key, value, ttl(spec, value, spec.getTtl()));
+                return value;
+            }
+        }
+
+        stat.misses.incrementAndGet();
+        T value = loader.load();
+        if (value == null) {
+            stat.loadFailures.incrementAndGet();
+            return null;
+        }
+        local.put(key, value, ttl(spec, value, spec.getTtl()));
+        writeRedis(cacheName, key, JsonCodec.toJson(value), ttl(spec, value, spec.getRedisTtl()));
+        return value;
+    }
+
+    /**
+     * 清除一条缓存(本地和redis)，并通知其他节点清除本地缓存
+     */
+    public void evict(String cacheName, String key) {
+        local(cacheName).remove(key);
+        if (!cacheConfig.isRedisEnabled()) {
+            return;
+        }
+        try {
+            redisTemplate.delete(redisKey(cacheName, key));
+        } catch (RuntimeException e) {
+            LOG.warn("evict {} from redis error, details:", cacheName, e);
+        }
+        publish(cacheName, key);
+    }
+
+    /**
+     * 清除缓存名下全部数据(本地和redis)，并通知其他节点清除本地缓存；
+     * redis中的key用SCAN分批查找删除，不使用阻塞redis的KEYS
+     */
+    public void evictAll(String cacheName) {
+        local(cacheName).clear();
+        if (!cacheConfig.isRedisEnabled()) {
+            return;
+        }
+        try {
+            String pattern = redisKey(cacheName, "*");
+            Long deleted = redisTemplate.execute((RedisCallback<Long>) connection -> scanAndDelete(connection, pattern));
+            LOG.info("evict all {} from redis, deleted:{}", cacheName, deleted);
+        } catch (RuntimeException e) {
+            LOG.warn("evict all {} from redis error, details:", cacheName, e);
+        }
+        publish(cacheName, null);
+    }
+
+    private static long scanAndDelete(RedisConnection connection, String pattern) {
+        long deleted = 0;
+        List<byte[]> keys = new ArrayList<>(SCAN_COUNT);
+        ScanOptions options = ScanOptions.scanOptions().match(pattern).count(SCAN_COUNT).build();
+        try (Cursor<byte[]> cursor = connection.scan(options)) {
+            while (cursor.hasNext()) {
+                keys.add(cursor.next());
+                if (keys.size() >= SCAN_COUNT) {
+                    deleted += delete(connection, keys);
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("close redis scan cursor error, details:", e);
+        }
+        return deleted + delete(connection, keys);
+    }
+
+    private static long delete(RedisConnection connection, List<byte[]> keys) {
+        if (keys.isEmpty()) {
+            return 0;
+        }
+        Long deleted = connection.del(keys.toArray(new byte[0][]));
+        keys.clear();
+        return deleted == null ? 0 : deleted;
+    }
+
+    /**
+     * 通知其他节点清除本地缓存，key为null时清除缓存名下全部
+     */
+    private void publish(String cacheName, String key) {
+        if (topic == null) {
+            return;
+        }
+        try {
+            topic.publish(JsonCodec.toJson(new Invalidation(node, cacheName, key)));
+        } catch (RuntimeException e) {
+            LOG.warn("publish {} invalidation error, details:", cacheName, e);
+        }
+    }
+
+    private void onInvalidation(String message) {
+        try {
+            Invalidation invalidation = JsonCodec.fromJson(message, Invalidation.class);
+            if (invalidation == null || node.equals(invalidation.node) || invalidation.cacheName == null) {
+                return;
+            }
+            if (invalidation.key == null) {
+                local(invalidation.cacheName).clear();
+            } else {
+                local(invalidation.cacheName).remove(invalidation.key);
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("handle crm reference cache invalidation {} error, details:", message, e);
+        }
+    }
+
+    /**
+     * 各缓存命中统计：本地命中、redis命中、未命中、查询失败、本地条数
+     */
+    public Map<String, Map<String, Long>> stats() {
+        Map<String, Map<String, Long>> result = new LinkedHashMap<>();
+        stats.forEach((name, stat) -> {
+            Map<String, Long> map = new LinkedHashMap<>();
+            map.put("localHits", stat.localHits.get());
+            map.put("redisHits", stat.redisHits.get());
+            map.put("misses", stat.misses.get());
+            map.put("loadFailures", stat.loadFailures.get());
+            map.put("size", (long) local(name).size());
+            result.put(name, map);
+        });
+        return result;
+    }
+
+    private LocalCache<String, Object> local(String cacheName) {
+        return caches.computeIfAbsent(cacheName, name -> new LocalCache<>(cacheConfig.spec(name).getMaxSize()));
+    }
+
+    private Stats stats(String cacheName) {
+        return stats.computeIfAbsent(cacheName, name -> new Stats());
+    }
+
+    /**
+     * 查不到的数据(空集合)使用negativeTtl
+     */
+    private static long ttl(CrmCacheConfig.Spec spec, Object value, long ttl) {
+        if (value instanceof Collection && ((Collection<?>) value).isEmpty()) {
+            return Math.min(ttl, spec.getNegativeTtl());
+        }
+        return ttl;
+    }
+
+    private String readRedis(String cacheName, String key) {
+        if (!cacheConfig.isRedisEnabled()) {
+            return null;
+        }
+        try {
+            Object value = redisTemplate.opsForValue().get(redisKey(cacheName, key));
+            return value == null ? null : value.toString();
+        } catch (RuntimeException e) {
+            LOG.warn("read {} from redis error, details:", cacheName, e);
+            return null;
+        }
+    }
+
+    private void writeRedis(String cacheName, String key, String json, long ttl) {
+        if (!cacheConfig.isRedisEnabled() || ttl <= 0) {
+            return;
+        }
+        try {
+            redisTemplate.opsForValue().set(redisKey(cacheName, key), json, ttl, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            LOG.warn("write {} to redis error, details:", cacheName, e);
+        }
+    }
+
+    private String redisKey(String cacheName, String key) {
+        return cacheConfig.getRedisKeyPrefix() + cacheName + ":" + key;
+    }
+
+    /**
+     * 清除通知
+     */
+    private static class Invalidation {
+        private final String node;
+        private final String cacheName;
+        private final String key;
+
+        Invalidation(String node, String cacheName, String key) {
+            this.node = node;
+            this.cacheName = cacheName;
+            this.key = key;
+        }
+    }
+
+    private static class Stats {
+        private final AtomicLong localHits = new AtomicLong();
+        private final AtomicLong redisHits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong loadFailures = new AtomicLong();
+    }
+}
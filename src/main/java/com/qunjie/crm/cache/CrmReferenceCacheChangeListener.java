@@ -0,0 +1,60 @@
+package com.qunjie.crm.cache;
+
+import com.alibaba.fastjson.JSONObject;
+import com.qunjie.crm.account.service.AccountService;
+import com.qunjie.crm.change.event.CrmChangeEvent;
+import com.qunjie.crm.marketingEvent.service.MarketingEventService;
+import com.qunjie.crm.partnerObj.service.PartnerObjService;
+import com.qunjie.crm.product.service.ProductService;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.crm.cache.CrmReferenceCacheChangeListener
+ * Description: crm产品、客户、合作伙伴、市场活动有变更时清除对应的基础数据缓存，下次查询重新加载；
+ *              名称被修改时旧名称的缓存仍等到过期
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+@Component
+public class CrmReferenceCacheChangeListener implements ApplicationListener<CrmChangeEvent> {
+
+    @Autowired
+    private CrmReferenceCache referenceCache;
+
+    @Override
+    public void onApplicationEvent(CrmChangeEvent event) {
+        String cacheName;
+        String keyField;
+        switch (event.getDataObjectApiName()) {
+            case ProductService.DATAOBJECTAPINAME:
+                cacheName = CrmReferenceCache.PRODUCT;
+                keyField = ProductService.PRODUCT_CODE;
+                break;
+            case AccountService.DATAOBJECTAPINAME:
+                cacheName = CrmReferenceCache.ACCOUNT;
+                keyField = AccountService.NAME;
+                break;
+            case PartnerObjService.DATAOBJECTAPINAME:
+                cacheName = CrmReferenceCache.PARTNER;
+                keyField = PartnerObjService.NAME;
+                break;
+            case MarketingEventService.dataObjectApiName:
+                cacheName = CrmReferenceCache.MARKETING_EVENT;
+                keyField = "_id";
+                break;
+            default:
+                return;
+        }
+        for (JSONObject data : event.getDataList()) {
+            String key = data.getString(keyField);
+            if (StringUtils.isNotBlank(key)) {
+                referenceCache.evict(cacheName, key);
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.qunjie.crm.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.crm.cache.LocalCache
+ * Description: 本地缓存，按条数LRU淘汰，每条数据单独过期时间
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+public class LocalCache<K, V> {
+
+    private final int maxSize;
+
+    private final LinkedHashMap<K, Entry<V>> map;
+
+    public LocalCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.map = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > LocalCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return 未缓存或已过期时返回null
+     */
+    public synchronized Entry<V> get(K key) {
+        Entry<V> entry = map.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expireAt <= System.currentTimeMillis()) {
+            map.remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    public synchronized void put(K key, V value, long ttlMillis) {
+        if (ttlMillis <= 0) {
+            return;
+        }
+        map.put(key, new Entry<>(value, System.currentTimeMillis() + ttlMillis));
+    }
+
+    public synchronized void remove(K key) {
+        map.remove(key);
+    }
+
+    public synchronized void clear() {
+        map.clear();
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public static class Entry<V> {
+
+        private final V value;
+
+        private final long expireAt;
+
+        private Entry(V value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+
+        public V getValue() {
+            return value;
+        }
+    }
+}
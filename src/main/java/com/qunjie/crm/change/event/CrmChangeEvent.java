@@ -0,0 +1,35 @@
+package com.qunjie.crm.change.event;
+
+import com.alibaba.fastjson.JSONObject;
+import org.springframework.context.ApplicationEvent;
+
+import java.util.List;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.crm.change.event.CrmChangeEvent
+ * Description: crm对象一批变更数据(按last_modified_time升序)，同一条数据可能重复收到，监听方需要幂等处理
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+public class CrmChangeEvent extends ApplicationEvent {
+
+    private final String dataObjectApiName;
+
+    private final List<JSONObject> dataList;
+
+    public CrmChangeEvent(Object source, String dataObjectApiName, List<JSONObject> dataList) {
+        super(source);
+        this.dataObjectApiName = dataObjectApiName;
+        this.dataList = dataList;
+    }
+
+    public String getDataObjectApiName() {
+        return dataObjectApiName;
+    }
+
+    public List<JSONObject> getDataList() {
+        return dataList;
+    }
+}
@@ -0,0 +1,196 @@
+package com.qunjie.crm.change.service;
+
+import com.alibaba.fastjson.JSONObject;
+import com.qunjie.crm.aop.CrmLane;
+import com.qunjie.crm.change.event.CrmChangeEvent;
+import com.qunjie.crm.config.CrmChangeCaptureConfig;
+import com.qunjie.crm.query.service.CrmQueryIterator;
+import com.qunjie.crm.query.service.CrmQueryService;
+import com.qunjie.crm.utils.JsonCodec;
+import org.apache.commons.lang3.StringUtils;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.crm.change.service.CrmChangeCaptureService
+ * Description: crm增量变更捕获：每个对象在redis中保存已处理到的last_modified_time(水位线)，
+ *              定时从水位线开始按last_modified_time升序分页拉取变更，每batchSize条发布一次CrmChangeEvent，
+ *              发布成功后推进水位线；水位线时间点上已发布的id一并保存，下次从该时间点(包含)拉取时跳过；
+ *              首次运行只记录当前时间为水位线，不回放历史数据
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+@Service
+public class CrmChangeCaptureService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CrmChangeCaptureService.class);
+
+    @Autowired
+    private CrmChangeCaptureConfig config;
+
+    @Autowired
+    private CrmQueryService crmQueryService;
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private RabbitTemplate rabbitTemplate;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @CrmLane
+    @Scheduled(initialDelayString = "${fs.change-capture.interval:300000}",
+            fixedDelayString = "${fs.change-capture.interval:300000}")
+    public void poll() {
+        if (!config.isEnabled() || config.getObjects().isEmpty()) {
+            return;
+        }
+        RLock lock = redissonClient.getLock(config.getLockName());
+        if (!lock.tryLock()) {
+            LOG.debug("crm change capture is running on another instance");
+            return;
+        }
+        try {
+            config.getObjects().forEach(this::capture);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 拉取一个对象水位线之后的变更，返回发布的条数；中途失败时水位线停在最后一个发布成功的批次
+     */
+    public int capture(String dataObjectApiName, CrmChangeCaptureConfig.ObjectSpec spec) {
+        Mark mark = loadMark(dataObjectApiName);
+        if (mark == null) {
+            saveMark(dataObjectApiName, new Mark(System.currentTimeMillis(), new HashSet<>()));
+            LOG.info("crm change capture {} start from now", dataObjectApiName);
+            return 0;
+        }
+        long from = mark.time;
+        int count = 0;
+        List<JSONObject> batch = new ArrayList<>(config.getBatchSize());
+        try (CrmQueryIterator iterator = crmQueryService.iterator(dataObjectApiName, null, spec.isCustom(), true,
+                from, spec.getFields())) {
+            while (iterator.hasNext()) {
+                JSONObject row = iterator.next();
+                if (mark.contains(row)) {
+                    continue;
+                }
+                batch.add(row);
+                if (batch.size() >= config.getBatchSize()) {
+                    mark = publish(dataObjectApiName, batch, mark);
+                    count += batch.size();
+                    batch = new ArrayList<>(config.getBatchSize());
+                }
+            }
+            publish(dataObjectApiName, batch, mark);
+            count += batch.size();
+        } catch (RuntimeException e) {
+            LOG.error("crm change capture {} error, published:{}, details:", dataObjectApiName, count, e);
+        }
+        if (count > 0) {
+            LOG.info("crm change capture {} published {} changes since {}", dataObjectApiName, count, from);
+        }
+        return count;
+    }
+
+    /**
+     * 发布一批变更并推进水位线
+     */
+    private Mark publish(String dataObjectApiName, List<JSONObject> batch, Mark mark) {
+        if (batch.isEmpty()) {
+            return mark;
+        }
+        applicationContext.publishEvent(new CrmChangeEvent(this, dataObjectApiName, batch));
+        if (StringUtils.isNotBlank(config.getMqExchange())) {
+            Map<String, Object> message = new LinkedHashMap<>();
+            message.put("dataObjectApiName", dataObjectApiName);
+            message.put("dataList", batch);
+            rabbitTemplate.convertAndSend(config.getMqExchange(), config.getMqRoutingKey(), message);
+        }
+        Mark next = mark;
+        for (JSONObject row : batch) {
+            next = next.advance(row);
+        }
+        saveMark(dataObjectApiName, next);
+        return next;
+    }
+
+    /**
+     * 对象当前水位线，未开始捕获时为null
+     */
+    public Long getMark(String dataObjectApiName) {
+        Mark mark = loadMark(dataObjectApiName);
+        return mark == null ? null : mark.time;
+    }
+
+    /**
+     * 手动设置水位线，如需要回放某时间点之后的变更
+     */
+    public void setMark(String dataObjectApiName, long time) {
+        saveMark(dataObjectApiName, new Mark(time, new HashSet<>()));
+    }
+
+    private Mark loadMark(String dataObjectApiName) {
+        Object json = redisTemplate.opsForHash().get(config.getRedisKey(), dataObjectApiName);
+        return json == null ? null : JsonCodec.fromJson(String.valueOf(json), Mark.class);
+    }
+
+    private void saveMark(String dataObjectApiName, Mark mark) {
+        redisTemplate.opsForHash().put(config.getRedisKey(), dataObjectApiName, JsonCodec.toJson(mark));
+    }
+
+    /**
+     * 水位线：已处理到的last_modified_time，以及该时间点上已发布的数据id
+     */
+    private static class Mark {
+
+        private long time;
+
+        private Set<String> ids;
+
+        private Mark(long time, Set<String> ids) {
+            this.time = time;
+            this.ids = ids;
+        }
+
+        private boolean contains(JSONObject row) {
+            Long lastModifiedTime = row.getLong(CrmQueryIterator.LAST_MODIFIED_TIME);
+            return lastModifiedTime != null && lastModifiedTime == time
+                    && ids != null && ids.contains(row.getString(CrmQueryIterator.ID));
+        }
+
+        private Mark advance(JSONObject row) {
+            Long lastModifiedTime = row.getLong(CrmQueryIterator.LAST_MODIFIED_TIME);
+            if (lastModifiedTime == null || lastModifiedTime < time) {
+                return this;
+            }
+            Set<String> next = lastModifiedTime == time && ids != null ? new HashSet<>(ids) : new HashSet<>();
+            next.add(row.getString(CrmQueryIterator.ID));
+            return new Mark(lastModifiedTime, next);
+        }
+    }
+}
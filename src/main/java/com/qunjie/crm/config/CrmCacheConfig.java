@@ -0,0 +1,115 @@
+package com.qunjie.crm.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.crm.config.CrmCacheConfig
+ * Description: crm基础数据(产品、客户、合作伙伴、市场活动、人员对照)两级缓存及对象描述、员工通讯录缓存配置，
+ *              本地一级缓存 + redis二级缓存，specs中可按缓存名单独配置
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+@ConfigurationProperties(prefix = "fs.cache")
+@Configuration
+@Data
+public class CrmCacheConfig {
+
+    /**
+     * 关闭后每次都直接查询
+     */
+    private boolean enabled = true;
+
+    /**
+     * 是否使用redis二级缓存
+     */
+    private boolean redisEnabled = true;
+
+    private String redisKeyPrefix = "crm:ref:";
+
+    /**
+     * 以下为默认值，specs中未配置的项使用默认值
+     */
+    private Spec defaults = new Spec(2000, 600000L, 3600000L, 60000L);
+
+    /**
+     * 缓存名 -> 单独配置
+     */
+    private Map<String, Spec> specs = new HashMap<>();
+
+    /**
+     * crm对象描述(字段、选项)缓存时间(毫秒)
+     */
+    private long describeTtl = 86400000;
+
+    /**
+     * 选项查不到时重新获取对象描述的最短间隔(毫秒)
+     */
+    private long describeRefreshInterval = 60000;
+
+    /**
+     * 纷享销客员工通讯录全量重新加载间隔(毫秒)
+     */
+    private long directoryRefreshInterval = 3600000;
+
+    /**
+     * 通讯录中本服务修改过的员工单独刷新的间隔(毫秒)
+     */
+    private long directoryDeltaInterval = 60000;
+
+    /**
+     * 加载通讯录时等待各部门人员的最长时间(毫秒)
+     */
+    private long directoryLoadTimeout = 120000;
+
+    public Spec spec(String cacheName) {
+        Spec spec = specs.get(cacheName);
+        if (spec == null) {
+            return defaults;
+        }
+        return new Spec(spec.getMaxSize() == null ? defaults.getMaxSize() : spec.getMaxSize(),
+                spec.getTtl() == null ? defaults.getTtl() : spec.getTtl(),
+                spec.getRedisTtl() == null ? defaults.getRedisTtl() : spec.getRedisTtl(),
+                spec.getNegativeTtl() == null ? defaults.getNegativeTtl() : spec.getNegativeTtl());
+    }
+
+    @Data
+    public static class Spec {
+
+        /**
+         * 本地缓存最多条数，超出时淘汰最久未使用的
+         */
+        private Integer maxSize;
+
+        /**
+         * 本地缓存有效期(毫秒)
+         */
+        private Long ttl;
+
+        /**
+         * redis缓存有效期(毫秒)
+         */
+        private Long redisTtl;
+
+        /**
+         * crm中查不到的数据缓存时间(毫秒)，避免重复查询不存在的数据
+         */
+        private Long negativeTtl;
+
+        public Spec() {
+        }
+
+        public Spec(Integer maxSize, Long ttl, Long redisTtl, Long negativeTtl) {
+            this.maxSize = maxSize;
+            this.ttl = ttl;
+            this.redisTtl = redisTtl;
+            this.negativeTtl = negativeTtl;
+        }
+    }
+}
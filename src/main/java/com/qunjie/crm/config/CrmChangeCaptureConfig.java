@@ -0,0 +1,72 @@
+package com.qunjie.crm.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.crm.config.CrmChangeCaptureConfig
+ * Description: crm增量变更捕获配置：按last_modified_time水位线定时拉取objects中各对象的变更，
+ *              发布CrmChangeEvent，配置了mq-exchange时同时发送到rabbitmq
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+@ConfigurationProperties(prefix = "fs.change-capture")
+@Configuration
+@Data
+public class CrmChangeCaptureConfig {
+
+    private boolean enabled = false;
+
+    /**
+     * 两次拉取间隔(毫秒)
+     */
+    private long interval = 300000;
+
+    /**
+     * 各对象水位线保存在此redis hash中，field为对象apiName
+     */
+    private String redisKey = "crm:change:mark";
+
+    /**
+     * 多实例部署时只有拿到锁的实例拉取
+     */
+    private String lockName = "crm:change:lock";
+
+    /**
+     * 每个事件/消息包含的最多条数
+     */
+    private int batchSize = 100;
+
+    /**
+     * 为空时只发布本地事件
+     */
+    private String mqExchange;
+
+    private String mqRoutingKey = "crm.change";
+
+    /**
+     * 对象apiName -> 拉取配置
+     */
+    private Map<String, ObjectSpec> objects = new LinkedHashMap<>();
+
+    @Data
+    public static class ObjectSpec {
+
+        /**
+         * 是否自定义对象
+         */
+        private boolean custom;
+
+        /**
+         * 返回字段，为空返回全部字段
+         */
+        private List<String> fields;
+    }
+}
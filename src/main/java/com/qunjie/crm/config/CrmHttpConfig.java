@@ -0,0 +1,78 @@
+package com.qunjie.crm.config;
+
+import com.qunjie.crm.utils.HttpTookit;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.crm.config.CrmHttpConfig
+ * Description: 纷享销客开放平台http连接池配置，启动后替换HttpTookit中的默认连接池
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+@ConfigurationProperties(prefix = "fs.http")
+@Configuration
+@Data
+public class CrmHttpConfig {
+
+    /**
+     * 连接池最大连接数
+     */
+    private int maxTotal = 50;
+
+    /**
+     * 每个host最大连接数(open.fxiaoke.com)
+     */
+    private int maxPerRoute = 20;
+
+    /**
+     * 建立连接超时(毫秒)
+     */
+    private int connectTimeout = 5000;
+
+    /**
+     * 从连接池获取连接超时(毫秒)
+     */
+    private int connectionRequestTimeout = 10000;
+
+    /**
+     * 读取数据超时(毫秒)
+     */
+    private int socketTimeout = 60000;
+
+    /**
+     * 服务端未返回Keep-Alive头时，连接保活时间(毫秒)
+     */
+    private long keepAlive = 30000;
+
+    /**
+     * 空闲超过此时间的连接被回收(毫秒)
+     */
+    private long idleTimeout = 60000;
+
+    /**
+     * 过期、空闲连接回收间隔(毫秒)
+     */
+    private long evictInterval = 30000;
+
+    /**
+     * 异步请求整体超时(毫秒)，小于等于0不限制
+     */
+    private long asyncTimeout = 60000;
+
+    @PostConstruct
+    public void init() {
+        HttpTookit.init(this);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        HttpTookit.shutdown();
+    }
+}
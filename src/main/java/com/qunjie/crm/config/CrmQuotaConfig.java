@@ -0,0 +1,69 @@
+package com.qunjie.crm.config;
+
+import com.qunjie.crm.utils.CrmQuotaGate;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.crm.config.CrmQuotaConfig
+ * Description: 纷享销客接口调用频率配置(企业配额：20秒内60次)及交互/批量优先级，启动后替换CrmQuotaGate中的默认配置
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+@ConfigurationProperties(prefix = "fs.quota")
+@Configuration
+@Data
+public class CrmQuotaConfig {
+
+    /**
+     * 每个统计周期允许的调用次数
+     */
+    private int permits = 60;
+
+    /**
+     * 统计周期(毫秒)
+     */
+    private long period = 20000;
+
+    /**
+     * 空闲时最多可积攒的调用次数(突发)，为0时严格匀速；
+     * 突发许可中按interactiveShare保留给交互请求，为0时没有保留，只靠排队时按比例放行保证交互请求
+     */
+    private int burst = 0;
+
+    /**
+     * 排队等待调用许可的最长时间(毫秒)，超过直接返回30004
+     */
+    private long maxWait = 60000;
+
+    /**
+     * 接口返回30004后的最大重试次数
+     */
+    private int maxRetries = 5;
+
+    /**
+     * 30004退避基础时间(毫秒)，按2的指数增长并加随机抖动
+     */
+    private long backoffBase = 2000;
+
+    /**
+     * 单次退避最长时间(毫秒)
+     */
+    private long backoffMax = 20000;
+
+    /**
+     * 交互请求(OA审批回调等)的配额占比：交互、批量同时排队时按此比例放行，
+     * 只有批量排队时突发许可中也保留此比例给交互请求(burst为0时不保留)；为1时交互严格优先
+     */
+    private double interactiveShare = 0.8;
+
+    @PostConstruct
+    public void init() {
+        CrmQuotaGate.init(this);
+    }
+}
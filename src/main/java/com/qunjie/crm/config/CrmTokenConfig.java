@@ -0,0 +1,61 @@
+package com.qunjie.crm.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.crm.config.CrmTokenConfig
+ * Description: 纷享销客appAccessToken、corpAccessToken后台刷新及redis共享配置
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+@ConfigurationProperties(prefix = "fs.access-token")
+@Configuration
+@Data
+public class CrmTokenConfig {
+
+    /**
+     * 后台检查间隔(毫秒)
+     */
+    private long refreshInterval = 60000;
+
+    /**
+     * 距离过期不足此时间时后台提前刷新(毫秒)
+     */
+    private long refreshAhead = 600000;
+
+    /**
+     * 后台刷新失败重试次数，全部失败继续使用旧token
+     */
+    private int maxRetries = 3;
+
+    /**
+     * 重试间隔(毫秒)，按次数递增
+     */
+    private long retryInterval = 2000;
+
+    /**
+     * 刚获取不足此时间的token收到过期重置时不再重复获取(毫秒)
+     */
+    private long resetGuard = 10000;
+
+    /**
+     * corpAccessToken是否通过redis在多个实例间共享
+     */
+    private boolean shared = true;
+
+    private String redisKeyPrefix = "crm:token:";
+
+    /**
+     * 等待其他实例刷新token的分布式锁最长时间(毫秒)
+     */
+    private long lockWait = 10000;
+
+    /**
+     * 分布式锁自动释放时间(毫秒)，需大于获取token的最长耗时
+     */
+    private long lockLease = 30000;
+}
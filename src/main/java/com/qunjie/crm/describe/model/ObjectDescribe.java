@@ -0,0 +1,103 @@
+package com.qunjie.crm.describe.model;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.crm.describe.model.ObjectDescribe
+ * Description: crm对象描述中单选/多选字段的选项，按字段建立 选项名->选项值、选项值->选项名 索引
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+public class ObjectDescribe {
+
+    private final String apiName;
+
+    private final long fetchedAt;
+
+    /**
+     * 字段 -> 选项名 -> 选项值
+     */
+    private final Map<String, Map<String, String>> labelToValue = new HashMap<>();
+
+    /**
+     * 字段 -> 选项值 -> 选项名
+     */
+    private final Map<String, Map<String, String>> valueToLabel = new HashMap<>();
+
+    /**
+     * @param apiName 对象apiName
+     * @param objectDesc getCrmDesc返回的objectDesc
+     * @param fetchedAt 获取时间
+     */
+    @SuppressWarnings("unchecked")
+    public ObjectDescribe(String apiName, Map<String, Map<String, Object>> objectDesc, long fetchedAt) {
+        this.apiName = apiName;
+        this.fetchedAt = fetchedAt;
+        Map<String, Object> fields = objectDesc == null ? null : objectDesc.get("fields");
+        if (fields == null) {
+            return;
+        }
+        fields.forEach((fieldName, fieldDesc) -> {
+            if (!(fieldDesc instanceof Map)) {
+                return;
+            }
+            Object options = ((Map<String, Object>) fieldDesc).get("options");
+            if (!(options instanceof List)) {
+                return;
+            }
+            Map<String, String> labels = new HashMap<>();
+            Map<String, String> values = new HashMap<>();
+            for (Object option : (List<Object>) options) {
+                if (!(option instanceof Map)) {
+                    continue;
+                }
+                Object label = ((Map<String, Object>) option).get("label");
+                Object value = ((Map<String, Object>) option).get("value");
+                if (label == null || value == null) {
+                    continue;
+                }
+                labels.putIfAbsent(label.toString().trim(), value.toString());
+                values.put(value.toString(), label.toString());
+            }
+            labelToValue.put(fieldName, labels);
+            valueToLabel.put(fieldName, values);
+        });
+    }
+
+    public String getApiName() {
+        return apiName;
+    }
+
+    public long getFetchedAt() {
+        return fetchedAt;
+    }
+
+    /**
+     * @return 字段或选项不存在时返回null
+     */
+    public String optionValue(String fieldName, String label) {
+        Map<String, String> labels = labelToValue.get(fieldName);
+        return labels == null || label == null ? null : labels.get(label.trim());
+    }
+
+    /**
+     * @return 字段或选项不存在时返回null
+     */
+    public String optionLabel(String fieldName, String value) {
+        Map<String, String> values = valueToLabel.get(fieldName);
+        return values == null || value == null ? null : values.get(value);
+    }
+
+    /**
+     * 字段全部选项：选项名->选项值
+     */
+    public Map<String, String> options(String fieldName) {
+        Map<String, String> labels = labelToValue.get(fieldName);
+        return labels == null ? Collections.emptyMap() : Collections.unmodifiableMap(labels);
+    }
+}
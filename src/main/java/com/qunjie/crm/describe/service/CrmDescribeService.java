@@ -0,0 +1,127 @@
+package com.qunjie.crm.describe.service;
+
+import com.qunjie.crm.beans.results.CrmDescResult;
+import com.qunjie.crm.config.CrmCacheConfig;
+import com.qunjie.crm.describe.model.ObjectDescribe;
+import com.qunjie.crm.exception.AccessTokenException;
+import com.qunjie.crm.manager.AddressBookManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.crm.describe.service.CrmDescribeService
+ * Description: crm对象描述(/cgi/crm/object/describe)缓存，每个对象只获取一次，
+ *              单选字段按选项名取选项值，选项查不到时(crm中新增了选项)重新获取一次对象描述
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+@Service
+@Slf4j
+public class CrmDescribeService {
+
+    @Autowired
+    private AddressBookManager addressBookManager;
+
+    @Autowired
+    private CrmCacheConfig cacheConfig;
+
+    private final Map<String, ObjectDescribe> describes = new ConcurrentHashMap<>();
+
+    /**
+     * 各对象最近一次获取描述的时间，获取失败或选项不存在时不会频繁重复获取
+     */
+    private final Map<String, Long> lastAttempts = new ConcurrentHashMap<>();
+
+    private final Map<String, Object> locks = new ConcurrentHashMap<>();
+
+    /**
+     * 对象描述，未缓存或已过期时获取
+     *
+     * @return 获取失败时返回旧数据，没有旧数据返回null
+     */
+    public ObjectDescribe describe(String apiName) {
+        ObjectDescribe describe = describes.get(apiName);
+        if (describe != null && System.currentTimeMillis() - describe.getFetchedAt() < cacheConfig.getDescribeTtl()) {
+            return describe;
+        }
+        return refresh(apiName, describe);
+    }
+
+    /**
+     * 单选字段按选项名取选项值
+     *
+     * @param apiName 对象apiName
+     * @param fieldName 字段apiName
+     * @param label 选项名
+     * @return 查不到时返回null
+     */
+    public String optionValue(String apiName, String fieldName, String label) {
+        if (label == null) {
+            return null;
+        }
+        ObjectDescribe describe = describe(apiName);
+        String value = describe == null ? null : describe.optionValue(fieldName, label);
+        if (value == null && describe != null) {
+            describe = refresh(apiName, describe);
+            value = describe == null ? null : describe.optionValue(fieldName, label);
+        }
+        if (value == null) {
+            log.warn("crm对象{}字段{}中不存在选项:{}", apiName, fieldName, label);
+        }
+        return value;
+    }
+
+    /**
+     * 单选字段按选项值取选项名
+     */
+    public String optionLabel(String apiName, String fieldName, String value) {
+        ObjectDescribe describe = describe(apiName);
+        return describe == null ? null : describe.optionLabel(fieldName, value);
+    }
+
+    public void evict(String apiName) {
+        describes.remove(apiName);
+        lastAttempts.remove(apiName);
+    }
+
+    /**
+     * 同一对象只有一个线程获取，其他线程等待后直接使用获取结果；距上次获取不足describeRefreshInterval时不再获取
+     */
+    private ObjectDescribe refresh(String apiName, ObjectDescribe stale) {
+        synchronized (lock(apiName)) {
+            ObjectDescribe current = describes.get(apiName);
+            if (current != null && current != stale) {
+                return current;
+            }
+            long now = System.currentTimeMillis();
+            Long lastAttempt = lastAttempts.get(apiName);
+            if (lastAttempt != null && now - lastAttempt < cacheConfig.getDescribeRefreshInterval()) {
+                return current;
+            }
+            lastAttempts.put(apiName, now);
+            try {
+                CrmDescResult result = addressBookManager.getCrmDesc(apiName);
+                if (result != null && result.getErrorCode() == 0 && result.getObjectDesc() != null) {
+                    ObjectDescribe describe = new ObjectDescribe(apiName, result.getObjectDesc(), System.currentTimeMillis());
+                    describes.put(apiName, describe);
+                    log.info("crm对象{}描述已更新", apiName);
+                    return describe;
+                }
+                log.error("获取crm对象{}描述失败:{}", apiName, result);
+            } catch (AccessTokenException e) {
+                log.error("获取crm对象{}描述失败, details:", apiName, e);
+            }
+            return current;
+        }
+    }
+
+    private Object lock(String apiName) {
+        return locks.computeIfAbsent(apiName, k -> new Object());
+    }
+}
@@ -0,0 +1,349 @@
+package com.qunjie.crm.directory.service;
+
+import com.qunjie.crm.aop.CrmLane;
+import com.qunjie.crm.beans.CorpAccessToken;
+import com.qunjie.crm.beans.EmployeeVO;
+import com.qunjie.crm.beans.args.DeptListArg;
+import com.qunjie.crm.beans.args.DeptUserListArg;
+import com.qunjie.crm.beans.args.UserInfoArg;
+import com.qunjie.crm.beans.results.Department;
+import com.qunjie.crm.beans.results.DeptListResult;
+import com.qunjie.crm.beans.results.DeptUserListResult;
+import com.qunjie.crm.beans.results.User;
+import com.qunjie.crm.beans.results.UserResult;
+import com.qunjie.crm.config.CrmCacheConfig;
+import com.qunjie.crm.exception.AccessTokenException;
+import com.qunjie.crm.manager.AccessTokenManager;
+import com.qunjie.crm.utils.OpenAPIUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.crm.directory.service.EmployeeDirectoryService
+ * Description: 纷享销客员工通讯录内存快照：部门列表取一次，顶级部门下的各一级部门带子部门(fetchChild)并发拉取人员，
+ *              经CrmQuotaGate限流；按openUserId、手机号、姓名、部门建立索引，查询只读内存。单个部门人员获取失败时跳过。
+ *              定时全量重新加载；本服务新增/修改/停用的员工记为待刷新，按较短间隔单独刷新
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+@Service
+public class EmployeeDirectoryService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EmployeeDirectoryService.class);
+
+    @Autowired
+    private AccessTokenManager accessTokenManager;
+
+    @Autowired
+    private CrmCacheConfig crmCacheConfig;
+
+    private volatile Snapshot snapshot;
+
+    /**
+     * 待单独刷新的员工openUserId
+     */
+    private final Set<String> stale = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 全量加载期间单独刷新过的员工，加载的结果可能比单独刷新的旧，替换快照后重新记为待刷新
+     */
+    private final Set<String> refreshedDuringLoad = ConcurrentHashMap.newKeySet();
+
+    private final Object loadLock = new Object();
+
+    /**
+     * 当前快照，首次使用时加载
+     *
+     * @throws IllegalStateException 首次加载失败或超时
+     */
+    public Snapshot snapshot() throws AccessTokenException {
+        Snapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (loadLock) {
+            if (snapshot == null) {
+                snapshot = load();
+            }
+            return snapshot;
+        }
+    }
+
+    public EmployeeVO getByOpenUserId(String openUserId) throws AccessTokenException {
+        return snapshot().byOpenUserId.get(openUserId);
+    }
+
+    public EmployeeVO getByMobile(String mobile) throws AccessTokenException {
+        return snapshot().byMobile.get(mobile);
+    }
+
+    public List<EmployeeVO> findByName(String name) throws AccessTokenException {
+        return snapshot().byName.getOrDefault(name, Collections.emptyList());
+    }
+
+    /**
+     * 部门直属员工(不含子部门)
+     */
+    public List<EmployeeVO> listByDepartment(Integer departmentId) throws AccessTokenException {
+        return snapshot().byDepartment.getOrDefault(departmentId, Collections.emptyList());
+    }
+
+    /**
+     * 员工在本服务中被修改过，下次增量刷新时重新获取
+     */
+    public void markStale(String openUserId) {
+        if (openUserId != null && snapshot != null) {
+            stale.add(openUserId);
+        }
+    }
+
+    /**
+     * 全量重新加载，失败时保留旧快照
+     */
+    @CrmLane
+    @Scheduled(initialDelayString = "${fs.cache.directory-refresh-interval:3600000}",
+            fixedDelayString = "${fs.cache.directory-refresh-interval:3600000}")
+    public void refresh() {
+        if (snapshot == null) {
+            return;
+        }
+        refreshedDuringLoad.clear();
+        try {
+            Snapshot loaded = load();
+            synchronized (loadLock) {
+                snapshot = loaded;
+                stale.addAll(refreshedDuringLoad);
+                refreshedDuringLoad.clear();
+            }
+        } catch (AccessTokenException | RuntimeException e) {
+            LOG.error("refresh employee directory error, keep old snapshot, details:", e);
+        }
+    }
+
+    /**
+     * 单独刷新待刷新的员工
+     */
+    @CrmLane
+    @Scheduled(initialDelayString = "${fs.cache.directory-delta-interval:60000}",
+            fixedDelayString = "${fs.cache.directory-delta-interval:60000}")
+    public void refreshStale() {
+        if (snapshot == null || stale.isEmpty()) {
+            return;
+        }
+        List<String> openUserIds = new ArrayList<>(stale);
+        stale.removeAll(openUserIds);
+        Map<String, UserResult> changed = new LinkedHashMap<>();
+        for (String openUserId : openUserIds) {
+            try {
+                UserInfoArg arg = new UserInfoArg();
+                arg.setOpenUserId(openUserId);
+                withToken(arg::setCorpAccessToken, arg::setCorpId);
+                UserResult result = OpenAPIUtils.getUserInfo(arg);
+                if (result == null || result.getErrorCode() != 0) {
+                    stale.add(openUserId);
+                    continue;
+                }
+                changed.put(openUserId, result);
+            } catch (AccessTokenException e) {
+                stale.add(openUserId);
+                LOG.warn("refresh employee {} error: {}", openUserId, e.getMessage());
+            }
+        }
+        if (changed.isEmpty()) {
+            return;
+        }
+        synchronized (loadLock) {
+            Map<String, User> users = new HashMap<>(snapshot.users);
+            changed.forEach((openUserId, result) -> {
+                if (result.isStop()) {
+                    users.remove(openUserId);
+                } else {
+                    users.put(openUserId, toUser(result));
+                }
+            });
+            snapshot = new Snapshot(users, snapshot.departments);
+            refreshedDuringLoad.addAll(changed.keySet());
+        }
+        LOG.info("employee directory refreshed {} changed employees", changed.size());
+    }
+
+    private Snapshot load() throws AccessTokenException {
+        long start = System.currentTimeMillis();
+        DeptListArg deptListArg = new DeptListArg();
+        withToken(deptListArg::setCorpAccessToken, deptListArg::setCorpId);
+        DeptListResult deptListResult = OpenAPIUtils.getDeptList(deptListArg);
+        if (deptListResult == null || deptListResult.getErrorCode() != 0 || deptListResult.getDepartments() == null) {
+            throw new IllegalStateException("获取部门列表失败:" + (deptListResult == null ? null : deptListResult.getErrorMessage()));
+        }
+        List<Department> departments = deptListResult.getDepartments();
+        Map<Integer, Department> deptById = departments.stream()
+                .collect(Collectors.toMap(Department::getId, d -> d, (a, b) -> a, LinkedHashMap::new));
+
+        // 顶级部门只取直属人员，其一级子部门带子部门拉取，覆盖整棵部门树且每个部门只请求一次
+        Map<Integer, CompletableFuture<DeptUserListResult>> futures = new LinkedHashMap<>();
+        for (Department department : departments) {
+            boolean root = department.getParentId() == null || !deptById.containsKey(department.getParentId());
+            boolean firstLevel = !root && isRoot(deptById.get(department.getParentId()), deptById);
+            if (root || firstLevel) {
+                DeptUserListArg arg = new DeptUserListArg();
+                withToken(arg::setCorpAccessToken, arg::setCorpId);
+                arg.setDepartmentId(department.getId());
+                arg.setFetchChild(firstLevel);
+                futures.put(department.getId(), OpenAPIUtils.getDeptUserListAsync(arg).exceptionally(e -> {
+                    LOG.warn("get department {} users error, skip: {}", department.getId(), e.getMessage());
+                    return null;
+                }));
+            }
+        }
+        await(futures.values());
+
+        Map<String, User> users = new HashMap<>();
+        int failed = 0;
+        for (Map.Entry<Integer, CompletableFuture<DeptUserListResult>> entry : futures.entrySet()) {
+            DeptUserListResult result = entry.getValue().join();
+            if (result == null || result.getErrorCode() != 0) {
+                failed++;
+                if (result != null) {
+                    LOG.warn("get department {} users error, skip: {}", entry.getKey(), result.getErrorMessage());
+                }
+                continue;
+            }
+            if (result.getUserList() != null) {
+                result.getUserList().forEach(user -> users.put(user.getOpenUserId(), user));
+            }
+        }
+        Snapshot loaded = new Snapshot(users, deptById);
+        LOG.info("employee directory loaded, departments:{} employees:{} requests:{} failed:{} in {}ms",
+                departments.size(), users.size(), futures.size(), failed, System.currentTimeMillis() - start);
+        return loaded;
+    }
+
+    /**
+     * 等待各部门人员获取完成，失败的已转为null
+     *
+     * @throws IllegalStateException 超过directoryLoadTimeout或被中断
+     */
+    private void await(Collection<CompletableFuture<DeptUserListResult>> futures) {
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                    .get(crmCacheConfig.getDirectoryLoadTimeout(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("获取部门人员超时" + crmCacheConfig.getDirectoryLoadTimeout() + "ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("获取部门人员被中断");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("获取部门人员失败:" + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private static boolean isRoot(Department department, Map<Integer, Department> deptById) {
+        return department.getParentId() == null || !deptById.containsKey(department.getParentId());
+    }
+
+    private void withToken(Consumer<String> token, Consumer<String> corpId)
+            throws AccessTokenException {
+        CorpAccessToken corpAccessToken = accessTokenManager.getCorpAccessToken();
+        token.accept(corpAccessToken.getCorpAccessToken());
+        corpId.accept(corpAccessToken.getCorpId());
+    }
+
+    private static User toUser(UserResult result) {
+        User user = new User();
+        user.setOpenUserId(result.getOpenUserId());
+        user.setName(result.getName());
+        user.setMobile(result.getMobile());
+        user.setEmail(result.getEmail());
+        user.setGender(result.getGender());
+        user.setPosition(result.getPosition());
+        user.setDepartmentIds(result.getDepartmentIds());
+        return user;
+    }
+
+    /**
+     * 通讯录快照，创建后只读
+     */
+    public static class Snapshot {
+
+        private final Map<String, User> users;
+
+        private final Map<Integer, Department> departments;
+
+        private final Map<String, EmployeeVO> byOpenUserId = new HashMap<>();
+
+        private final Map<String, EmployeeVO> byMobile = new HashMap<>();
+
+        private final Map<String, List<EmployeeVO>> byName = new HashMap<>();
+
+        private final Map<Integer, List<EmployeeVO>> byDepartment = new HashMap<>();
+
+        private Snapshot(Map<String, User> users, Map<Integer, Department> departments) {
+            this.users = users;
+            this.departments = departments;
+            users.values().forEach(this::index);
+        }
+
+        private void index(User user) {
+            EmployeeVO employee = new EmployeeVO();
+            employee.setOpenId(user.getOpenUserId());
+            employee.setPhone(user.getMobile());
+            employee.setPosition(user.getPosition());
+            employee.setGender(user.getGender());
+            employee.setName(user.getName());
+            employee.setFullName(user.getFullName());
+            employee.setDepartment(departmentNames(user.getDepartmentIds()));
+            byOpenUserId.put(user.getOpenUserId(), employee);
+            if (user.getMobile() != null) {
+                byMobile.put(user.getMobile(), employee);
+            }
+            if (user.getName() != null) {
+                byName.computeIfAbsent(user.getName(), k -> new ArrayList<>()).add(employee);
+            }
+            if (user.getDepartmentIds() != null) {
+                user.getDepartmentIds().forEach(id -> byDepartment.computeIfAbsent(id, k -> new ArrayList<>()).add(employee));
+            }
+        }
+
+        /**
+         * 部门名称英文逗号分割
+         */
+        private String departmentNames(List<Integer> deptIds) {
+            if (deptIds == null) {
+                return "";
+            }
+            return deptIds.stream()
+                    .map(id -> departments.containsKey(id) ? departments.get(id).getName() : null)
+                    .map(String::valueOf)
+                    .collect(Collectors.joining(","));
+        }
+
+        public Map<String, EmployeeVO> getEmployees() {
+            return Collections.unmodifiableMap(byOpenUserId);
+        }
+
+        public int getTotalDepartment() {
+            return departments.size();
+        }
+    }
+}
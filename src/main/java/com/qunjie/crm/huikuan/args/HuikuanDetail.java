@@ -3,9 +3,12 @@ package com.qunjie.crm.huikuan.args;
 import com.qunjie.axis.model.WorkflowRequestTableField;
 import com.qunjie.common.annotation.Describe;
 import com.qunjie.common.util.SpringBeanUtils;
+import com.qunjie.crm.describe.service.CrmDescribeService;
 import com.qunjie.crm.exception.AccessTokenException;
 import com.qunjie.crm.query.results.QueryResult;
+import com.qunjie.crm.query.service.CrmQueryBatch;
 import com.qunjie.crm.saleorder.service.SaleOrderService;
+import com.qunjie.crm.utils.DefaultValues;
 import com.qunjie.jindie.huikuan.constants.HuikuanFieldName;
 import lombok.Data;
 import org.apache.commons.lang3.StringUtils;
@@ -68,6 +71,13 @@ public class HuikuanDetail {
     private String field_yCujp__c;
 
     public Map<String,String> valuesOf(List<WorkflowRequestTableField> details) {
+        return valuesOf(details, null);
+    }
+
+    /**
+     * @param batch 单据级批量查询结果，销售订单先从中取，可为null
+     */
+    public Map<String,String> valuesOf(List<WorkflowRequestTableField> details, CrmQueryBatch batch) {
         Map<String,String > map = new HashMap<>();
         if (!CollectionUtils.isEmpty(details)) {
             details.forEach(e -> {
@@ -82,7 +92,7 @@ public class HuikuanDetail {
                                 this.field_yCujp__c = e.getFieldValue();
                                 SaleOrderService saleOrderService = SpringBeanUtils.getBean(SaleOrderService.class);
                                 try {
-                                    QueryResult queryResult = saleOrderService.saleOrderQueryBy(e.getFieldValue());
+                                    QueryResult queryResult = saleOrderService.saleOrderQueryBy(batch, e.getFieldValue());
                                     if (queryResult != null && queryResult.getErrorCode() == 0) {
                                         String id = queryResult.getData().getJSONArray("dataList").getJSONObject(0).getString("_id");
                                         String account_id = queryResult.getData().getJSONArray("dataList").getJSONObject(0).getString("account_id");
@@ -109,15 +119,9 @@ public class HuikuanDetail {
                             break;
                         case LXWB:
                             if (!StringUtils.isBlank(e.getFieldValue())){
-                                HashMap<String, String> hashMap = new HashMap<String, String>() {
-                                    {
-                                        put("直销", "option1");
-                                        put("渠道", "qsy9vl28k");
-                                        put("联营", "17qU3x2Jc");
-                                        put("厂商", "11pmr6j4u");
-                                    }
-                                };
-                                this.field_q002q__c = hashMap.get(e.getFieldValue());
+                                CrmDescribeService crmDescribeService = SpringBeanUtils.getBean(CrmDescribeService.class);
+                                this.field_q002q__c = crmDescribeService.optionValue(DefaultValues.ORDERPAYMENTOBJ,
+                                        "field_q002q__c", e.getFieldValue());
                             }
                             break;
                         default:
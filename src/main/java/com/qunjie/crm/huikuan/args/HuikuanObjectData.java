@@ -3,13 +3,15 @@ package com.qunjie.crm.huikuan.args;
 import com.qunjie.axis.model.WorkflowRequestTableField;
 import com.qunjie.common.annotation.Describe;
 import com.qunjie.common.util.SpringBeanUtils;
+import com.qunjie.crm.describe.service.CrmDescribeService;
 import com.qunjie.crm.exception.AccessTokenException;
 import com.qunjie.crm.partnerObj.model.PartnerObjModel;
 import com.qunjie.crm.partnerObj.service.PartnerObjService;
+import com.qunjie.crm.query.service.CrmQueryBatch;
 import com.qunjie.crm.utils.DefaultValues;
 import com.qunjie.jindie.huikuan.constants.HuikuanFieldName;
-import com.qunjie.mysql.mapper.UserValueMapper;
 import com.qunjie.mysql.model.UserValue;
+import com.qunjie.mysql.service.UserValueService;
 import lombok.Data;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.util.CollectionUtils;
@@ -91,6 +93,13 @@ public class HuikuanObjectData {
 
 
     public Map<String,String> valuesOf(List<WorkflowRequestTableField> details) {
+        return valuesOf(details, null);
+    }
+
+    /**
+     * @param batch 单据级批量查询结果，合作伙伴先从中取，可为null
+     */
+    public Map<String,String> valuesOf(List<WorkflowRequestTableField> details, CrmQueryBatch batch) {
         Map<String,String> map = new HashMap<>();
         if (!CollectionUtils.isEmpty(details)) {
             details.forEach(e -> {
@@ -129,10 +138,10 @@ public class HuikuanObjectData {
                             break;
                         case KHJL1:
                             if (!StringUtils.isBlank(e.getFieldValue())) {
-                                UserValueMapper userValueMapper = SpringBeanUtils.getBean(UserValueMapper.class);
+                                UserValueService userValueService = SpringBeanUtils.getBean(UserValueService.class);
                                 UserValue userValue = new UserValue();
                                 userValue.setUsernm(e.getFieldValue());
-                                List<UserValue> userValues = userValueMapper.findByCondition2(userValue);
+                                List<UserValue> userValues = userValueService.findByCondition2(userValue);
                                 if (!CollectionUtils.isEmpty(userValues)){
                                     this.owner.add(userValues.get(0).getOpenuserid());
                                 }
@@ -142,7 +151,7 @@ public class HuikuanObjectData {
                             if (!StringUtils.isBlank(e.getFieldValue())) {
                                 try {
                                     PartnerObjService partnerObjService = SpringBeanUtils.getBean(PartnerObjService.class);
-                                    List<PartnerObjModel> partnerObjModels = partnerObjService.queryPartnerObjByName(e.getFieldValue());
+                                    List<PartnerObjModel> partnerObjModels = partnerObjService.queryPartnerObjByName(batch, e.getFieldValue());
                                     if (!CollectionUtils.isEmpty(partnerObjModels)) {
                                         this.partner_id = partnerObjModels.get(0).get_id();
                                     }else {
@@ -157,15 +166,9 @@ public class HuikuanObjectData {
                             break;
                         case LXWB:
                             if (!StringUtils.isBlank(e.getFieldValue())){
-                                HashMap<String, String> hashMap = new HashMap<String, String>() {
-                                    {
-                                        put("直销", "option1");
-                                        put("渠道", "ORcWgu26e");
-                                        put("联营", "4n27weR02");
-                                        put("厂商", "ol51USrbR");
-                                    }
-                                };
-                                this.field_oeGdb__c = hashMap.get(e.getFieldValue());
+                                CrmDescribeService crmDescribeService = SpringBeanUtils.getBean(CrmDescribeService.class);
+                                this.field_oeGdb__c = crmDescribeService.optionValue(dataObjectApiName,
+                                        "field_oeGdb__c", e.getFieldValue());
                             }
                             break;
                         default:
@@ -13,7 +13,10 @@ import com.qunjie.crm.exception.AccessTokenException;
 import com.qunjie.crm.huikuan.args.*;
 import com.qunjie.crm.huikuan.event.CrmHuikuanEvent;
 import com.qunjie.crm.manager.impl.HuikuanManagerImpl;
+import com.qunjie.crm.partnerObj.service.PartnerObjService;
+import com.qunjie.crm.query.service.CrmQueryBatch;
 import com.qunjie.crm.query.service.CrmQueryService;
+import com.qunjie.crm.saleorder.service.SaleOrderService;
 import com.qunjie.jindie.huikuan.constants.HuikuanFieldName;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
@@ -54,8 +57,6 @@ public class CrmHuikuanService {
     @Autowired
     ApplicationContext applicationContext;
 
-    ThreadPoolExecutor poolExecutor = new ThreadPoolExecutor(6, 6, 60L, TimeUnit.SECONDS, new LinkedBlockingDeque<>());
-
     /**
      * 现要一次性把问题数据全统计出来发送消息，并且采用多线程加快处理速度,故此旧方法注掉(此方法功能正常)
      * @param workflowRequestTable
@@ -150,18 +151,26 @@ public class CrmHuikuanService {
             List<String> list2 = new CopyOnWriteArrayList<>();//因合作伙伴在crm中不存在
             List<String> list3 = new CopyOnWriteArrayList<>();//其他原因
             AtomicBoolean flag = new AtomicBoolean(true);
-            CountDownLatch countDownLatch = new CountDownLatch(details.size());
+            //明细中的销售订单号、合作伙伴各一次IN查询，各线程先从批量结果中取
+            CrmQueryBatch batch = crmQueryService.newBatch()
+                    .load(SaleOrderService.DATAOBJECTAPINAME, SaleOrderService.FIELD_CLVED__C,
+                            CrmQueryBatch.values(details, name -> HuikuanFieldName.valuesOf(name) == HuikuanFieldName.HTBHX))
+                    .load(PartnerObjService.DATAOBJECTAPINAME, PartnerObjService.NAME,
+                            CrmQueryBatch.values(details, name -> HuikuanFieldName.valuesOf(name) == HuikuanFieldName.HZHB));
+            //各明细的保存请求异步发出，不再每条占用一个线程
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
             for (List<WorkflowRequestTableField> e : details) {
-                poolExecutor.execute(() -> {
-                    try {
-                        this.savePayment(e, list1, list2, list3, flag, ids);
-                    } catch (Exception ex) {
-                        ex.printStackTrace();
-                    }
-                    countDownLatch.countDown();
-                });
+                //未保存的明细都算失败，回滚已保存的并发邮件
+                try {
+                    futures.add(this.savePayment(e, batch, list1, list2, list3, flag, ids).exceptionally(ex -> {
+                        saveFailed(ex, list3, flag);
+                        return null;
+                    }));
+                } catch (Exception ex) {
+                    saveFailed(ex, list3, flag);
+                }
             }
-            countDownLatch.await();
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
             //未全部保存成功。删除保存成功的
             if (!flag.get()) {
                 log.info("=============================回款推送crm失败，删除保存成功单据====================================");
@@ -185,12 +194,19 @@ public class CrmHuikuanService {
         return new ApiResult(1,null,null);
     }
 
-    private void savePayment(List<WorkflowRequestTableField> e,List<String> list1,List<String> list2,List<String> list3,AtomicBoolean flag,List<String> ids) throws AccessTokenException {
+    private void saveFailed(Throwable ex, List<String> list3, AtomicBoolean flag) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        log.error("回款推送crm异常, details:", cause);
+        list3.add(String.valueOf(cause));
+        flag.set(false);
+    }
+
+    private CompletableFuture<Void> savePayment(List<WorkflowRequestTableField> e,CrmQueryBatch batch,List<String> list1,List<String> list2,List<String> list3,AtomicBoolean flag,List<String> ids) throws AccessTokenException {
         HuikuanObjectData huikuanObjectData = new HuikuanObjectData();
-        Map<String, String> ObjectDataMap = huikuanObjectData.valuesOf(e);
+        Map<String, String> ObjectDataMap = huikuanObjectData.valuesOf(e, batch);
         List<HuikuanDetail> huikuanDetails = new ArrayList<>();
         HuikuanDetail huikuanDetail = new HuikuanDetail();
-        Map<String, String> map = huikuanDetail.valuesOf(e);
+        Map<String, String> map = huikuanDetail.valuesOf(e, batch);
         if (StringUtils.isBlank(huikuanDetail.getOrder_id())){//销售订单不存在的情况
             list1.add(map.get(HuikuanFieldName.HTBHX.name()));
             log.info("crm保存回款失败原因：泛微中销售订单号为"+map.get(HuikuanFieldName.HTBHX.name())+"在crm中不存在!!");
@@ -208,19 +224,21 @@ public class CrmHuikuanService {
                 flag.set(false);
             }
         }
-        if (flag.get()) {
-            huikuanDetails.add(huikuanDetail);
-            HuikuanProductObj huikuanProductObj = new HuikuanProductObj(huikuanDetails);
-            HuikuanModel huikuanModel = new HuikuanModel(huikuanObjectData,huikuanProductObj);
-            CrmAddResult crmAddResult = huikuanManagerImpl.savePayment(huikuanModel);
+        if (!flag.get()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        huikuanDetails.add(huikuanDetail);
+        HuikuanProductObj huikuanProductObj = new HuikuanProductObj(huikuanDetails);
+        HuikuanModel huikuanModel = new HuikuanModel(huikuanObjectData,huikuanProductObj);
+        return huikuanManagerImpl.savePaymentAsync(huikuanModel).thenAccept(crmAddResult -> {
             if (crmAddResult == null || crmAddResult.getErrorCode() != 0) {
-                list3.add(crmAddResult.toString());
-                log.info("crm保存回款失败原因：" + crmAddResult.toString());
+                list3.add(String.valueOf(crmAddResult));
+                log.info("crm保存回款失败原因：" + crmAddResult);
                 flag.set(false);
             } else {
                 ids.add(crmAddResult.getDataId());
             }
-        }
+        });
     }
 
     public BaseResult huikuanDelete(String dataId) throws AccessTokenException {
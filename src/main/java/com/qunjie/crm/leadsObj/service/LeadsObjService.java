@@ -97,7 +97,9 @@ public class LeadsObjService {
         queryFilterField.setOperator("EQ");
         queryFilterField.setField_name("mobile");
         queryFilterField.setField_values(Arrays.asList(tel));
-        QueryResult leadsObj = crmQueryService.query("LeadsObj", Arrays.asList(queryFilterField));
+        // 只用于判断手机号是否已存在
+        QueryResult leadsObj = crmQueryService.query("LeadsObj", Arrays.asList(queryFilterField),
+                CrmQueryService.projection("name", "mobile"));
         return leadsObj.getData();
     }
 }
@@ -109,6 +109,14 @@ public interface AddressBookManager {
 
     public QueryResult queryCustomData(QueryData queryData) throws AccessTokenException;
 
+    /**
+     * CRM对象描述(字段及选项)
+     * @param apiName 对象apiName
+     * @return
+     * @throws AccessTokenException
+     */
+    public CrmDescResult getCrmDesc(String apiName) throws AccessTokenException;
+
     public AttendanceQueryResult queryAttendance(AttendanceQueryArg queryArg,String uri) throws AccessTokenException;
 
 }
@@ -8,6 +8,8 @@ import com.qunjie.crm.huikuan.args.HuikuanInvalidArg;
 import com.qunjie.crm.huikuan.args.HuikuanModel;
 import com.qunjie.crm.invoice.args.InvoiceInvalidArg;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Copyright (C),2020-2021,群杰印章物联网
  * FileName: com.qunjie.crm.manager.HuikuanManager
@@ -23,6 +25,11 @@ public interface HuikuanManager {
 
     public CrmAddResult savePayment(HuikuanModel invoiceModel) throws AccessTokenException;
 
+    /**
+     * 异步保存，token过期重置、30004退避重试、调用日志与savePayment一样由AccessTokenExpiredExceptionAspect处理
+     */
+    public CompletableFuture<CrmAddResult> savePaymentAsync(HuikuanModel invoiceModel) throws AccessTokenException;
+
     public BaseResult deletePayment(HuikuanDeleteModel arg) throws AccessTokenException;
 
     public BaseResult invalidPayment(HuikuanInvalidArg.HuikuanInvalidData arg) throws AccessTokenException;
@@ -1,6 +1,6 @@
 package com.qunjie.crm.manager.impl;
 
-import com.google.common.collect.Maps;
+import com.qunjie.crm.config.CrmTokenConfig;
 import com.qunjie.crm.exception.AccessTokenException;
 import com.qunjie.crm.exception.AppAccessTokenRequestException;
 import com.qunjie.crm.exception.CorpAccessTokenRequestException;
@@ -12,133 +12,347 @@ import com.qunjie.crm.beans.results.AppTokenResult;
 import com.qunjie.crm.beans.results.CorpAccessTokenResult;
 import com.qunjie.crm.utils.Configuration;
 import com.qunjie.crm.utils.OpenAPIUtils;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
-import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
 
 @Service("accessTokenManager")
 public class AccessTokenManagerImpl implements AccessTokenManager {
 
-    private static final String KEY_EXPIRES_IN = "expiresIn";
+    private static final Logger LOG = LoggerFactory.getLogger(AccessTokenManagerImpl.class);
 
-    private static final String KEY_TOKEN = "token";
+    @Resource(name = "configuration")
+    private Configuration configuration;
+
+    @Autowired
+    private CrmTokenConfig tokenConfig;
+
+    /**
+     * 多实例部署时corpAccessToken保存在redis，按redis的ttl过期
+     */
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
 
-    private static final String APP_ACCESS_TOKEN_KEY_PREX = "appAccessToken_";
+    @Autowired
+    private RedissonClient redissonClient;
 
     private static final String CORP_ACCESS_TOKEN_KEY_PREX = "corpAccessToken_";
 
-    @Resource(name = "configuration")
-    private Configuration configuration;
+    /**
+     * AppAccessToken、CorpAccessToken缓存，读线程无锁读取快照，刷新时整体替换
+     */
+    private static final AtomicReference<TokenSnapshot<String>> appAccessToken = new AtomicReference<>();
+
+    private static final AtomicReference<TokenSnapshot<CorpAccessToken>> corpAccessToken = new AtomicReference<>();
 
     /**
-     * AppAccessToken、CorpAccessToken缓存
+     * 只有刷新token时需要加锁，保证同一时间只有一个线程请求纷享销客
      */
-    private static Map<String, Map<String, Object>> accessTokenMap = Maps.newConcurrentMap();
-
-    private static Map<String, Object> setCorpAccessToken(CorpAccessTokenResult result) {
-        CorpAccessToken corpAccessToken = new CorpAccessToken();
-        corpAccessToken.setCorpAccessToken(result.getCorpAccessToken());
-        corpAccessToken.setCorpId(result.getCorpId());
-
-        Map<String, Object> token = Maps.newHashMap();
-        // 减去3分钟，以免过时
-        token.put(KEY_EXPIRES_IN, (result.getExpiresIn() - 3 * 60) * 1000 + System.currentTimeMillis());
-        token.put(KEY_TOKEN, corpAccessToken);
-        return token;
+    private final Object appLock = new Object();
+
+    private final Object corpLock = new Object();
+
+    /**
+     * token快照(不可变)
+     */
+    private static final class TokenSnapshot<T> {
+
+        private final T token;
+
+        /**
+         * 有效期截止时间，已减去3分钟以免过时
+         */
+        private final long expiresIn;
+
+        private final long fetchedAt;
+
+        private TokenSnapshot(T token, long expiresInSeconds) {
+            this.token = token;
+            this.fetchedAt = System.currentTimeMillis();
+            this.expiresIn = (expiresInSeconds - 3 * 60) * 1000 + fetchedAt;
+        }
+
+        /**
+         * 从redis读取，截止时间跟随redis的ttl
+         */
+        private TokenSnapshot(T token, long ttlMillis, long now) {
+            this.token = token;
+            this.fetchedAt = now;
+            this.expiresIn = now + ttlMillis;
+        }
+
+        private boolean isValid() {
+            return System.currentTimeMillis() < expiresIn;
+        }
+    }
+
+    private static boolean isValid(TokenSnapshot<?> snapshot) {
+        return snapshot != null && snapshot.isValid();
     }
 
     @Override
     public void resetAppAccessToken() throws AppAccessTokenRequestException {
-        accessTokenMap.remove(APP_ACCESS_TOKEN_KEY_PREX.concat(configuration.getAppId()));
-        getAppAccessToken();
+        TokenSnapshot<String> stale = appAccessToken.get();
+        synchronized (appLock) {
+            TokenSnapshot<String> current = appAccessToken.get();
+            // 多线程同时收到过期码时，只有第一个线程重新获取
+            if (current != stale || isRecentlyFetched(current)) {
+                return;
+            }
+            appAccessToken.compareAndSet(current, null);
+            refreshAppAccessToken(1);
+        }
     }
 
     @Override
     public void resetCorpAccessToken() throws AccessTokenException {
-        accessTokenMap.remove(CORP_ACCESS_TOKEN_KEY_PREX.concat(configuration.getAppId()).concat(
-                configuration.getPermanentCode()));
-        getCorpAccessToken();
+        TokenSnapshot<CorpAccessToken> stale = corpAccessToken.get();
+        synchronized (corpLock) {
+            TokenSnapshot<CorpAccessToken> current = corpAccessToken.get();
+            if (current != stale || isRecentlyFetched(current)) {
+                return;
+            }
+            corpAccessToken.compareAndSet(current, null);
+            // 其他实例已换了新token则直接使用
+            loadCorpAccessToken(shared -> isValid(shared) && (current == null
+                    || !shared.token.getCorpAccessToken().equals(current.token.getCorpAccessToken())), 1);
+        }
+    }
+
+    private boolean isRecentlyFetched(TokenSnapshot<?> snapshot) {
+        return snapshot != null && System.currentTimeMillis() - snapshot.fetchedAt < tokenConfig.getResetGuard();
     }
 
     @Override
     public String getAppAccessToken() throws AppAccessTokenRequestException {
-        String key = APP_ACCESS_TOKEN_KEY_PREX.concat(configuration.getAppId());
-        Map<String, Object> token = accessTokenMap.get(key);
+        TokenSnapshot<String> token = appAccessToken.get();
+        if (isValid(token)) {
+            return token.token;
+        }
+
+        synchronized (appLock) {
+            token = appAccessToken.get();
+            // 多线程环境下，其他线程可能已经获得最新appAccessToken，直接返回
+            if (isValid(token)) {
+                return token.token;
+            }
+            return refreshAppAccessToken(1).token;
+        }
+    }
 
-        if (token != null) {
-            long expiresIn = (Long) token.get(KEY_EXPIRES_IN);
+    @Override
+    public CorpAccessToken getCorpAccessToken() throws AccessTokenException {
+        TokenSnapshot<CorpAccessToken> token = corpAccessToken.get();
+        if (isValid(token)) {
+            return token.token;
+        }
 
-            if (System.currentTimeMillis() < expiresIn) {
-                return (String) token.get(KEY_TOKEN);
+        synchronized (corpLock) {
+            token = corpAccessToken.get();
+            // 多线程环境下，其他线程可能已经获得最新corpAccessToken，直接返回
+            if (isValid(token)) {
+                return token.token;
             }
-            accessTokenMap.remove(key);
+            return loadCorpAccessToken(AccessTokenManagerImpl::isValid, 1).token;
         }
+    }
 
-        String appAccessToken = null;
-        synchronized (this) {
-            token = accessTokenMap.get(key);
+    /**
+     * 后台提前刷新即将过期的token，刷新期间读线程继续使用旧token；全部重试失败时保留旧token，等下次检查
+     */
+    @Scheduled(initialDelayString = "${fs.access-token.refresh-interval:60000}",
+            fixedDelayString = "${fs.access-token.refresh-interval:60000}")
+    public void refreshAhead() {
+        long threshold = System.currentTimeMillis() + tokenConfig.getRefreshAhead();
 
-            // 多线程环境下，其他线程可能已经获得最新appAccessToken，直接返回
-            if (token != null) {
-                return (String) token.get(KEY_TOKEN);
+        TokenSnapshot<String> app = appAccessToken.get();
+        if (app != null && app.expiresIn < threshold) {
+            synchronized (appLock) {
+                if (appAccessToken.get() == app) {
+                    try {
+                        refreshAppAccessToken(Math.max(1, tokenConfig.getMaxRetries()));
+                    } catch (AppAccessTokenRequestException e) {
+                        LOG.error("refresh appAccessToken ahead error, keep old token, details:", e);
+                    }
+                }
+            }
+        }
+
+        TokenSnapshot<CorpAccessToken> corp = corpAccessToken.get();
+        if (corp != null && corp.expiresIn < threshold) {
+            synchronized (corpLock) {
+                if (corpAccessToken.get() == corp) {
+                    try {
+                        loadCorpAccessToken(shared -> shared != null && shared.expiresIn >= threshold,
+                                Math.max(1, tokenConfig.getMaxRetries()));
+                    } catch (AccessTokenException e) {
+                        LOG.error("refresh corpAccessToken ahead error, keep old token, details:", e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 请求appAccessToken并替换快照，需持有appLock
+     *
+     * @param attempts 最多尝试次数
+     */
+    private TokenSnapshot<String> refreshAppAccessToken(int attempts) throws AppAccessTokenRequestException {
+        AppAccessTokenRequestException error = null;
+        for (int i = 0; i < attempts; i++) {
+            if (i > 0 && !sleepBeforeRetry(i)) {
+                break;
             }
             AppTokenArg arg = new AppTokenArg();
             arg.setAppId(configuration.getAppId());
             arg.setAppSecret(configuration.getAppSecret());
             AppTokenResult result = OpenAPIUtils.getAppToken(arg);
-            if (result.getErrorCode() != 0) {
-                throw new AppAccessTokenRequestException(result.getErrorCode(), result.getErrorMessage());
+            if (result != null && result.getErrorCode() == 0) {
+                TokenSnapshot<String> token = new TokenSnapshot<>(result.getAppAccessToken(), result.getExpiresIn());
+                appAccessToken.set(token);
+                return token;
             }
-            appAccessToken = result.getAppAccessToken();
-            token = Maps.newHashMap();
-            // 减去3分钟，以免过时
-            token.put(KEY_EXPIRES_IN, (result.getExpiresIn() - 3 * 60) * 1000 + System.currentTimeMillis());
-            token.put(KEY_TOKEN, appAccessToken);
-            accessTokenMap.put(key, token);
-            return appAccessToken;
+            error = result == null ? new AppAccessTokenRequestException(-1, "appAccessToken请求无返回")
+                    : new AppAccessTokenRequestException(result.getErrorCode(), result.getErrorMessage());
+            LOG.warn("get appAccessToken failed, attempt:{} error:{}", i + 1, error.getMessage());
         }
+        throw error;
     }
 
-    @Override
-    public CorpAccessToken getCorpAccessToken() throws AccessTokenException {
-        String key =
-                CORP_ACCESS_TOKEN_KEY_PREX.concat(configuration.getAppId()).concat(configuration.getPermanentCode());
-        Map<String, Object> token = accessTokenMap.get(key);
-
-        if (token != null) {
-            long expiresIn = (Long) token.get(KEY_EXPIRES_IN);
-            if (System.currentTimeMillis() < expiresIn) {
-                return (CorpAccessToken) token.get(KEY_TOKEN);
+    /**
+     * 先读redis中其他实例获取的corpAccessToken，不可用时在分布式锁内再读一次，仍不可用才请求纷享销客并写回redis，
+     * 保证集群每个过期周期只请求一次；redis不可用时退化为本地获取。需持有corpLock
+     *
+     * @param usable redis中的token是否可以直接使用
+     * @param attempts 请求纷享销客最多尝试次数
+     */
+    private TokenSnapshot<CorpAccessToken> loadCorpAccessToken(Predicate<TokenSnapshot<CorpAccessToken>> usable,
+                                                               int attempts) throws CorpAccessTokenRequestException {
+        if (!tokenConfig.isShared()) {
+            return refreshCorpAccessToken(attempts);
+        }
+        TokenSnapshot<CorpAccessToken> shared = readSharedCorpAccessToken();
+        if (usable.test(shared)) {
+            corpAccessToken.set(shared);
+            return shared;
+        }
+
+        RLock lock;
+        boolean locked;
+        try {
+            lock = redissonClient.getLock(corpAccessTokenKey() + "_lock");
+            locked = lock.tryLock(tokenConfig.getLockWait(), tokenConfig.getLockLease(), TimeUnit.MILLISECONDS);
+            if (!locked) {
+                LOG.warn("wait corpAccessToken lock timeout, get token locally");
             }
-            accessTokenMap.remove(key);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return refreshCorpAccessToken(1);
+        } catch (RuntimeException e) {
+            // redis不可用时只在本实例内(corpLock)保证单线程获取
+            LOG.warn("get corpAccessToken lock error, get token locally: {}", e.getMessage());
+            return refreshCorpAccessToken(attempts);
         }
+        try {
+            shared = readSharedCorpAccessToken();
+            if (usable.test(shared)) {
+                corpAccessToken.set(shared);
+                return shared;
+            }
+            TokenSnapshot<CorpAccessToken> token = refreshCorpAccessToken(attempts);
+            writeSharedCorpAccessToken(token);
+            return token;
+        } finally {
+            if (locked) {
+                try {
+                    lock.unlock();
+                } catch (Exception e) {
+                    LOG.warn("unlock corpAccessToken lock error, details:", e);
+                }
+            }
+        }
+    }
 
-        synchronized (this) {
-            token = accessTokenMap.get(key);
-            // 多线程环境下，其他线程可能已经获得最新corpAccessToken，直接返回
-            if (token != null) {
-                return (CorpAccessToken) token.get(KEY_TOKEN);
+    private String corpAccessTokenKey() {
+        return tokenConfig.getRedisKeyPrefix().concat(CORP_ACCESS_TOKEN_KEY_PREX).concat(configuration.getAppId())
+                .concat(configuration.getPermanentCode());
+    }
+
+    private TokenSnapshot<CorpAccessToken> readSharedCorpAccessToken() {
+        try {
+            String key = corpAccessTokenKey();
+            Object token = redisTemplate.opsForValue().get(key);
+            Long ttl = redisTemplate.getExpire(key, TimeUnit.MILLISECONDS);
+            if (token instanceof CorpAccessToken && ttl != null && ttl > 0) {
+                return new TokenSnapshot<>((CorpAccessToken) token, ttl, System.currentTimeMillis());
+            }
+        } catch (Exception e) {
+            LOG.warn("read corpAccessToken from redis error, details:", e);
+        }
+        return null;
+    }
+
+    private void writeSharedCorpAccessToken(TokenSnapshot<CorpAccessToken> token) {
+        long ttl = token.expiresIn - System.currentTimeMillis();
+        if (ttl <= 0) {
+            return;
+        }
+        try {
+            redisTemplate.opsForValue().set(corpAccessTokenKey(), token.token, ttl, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            LOG.warn("write corpAccessToken to redis error, details:", e);
+        }
+    }
+
+    /**
+     * 请求corpAccessToken并替换快照，需持有corpLock
+     *
+     * @param attempts 最多尝试次数
+     */
+    private TokenSnapshot<CorpAccessToken> refreshCorpAccessToken(int attempts) throws CorpAccessTokenRequestException {
+        CorpAccessTokenRequestException error = null;
+        for (int i = 0; i < attempts; i++) {
+            if (i > 0 && !sleepBeforeRetry(i)) {
+                break;
             }
-            
             CorpAccessTokenArg arg = new CorpAccessTokenArg();
             arg.setAppId(configuration.getAppId());
             arg.setAppSecret(configuration.getAppSecret());
             arg.setPermanentCode(configuration.getPermanentCode());
-            CorpAccessTokenResult corpAccessTokenResult =  OpenAPIUtils.getCorpToken(arg);
-            if (corpAccessTokenResult != null && corpAccessTokenResult.getErrorCode() == 0) {
-                token = setCorpAccessToken(corpAccessTokenResult);
+            CorpAccessTokenResult result = OpenAPIUtils.getCorpToken(arg);
+            if (result != null && result.getErrorCode() == 0 && result.getCorpAccessToken() != null) {
+                CorpAccessToken corpToken = new CorpAccessToken();
+                corpToken.setCorpAccessToken(result.getCorpAccessToken());
+                corpToken.setCorpId(result.getCorpId());
+                TokenSnapshot<CorpAccessToken> token = new TokenSnapshot<>(corpToken, result.getExpiresIn());
+                corpAccessToken.set(token);
+                return token;
             }
+            error = result == null ? new CorpAccessTokenRequestException(-1, "corpAccessToken请求无返回")
+                    : new CorpAccessTokenRequestException(result.getErrorCode(), result.getErrorMessage());
+            LOG.warn("get corpAccessToken failed, attempt:{} error:{}", i + 1, error.getMessage());
+        }
+        throw error;
+    }
 
-            if (token == null) {
-                throw new CorpAccessTokenRequestException(corpAccessTokenResult.getErrorCode(),corpAccessTokenResult.getErrorMessage());
-            }
-            accessTokenMap.put(key, token);
-            CorpAccessToken corpAccessToken = (CorpAccessToken) token.get(KEY_TOKEN);
-            if (corpAccessToken == null) {
-                throw new CorpAccessTokenRequestException(corpAccessTokenResult.getErrorCode(),corpAccessTokenResult.getErrorMessage());
-            }
-            return corpAccessToken;
+    private boolean sleepBeforeRetry(int attempt) {
+        try {
+            Thread.sleep(tokenConfig.getRetryInterval() * attempt);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
         }
     }
 }
@@ -9,6 +9,7 @@ import com.qunjie.crm.exception.AccessTokenException;
 import com.qunjie.crm.manager.AccessTokenManager;
 import com.qunjie.crm.beans.CorpAccessToken;
 import com.qunjie.crm.beans.EmployeeVO;
+import com.qunjie.crm.directory.service.EmployeeDirectoryService;
 import com.qunjie.crm.manager.AddressBookManager;
 import com.qunjie.crm.query.args.QueryArg;
 import com.qunjie.crm.query.args.QueryData;
@@ -18,7 +19,6 @@ import com.qunjie.crm.utils.OpenAPIUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
 import java.util.Map;
 
 @Service("addressBookManager")
@@ -27,87 +27,26 @@ public class AddressBookManagerImpl implements AddressBookManager {
     @Autowired
     private AccessTokenManager accessTokenManager;
 
+    @Autowired
+    private EmployeeDirectoryService employeeDirectoryService;
+
     /**
-     * 
-     * @param deptIds 部门id列表
-     * @param deptMap 部门id和名称的Map
-     * @return 部门名称英文逗号分割
+     * 由通讯录快照生成，不再逐个部门请求
      */
-    private static String parsDepartmentNames(List<Integer> deptIds, Map<Integer, String> deptMap) {
-        StringBuilder sb = new StringBuilder("");
-
-        if (deptIds != null && !deptIds.isEmpty()) {
-            for (Integer deptId : deptIds) {
-                sb.append(deptMap.get(deptId)).append(",");
-            }
-            sb.deleteCharAt(sb.length() - 1);
-        }
-
-        return sb.toString();
-    }
-
     @Override
     public CorpUserMapResult getCorpEmployeeMap() throws AccessTokenException {
         CorpUserMapResult corpUserMapResult = new CorpUserMapResult();
-
-        Map<String, EmployeeVO> employMap = Maps.newHashMap();
-        Map<Integer, String> deptMap = Maps.newHashMap();
-
-        DeptListArg arg = new DeptListArg();
-        CorpAccessToken token = accessTokenManager.getCorpAccessToken();
-        arg.setCorpAccessToken(token.getCorpAccessToken());
-        arg.setCorpId(token.getCorpId());
-        DeptListResult deptListResult = OpenAPIUtils.getDeptList(arg);
-
-        if (deptListResult.getErrorCode() != 0) {
+        EmployeeDirectoryService.Snapshot snapshot;
+        try {
+            snapshot = employeeDirectoryService.snapshot();
+        } catch (RuntimeException e) {
+            corpUserMapResult.setErrorMessage(e.getMessage());
             return corpUserMapResult;
         }
-
-        List<Department> deptList = deptListResult.getDepartments();
-        if (deptList == null || deptList.isEmpty()) {
-            corpUserMapResult.setErrorMessage("公司部门为空");
-            return corpUserMapResult;
-        }
-
-        // 部门Id到名称对应表，用于去重和id->name 转换
-        for (Department deptResult : deptList) {
-            deptMap.put(deptResult.getId(), deptResult.getName());
-        }
-
-        DeptUserListArg deptUserListArg = new DeptUserListArg();
-        deptUserListArg.setCorpAccessToken(token.getCorpAccessToken());
-        deptUserListArg.setCorpId(token.getCorpId());
-        // 迭代部门获取部门人员
-        for (Department deptResult : deptList) {
-            deptUserListArg.setDepartmentId(deptResult.getId());
-            // deptUserListArg.fetchChild 默认为false 不获取子部门的人员信息
-            DeptUserListResult deptUserListResult = OpenAPIUtils.getDeptUserList(deptUserListArg);
-
-            if (deptUserListResult.getErrorCode() != 0) {
-                continue;
-            }
-
-            List<User> userInfoList = deptUserListResult.getUserList();
-
-            if (userInfoList == null || userInfoList.isEmpty()) {
-                continue;
-            }
-
-            for (User userInfo : userInfoList) {
-                EmployeeVO employeeInfo = new EmployeeVO();
-                employeeInfo.setOpenId(userInfo.getOpenUserId());
-                employeeInfo.setPhone(userInfo.getMobile());
-                employeeInfo.setPosition(userInfo.getPosition());
-                employeeInfo.setGender(userInfo.getGender());
-                employeeInfo.setName(userInfo.getName());
-                employeeInfo.setFullName(userInfo.getFullName());
-                employeeInfo.setDepartment(parsDepartmentNames(userInfo.getDepartmentIds(), deptMap));
-                employMap.put(employeeInfo.getOpenId(), employeeInfo);
-            }
-        }
+        Map<String, EmployeeVO> employMap = Maps.newHashMap(snapshot.getEmployees());
 
         corpUserMapResult.setErrorMessage("ok");
-        corpUserMapResult.setTotalDepartment(deptList.size());
+        corpUserMapResult.setTotalDepartment(snapshot.getTotalDepartment());
         corpUserMapResult.setTotalMember(employMap.size());
         corpUserMapResult.setCorpUserMap(employMap);
 
@@ -190,7 +129,11 @@ public class AddressBookManagerImpl implements AddressBookManager {
         arg.setCorpAccessToken(token.getCorpAccessToken());
         arg.setCorpId(token.getCorpId());
 
-        return OpenAPIUtils.addUser(arg);
+        UserAddResult result = OpenAPIUtils.addUser(arg);
+        if (result != null && result.getErrorCode() == 0) {
+            employeeDirectoryService.markStale(result.getOpenUserId());
+        }
+        return result;
     }
 
     @Override
@@ -202,7 +145,11 @@ public class AddressBookManagerImpl implements AddressBookManager {
         arg.setCorpAccessToken(token.getCorpAccessToken());
         arg.setCorpId(token.getCorpId());
 
-        return OpenAPIUtils.modifyUser(arg);
+        UserUpdateResult result = OpenAPIUtils.modifyUser(arg);
+        if (result != null && result.getErrorCode() == 0) {
+            employeeDirectoryService.markStale(user.getOpenUserId());
+        }
+        return result;
     }
 
     @Override
@@ -213,7 +160,11 @@ public class AddressBookManagerImpl implements AddressBookManager {
         CorpAccessToken token = accessTokenManager.getCorpAccessToken();
         userStatusArg.setCorpAccessToken(token.getCorpAccessToken());
         userStatusArg.setCorpId(token.getCorpId());
-        return OpenAPIUtils.canceledUser(userStatusArg);
+        UserUpdateResult result = OpenAPIUtils.canceledUser(userStatusArg);
+        if (result != null && result.getErrorCode() == 0) {
+            employeeDirectoryService.markStale(userid);
+        }
+        return result;
     }
 
     @Override
@@ -238,6 +189,15 @@ public class AddressBookManagerImpl implements AddressBookManager {
         return OpenAPIUtils.queryCustomData(arg);
     }
 
+    @Override
+    public CrmDescResult getCrmDesc(String apiName) throws AccessTokenException {
+        CrmDescArg arg = new CrmDescArg(DefaultValues.CURRENTOPENUSERID, apiName);
+        CorpAccessToken token = accessTokenManager.getCorpAccessToken();
+        arg.setCorpAccessToken(token.getCorpAccessToken());
+        arg.setCorpId(token.getCorpId());
+        return OpenAPIUtils.getCrmDesc(arg);
+    }
+
     @Override
     public AttendanceQueryResult queryAttendance(AttendanceQueryArg arg,String uri) throws AccessTokenException {
         CorpAccessToken token = accessTokenManager.getCorpAccessToken();
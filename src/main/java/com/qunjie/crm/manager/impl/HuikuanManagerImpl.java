@@ -19,6 +19,8 @@ import com.qunjie.crm.utils.OpenAPIUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Copyright (C),2020-2021,群杰印章物联网
  * FileName: com.qunjie.crm.manager.impl.HuikuanManagerImpl
@@ -48,6 +50,18 @@ public class HuikuanManagerImpl implements HuikuanManager {
         return OpenAPIUtils.saveData(arg, CrmAddResult.class);
     }
 
+    @Override
+    public CompletableFuture<CrmAddResult> savePaymentAsync(HuikuanModel invoiceModel) throws AccessTokenException {
+        HuikuanAddArg arg = new HuikuanAddArg();
+        arg.setData(invoiceModel);
+
+        CorpAccessToken token = accessTokenManager.getCorpAccessToken();
+        arg.setCorpAccessToken(token.getCorpAccessToken());
+        arg.setCorpId(token.getCorpId());
+        arg.setCurrentOpenUserId(DefaultValues.CURRENTOPENUSERID);
+        return OpenAPIUtils.saveDataAsync(arg, CrmAddResult.class);
+    }
+
     @Override
     public BaseResult deletePayment(HuikuanDeleteDataArg.HuikuanDeleteModel model) throws AccessTokenException {
         HuikuanDeleteDataArg arg = new HuikuanDeleteDataArg();
@@ -3,7 +3,9 @@ package com.qunjie.crm.marketingEvent.service;
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
-import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.qunjie.crm.cache.CrmReferenceCache;
+import com.qunjie.crm.utils.JsonCodec;
 import com.qunjie.crm.exception.AccessTokenException;
 import com.qunjie.crm.marketingEvent.model.MarketingEventModel;
 import com.qunjie.crm.query.args.QueryFilterField;
@@ -14,6 +16,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -36,9 +39,21 @@ public class MarketingEventService {
     @Autowired
     private CrmQueryService crmQueryService;
 
+    @Autowired
+    private CrmReferenceCache referenceCache;
+
     public static final String dataObjectApiName = "MarketingEventObj";
 
+    private static final Type MARKETING_EVENT_LIST = new TypeToken<List<MarketingEventModel>>(){}.getType();
+
+    /**
+     * 按id查询，结果走基础数据缓存
+     */
     public List<MarketingEventModel> query(String _id) throws AccessTokenException {
+        return referenceCache.get(CrmReferenceCache.MARKETING_EVENT, _id, MARKETING_EVENT_LIST, () -> load(_id));
+    }
+
+    private List<MarketingEventModel> load(String _id) throws AccessTokenException {
         List<String> ids = new ArrayList<>();
         ids.add(_id);
         List<QueryFilterField> filters = new ArrayList<>();
@@ -50,11 +65,12 @@ public class MarketingEventService {
         QueryResult query = crmQueryService.query(dataObjectApiName, filters);
         List<MarketingEventModel> returnList = null;
         if (query.getErrorCode() == 0){
+            returnList = new ArrayList<>();
             JSONObject data = query.getData();
             if (!data.isEmpty()){
                 JSONArray jsonArray = data.getJSONArray("dataList");
                 if (jsonArray != null && jsonArray.size() > 0){
-                    returnList = JSON.parseArray(new Gson().toJson(jsonArray), MarketingEventModel.class);
+                    returnList = JSON.parseArray(JsonCodec.toJson(jsonArray), MarketingEventModel.class);
                 }
             }
         }
@@ -86,7 +102,7 @@ public class MarketingEventService {
             if (!data.isEmpty()){
                 JSONArray jsonArray = data.getJSONArray("dataList");
                 if (jsonArray != null && jsonArray.size() > 0){
-                    returnList = JSON.parseArray(new Gson().toJson(jsonArray), MarketingEventModel.class);
+                    returnList = JSON.parseArray(JsonCodec.toJson(jsonArray), MarketingEventModel.class);
                 }
             }
         }
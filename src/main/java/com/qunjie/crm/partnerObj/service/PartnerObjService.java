@@ -3,15 +3,19 @@ package com.qunjie.crm.partnerObj.service;
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
-import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.qunjie.crm.cache.CrmReferenceCache;
+import com.qunjie.crm.utils.JsonCodec;
 import com.qunjie.crm.exception.AccessTokenException;
 import com.qunjie.crm.partnerObj.model.PartnerObjModel;
 import com.qunjie.crm.query.args.QueryFilterField;
 import com.qunjie.crm.query.results.QueryResult;
+import com.qunjie.crm.query.service.CrmQueryBatch;
 import com.qunjie.crm.query.service.CrmQueryService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -37,7 +41,32 @@ public class PartnerObjService {
     @Autowired
     private CrmQueryService crmQueryService;
 
+    @Autowired
+    private CrmReferenceCache referenceCache;
+
+    private static final Type PARTNER_LIST = new TypeToken<List<PartnerObjModel>>(){}.getType();
+
+    /**
+     * 只取PartnerObjModel用到的字段
+     */
+    private static final List<String> PROJECTION = CrmQueryService.projection(NAME, "lock_status");
+
+    /**
+     * 按名称查询未锁定的合作伙伴，结果走基础数据缓存
+     */
     public List<PartnerObjModel> queryPartnerObjByName(String name) throws AccessTokenException {
+        return referenceCache.get(CrmReferenceCache.PARTNER, name, PARTNER_LIST, () -> loadPartnerObjByName(name));
+    }
+
+    /**
+     * 先从单据级批量结果中取，批量结果中没有时按名称查询
+     */
+    public List<PartnerObjModel> queryPartnerObjByName(CrmQueryBatch batch, String name) throws AccessTokenException {
+        QueryResult batched = CrmQueryBatch.get(batch, DATAOBJECTAPINAME, NAME, name);
+        return batched != null ? toModels(batched) : queryPartnerObjByName(name);
+    }
+
+    private List<PartnerObjModel> loadPartnerObjByName(String name) throws AccessTokenException {
         List<QueryFilterField> list = new ArrayList<>();
         QueryFilterField queryFilterField = new QueryFilterField();
         queryFilterField.setOperator(OPERATOR);
@@ -46,14 +75,18 @@ public class PartnerObjService {
         fieldValues.add(name);
         queryFilterField.setField_values(fieldValues);
         list.add(queryFilterField);
+        return toModels(crmQueryService.query(DATAOBJECTAPINAME, list, PROJECTION));
+    }
+
+    private static List<PartnerObjModel> toModels(QueryResult query) {
         List<PartnerObjModel> partnerObjModels= null;
-        QueryResult query = crmQueryService.query(DATAOBJECTAPINAME, list);
         if (query.getErrorCode() == 0){
+            partnerObjModels = new ArrayList<>();
             JSONObject data = query.getData();
             if (!data.isEmpty()){
                 JSONArray jsonArray = data.getJSONArray("dataList");
                 if (jsonArray != null && jsonArray.size() > 0){
-                    partnerObjModels = JSON.parseArray(new Gson().toJson(jsonArray), PartnerObjModel.class)
+                    partnerObjModels = JSON.parseArray(JsonCodec.toJson(jsonArray), PartnerObjModel.class)
                             .stream().filter(e -> e.getLock_status() == 0).collect(Collectors.toList());
                 }
             }
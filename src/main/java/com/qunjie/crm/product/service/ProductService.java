@@ -3,16 +3,20 @@ package com.qunjie.crm.product.service;
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
-import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.qunjie.crm.cache.CrmReferenceCache;
 import com.qunjie.crm.exception.AccessTokenException;
 import com.qunjie.crm.product.model.ProductModel;
 import com.qunjie.crm.query.results.QueryResult;
+import com.qunjie.crm.query.service.CrmQueryBatch;
 import com.qunjie.crm.query.service.CrmQueryService;
 import com.qunjie.crm.query.args.QueryFilterField;
 import com.qunjie.crm.utils.DefaultValues;
+import com.qunjie.crm.utils.JsonCodec;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -38,7 +42,28 @@ public class ProductService {
     @Autowired
     private CrmQueryService crmQueryService;
 
+    @Autowired
+    private CrmReferenceCache referenceCache;
+
+    private static final Type PRODUCT_LIST = new TypeToken<List<ProductModel>>(){}.getType();
+
+    /**
+     * 按产品编码查询，结果走基础数据缓存
+     */
     public List<ProductModel> queryProductsByProductCode(String product_code) throws AccessTokenException {
+        return referenceCache.get(CrmReferenceCache.PRODUCT, product_code, PRODUCT_LIST,
+                () -> loadProductsByProductCode(product_code));
+    }
+
+    /**
+     * 先从单据级批量结果中取，批量结果中没有时按产品编码查询
+     */
+    public List<ProductModel> queryProductsByProductCode(CrmQueryBatch batch, String product_code) throws AccessTokenException {
+        QueryResult batched = CrmQueryBatch.get(batch, DATAOBJECTAPINAME, PRODUCT_CODE, product_code);
+        return batched != null ? toModels(batched) : queryProductsByProductCode(product_code);
+    }
+
+    private List<ProductModel> loadProductsByProductCode(String product_code) throws AccessTokenException {
         List<QueryFilterField> list = new ArrayList<>();
         QueryFilterField queryFilterField = new QueryFilterField();
         queryFilterField.setOperator(OPERATOR);
@@ -47,14 +72,18 @@ public class ProductService {
         fieldValues.add(product_code);
         queryFilterField.setField_values(fieldValues);
         list.add(queryFilterField);
+        return toModels(crmQueryService.query(DATAOBJECTAPINAME, list));
+    }
+
+    private static List<ProductModel> toModels(QueryResult query) {
         List<ProductModel> productModels= null;
-        QueryResult query = crmQueryService.query(DATAOBJECTAPINAME, list);
         if (query.getErrorCode() == 0){
+            productModels = new ArrayList<>();
             JSONObject data = query.getData();
             if (!data.isEmpty()){
                 JSONArray jsonArray = data.getJSONArray("dataList");
                 if (jsonArray != null && jsonArray.size() > 0){
-                    productModels = JSON.parseArray(new Gson().toJson(jsonArray), ProductModel.class);
+                    productModels = JSON.parseArray(JsonCodec.toJson(jsonArray), ProductModel.class);
                 }
             }
         }
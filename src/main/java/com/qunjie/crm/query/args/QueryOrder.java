@@ -0,0 +1,30 @@
+package com.qunjie.crm.query.args;
+
+import lombok.Data;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.crm.query.args.QueryOrder
+ * Description: 查询排序条件
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+@Data
+public class QueryOrder {
+
+    private String fieldName;
+
+    /**
+     * true升序，false降序
+     */
+    private boolean isAsc;
+
+    public QueryOrder() {
+    }
+
+    public QueryOrder(String fieldName, boolean isAsc) {
+        this.fieldName = fieldName;
+        this.isAsc = isAsc;
+    }
+}
@@ -2,6 +2,8 @@ package com.qunjie.crm.query.args;
 
 import lombok.Data;
 
+import java.util.List;
+
 /**
  * Copyright (C),2020-2021,群杰印章物联网
  * FileName: com.qunjie.oacrmbridge.crm.query.args.SearchQueryInfo
@@ -19,4 +21,14 @@ public class SearchQueryInfo extends QueryFilter{
     private Integer limit = 500;
 
     private Integer offset = 0;
+
+    /**
+     * 排序，为空时按接口默认排序
+     */
+    private List<QueryOrder> orders;
+
+    /**
+     * 返回字段，为空时返回全部字段
+     */
+    private List<String> fieldProjection;
 }
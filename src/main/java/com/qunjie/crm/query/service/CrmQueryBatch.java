@@ -0,0 +1,147 @@
+package com.qunjie.crm.query.service;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.qunjie.axis.model.WorkflowRequestTableField;
+import com.qunjie.crm.query.args.QueryFilterField;
+import com.qunjie.crm.query.results.QueryResult;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.CollectionUtils;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.crm.query.service.CrmQueryBatch
+ * Description: 单据级批量查询：先收集整张单据要查的值，每种对象用IN条件一次查回，
+ *              批量结果作为参数传给各查询方法(如SaleOrderService.saleOrderQueryBy(batch, value))，
+ *              批量结果中有的直接取，没有的(查询失败或IN查询未返回)由调用方再单条查询
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+public class CrmQueryBatch {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CrmQueryBatch.class);
+
+    /**
+     * IN条件每次最多的值个数
+     */
+    private static final int IN_SIZE = 100;
+
+    private final CrmQueryService crmQueryService;
+
+    /**
+     * 对象apiName#字段 -> 字段值 -> 数据
+     */
+    private final Map<String, Map<String, JSONArray>> loaded = new ConcurrentHashMap<>();
+
+    CrmQueryBatch(CrmQueryService crmQueryService) {
+        this.crmQueryService = crmQueryService;
+    }
+
+    /**
+     * 用IN条件一次查回values对应的数据；查询失败时不保存，后续仍按单条查询
+     *
+     * @param dataObjectApiName 对象apiName
+     * @param fieldName 查询字段
+     * @param values 字段值
+     * @return this
+     */
+    public CrmQueryBatch load(String dataObjectApiName, String fieldName, Collection<String> values) {
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(values));
+        distinct.removeIf(StringUtils::isBlank);
+        if (distinct.isEmpty()) {
+            return this;
+        }
+        Map<String, JSONArray> rows = new HashMap<>();
+        try {
+            for (int i = 0; i < distinct.size(); i += IN_SIZE) {
+                QueryFilterField queryFilterField = new QueryFilterField();
+                queryFilterField.setOperator("IN");
+                queryFilterField.setField_name(fieldName);
+                queryFilterField.setField_values(distinct.subList(i, Math.min(i + IN_SIZE, distinct.size())));
+                try (Stream<JSONObject> stream = crmQueryService.stream(dataObjectApiName,
+                        Collections.singletonList(queryFilterField))) {
+                    stream.forEach(row -> {
+                        String value = row.getString(fieldName);
+                        if (value != null) {
+                            rows.computeIfAbsent(value, v -> new JSONArray()).add(row);
+                        }
+                    });
+                }
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("batch query {} by {} error, fallback to single query, details:", dataObjectApiName, fieldName, e);
+            return this;
+        }
+        loaded.put(key(dataObjectApiName, fieldName), rows);
+        LOG.debug("batch query {} by {}, values:{}", dataObjectApiName, fieldName, distinct.size());
+        return this;
+    }
+
+    /**
+     * 批量结果中字段值为value的数据，形式同CrmQueryService.query的返回
+     *
+     * @return 该对象字段未批量查询、查询失败或结果中没有该值时返回null，调用方需再单条查询
+     */
+    public QueryResult get(String dataObjectApiName, String fieldName, String value) {
+        Map<String, JSONArray> rows = loaded.get(key(dataObjectApiName, fieldName));
+        JSONArray dataList = rows == null || value == null ? null : rows.get(value);
+        if (dataList == null) {
+            return null;
+        }
+        JSONObject data = new JSONObject();
+        data.put("dataList", dataList);
+        data.put("total", dataList.size());
+        QueryResult result = new QueryResult();
+        result.setErrorCode(0);
+        result.setData(data);
+        return result;
+    }
+
+    /**
+     * 同get，batch为null时返回null
+     */
+    public static QueryResult get(CrmQueryBatch batch, String dataObjectApiName, String fieldName, String value) {
+        return batch == null ? null : batch.get(dataObjectApiName, fieldName, value);
+    }
+
+    /**
+     * 收集明细中指定字段的值
+     *
+     * @param details 明细
+     * @param field 字段名判断
+     */
+    public static Set<String> values(List<List<WorkflowRequestTableField>> details, Predicate<String> field) {
+        Set<String> values = new LinkedHashSet<>();
+        if (CollectionUtils.isEmpty(details)) {
+            return values;
+        }
+        details.forEach(detail -> values.addAll(mainValues(detail, field)));
+        return values;
+    }
+
+    public static Set<String> mainValues(List<WorkflowRequestTableField> fields, Predicate<String> field) {
+        Set<String> values = new LinkedHashSet<>();
+        if (CollectionUtils.isEmpty(fields)) {
+            return values;
+        }
+        fields.forEach(e -> {
+            if (!StringUtils.isBlank(e.getFieldName()) && !StringUtils.isBlank(e.getFieldValue())
+                    && field.test(e.getFieldName())) {
+                values.add(e.getFieldValue());
+            }
+        });
+        return values;
+    }
+
+    private static String key(String dataObjectApiName, String fieldName) {
+        return dataObjectApiName + "#" + fieldName;
+    }
+}
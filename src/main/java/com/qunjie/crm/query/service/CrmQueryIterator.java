@@ -0,0 +1,203 @@
+package com.qunjie.crm.query.service;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.qunjie.crm.exception.AccessTokenException;
+import com.qunjie.crm.query.args.QueryFilterField;
+import com.qunjie.crm.query.args.QueryOrder;
+import com.qunjie.crm.query.args.SearchQueryInfo;
+import com.qunjie.crm.query.results.QueryResult;
+import com.qunjie.crm.utils.CrmQuotaGate;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.crm.query.service.CrmQueryIterator
+ * Description: crm分页查询迭代器，消费当前页时后台预取下一页，内存中最多保留两页数据；
+ *              按offset翻页，或按last_modified_time升序游标翻页(大对象全量扫描时不受offset深度影响)
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+public class CrmQueryIterator implements Iterator<JSONObject>, AutoCloseable {
+
+    public static final String LAST_MODIFIED_TIME = "last_modified_time";
+
+    public static final String ID = "_id";
+
+    /**
+     * 按查询条件取一页数据
+     */
+    @FunctionalInterface
+    public interface PageLoader {
+        QueryResult load(SearchQueryInfo searchQueryInfo) throws AccessTokenException;
+    }
+
+    private final PageLoader loader;
+
+    private final List<QueryFilterField> filters;
+
+    private final int pageSize;
+
+    private final boolean byModifiedTime;
+
+    private final Executor executor;
+
+    private int offset;
+
+    /**
+     * 游标模式下last_modified_time的下界(包含)
+     */
+    private Long cursor;
+
+    /**
+     * 游标时间点上已经返回过的数据id，下一页用GTE查询时去重
+     */
+    private final Set<String> cursorIds = new HashSet<>();
+
+    private Iterator<JSONObject> current = Collections.emptyIterator();
+
+    private CompletableFuture<JSONArray> next;
+
+    /**
+     * @param loader 取一页数据
+     * @param filters 查询条件
+     * @param pageSize 每页条数
+     * @param byModifiedTime true按last_modified_time游标翻页，false按offset翻页
+     * @param from 游标模式的起始last_modified_time(包含)，为空从头开始
+     * @param executor 预取下一页用
+     */
+    public CrmQueryIterator(PageLoader loader, List<QueryFilterField> filters, int pageSize, boolean byModifiedTime,
+                            Long from, Executor executor) {
+        this.loader = loader;
+        this.filters = filters == null ? Collections.emptyList() : new ArrayList<>(filters);
+        this.pageSize = pageSize;
+        this.byModifiedTime = byModifiedTime;
+        this.cursor = from;
+        this.executor = executor;
+        this.next = fetch();
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            if (next == null) {
+                return false;
+            }
+            JSONArray page = join(next);
+            next = null;
+            current = advance(page).iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public JSONObject next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    /**
+     * 放弃未消费的数据，取消预取
+     */
+    @Override
+    public void close() {
+        if (next != null) {
+            next.cancel(true);
+            next = null;
+        }
+        current = Collections.emptyIterator();
+    }
+
+    /**
+     * 记录翻页位置，整页时立即预取下一页，返回本页需要输出的数据
+     */
+    private List<JSONObject> advance(JSONArray page) {
+        List<JSONObject> rows = new ArrayList<>(page.size());
+        for (int i = 0; i < page.size(); i++) {
+            JSONObject row = page.getJSONObject(i);
+            if (byModifiedTime && cursor != null && cursor.equals(row.getLong(LAST_MODIFIED_TIME))
+                    && cursorIds.contains(row.getString(ID))) {
+                continue;
+            }
+            rows.add(row);
+        }
+
+        if (byModifiedTime && !page.isEmpty()) {
+            Long lastTime = page.getJSONObject(page.size() - 1).getLong(LAST_MODIFIED_TIME);
+            if (lastTime != null && !lastTime.equals(cursor)) {
+                cursor = lastTime;
+                offset = 0;
+                cursorIds.clear();
+            } else {
+                // 整页数据时间相同，游标不动，在同一时间点内继续按offset翻页
+                offset += pageSize;
+            }
+            for (int i = 0; i < page.size(); i++) {
+                JSONObject row = page.getJSONObject(i);
+                if (cursor != null && cursor.equals(row.getLong(LAST_MODIFIED_TIME))) {
+                    cursorIds.add(row.getString(ID));
+                }
+            }
+        } else {
+            offset += pageSize;
+        }
+
+        if (page.size() >= pageSize) {
+            next = fetch();
+        }
+        return rows;
+    }
+
+    private CompletableFuture<JSONArray> fetch() {
+        SearchQueryInfo searchQueryInfo = new SearchQueryInfo();
+        searchQueryInfo.setLimit(pageSize);
+        searchQueryInfo.setOffset(offset);
+        List<QueryFilterField> pageFilters = new ArrayList<>(filters);
+        if (byModifiedTime) {
+            if (cursor != null) {
+                QueryFilterField queryFilterField = new QueryFilterField();
+                queryFilterField.setOperator("GTE");
+                queryFilterField.setField_name(LAST_MODIFIED_TIME);
+                queryFilterField.setField_values(Collections.singletonList(String.valueOf(cursor)));
+                pageFilters.add(queryFilterField);
+            }
+            searchQueryInfo.setOrders(Collections.singletonList(new QueryOrder(LAST_MODIFIED_TIME, true)));
+        }
+        searchQueryInfo.setFilters(pageFilters);
+
+        return CompletableFuture.supplyAsync(CrmQuotaGate.wrap(() -> {
+            QueryResult result;
+            try {
+                result = loader.load(searchQueryInfo);
+            } catch (AccessTokenException e) {
+                throw new CompletionException(e);
+            }
+            if (result == null || result.getErrorCode() != 0) {
+                throw new IllegalStateException("crm分页查询失败, offset:" + searchQueryInfo.getOffset() + ", "
+                        + (result == null ? "无返回" : result.getErrorCode() + ":" + result.getErrorMessage()));
+            }
+            JSONObject data = result.getData();
+            JSONArray dataList = data == null ? null : data.getJSONArray("dataList");
+            return dataList == null ? new JSONArray() : dataList;
+        }), executor);
+    }
+
+    private static JSONArray join(CompletableFuture<JSONArray> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("crm分页查询失败", cause);
+        }
+    }
+}
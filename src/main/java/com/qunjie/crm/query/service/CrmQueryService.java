@@ -1,17 +1,30 @@
 package com.qunjie.crm.query.service;
 
+import com.alibaba.fastjson.JSONObject;
 import com.qunjie.crm.exception.AccessTokenException;
 import com.qunjie.crm.manager.impl.AddressBookManagerImpl;
 import com.qunjie.crm.query.args.QueryData;
 import com.qunjie.crm.query.args.QueryFilterField;
 import com.qunjie.crm.query.args.SearchQueryInfo;
 import com.qunjie.crm.query.results.QueryResult;
+import com.qunjie.crm.utils.SingleFlight;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Copyright (C),2020-2021,群杰印章物联网
@@ -30,24 +43,132 @@ public class CrmQueryService {
     @Autowired
     AddressBookManagerImpl addressBookManager;
 
+    /**
+     * 分页查询每页条数
+     */
+    public static final int PAGE_SIZE = 500;
+
+    /**
+     * 预取线程数及排队数，每个迭代器同时最多一个预取任务
+     */
+    private static final int PREFETCH_THREADS = 4;
+
+    private static final int PREFETCH_QUEUE = 64;
+
+    private static final long PREFETCH_SHUTDOWN_TIMEOUT = 10000;
+
+    /**
+     * 所有分页查询迭代器共用的预取线程池：线程数和队列有界，队列满或已关闭时由调用线程直接查询(不预取)，
+     * 应用关闭时停止
+     */
+    private final ThreadPoolExecutor prefetchExecutor;
+
+    /**
+     * 同时进行的相同查询只请求一次crm，共用返回结果(结果只读，调用方不要修改)
+     */
+    private final SingleFlight<String, QueryResult> singleFlight = new SingleFlight<>();
+
+    public CrmQueryService() {
+        AtomicInteger count = new AtomicInteger();
+        prefetchExecutor = new ThreadPoolExecutor(PREFETCH_THREADS, PREFETCH_THREADS, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(PREFETCH_QUEUE), r -> {
+            Thread thread = new Thread(r, "crm-query-prefetch-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, (r, executor) -> r.run());
+        prefetchExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 应用关闭时不再接受预取，已排队的预取执行完(最多等PREFETCH_SHUTDOWN_TIMEOUT毫秒)；
+     * 之后迭代器再取下一页时由调用线程直接查询
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        prefetchExecutor.shutdown();
+        if (!prefetchExecutor.awaitTermination(PREFETCH_SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+            prefetchExecutor.shutdownNow();
+        }
+    }
+
     public QueryResult query(String dataObjectApiName, List<QueryFilterField> filters) throws AccessTokenException {
+        return query(dataObjectApiName, filters, null);
+    }
 
+    /**
+     * @param fields 只返回这些字段(见projection)，为空返回全部字段
+     */
+    public QueryResult query(String dataObjectApiName, List<QueryFilterField> filters, List<String> fields) throws AccessTokenException {
         QueryData queryData = new QueryData();
         queryData.setDataObjectApiName(dataObjectApiName);
         SearchQueryInfo searchQueryInfo = new SearchQueryInfo();
         searchQueryInfo.setFilters(filters);
+        searchQueryInfo.setFieldProjection(fields);
         queryData.setSearch_query_info(searchQueryInfo);
-        return addressBookManager.queryData(queryData);
+        return singleFlight.execute(flightKey(dataObjectApiName, filters, fields, false), AccessTokenException.class,
+                () -> addressBookManager.queryData(queryData));
+    }
+
+    /**
+     * 查询返回字段，总是包含_id
+     */
+    public static List<String> projection(String... fields) {
+        LinkedHashSet<String> projection = new LinkedHashSet<>();
+        projection.add(CrmQueryIterator.ID);
+        projection.addAll(Arrays.asList(fields));
+        return new ArrayList<>(projection);
+    }
+
+    /**
+     * 单据级批量查询，load后传给各查询方法
+     */
+    public CrmQueryBatch newBatch() {
+        return new CrmQueryBatch(this);
     }
 
     public QueryResult queryCustom(String dataObjectApiName, List<QueryFilterField> filters) throws AccessTokenException {
+        return queryCustom(dataObjectApiName, filters, null);
+    }
+
+    public QueryResult queryCustom(String dataObjectApiName, List<QueryFilterField> filters, List<String> fields) throws AccessTokenException {
 
         QueryData queryData = new QueryData();
         queryData.setDataObjectApiName(dataObjectApiName);
         SearchQueryInfo searchQueryInfo = new SearchQueryInfo();
         searchQueryInfo.setFilters(filters);
+        searchQueryInfo.setFieldProjection(fields);
         queryData.setSearch_query_info(searchQueryInfo);
-        return addressBookManager.queryCustomData(queryData);
+        return singleFlight.execute(flightKey(dataObjectApiName, filters, fields, true), AccessTokenException.class,
+                () -> addressBookManager.queryCustomData(queryData));
+    }
+
+    /**
+     * 合并key：对象apiName + 排序后的查询条件 + 返回字段，条件顺序不同的相同查询视为同一个
+     */
+    private static String flightKey(String dataObjectApiName, List<QueryFilterField> filters, List<String> fields,
+                                    boolean custom) {
+        StringBuilder key = new StringBuilder(custom ? "custom:" : "data:").append(dataObjectApiName);
+        if (filters != null) {
+            filters.stream()
+                    .map(f -> f.getField_name() + " " + f.getOperator() + " " + f.getField_values())
+                    .sorted()
+                    .forEach(f -> key.append('|').append(f));
+        }
+        if (fields != null) {
+            key.append("#").append(fields);
+        }
+        return key.toString();
+    }
+
+    /**
+     * 相同查询合并执行次数、合并等待次数
+     */
+    public long getSingleFlightExecutedCount() {
+        return singleFlight.getExecutedCount();
+    }
+
+    public long getSingleFlightSharedCount() {
+        return singleFlight.getSharedCount();
     }
 
     public QueryResult QueryBy(Map<String,String> map,String DATAOBJECTAPINAME) throws AccessTokenException {
@@ -76,4 +197,62 @@ public class CrmQueryService {
             list.add(queryFilterField);
         });
     }
+
+    /**
+     * 按offset分页查询全部数据，迭代时逐页加载，用完需关闭(try-with-resources)
+     */
+    public Stream<JSONObject> stream(String dataObjectApiName, List<QueryFilterField> filters) {
+        return stream(iterator(dataObjectApiName, filters, false, false, null));
+    }
+
+    /**
+     * @param fields 只返回这些字段(见projection)，为空返回全部字段
+     */
+    public Stream<JSONObject> stream(String dataObjectApiName, List<QueryFilterField> filters, List<String> fields) {
+        return stream(iterator(dataObjectApiName, filters, false, false, null, fields));
+    }
+
+    public Stream<JSONObject> streamCustom(String dataObjectApiName, List<QueryFilterField> filters) {
+        return stream(iterator(dataObjectApiName, filters, true, false, null));
+    }
+
+    /**
+     * 按last_modified_time升序游标分页查询，适合客户、销售订单、线索等大对象全量或增量扫描
+     *
+     * @param from 起始最后修改时间(包含)，为空从头开始
+     * @param custom 是否自定义对象
+     */
+    public Stream<JSONObject> streamByModifiedTime(String dataObjectApiName, List<QueryFilterField> filters,
+                                                   Long from, boolean custom) {
+        return stream(iterator(dataObjectApiName, filters, custom, true, from));
+    }
+
+    public CrmQueryIterator iterator(String dataObjectApiName, List<QueryFilterField> filters, boolean custom,
+                                     boolean byModifiedTime, Long from) {
+        return iterator(dataObjectApiName, filters, custom, byModifiedTime, from, null);
+    }
+
+    /**
+     * @param fields 只返回这些字段，为空返回全部字段；按最后修改时间分页时自动加上游标需要的last_modified_time
+     */
+    public CrmQueryIterator iterator(String dataObjectApiName, List<QueryFilterField> filters, boolean custom,
+                                     boolean byModifiedTime, Long from, List<String> fields) {
+        List<String> projection = fields == null ? null : projection(fields.toArray(new String[0]));
+        if (projection != null && byModifiedTime && !projection.contains(CrmQueryIterator.LAST_MODIFIED_TIME)) {
+            projection.add(CrmQueryIterator.LAST_MODIFIED_TIME);
+        }
+        CrmQueryIterator.PageLoader loader = searchQueryInfo -> {
+            searchQueryInfo.setFieldProjection(projection);
+            QueryData queryData = new QueryData();
+            queryData.setDataObjectApiName(dataObjectApiName);
+            queryData.setSearch_query_info(searchQueryInfo);
+            return custom ? addressBookManager.queryCustomData(queryData) : addressBookManager.queryData(queryData);
+        };
+        return new CrmQueryIterator(loader, filters, PAGE_SIZE, byModifiedTime, from, prefetchExecutor);
+    }
+
+    private static Stream<JSONObject> stream(CrmQueryIterator iterator) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(iterator::close);
+    }
 }
@@ -7,6 +7,7 @@ import com.google.gson.Gson;
 import com.qunjie.common.email.DefaultEmailAddress;
 import com.qunjie.common.email.event.SendEmailEvent;
 import com.qunjie.crm.beans.results.BaseResult;
+import com.qunjie.crm.describe.service.CrmDescribeService;
 import com.qunjie.crm.exception.AccessTokenException;
 import com.qunjie.crm.manager.impl.SaleTargetManagerImpl;
 import com.qunjie.crm.query.results.QueryResult;
@@ -22,7 +23,6 @@ import org.springframework.stereotype.Service;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Copyright (C),2020-2021,群杰印章物联网
@@ -49,37 +49,15 @@ public class SaleTargetService {
     SaleTargetManagerImpl saleTargetManagerImpl;
     @Autowired
     DeptValueService deptValueService;
+    @Autowired
+    CrmDescribeService crmDescribeService;
 
     public static final String APINAME = "object_11Tz8__c";
 
-    public static final Map<String,String> field_mm2gw__c_map = new ConcurrentHashMap(){{
-        put("个人","option1");
-        put("团队","7m7B1Vnl4");
-        put("大区","A5JdgelBv");
-    }};
-        //年份
-        public static final Map<String,String> field_J186E__c_map = new ConcurrentHashMap(){{
-            put("2021","option1");
-            put("2022","wrqlsS2v4");
-            put("2023","Br1LBlqDp");
-            put("2024","k7a19is35");
-            put("2025","sW1cnLLlO");
-        }};
-        //月份
-        public static final Map<String,String> field_c2id0__c_map = new ConcurrentHashMap(){{
-            put("1","option1");
-            put("2","6dDhr2Kza");
-            put("3","wI1GpC52s");
-            put("4","2hzR6uvcJ");
-            put("5","G44agAvo5");
-            put("6","5qLSsu1m6");
-            put("7","aLa6638St");
-            put("8","om8F2PDut");
-            put("9","i2koG72h7");
-            put("10","q0Paf2mf5");
-            put("11","793eOj5KJ");
-            put("12","fQS21xrxo");
-        }};
+    //目标类型(个人/团队/大区)、年份、月份，选项值从crm对象描述中按选项名获取
+    public static final String TARGET_TYPE = "field_mm2gw__c";
+    public static final String YEAR = "field_J186E__c";
+    public static final String MONTH = "field_c2id0__c";
 
     /**
      * 按个人查找销售业绩
@@ -92,10 +70,10 @@ public class SaleTargetService {
     public SaleTargetModel querySaleTargetGR(String year,String month,String sname) throws AccessTokenException {
         String openUserId = userValueService.getCrmOpenUserIdByNm(sname);
         Map<String,String> map = new HashMap<>();
-        map.put("field_J186E__c",field_J186E__c_map.get(year));
-        map.put("field_c2id0__c",field_c2id0__c_map.get(month));
+        map.put(YEAR,crmDescribeService.optionValue(APINAME,YEAR,year));
+        map.put(MONTH,crmDescribeService.optionValue(APINAME,MONTH,month));
         map.put("is_deleted","false");
-        map.put("field_mm2gw__c","option1");
+        map.put(TARGET_TYPE,crmDescribeService.optionValue(APINAME,TARGET_TYPE,"个人"));
         map.put("owner",openUserId);
         return query(map,year,month,sname);
     }
@@ -111,10 +89,10 @@ public class SaleTargetService {
     public SaleTargetModel querySaleTargetArea(String year,String month,String deptnm) throws AccessTokenException {
         Integer deptIdByDeptNm = deptValueService.queryCrmDeptIdByDeptNm(deptnm);
         Map<String,String> map = new HashMap<>();
-        map.put("field_J186E__c",field_J186E__c_map.get(year));
-        map.put("field_c2id0__c",field_c2id0__c_map.get(month));
+        map.put(YEAR,crmDescribeService.optionValue(APINAME,YEAR,year));
+        map.put(MONTH,crmDescribeService.optionValue(APINAME,MONTH,month));
         map.put("is_deleted","false");
-        map.put("field_mm2gw__c","A5JdgelBv");
+        map.put(TARGET_TYPE,crmDescribeService.optionValue(APINAME,TARGET_TYPE,"大区"));
         map.put("data_own_department",String.valueOf(deptIdByDeptNm));
         return query(map,year,month,deptnm);
     }
@@ -130,10 +108,10 @@ public class SaleTargetService {
     public SaleTargetModel querySaleTargetTeam(String year,String month,String deptnm) throws AccessTokenException {
         Integer deptIdByDeptNm = deptValueService.queryCrmDeptIdByDeptNm(deptnm);
         Map<String,String> map = new HashMap<>();
-        map.put("field_J186E__c",field_J186E__c_map.get(year));
-        map.put("field_c2id0__c",field_c2id0__c_map.get(month));
+        map.put(YEAR,crmDescribeService.optionValue(APINAME,YEAR,year));
+        map.put(MONTH,crmDescribeService.optionValue(APINAME,MONTH,month));
         map.put("is_deleted","false");
-        map.put("field_mm2gw__c","7m7B1Vnl4");
+        map.put(TARGET_TYPE,crmDescribeService.optionValue(APINAME,TARGET_TYPE,"团队"));
         map.put("data_own_department",String.valueOf(deptIdByDeptNm));
         return query(map,year,month,deptnm);
     }
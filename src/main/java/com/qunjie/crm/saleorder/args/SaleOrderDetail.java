@@ -11,6 +11,7 @@ import com.qunjie.common.util.SpringBeanUtils;
 import com.qunjie.crm.exception.AccessTokenException;
 import com.qunjie.crm.product.model.ProductModel;
 import com.qunjie.crm.product.service.ProductService;
+import com.qunjie.crm.query.service.CrmQueryBatch;
 import com.qunjie.jindie.saleorder.save.enums.QDXSDDFieldName;
 import lombok.Data;
 import org.apache.commons.lang3.StringUtils;
@@ -52,6 +53,13 @@ public class SaleOrderDetail {
     private String product_id;
 
     public void valuesOf(List<WorkflowRequestTableField> details){
+        valuesOf(details, null);
+    }
+
+    /**
+     * @param batch 单据级批量查询结果，产品先从中取，可为null
+     */
+    public void valuesOf(List<WorkflowRequestTableField> details, CrmQueryBatch batch){
         if (CollectionUtils.isEmpty(details)){
             return;
         }
@@ -61,7 +69,7 @@ public class SaleOrderDetail {
                     case JHRQ:
                         break;
                     case CPBM:
-                        productId(e.getFieldValue());
+                        productId(batch, e.getFieldValue());
                         break;
                     case SL:
                         this.quantity = e.getFieldValue() != null ? e.getFieldValue() : "0";
@@ -79,6 +87,13 @@ public class SaleOrderDetail {
     }
 
     public void QDXSDDvaluesOf(List<WorkflowRequestTableField> details) {
+        QDXSDDvaluesOf(details, null);
+    }
+
+    /**
+     * @param batch 单据级批量查询结果，产品先从中取，可为null
+     */
+    public void QDXSDDvaluesOf(List<WorkflowRequestTableField> details, CrmQueryBatch batch) {
         if (CollectionUtils.isEmpty(details)){
             return;
         }
@@ -86,7 +101,7 @@ public class SaleOrderDetail {
             if (!StringUtils.isBlank(e.getFieldName()) && null != QDXSDDFieldName.valuesOf(e.getFieldName())){
                 switch (QDXSDDFieldName.valuesOf(e.getFieldName())){
                     case CPBM:
-                        productId(e.getFieldValue());
+                        productId(batch, e.getFieldValue());
                         break;
                     case SL:
                         this.quantity = e.getFieldValue() != null ? e.getFieldValue() : "0";
@@ -105,15 +120,16 @@ public class SaleOrderDetail {
 
     /**
      * 通过产品编码查询产品id
+     * @param batch 单据级批量查询结果，可为null
      * @param value
      */
-    private void productId(String value){
+    private void productId(CrmQueryBatch batch, String value){
         if (StringUtils.isBlank(value)){
             return;
         }
         try {
             ProductService productService = SpringBeanUtils.getBean(ProductService.class);
-            List<ProductModel> productModels = productService.queryProductsByProductCode(value);
+            List<ProductModel> productModels = productService.queryProductsByProductCode(batch, value);
             if (!CollectionUtils.isEmpty(productModels)){
                 List<ProductModel> collect = productModels.stream().filter(p -> !p.getIs_deleted()).collect(Collectors.toList());
                 if (!CollectionUtils.isEmpty(collect)) {
@@ -12,6 +12,7 @@ import com.qunjie.common.util.SpringBeanUtils;
 import com.qunjie.crm.account.model.AccountModel;
 import com.qunjie.crm.account.service.AccountService;
 import com.qunjie.crm.exception.AccessTokenException;
+import com.qunjie.crm.query.service.CrmQueryBatch;
 import com.qunjie.crm.utils.DefaultValues;
 import com.qunjie.jindie.saleorder.save.enums.QDXSDDFieldName;
 import com.qunjie.mysql.model.UserValue;
@@ -88,6 +89,13 @@ public class SaleOrderObjectData {
     private static final Logger log = LoggerFactory.getLogger(SaleOrderObjectData.class);
 
     public Map<String,String> valuesOf(List<WorkflowRequestTableField> mains){
+        return valuesOf(mains, null);
+    }
+
+    /**
+     * @param batch 单据级批量查询结果，客户、合作伙伴先从中取，可为null
+     */
+    public Map<String,String> valuesOf(List<WorkflowRequestTableField> mains, CrmQueryBatch batch){
         Map<String,String> map = new HashMap<>();
         String currentOpenUserid = DefaultValues.CURRENTOPENUSERID;
         SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
@@ -98,13 +106,13 @@ public class SaleOrderObjectData {
             if (!StringUtils.isBlank(e.getFieldName()) && null != FieldName.valuesOf(e.getFieldName())){
                 switch (FieldName.valuesOf(e.getFieldName())){
                     case KEHUMC:
-                        AccountId(e.getFieldValue());
+                        AccountId(batch, e.getFieldValue());
                         break;
                     case HBKHMC:
-                        AccountId(e.getFieldValue());
+                        AccountId(batch, e.getFieldValue());
                         break;
                     case HZHBMC:
-                        partnerId(e.getFieldValue());
+                        partnerId(batch, e.getFieldValue());
                         break;
                     case QYR:
                         String crmOpenUserId = getCrmOpenUserId(e.getFieldValue());
@@ -184,6 +192,13 @@ public class SaleOrderObjectData {
     }
 
     public Map<String,String> QDXSDDvaluesOf(List<WorkflowRequestTableField> mains) {
+        return QDXSDDvaluesOf(mains, null);
+    }
+
+    /**
+     * @param batch 单据级批量查询结果，客户、合作伙伴先从中取，可为null
+     */
+    public Map<String,String> QDXSDDvaluesOf(List<WorkflowRequestTableField> mains, CrmQueryBatch batch) {
         Map<String,String> map = new HashMap<>();
         String currentOpenUserid = DefaultValues.CURRENTOPENUSERID;
         SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
@@ -194,10 +209,10 @@ public class SaleOrderObjectData {
             if (!StringUtils.isBlank(e.getFieldName()) && null != QDXSDDFieldName.valuesOf(e.getFieldName())){
                 switch (QDXSDDFieldName.valuesOf(e.getFieldName())){
                     case KHMC:
-                        AccountId(e.getFieldValue());
+                        AccountId(batch, e.getFieldValue());
                         break;
                     case DLSMC:
-                        partnerId(e.getFieldValue());
+                        partnerId(batch, e.getFieldValue());
                         break;
                     case XSYXM:
                         String crmOpenUserId = getCrmOpenUserIdByNm(e.getFieldValue());
@@ -279,13 +294,14 @@ public class SaleOrderObjectData {
 
     /**
      * 通过客户名称查询客户内码
+     * @param batch 单据级批量查询结果，可为null
      * @param value
      */
-    private void AccountId(String value){
+    private void AccountId(CrmQueryBatch batch, String value){
         if (!StringUtils.isBlank(value)) {
             try {
                 AccountService accountService = SpringBeanUtils.getBean(AccountService.class);
-                List<AccountModel> accountModels = accountService.queryAccountByName(value);
+                List<AccountModel> accountModels = accountService.queryAccountByName(batch, value);
                 if (!CollectionUtils.isEmpty(accountModels)) {
                     this.account_id = accountModels.get(0).get_id();
                 }
@@ -297,13 +313,14 @@ public class SaleOrderObjectData {
 
     /**
      * 通过合作伙伴名称查询合作伙伴内码
+     * @param batch 单据级批量查询结果，可为null
      * @param value
      */
-    private void partnerId(String value){
+    private void partnerId(CrmQueryBatch batch, String value){
         if (!StringUtils.isBlank(value)) {
             try {
                 PartnerObjService partnerObjService = SpringBeanUtils.getBean(PartnerObjService.class);
-                List<PartnerObjModel> partnerObjModels = partnerObjService.queryPartnerObjByName(value);
+                List<PartnerObjModel> partnerObjModels = partnerObjService.queryPartnerObjByName(batch, value);
                 if (!CollectionUtils.isEmpty(partnerObjModels)) {
                     this.partner_id = partnerObjModels.get(0).get_id();
                 }
@@ -63,7 +63,7 @@ public class CrmSaleOrderController {
 
     @GetMapping("getSaleOrder")
     public QueryResult getSaleOrder(String name) throws AccessTokenException {
-        QueryResult queryResult = saleOrderService.saleOrderQueryBy(name);
+        QueryResult queryResult = saleOrderService.saleOrderQueryBy(name, null);
         return queryResult;
     }
 
@@ -13,9 +13,13 @@ import com.qunjie.common.email.service.EmailServiceHelper;
 import com.qunjie.common.util.SpringBeanUtils;
 import com.qunjie.crm.beans.results.BaseResult;
 import com.qunjie.crm.exception.AccessTokenException;
+import com.qunjie.crm.account.service.AccountService;
 import com.qunjie.crm.manager.impl.SaleOrderManagerImpl;
+import com.qunjie.crm.partnerObj.service.PartnerObjService;
 import com.qunjie.crm.query.args.QueryFilterField;
+import com.qunjie.crm.product.service.ProductService;
 import com.qunjie.crm.query.results.QueryResult;
+import com.qunjie.crm.query.service.CrmQueryBatch;
 import com.qunjie.crm.query.service.CrmQueryService;
 import com.qunjie.crm.saleTarget.event.SaleTargetEvent;
 import com.qunjie.crm.saleTarget.model.SaleTargetModel;
@@ -54,20 +58,37 @@ public class SaleOrderService {
     //oa销售订单编号
     public static final String FIELD_CLVED__C = "field_Clved__c";
 
+    /**
+     * 按oa销售订单编号查订单时只取回款、开票、业绩拆分用到的字段
+     */
+    private static final List<String> QUERY_BY_PROJECTION = CrmQueryService.projection(FIELD_CLVED__C, "account_id", "partner_id");
+
     public SaleOrderResult saleOrderAdd(WorkflowRequestTable workflowRequestTable,Integer workflowid) throws AccessTokenException {
         SaleOrderManagerImpl saleOrderManagerImpl = SpringBeanUtils.getBean(SaleOrderManagerImpl.class);
         List<WorkflowRequestTableField> mains = workflowRequestTable.getMains();
-        SaleOrderObjectData saleOrderObjectData = new SaleOrderObjectData();
-        Map<String, String> map = _valueOfObjectData(saleOrderObjectData, workflowid, mains);
         List<List<WorkflowRequestTableField>> details = workflowRequestTable.getDetails();
+        boolean qdxsdd = WorkflowId.QDXSDD.contains(workflowid);
+        //主表客户、合作伙伴和明细产品编码各一次IN查询，避免逐个字段、每行明细单独查询
+        CrmQueryBatch batch = SpringBeanUtils.getBean(CrmQueryService.class).newBatch()
+                .load(AccountService.DATAOBJECTAPINAME, AccountService.NAME, CrmQueryBatch.mainValues(mains, name -> qdxsdd
+                        ? QDXSDDFieldName.valuesOf(name) == QDXSDDFieldName.KHMC
+                        : FieldName.valuesOf(name) == FieldName.KEHUMC || FieldName.valuesOf(name) == FieldName.HBKHMC))
+                .load(PartnerObjService.DATAOBJECTAPINAME, PartnerObjService.NAME, CrmQueryBatch.mainValues(mains, name -> qdxsdd
+                        ? QDXSDDFieldName.valuesOf(name) == QDXSDDFieldName.DLSMC
+                        : FieldName.valuesOf(name) == FieldName.HZHBMC))
+                .load(ProductService.DATAOBJECTAPINAME, ProductService.PRODUCT_CODE, CrmQueryBatch.values(details, name -> qdxsdd
+                        ? QDXSDDFieldName.valuesOf(name) == QDXSDDFieldName.CPBM
+                        : FieldName.valuesOf(name) == FieldName.CPBM));
+        SaleOrderObjectData saleOrderObjectData = new SaleOrderObjectData();
+        Map<String, String> map = _valueOfObjectData(saleOrderObjectData, workflowid, mains, batch);
         List<SaleOrderDetail> saleOrderDetails = new ArrayList<>();
         if (!CollectionUtils.isEmpty(details)){
             details.forEach(e->{
                 SaleOrderDetail saleOrderDetail = new SaleOrderDetail();
-                if (WorkflowId.QDXSDD.contains(workflowid)){
-                    saleOrderDetail.QDXSDDvaluesOf(e);
+                if (qdxsdd){
+                    saleOrderDetail.QDXSDDvaluesOf(e, batch);
                 }else {
-                    saleOrderDetail.valuesOf(e);
+                    saleOrderDetail.valuesOf(e, batch);
                 }
                 saleOrderDetails.add(saleOrderDetail);
             });
@@ -85,12 +106,13 @@ public class SaleOrderService {
         return saleOrderResult;
     }
 
-    private Map<String, String> _valueOfObjectData(SaleOrderObjectData saleOrderObjectData,Integer workflowid,List<WorkflowRequestTableField> mains){
+    private Map<String, String> _valueOfObjectData(SaleOrderObjectData saleOrderObjectData,Integer workflowid,
+                                                   List<WorkflowRequestTableField> mains,CrmQueryBatch batch){
         Map<String,String> map ;
         if (WorkflowId.QDXSDD.contains(workflowid)){
-            map = saleOrderObjectData.QDXSDDvaluesOf(mains);
+            map = saleOrderObjectData.QDXSDDvaluesOf(mains, batch);
         }else {
-            map = saleOrderObjectData.valuesOf(mains);
+            map = saleOrderObjectData.valuesOf(mains, batch);
         }
         return map;
     }
@@ -121,7 +143,7 @@ public class SaleOrderService {
     }
     public SaleTargetEvent getSaleTargetData(WorkflowRequestTable workflowRequestTable,Integer workflowid,Double value){
         SaleOrderObjectData saleOrderObjectData = new SaleOrderObjectData();
-        Map<String, String> map = _valueOfObjectData(saleOrderObjectData, workflowid, workflowRequestTable.getMains());
+        Map<String, String> map = _valueOfObjectData(saleOrderObjectData, workflowid, workflowRequestTable.getMains(), null);
         return _getSaleTargetData(saleOrderObjectData,workflowid,map,value);
     }
 
@@ -148,6 +170,21 @@ public class SaleOrderService {
      * @throws AccessTokenException
      */
     public QueryResult saleOrderQueryBy(String value) throws AccessTokenException {
+        return saleOrderQueryBy(value, QUERY_BY_PROJECTION);
+    }
+
+    /**
+     * 先从单据级批量结果中取，批量结果中没有时按OA销售订单号查询
+     */
+    public QueryResult saleOrderQueryBy(CrmQueryBatch batch, String value) throws AccessTokenException {
+        QueryResult batched = CrmQueryBatch.get(batch, DATAOBJECTAPINAME, FIELD_CLVED__C, value);
+        return batched != null ? batched : saleOrderQueryBy(value);
+    }
+
+    /**
+     * @param fields 返回字段，为空返回全部字段
+     */
+    public QueryResult saleOrderQueryBy(String value, List<String> fields) throws AccessTokenException {
         CrmQueryService crmQueryService = SpringBeanUtils.getBean(CrmQueryService.class);
         List<QueryFilterField> list = new ArrayList<>();
         QueryFilterField queryFilterField = new QueryFilterField();
@@ -157,7 +194,7 @@ public class SaleOrderService {
         fieldValues.add(value);
         queryFilterField.setField_values(fieldValues);
         list.add(queryFilterField);
-        QueryResult query = crmQueryService.query(DATAOBJECTAPINAME, list);
+        QueryResult query = crmQueryService.query(DATAOBJECTAPINAME, list, fields);
         return query;
     }
 }
@@ -16,7 +16,9 @@ public class Constants {
 
         APP_ACCESS_TOKEN_EXPIRED(20005, "appAccessToken不存在或者已经过期"),
 
-        CORP_ACCESS_TOKEN_EXPIRED(20016, "corpAccessToken不存在或者已经过期");
+        CORP_ACCESS_TOKEN_EXPIRED(20016, "corpAccessToken不存在或者已经过期"),
+
+        RATE_LIMITED(30004, "超出接口调用频率限制(20秒内60次)");
 
         public int code;
 
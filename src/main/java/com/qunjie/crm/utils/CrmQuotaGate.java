@@ -0,0 +1,480 @@
+package com.qunjie.crm.utils;
+
+import com.qunjie.common.metrics.IntegrationMetrics;
+import com.qunjie.crm.config.CrmQuotaConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.crm.utils.CrmQuotaGate
+ * Description: 纷享销客接口全局调用许可(令牌桶)，所有OpenAPIUtils请求发送前先取许可，按企业配额匀速放行；
+ *              接口仍返回30004时暂停整个桶并按指数退避+随机抖动重试，避免各线程同时重试。
+ *              许可分交互(INTERACTIVE，默认)和批量(BULK)两条队列：两边都在排队时按interactiveShare加权轮流放行，
+ *              只有批量排队时也要给交互留出突发余量，批量任务只用剩余的配额
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+public class CrmQuotaGate {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CrmQuotaGate.class);
+
+    public static final int RATE_LIMITED_CODE = Constants.interfaceResponseCode.RATE_LIMITED.code;
+
+    /**
+     * 调用优先级队列
+     */
+    public enum Lane {
+        /**
+         * OA审批回调、页面操作等有人等待结果的调用
+         */
+        INTERACTIVE,
+        /**
+         * 定时同步、批量导入等后台任务
+         */
+        BULK
+    }
+
+    private static final ThreadLocal<Lane> LANE = new ThreadLocal<>();
+
+    private static volatile CrmQuotaConfig config = new CrmQuotaConfig();
+
+    /**
+     * 两次许可之间的间隔(纳秒)
+     */
+    private static long intervalNanos = intervalNanos(config);
+
+    /**
+     * 当前可用许可，空闲时积攒，最多max(1, burst)个
+     */
+    private static double permits = 1;
+
+    /**
+     * permits最后一次补充的时间点，30004暂停期间为暂停结束时间
+     */
+    private static long refilledAt = System.nanoTime();
+
+    private static final EnumMap<Lane, Deque<Waiter>> queues = new EnumMap<>(Lane.class);
+
+    /**
+     * 加权轮转：每条队列放行一次pass增加1/权重，两边都排队时放行pass小的
+     */
+    private static final EnumMap<Lane, Double> passes = new EnumMap<>(Lane.class);
+
+    static {
+        for (Lane lane : Lane.values()) {
+            queues.put(lane, new ArrayDeque<>());
+            passes.put(lane, 0D);
+        }
+    }
+
+    /**
+     * 已安排的下一次放行
+     */
+    private static ScheduledFuture<?> nextDispatch;
+
+    private static long nextDispatchAt;
+
+    /**
+     * 到时放行排队的请求
+     */
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "crm-quota-gate");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final int ASYNC_THREADS = 8;
+
+    private static final AtomicInteger asyncThreadCount = new AtomicInteger();
+
+    /**
+     * 异步调用各阶段(发送请求、处理结果、30004重试、写日志)的执行线程，调用方代码不在crm-quota-gate线程执行；
+     * 线程数固定，队列不设上限(入队已由调用许可限速)，拒绝任务会使依赖它的future永远不结束
+     */
+    private static final ThreadPoolExecutor asyncPool = new ThreadPoolExecutor(ASYNC_THREADS, ASYNC_THREADS,
+            60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+        Thread thread = new Thread(r, "crm-async-" + asyncThreadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        asyncPool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 获得许可次数、累计/最长等待时间、本地等待超时拒绝次数、接口返回30004次数
+     */
+    private static final AtomicLong acquiredCount = new AtomicLong();
+
+    private static final AtomicLong totalWaitNanos = new AtomicLong();
+
+    private static final AtomicLong maxWaitNanos = new AtomicLong();
+
+    private static final AtomicLong rejectedCount = new AtomicLong();
+
+    private static final AtomicLong rateLimitedCount = new AtomicLong();
+
+    private CrmQuotaGate() {}
+
+    public static synchronized void init(CrmQuotaConfig quotaConfig) {
+        config = quotaConfig;
+        intervalNanos = intervalNanos(quotaConfig);
+        permits = Math.min(permits, capacity());
+        LOG.info("crm quota gate init, permits:{} period:{}ms burst:{} interactiveShare:{}",
+                quotaConfig.getPermits(), quotaConfig.getPeriod(), quotaConfig.getBurst(),
+                quotaConfig.getInteractiveShare());
+    }
+
+    private static long intervalNanos(CrmQuotaConfig quotaConfig) {
+        return TimeUnit.MILLISECONDS.toNanos(quotaConfig.getPeriod()) / Math.max(1, quotaConfig.getPermits());
+    }
+
+    /**
+     * 当前线程后续crm调用使用的队列，try-with-resources结束后恢复原队列
+     */
+    public static LaneScope lane(Lane lane) {
+        Lane previous = LANE.get();
+        LANE.set(lane);
+        return () -> {
+            if (previous == null) {
+                LANE.remove();
+            } else {
+                LANE.set(previous);
+            }
+        };
+    }
+
+    public static Lane currentLane() {
+        Lane lane = LANE.get();
+        return lane == null ? Lane.INTERACTIVE : lane;
+    }
+
+    /**
+     * 提交到线程池的任务沿用提交线程的队列
+     */
+    public static <T> Supplier<T> wrap(Supplier<T> task) {
+        Lane lane = LANE.get();
+        if (lane == null) {
+            return task;
+        }
+        return () -> {
+            LaneScope scope = lane(lane);
+            try {
+                return task.get();
+            } finally {
+                scope.close();
+            }
+        };
+    }
+
+    /**
+     * 经executor执行的任务沿用当前线程(调用此方法时)的队列
+     */
+    public static Executor wrap(Executor executor) {
+        Lane lane = LANE.get();
+        if (lane == null) {
+            return executor;
+        }
+        return task -> executor.execute(() -> {
+            LaneScope scope = lane(lane);
+            try {
+                task.run();
+            } finally {
+                scope.close();
+            }
+        });
+    }
+
+    /**
+     * 异步调用后续阶段使用的线程，沿用当前线程的队列和业务流程，须在切换线程前(调用线程上)取得；
+     * acquireAsync、backoffAsync返回的future在crm-quota-gate线程完成，其后续阶段都要用*Async(..., asyncExecutor())，
+     * 否则阻塞的后续阶段(如取token时同步acquire)会卡住放行线程，所有调用都拿不到许可
+     */
+    public static Executor asyncExecutor() {
+        return IntegrationMetrics.wrap(wrap(asyncPool));
+    }
+
+    /**
+     * 阻塞等待许可
+     *
+     * @return false 等待超过maxWait，调用方应按30004处理
+     */
+    public static boolean acquire() {
+        return acquireAsync().join();
+    }
+
+    /**
+     * 非阻塞等待许可，排队的请求在crm-quota-gate线程完成，后续阶段须切换到asyncExecutor()
+     *
+     * @return false 等待超过maxWait
+     */
+    public static CompletableFuture<Boolean> acquireAsync() {
+        Lane lane = currentLane();
+        long now = System.nanoTime();
+        Waiter waiter = new Waiter(lane, now, now + TimeUnit.MILLISECONDS.toNanos(config.getMaxWait()));
+        List<Waiter> done;
+        synchronized (CrmQuotaGate.class) {
+            Deque<Waiter> queue = queues.get(lane);
+            if (queue.isEmpty()) {
+                // 空闲的队列不能攒下轮转额度
+                passes.put(lane, Math.max(passes.get(lane), minBackloggedPass()));
+            }
+            queue.add(waiter);
+            done = dispatch(now);
+        }
+        complete(done);
+        return waiter.future;
+    }
+
+    private static void dispatchLater() {
+        List<Waiter> done;
+        synchronized (CrmQuotaGate.class) {
+            nextDispatch = null;
+            done = dispatch(System.nanoTime());
+        }
+        complete(done);
+    }
+
+    /**
+     * 放行能放行的请求，移除等待超时的请求，并安排下一次放行；调用方持有锁，返回的请求在锁外完成
+     */
+    private static List<Waiter> dispatch(long now) {
+        refill(now);
+        List<Waiter> done = new ArrayList<>();
+        for (Deque<Waiter> queue : queues.values()) {
+            while (!queue.isEmpty() && queue.peek().deadline < now) {
+                done.add(queue.poll());
+            }
+        }
+        Lane lane;
+        while ((lane = nextLane()) != null) {
+            Waiter waiter = queues.get(lane).poll();
+            permits -= 1;
+            passes.put(lane, passes.get(lane) + 1 / weight(lane));
+            waiter.granted = true;
+            done.add(waiter);
+        }
+        scheduleNext(now);
+        return done;
+    }
+
+    /**
+     * 下一个可放行的队列，没有可用许可或没有排队时为null
+     */
+    private static Lane nextLane() {
+        if (permits < 1) {
+            return null;
+        }
+        Deque<Waiter> interactive = queues.get(Lane.INTERACTIVE);
+        Deque<Waiter> bulk = queues.get(Lane.BULK);
+        if (interactive.isEmpty()) {
+            // 只有批量排队时保留突发余量给随时到来的交互请求
+            return !bulk.isEmpty() && permits - 1 >= reserved() ? Lane.BULK : null;
+        }
+        if (bulk.isEmpty() || weight(Lane.BULK) <= 0) {
+            return Lane.INTERACTIVE;
+        }
+        return passes.get(Lane.BULK) < passes.get(Lane.INTERACTIVE) ? Lane.BULK : Lane.INTERACTIVE;
+    }
+
+    private static double minBackloggedPass() {
+        double min = Double.MAX_VALUE;
+        for (Lane lane : Lane.values()) {
+            if (!queues.get(lane).isEmpty()) {
+                min = Math.min(min, passes.get(lane));
+            }
+        }
+        return min == Double.MAX_VALUE ? 0 : min;
+    }
+
+    private static double weight(Lane lane) {
+        double share = Math.max(0, Math.min(1, config.getInteractiveShare()));
+        return lane == Lane.INTERACTIVE ? share : 1 - share;
+    }
+
+    private static double capacity() {
+        return Math.max(1, config.getBurst());
+    }
+
+    /**
+     * 批量请求不能用掉的突发许可数；burst为0(严格匀速)时没有可积攒的许可，不保留，
+     * 只有批量排队时批量按匀速用满配额，交互请求到来后与批量同时排队，按interactiveShare比例放行
+     */
+    private static double reserved() {
+        return Math.floor(config.getBurst() * Math.max(0, Math.min(1, config.getInteractiveShare())));
+    }
+
+    private static void refill(long now) {
+        if (now > refilledAt) {
+            permits = Math.min(capacity(), permits + (double) (now - refilledAt) / intervalNanos);
+            refilledAt = now;
+        }
+    }
+
+    /**
+     * 还有排队时，在下一个许可可用或最早的等待超时时再放行
+     */
+    private static void scheduleNext(long now) {
+        long at = Long.MAX_VALUE;
+        for (Deque<Waiter> queue : queues.values()) {
+            if (!queue.isEmpty()) {
+                at = Math.min(at, queue.peek().deadline);
+            }
+        }
+        if (at == Long.MAX_VALUE) {
+            return;
+        }
+        Deque<Waiter> interactive = queues.get(Lane.INTERACTIVE);
+        double needed = interactive.isEmpty() ? 1 + reserved() : 1;
+        long start = Math.max(now, refilledAt);
+        at = Math.min(at, start + (long) Math.ceil(Math.max(0, needed - permits) * intervalNanos));
+        if (nextDispatch != null && nextDispatchAt <= at) {
+            return;
+        }
+        if (nextDispatch != null) {
+            nextDispatch.cancel(false);
+        }
+        nextDispatchAt = at;
+        nextDispatch = scheduler.schedule(CrmQuotaGate::dispatchLater, Math.max(0, at - now), TimeUnit.NANOSECONDS);
+    }
+
+    private static void complete(List<Waiter> done) {
+        long now = System.nanoTime();
+        for (Waiter waiter : done) {
+            if (waiter.granted) {
+                record(waiter.lane, now - waiter.enqueuedAt);
+            } else {
+                rejectedCount.incrementAndGet();
+                IntegrationMetrics.quotaRejected();
+                LOG.warn("crm quota gate rejected, {} wait exceeds {}ms", waiter.lane, config.getMaxWait());
+            }
+            waiter.future.complete(waiter.granted);
+        }
+    }
+
+    private static void record(Lane lane, long wait) {
+        acquiredCount.incrementAndGet();
+        totalWaitNanos.addAndGet(wait);
+        IntegrationMetrics.quotaWait(lane.name(), wait);
+        long max;
+        while (wait > (max = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(max, wait)) {
+        }
+    }
+
+    /**
+     * 接口返回30004：其他进程或系统也在使用同一企业配额，整个桶暂停一个退避基础时间
+     */
+    public static synchronized void onRateLimited() {
+        rateLimitedCount.incrementAndGet();
+        IntegrationMetrics.rateLimited();
+        long now = System.nanoTime();
+        refill(now);
+        permits = 0;
+        refilledAt = Math.max(refilledAt, now + TimeUnit.MILLISECONDS.toNanos(config.getBackoffBase()));
+    }
+
+    public static int maxRetries() {
+        return config.getMaxRetries();
+    }
+
+    /**
+     * 30004重试前的退避：min(backoffMax, backoffBase * 2^attempt)，在[一半, 全部]之间随机，错开各线程的重试时间
+     *
+     * @param attempt 第几次重试，从0开始
+     */
+    public static void backoff(int attempt) throws InterruptedException {
+        Thread.sleep(backoffMillis(attempt));
+    }
+
+    /**
+     * 异步调用的退避，不占用线程，到时在crm-quota-gate线程结束返回的future，后续阶段须切换到asyncExecutor()
+     */
+    public static CompletableFuture<Void> backoffAsync(int attempt) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        scheduler.schedule(() -> future.complete(null), backoffMillis(attempt), TimeUnit.MILLISECONDS);
+        return future;
+    }
+
+    private static long backoffMillis(int attempt) {
+        long ceiling = Math.min(config.getBackoffMax(), config.getBackoffBase() << Math.min(attempt, 16));
+        long sleep = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+        LOG.info("crm rate limited(30004), retry {} after {}ms", attempt + 1, sleep);
+        return sleep;
+    }
+
+    public static long getAcquiredCount() {
+        return acquiredCount.get();
+    }
+
+    public static long getTotalWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get());
+    }
+
+    public static long getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+    }
+
+    public static long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public static long getRateLimitedCount() {
+        return rateLimitedCount.get();
+    }
+
+    public static synchronized int getQueued(Lane lane) {
+        return queues.get(lane).size();
+    }
+
+    /**
+     * lane(Lane)的作用范围
+     */
+    public interface LaneScope extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+
+    /**
+     * 排队等待许可的请求
+     */
+    private static class Waiter {
+
+        private final Lane lane;
+
+        private final long enqueuedAt;
+
+        private final long deadline;
+
+        private final CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        private boolean granted;
+
+        private Waiter(Lane lane, long enqueuedAt, long deadline) {
+            this.lane = lane;
+            this.enqueuedAt = enqueuedAt;
+            this.deadline = deadline;
+        }
+    }
+}
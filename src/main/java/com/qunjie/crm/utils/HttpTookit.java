@@ -1,32 +1,58 @@
 package com.qunjie.crm.utils;
 
 import com.google.gson.Gson;
+import com.qunjie.crm.config.CrmHttpConfig;
 import com.qunjie.crm.exception.BaseException;
 import com.qunjie.crm.beans.HttpResponseMessageVO;
 import com.qunjie.crm.beans.args.Arg;
 import com.qunjie.crm.beans.results.BaseResult;
-import com.qunjie.crm.beans.results.Result;
 import org.apache.commons.lang.StringUtils;
+import org.apache.http.HeaderElement;
+import org.apache.http.HeaderElementIterator;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLContextBuilder;
 import org.apache.http.conn.ssl.TrustStrategy;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HTTP;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.net.ssl.SSLContext;
+import java.io.Closeable;
+import java.io.InputStream;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * https 请求工具类
@@ -38,38 +64,238 @@ public class HttpTookit {
 
     private static final Logger LOG = LoggerFactory.getLogger(HttpTookit.class);
 
-    private static final CloseableHttpClient httpClient;
+    private static volatile CloseableHttpClient httpClient;
+
+    private static volatile PoolingHttpClientConnectionManager connectionManager;
+
+    private static volatile ScheduledExecutorService evictor;
+
+    private static volatile CrmHttpConfig httpConfig = new CrmHttpConfig();
+
+    /**
+     * 异步httpClient(NIO)，首次调用异步接口时按当前配置创建
+     */
+    private static volatile CloseableHttpAsyncClient asyncClient;
+
+    /**
+     * 异步请求超时计时器，到期后以TimeoutException结束future并取消底层请求
+     */
+    private static final ScheduledExecutorService timeoutScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "crm-http-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 请求总数、获取连接超时次数，配合PoolStats观察连接池是否够用
+     */
+    private static final AtomicLong requestCount = new AtomicLong();
+
+    private static final AtomicLong leaseTimeoutCount = new AtomicLong();
 
     public static final String CHARSET = "UTF-8";
 
     static {
-        // 饱含模式实现 httpClient 单例
+        // 饱含模式实现 httpClient 单例，spring启动后由CrmHttpConfig按配置重建
         httpClient = createSSLClientDefault();
     }
 
     private HttpTookit() {}
 
     public static CloseableHttpClient createSSLClientDefault() {
-        RequestConfig config = RequestConfig.custom().setConnectTimeout(600000).setSocketTimeout(150000).build();
+        return createSSLClient(new CrmHttpConfig());
+    }
+
+    /**
+     * 按配置创建带连接池的httpClient
+     *
+     * @param config @see CrmHttpConfig
+     * @return
+     */
+    public static synchronized CloseableHttpClient createSSLClient(CrmHttpConfig config) {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(config.getConnectTimeout())
+                .setConnectionRequestTimeout(config.getConnectionRequestTimeout())
+                .setSocketTimeout(config.getSocketTimeout())
+                .build();
 
         try {
-            SSLContext sslContext = new SSLContextBuilder().loadTrustMaterial(null, new TrustStrategy() {
-                // 信任所有
-                @Override
-                public boolean isTrusted(X509Certificate[] chain, String authType) throws CertificateException {
-                    return true;
-                }
-            }).build();
+            SSLContext sslContext = trustAllSSLContext();
 
             SSLConnectionSocketFactory sslsf =
                     new SSLConnectionSocketFactory(sslContext, SSLConnectionSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
 
-            return HttpClients.custom().setSSLSocketFactory(sslsf).setDefaultRequestConfig(config).build();
+            Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+                    .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                    .register("https", sslsf)
+                    .build();
+
+            PoolingHttpClientConnectionManager manager = new PoolingHttpClientConnectionManager(registry);
+            manager.setMaxTotal(config.getMaxTotal());
+            manager.setDefaultMaxPerRoute(config.getMaxPerRoute());
+
+            CloseableHttpClient client = HttpClients.custom()
+                    .setConnectionManager(manager)
+                    .setKeepAliveStrategy(keepAliveStrategy(config.getKeepAlive()))
+                    .setDefaultRequestConfig(requestConfig)
+                    .build();
+            connectionManager = manager;
+            return client;
         } catch (Exception e) {
             LOG.error("init httpClient error, details:", e);
         }
 
-        return HttpClients.createDefault();
+        return HttpClients.custom().setDefaultRequestConfig(requestConfig).build();
+    }
+
+    /**
+     * 按配置创建异步httpClient，与同步连接池使用相同的连接数、超时和保活配置
+     *
+     * @param config @see CrmHttpConfig
+     * @return
+     */
+    private static CloseableHttpAsyncClient createSSLAsyncClient(CrmHttpConfig config) {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(config.getConnectTimeout())
+                .setConnectionRequestTimeout(config.getConnectionRequestTimeout())
+                .setSocketTimeout(config.getSocketTimeout())
+                .build();
+
+        CloseableHttpAsyncClient client;
+        try {
+            client = HttpAsyncClients.custom()
+                    .setSSLContext(trustAllSSLContext())
+                    .setHostnameVerifier(SSLConnectionSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER)
+                    .setMaxConnTotal(config.getMaxTotal())
+                    .setMaxConnPerRoute(config.getMaxPerRoute())
+                    .setKeepAliveStrategy(keepAliveStrategy(config.getKeepAlive()))
+                    .setDefaultRequestConfig(requestConfig)
+                    .build();
+        } catch (Exception e) {
+            LOG.error("init httpAsyncClient error, details:", e);
+            client = HttpAsyncClients.custom().setDefaultRequestConfig(requestConfig).build();
+        }
+        client.start();
+        return client;
+    }
+
+    private static CloseableHttpAsyncClient asyncClient() {
+        CloseableHttpAsyncClient client = asyncClient;
+        if (client == null) {
+            synchronized (HttpTookit.class) {
+                client = asyncClient;
+                if (client == null) {
+                    client = createSSLAsyncClient(httpConfig);
+                    asyncClient = client;
+                }
+            }
+        }
+        return client;
+    }
+
+    private static SSLContext trustAllSSLContext() throws Exception {
+        return new SSLContextBuilder().loadTrustMaterial(null, new TrustStrategy() {
+            // 信任所有
+            @Override
+            public boolean isTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+                return true;
+            }
+        }).build();
+    }
+
+    /**
+     * 优先使用服务端Keep-Alive头中的timeout，没有则使用配置的保活时间
+     */
+    private static ConnectionKeepAliveStrategy keepAliveStrategy(long defaultKeepAlive) {
+        return (response, context) -> {
+            HeaderElementIterator it = new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+            while (it.hasNext()) {
+                HeaderElement he = it.nextElement();
+                if (he.getValue() != null && "timeout".equalsIgnoreCase(he.getName())) {
+                    try {
+                        return Long.parseLong(he.getValue()) * 1000;
+                    } catch (NumberFormatException ignore) {
+                    }
+                }
+            }
+            return defaultKeepAlive;
+        };
+    }
+
+    /**
+     * 按配置重建连接池，并启动过期、空闲连接回收线程
+     *
+     * @param config @see CrmHttpConfig
+     */
+    public static synchronized void init(CrmHttpConfig config) {
+        httpConfig = config;
+        CloseableHttpClient old = httpClient;
+        httpClient = createSSLClient(config);
+        closeQuietly(old);
+        // 异步client下次使用时按新配置重建
+        closeQuietly(asyncClient);
+        asyncClient = null;
+
+        if (evictor != null) {
+            evictor.shutdownNow();
+        }
+        evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "crm-http-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        evictor.scheduleWithFixedDelay(() -> {
+            PoolingHttpClientConnectionManager manager = connectionManager;
+            if (manager == null) {
+                return;
+            }
+            manager.closeExpiredConnections();
+            manager.closeIdleConnections(config.getIdleTimeout(), TimeUnit.MILLISECONDS);
+            if (LOG.isDebugEnabled()) {
+                PoolStats stats = manager.getTotalStats();
+                LOG.debug("crm http pool leased:{} pending:{} available:{} max:{} requests:{} leaseTimeouts:{}",
+                        stats.getLeased(), stats.getPending(), stats.getAvailable(), stats.getMax(),
+                        requestCount.get(), leaseTimeoutCount.get());
+            }
+        }, config.getEvictInterval(), config.getEvictInterval(), TimeUnit.MILLISECONDS);
+        LOG.info("crm httpClient init, maxTotal:{} maxPerRoute:{}", config.getMaxTotal(), config.getMaxPerRoute());
+    }
+
+    public static synchronized void shutdown() {
+        if (evictor != null) {
+            evictor.shutdownNow();
+            evictor = null;
+        }
+        closeQuietly(httpClient);
+        closeQuietly(asyncClient);
+        asyncClient = null;
+    }
+
+    /**
+     * 连接池使用情况(已租借、等待、空闲、最大)
+     */
+    public static PoolStats getPoolStats() {
+        PoolingHttpClientConnectionManager manager = connectionManager;
+        return manager != null ? manager.getTotalStats() : null;
+    }
+
+    public static long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public static long getLeaseTimeoutCount() {
+        return leaseTimeoutCount.get();
+    }
+
+    private static void closeQuietly(Closeable client) {
+        if (client == null) {
+            return;
+        }
+        try {
+            client.close();
+        } catch (Exception e) {
+            LOG.warn("close httpClient error, details:", e);
+        }
     }
 
     /**
@@ -95,6 +321,7 @@ public class HttpTookit {
             HttpPost request = new HttpPost(url);
             request.addHeader("Content-type", "application/json");
             request.setEntity(params);
+            requestCount.incrementAndGet();
             response = httpClient.execute(request);
 
             int statusCode = response.getStatusLine().getStatusCode();
@@ -104,6 +331,11 @@ public class HttpTookit {
             if (statusCode == HttpStatus.SC_OK && entity != null) {
                 httpResponseMessageVO.setContent(EntityUtils.toString(entity, CHARSET));
             }
+        } catch (ConnectionPoolTimeoutException e) {
+            leaseTimeoutCount.incrementAndGet();
+            LOG.error("sendPostByJson lease connection timeout, details:", e);
+            throw new BaseException(Constants.interfaceException.INTERFACE_EXCEPTION.code,
+                    Constants.interfaceException.INTERFACE_EXCEPTION.msg);
         } catch (Exception e) {
             LOG.error("sendPostByJson error, details:", e);
             throw new BaseException(Constants.interfaceException.INTERFACE_EXCEPTION.code,
@@ -124,36 +356,136 @@ public class HttpTookit {
         return httpResponseMessageVO;
     }
 
-    private static Result<String> sendPostByJson(String url, Arg arg) {
-        Result<String> result = new Result<String>();
+    /**
+     * post + json 异步发送请求，不占用调用线程
+     *
+     * @param url
+     * @param parameters
+     * @param timeoutMillis 整体超时(毫秒)，到期以TimeoutException结束并取消请求，小于等于0不限制
+     * @return 非200时content为空，与同步方法一致；取消返回的future会同时取消底层请求
+     */
+    public static CompletableFuture<HttpResponseMessageVO> sendPostByJsonAsync(String url, String parameters,
+                                                                              long timeoutMillis) {
+        CompletableFuture<HttpResponseMessageVO> future = new CompletableFuture<>();
         if (StringUtils.isEmpty(url)) {
-            result.setCode(Constants.interfaceException.ILLEGAL_ARGUMENT.code);
-            result.setMsg(Constants.interfaceException.ILLEGAL_ARGUMENT.msg + ":" + url);
-            return result;
+            future.completeExceptionally(new BaseException(Constants.interfaceException.ILLEGAL_ARGUMENT.code,
+                    Constants.interfaceException.ILLEGAL_ARGUMENT.msg + ": url is illegal !"));
+            return future;
         }
+
+        HttpPost request = new HttpPost(url);
+        request.addHeader("Content-type", "application/json");
+        request.setEntity(new StringEntity(parameters, CHARSET));
+        requestCount.incrementAndGet();
+        Future<HttpResponse> httpFuture;
+        try {
+            httpFuture = asyncClient().execute(request, new FutureCallback<HttpResponse>() {
+                @Override
+                public void completed(HttpResponse response) {
+                    HttpResponseMessageVO httpResponseMessageVO = new HttpResponseMessageVO();
+                    HttpEntity entity = response.getEntity();
+                    try {
+                        int statusCode = response.getStatusLine().getStatusCode();
+                        httpResponseMessageVO.setHttpCode(Integer.toString(statusCode));
+                        if (statusCode == HttpStatus.SC_OK && entity != null) {
+                            httpResponseMessageVO.setContent(EntityUtils.toString(entity, CHARSET));
+                        }
+                        future.complete(httpResponseMessageVO);
+                    } catch (Exception e) {
+                        LOG.error("sendPostByJsonAsync read response error, details:", e);
+                        future.completeExceptionally(new BaseException(Constants.interfaceException.INTERFACE_EXCEPTION.code,
+                                Constants.interfaceException.INTERFACE_EXCEPTION.msg, e));
+                    }
+                }
+
+                @Override
+                public void failed(Exception e) {
+                    if (e instanceof ConnectionPoolTimeoutException) {
+                        leaseTimeoutCount.incrementAndGet();
+                    }
+                    LOG.error("sendPostByJsonAsync error, details:", e);
+                    future.completeExceptionally(new BaseException(Constants.interfaceException.INTERFACE_EXCEPTION.code,
+                            Constants.interfaceException.INTERFACE_EXCEPTION.msg, e));
+                }
+
+                @Override
+                public void cancelled() {
+                    future.cancel(false);
+                }
+            });
+        } catch (Exception e) {
+            LOG.error("sendPostByJsonAsync error, details:", e);
+            future.completeExceptionally(new BaseException(Constants.interfaceException.INTERFACE_EXCEPTION.code,
+                    Constants.interfaceException.INTERFACE_EXCEPTION.msg, e));
+            return future;
+        }
+
+        if (timeoutMillis > 0) {
+            ScheduledFuture<?> timer = timeoutScheduler.schedule(() -> future.completeExceptionally(
+                    new TimeoutException("sendPostByJsonAsync timeout " + timeoutMillis + "ms: " + url)),
+                    timeoutMillis, TimeUnit.MILLISECONDS);
+            future.whenComplete((r, t) -> timer.cancel(false));
+        }
+        // 超时或调用方取消时中断底层请求，释放连接
+        future.whenComplete((r, t) -> {
+            if (t != null) {
+                httpFuture.cancel(true);
+            }
+        });
+        return future;
+    }
+
+    public static CompletableFuture<HttpResponseMessageVO> sendPostByJsonAsync(String url, String parameters) {
+        return sendPostByJsonAsync(url, parameters, httpConfig.getAsyncTimeout());
+    }
+
+    /**
+     * post + json 发送请求，请求体由JsonCodec直接序列化为字节，200时从响应流直接解析为clazz，不生成中间字符串
+     *
+     * @param url
+     * @param body 请求参数对象
+     * @param clazz 返回类型
+     * @return 响应体为空时返回null
+     * @throws BaseException url非法、http状态非200或通信异常
+     */
+    public static <T> T postJson(String url, Object body, Class<T> clazz) throws BaseException {
+        if (StringUtils.isEmpty(url)) {
+            throw new BaseException(Constants.interfaceException.ILLEGAL_ARGUMENT.code,
+                    Constants.interfaceException.ILLEGAL_ARGUMENT.msg + ": url is illegal !");
+        }
+
         CloseableHttpResponse response = null;
         HttpEntity entity = null;
         try {
-            StringEntity params = new StringEntity(new Gson().toJson(arg), CHARSET);
             HttpPost request = new HttpPost(url);
             request.addHeader("Content-type", "application/json");
-            request.setEntity(params);
+            request.setEntity(JsonCodec.toEntity(body));
+            requestCount.incrementAndGet();
             response = httpClient.execute(request);
 
             int statusCode = response.getStatusLine().getStatusCode();
             entity = response.getEntity();
-            
-            if (statusCode == HttpStatus.SC_OK && entity != null) {
-                result.setData(EntityUtils.toString(entity, CHARSET));
-            } else {
-                result.setCode(Constants.interfaceException.INTERFACE_EXCEPTION.code);
-                result.setMsg(Constants.interfaceException.INTERFACE_EXCEPTION.msg + ":" + url + ",HTTP Status Code:"
-                        + statusCode);
+            if (statusCode != HttpStatus.SC_OK) {
+                throw new BaseException(Constants.interfaceException.INTERFACE_EXCEPTION.code,
+                        Constants.interfaceException.INTERFACE_EXCEPTION.msg + ",HTTP Status Code:" + statusCode);
+            }
+            if (entity == null) {
+                return null;
             }
+            try (InputStream in = entity.getContent()) {
+                return JsonCodec.fromJson(in, clazz);
+            }
+        } catch (BaseException e) {
+            throw e;
+        } catch (ConnectionPoolTimeoutException e) {
+            leaseTimeoutCount.incrementAndGet();
+            LOG.error("postJson lease connection timeout, details:", e);
+            throw new BaseException(Constants.interfaceException.INTERFACE_EXCEPTION.code,
+                    "获取http连接超时,连接池已满！异常错误:" + e.getMessage());
         } catch (Exception e) {
-            LOG.error("sendPostByJson error, details:", e);
-            result.setCode(Constants.interfaceException.INTERFACE_EXCEPTION.code);
-            result.setMsg("发送请求异常,请检查url、参数的合法性！异常错误:" + e.getMessage());
+            LOG.error("postJson error, details:", e);
+            throw new BaseException(Constants.interfaceException.INTERFACE_EXCEPTION.code,
+                    "发送请求异常,请检查url、参数的合法性！异常错误:" + e.getMessage());
         }finally{
             try{
                 if(entity != null){
@@ -163,35 +495,29 @@ public class HttpTookit {
                     response.close();
                 }
             }catch(Exception e){
-                
+
             }
         }
-        return result;
     }
 
     public static <T extends BaseResult> T sendPostByJson(String url, Arg arg, Class<T> clazz) {
-        Result<String> result = sendPostByJson(url, arg);
-
-        if (result.getCode() == 0) {
-            Gson gson = new Gson();
-            return gson.fromJson(result.getData(), clazz);
-        }
-
-        T t = null;
-
         try {
-            t = clazz.newInstance();
-            t.setErrorCode(result.getCode());
-            t.setErrorMessage(result.getMsg());
-        } catch (Exception e) {
-            LOG.error("sendPostByJson error, details:", e);
+            return postJson(url, arg, clazz);
+        } catch (BaseException e) {
+            T t = null;
+            try {
+                t = clazz.newInstance();
+                t.setErrorCode(e.getCode());
+                t.setErrorMessage(e.getMsg());
+            } catch (Exception ex) {
+                LOG.error("sendPostByJson error, details:", ex);
+            }
+            return t;
         }
-
-        return t;
     }
 
     public static void main(String[] args) throws Exception {
-        Gson gson = new Gson();
+        Gson gson = JsonCodec.gson();
 
         String token = "testToken";
         String nonce = "9890d0eb-5aa9-4f45-9a28-0b05fdfb2588";
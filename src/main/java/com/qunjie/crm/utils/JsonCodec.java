@@ -0,0 +1,71 @@
+package com.qunjie.crm.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+
+import java.io.*;
+import java.nio.charset.Charset;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.crm.utils.JsonCodec
+ * Description: 纷享销客请求/响应json编解码，共享一个Gson实例(线程安全，TypeAdapter按类型缓存)，
+ *              请求体直接序列化为字节，响应体从输入流解析，不生成中间字符串
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+public class JsonCodec {
+
+    private static final Charset UTF_8 = Charset.forName(HttpTookit.CHARSET);
+
+    /**
+     * 与原来各处new Gson()的默认配置一致
+     */
+    private static final Gson GSON = new Gson();
+
+    private JsonCodec() {}
+
+    public static Gson gson() {
+        return GSON;
+    }
+
+    public static String toJson(Object src) {
+        return GSON.toJson(src);
+    }
+
+    public static <T> T fromJson(String json, Class<T> clazz) {
+        return GSON.fromJson(json, clazz);
+    }
+
+    /**
+     * 从输入流解析，流由调用方关闭
+     */
+    public static <T> T fromJson(InputStream in, Class<T> clazz) {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, UTF_8));
+        return GSON.fromJson(reader, clazz);
+    }
+
+    /**
+     * 序列化到输出流，不关闭流
+     */
+    public static void toJson(Object src, OutputStream out) throws IOException {
+        // 与GSON.toJson(Object)相同的writer设置(html转义等)，请求体与原来逐字节一致
+        JsonWriter writer = GSON.newJsonWriter(new BufferedWriter(new OutputStreamWriter(out, UTF_8)));
+        GSON.toJson(src, src.getClass(), writer);
+        writer.flush();
+    }
+
+    /**
+     * 请求体，序列化一次写入字节数组(不经过中间字符串)，长度已知，发送和重试时不再序列化；
+     * Content-type由调用方按原来的"application/json"头设置
+     */
+    public static HttpEntity toEntity(Object src) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        toJson(src, out);
+        return new ByteArrayEntity(out.toByteArray());
+    }
+}
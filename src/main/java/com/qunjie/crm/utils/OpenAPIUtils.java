@@ -1,6 +1,8 @@
 package com.qunjie.crm.utils;
 
-import com.google.gson.Gson;
+import com.qunjie.common.metrics.IntegrationMetrics;
+import com.qunjie.common.resilience.DependencyUnavailableException;
+import com.qunjie.common.resilience.Resilience;
 import com.qunjie.crm.attendance.args.AttendanceQueryArg;
 import com.qunjie.crm.attendance.result.AttendanceQueryResult;
 import com.qunjie.crm.beans.AppReqParmVO;
@@ -15,6 +17,12 @@ import com.qunjie.crm.query.results.QueryResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
+
 /**
  * 开放平台Api调用的工具类
  * 
@@ -291,48 +299,193 @@ public class OpenAPIUtils {
     }
 
     private static <T extends BaseResult> T doPost(String url, Arg arg, Class<T> clazz) {
-        T t = null;
-        Result<String> result = doPost(url, arg);
-        if (result.getCode() == 0) {
-            t = new Gson().fromJson(result.getData(), clazz);
-        }
-
-        if (t != null) {
-            return t;
+        Result<String> result = new Result<String>();
+        if (!CrmQuotaGate.acquire()) {
+            return rateLimited(clazz);
         }
 
         try {
-            t = clazz.newInstance();
-            t.setErrorCode(result.getCode());
-            t.setErrorMessage(result.getMsg());
-        } catch (Exception e) {
+            T t = IntegrationMetrics.timed(Resilience.CRM, endpoint(url),
+                    () -> Resilience.call(Resilience.CRM, BaseException.class, () -> HttpTookit.postJson(url, arg, clazz)),
+                    OpenAPIUtils::resultTag);
+            if (t != null) {
+                if (t.getErrorCode() == CrmQuotaGate.RATE_LIMITED_CODE) {
+                    CrmQuotaGate.onRateLimited();
+                }
+                return t;
+            }
+        } catch (BaseException e) {
             LOG.error("doPost error, details:", e);
+            result.setMsg(e.getMessage());
+            result.setCode(e.getCode());
+        } catch (DependencyUnavailableException e) {
+            LOG.warn("doPost {} fail fast, {}", url, e.getMessage());
+            result.setMsg(e.getMessage());
+            result.setCode(Constants.interfaceException.INTERFACE_EXCEPTION.code);
         }
-        return t;
+
+        return toResult(result, clazz);
     }
 
-    private static Result<String> doPost(String url, Arg arg) {
-        Result<String> result = new Result<String>();
+    /**
+     * 异步post，不阻塞调用线程；http异常、超时同步方法一样转换为errorCode，调用方取消时future以CancellationException结束，
+     * 请求序列化等本地异常时future以该异常结束
+     *
+     * @param timeoutMillis 整体超时(毫秒)，从获得调用许可后开始计算，小于等于0使用fs.http.async-timeout配置
+     */
+    private static <T extends BaseResult> CompletableFuture<T> doPostAsync(String url, Arg arg, Class<T> clazz,
+                                                                        long timeoutMillis) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        // 后续阶段在crm-async线程执行，沿用调用线程的队列和业务流程
+        Executor executor = CrmQuotaGate.asyncExecutor();
+        CrmQuotaGate.acquireAsync().whenCompleteAsync((permitted, gateEx) -> {
+            if (result.isDone()) {
+                // 等待许可期间已被调用方取消
+                return;
+            }
+            if (gateEx != null) {
+                result.completeExceptionally(gateEx);
+                return;
+            }
+            if (!permitted) {
+                result.complete(rateLimited(clazz));
+                return;
+            }
+            // 同同步调用一样经过熔断和并发限制，请求结束时释放
+            Resilience.Permit permit;
+            try {
+                permit = Resilience.acquire(Resilience.CRM);
+            } catch (DependencyUnavailableException e) {
+                LOG.warn("doPostAsync {} fail fast, {}", url, e.getMessage());
+                IntegrationMetrics.record(Resilience.CRM, endpoint(url), IntegrationMetrics.UNAVAILABLE, 0);
+                Result<String> unavailable = new Result<String>();
+                unavailable.setMsg(e.getMessage());
+                unavailable.setCode(Constants.interfaceException.INTERFACE_EXCEPTION.code);
+                result.complete(toResult(unavailable, clazz));
+                return;
+            }
+            try {
+                send(url, arg, clazz, timeoutMillis, executor, permit, result);
+            } catch (Throwable e) {
+                // 序列化、构造请求等失败，返回的future必须结束，否则join的调用方永远阻塞
+                LOG.error("doPostAsync error, url:{}, details:", url, e);
+                permit.ignore();
+                result.completeExceptionally(e);
+            }
+        }, executor);
+        return result;
+    }
 
-        try {
-            HttpResponseMessageVO resp = HttpTookit.sendPostByJson(url, new Gson().toJson(arg));
+    private static <T extends BaseResult> void send(String url, Arg arg, Class<T> clazz, long timeoutMillis,
+                                                    Executor executor, Resilience.Permit permit,
+                                                    CompletableFuture<T> result) {
+        String json = JsonCodec.toJson(arg);
+        long start = System.nanoTime();
+        CompletableFuture<HttpResponseMessageVO> future = timeoutMillis > 0
+                ? HttpTookit.sendPostByJsonAsync(url, json, timeoutMillis)
+                : HttpTookit.sendPostByJsonAsync(url, json);
+        future.whenCompleteAsync((resp, ex) -> {
+            // http异常、超时、非200计为失败，同同步调用
+            Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+            if (cause instanceof CancellationException) {
+                permit.ignore();
+            } else if (ex == null && "200".equals(resp.getHttpCode())) {
+                permit.success();
+            } else {
+                permit.failure();
+            }
+            try {
+                T t = toAsyncResult(url, resp, ex, clazz);
+                IntegrationMetrics.record(Resilience.CRM, endpoint(url), resultTag(t), System.nanoTime() - start);
+                if (t != null && t.getErrorCode() == CrmQuotaGate.RATE_LIMITED_CODE) {
+                    CrmQuotaGate.onRateLimited();
+                }
+                result.complete(t);
+            } catch (CancellationException e) {
+                result.cancel(false);
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        }, executor);
+        // 取消返回的future时同时取消http请求
+        result.whenComplete((t, ex) -> {
+            if (result.isCancelled()) {
+                future.cancel(true);
+            }
+        });
+    }
 
+    private static <T extends BaseResult> T toAsyncResult(String url, HttpResponseMessageVO resp, Throwable ex,
+                                                          Class<T> clazz) {
+        Result<String> r = new Result<String>();
+        if (ex == null) {
             if ("200".equals(resp.getHttpCode())) {
-                result.setData(resp.getContent());
+                r.setData(resp.getContent());
             } else {
-                result.setCode(Constants.interfaceException.INTERFACE_EXCEPTION.code);
-                result.setMsg(Constants.interfaceException.INTERFACE_EXCEPTION.msg.concat(",HTTP Status Code:").concat(
+                r.setCode(Constants.interfaceException.INTERFACE_EXCEPTION.code);
+                r.setMsg(Constants.interfaceException.INTERFACE_EXCEPTION.msg.concat(",HTTP Status Code:").concat(
                         resp.getHttpCode()));
             }
-        } catch (BaseException e) {
-            LOG.error("doPost error, details:", e);
-            result.setMsg(e.getMessage());
-            result.setCode(e.getCode());
+        } else {
+            Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+            if (cause instanceof CancellationException) {
+                throw (CancellationException) cause;
+            }
+            LOG.error("doPostAsync error, url:{}, details:", url, cause);
+            if (cause instanceof BaseException) {
+                r.setCode(((BaseException) cause).getCode());
+            } else {
+                r.setCode(Constants.interfaceException.INTERFACE_EXCEPTION.code);
+            }
+            r.setMsg(cause instanceof TimeoutException ? "请求超时:" + cause.getMessage() : cause.getMessage());
         }
+        return toResult(r, clazz);
+    }
 
-        return result;
+    /**
+     * 本地等待调用许可超时，按接口30004返回，由AccessTokenExpiredExceptionAspect退避重试
+     */
+    private static <T extends BaseResult> T rateLimited(Class<T> clazz) {
+        Result<String> result = new Result<String>();
+        result.setCode(CrmQuotaGate.RATE_LIMITED_CODE);
+        result.setMsg(Constants.interfaceResponseCode.RATE_LIMITED.msg);
+        return toResult(result, clazz);
+    }
+
+    /**
+     * 指标中的接口名，去掉域名
+     */
+    private static String endpoint(String url) {
+        return url.startsWith(prefix) ? url.substring(prefix.length()) : url;
+    }
+
+    private static String resultTag(BaseResult result) {
+        return result == null ? IntegrationMetrics.EXCEPTION : String.valueOf(result.getErrorCode());
     }
 
+    private static <T extends BaseResult> CompletableFuture<T> doPostAsync(String url, Arg arg, Class<T> clazz) {
+        return doPostAsync(url, arg, clazz, 0);
+    }
+
+    private static <T extends BaseResult> T toResult(Result<String> result, Class<T> clazz) {
+        T t = null;
+        if (result.getCode() == 0) {
+            t = JsonCodec.fromJson(result.getData(), clazz);
+        }
+
+        if (t != null) {
+            return t;
+        }
+
+        try {
+            t = clazz.newInstance();
+            t.setErrorCode(result.getCode());
+            t.setErrorMessage(result.getMsg());
+        } catch (Exception e) {
+            LOG.error("doPost error, details:", e);
+        }
+        return t;
+    }
 
     public static <T extends BaseResult> T saveData(BaseArg baseArg ,Class<T> clazz){
         String url = prefix + "/cgi/crm/v2/data/create";
@@ -392,4 +545,76 @@ public class OpenAPIUtils {
         String url = prefix + uri;
         return doPost(url, arg,AttendanceQueryResult.class);
     }
+
+    /*------------------------------------ 异步接口 ------------------------------------*/
+    // 直接调用时不经过AccessTokenExpiredExceptionAspect(token过期重置、30004退避重试、调用日志)，
+    // 业务代码应通过Manager的异步方法(如HuikuanManager.savePaymentAsync)调用
+
+    public static <T extends BaseResult> CompletableFuture<T> saveDataAsync(BaseArg baseArg, Class<T> clazz) {
+        String url = prefix + "/cgi/crm/v2/data/create";
+        return doPostAsync(url, baseArg, clazz);
+    }
+
+    public static <T extends BaseResult> CompletableFuture<T> saveCustomDataAsync(BaseArg baseArg, Class<T> clazz) {
+        String url = prefix + "/cgi/crm/custom/data/create";
+        return doPostAsync(url, baseArg, clazz);
+    }
+
+    public static CompletableFuture<QueryResult> queryDataAsync(QueryArg queryArg) {
+        String url = prefix + "/cgi/crm/v2/data/query";
+        return doPostAsync(url, queryArg, QueryResult.class);
+    }
+
+    /**
+     * @param timeoutMillis 整体超时(毫秒)，超时后返回errorCode非0的结果并取消请求
+     */
+    public static CompletableFuture<QueryResult> queryDataAsync(QueryArg queryArg, long timeoutMillis) {
+        String url = prefix + "/cgi/crm/v2/data/query";
+        return doPostAsync(url, queryArg, QueryResult.class, timeoutMillis);
+    }
+
+    public static CompletableFuture<QueryResult> queryCustomDataAsync(QueryArg queryArg) {
+        String url = prefix + "/cgi/crm/custom/data/query";
+        return doPostAsync(url, queryArg, QueryResult.class);
+    }
+
+    public static CompletableFuture<QueryResult> queryCustomDataAsync(QueryArg queryArg, long timeoutMillis) {
+        String url = prefix + "/cgi/crm/custom/data/query";
+        return doPostAsync(url, queryArg, QueryResult.class, timeoutMillis);
+    }
+
+    public static CompletableFuture<BaseResult> modifyCustomDataAsync(ModifyCustomArg arg) {
+        String url = prefix + "/cgi/crm/custom/data/update";
+        return doPostAsync(url, arg, BaseResult.class);
+    }
+
+    public static <T extends BaseResult> CompletableFuture<T> deleteDataAsync(BaseArg arg, Class<T> clazz) {
+        String url = prefix + "/cgi/crm/v2/data/delete";
+        return doPostAsync(url, arg, clazz);
+    }
+
+    public static <T extends BaseResult> CompletableFuture<T> deleteCustomDataAsync(BaseArg arg, Class<T> clazz) {
+        String url = prefix + "/cgi/crm/custom/data/delete";
+        return doPostAsync(url, arg, clazz);
+    }
+
+    public static <T extends BaseResult> CompletableFuture<T> invalidDataAsync(BaseArg arg, Class<T> clazz) {
+        String url = prefix + "/cgi/crm/v2/data/invalid";
+        return doPostAsync(url, arg, clazz);
+    }
+
+    public static <T extends BaseResult> CompletableFuture<T> invalidCustomDataAsync(BaseArg arg, Class<T> clazz) {
+        String url = prefix + "/cgi/crm/custom/data/invalid";
+        return doPostAsync(url, arg, clazz);
+    }
+
+    public static CompletableFuture<DeptUserListResult> getDeptUserListAsync(DeptUserListArg deptUserListArg) {
+        String url = prefix + "/cgi/user/list";
+        return doPostAsync(url, deptUserListArg, DeptUserListResult.class);
+    }
+
+    public static CompletableFuture<CrmAddResult> createCrmDataAsync(CrmAddArg arg) {
+        String url = prefix + "/cgi/crm/data/create";
+        return doPostAsync(url, arg, CrmAddResult.class);
+    }
 }
@@ -0,0 +1,90 @@
+package com.qunjie.crm.utils;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.crm.utils.SingleFlight
+ * Description: 相同key的并发请求合并：第一个线程执行，执行期间其他线程等待并共用同一个结果，执行完即移除，不做缓存
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+public class SingleFlight<K, V> {
+
+    /**
+     * 实际执行的请求
+     */
+    @FunctionalInterface
+    public interface Call<V, E extends Exception> {
+        V call() throws E;
+    }
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 实际执行次数、合并(等待其他线程结果)次数
+     */
+    private final AtomicLong executed = new AtomicLong();
+
+    private final AtomicLong shared = new AtomicLong();
+
+    /**
+     * 执行请求，已有相同key的请求在执行时等待其结果
+     *
+     * @param exceptionType call抛出的受检异常类型，等待的线程收到同一个异常
+     */
+    public <E extends Exception> V execute(K key, Class<E> exceptionType, Call<V, E> call) throws E {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            shared.incrementAndGet();
+            return await(running, exceptionType);
+        }
+        executed.incrementAndGet();
+        try {
+            V value = call.call();
+            future.complete(value);
+            return value;
+        } catch (Exception | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    private static <V, E extends Exception> V await(CompletableFuture<V> future, Class<E> exceptionType) throws E {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待合并请求结果被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (exceptionType.isInstance(cause)) {
+                throw exceptionType.cast(cause);
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new CompletionException(cause);
+        }
+    }
+
+    public long getExecutedCount() {
+        return executed.get();
+    }
+
+    public long getSharedCount() {
+        return shared.get();
+    }
+}
@@ -1,14 +1,15 @@
 package com.qunjie.jindie.aop;
 
 import com.google.gson.Gson;
-import com.qunjie.mysql.mapper.K3CloudLogMapper;
-import com.qunjie.mysql.model.CrmCustLog;
+import com.qunjie.jindie.log.K3CloudLogWriter;
 import com.qunjie.mysql.model.K3CloudLog;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
 import java.util.Date;
@@ -19,17 +20,20 @@ import java.util.Date;
  *
  * @author whs
  * Date:   2021/1/22  14:25
- * Description:
+ * Description: 记录金蝶接口调用日志(查看、查询除外)，经K3CloudLogWriter异步批量写入
  * History:
  * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
  * 修改人姓名           修改时间           版本号          描述
  */
 @Aspect
 @Component
+@Order(Ordered.LOWEST_PRECEDENCE - 1)
 public class K3CloudAspect {
 
+    private static final Gson GSON = new Gson();
+
     @Autowired
-    K3CloudLogMapper k3CloudLogMapper;
+    K3CloudLogWriter k3CloudLogWriter;
 
     @Pointcut("execution(* kingdee.bos.webapi.client.K3CloudApiClient.*(..)) " +
             "&& !execution(* kingdee.bos.webapi.client.K3CloudApiClient.view(..)) " +
@@ -41,20 +45,20 @@ public class K3CloudAspect {
         String classname = joinPoint.getTarget().getClass().getName();
         String methodName = joinPoint.getSignature().getName();
         Object[] args = joinPoint.getArgs();
-        String arg = new Gson().toJson(args);
+        String arg = GSON.toJson(args);
         Object proceed = null;
         K3CloudLog k3CloudLog = null;
         try {
             proceed = joinPoint.proceed(args);
             if (args != null && args.length == 2){
-                k3CloudLog = new K3CloudLog(null,new Date(),String.valueOf(args[0]),new Gson().toJson(args[1]),new Gson().toJson(proceed),methodName,classname,"金蝶接口调用");
+                k3CloudLog = new K3CloudLog(null,new Date(),String.valueOf(args[0]),GSON.toJson(args[1]),GSON.toJson(proceed),methodName,classname,"金蝶接口调用");
             }else {
-                k3CloudLog = new K3CloudLog(null,new Date(),null,new Gson().toJson(arg),new Gson().toJson(proceed),methodName,classname,"金蝶接口调用");
+                k3CloudLog = new K3CloudLog(null,new Date(),null,GSON.toJson(arg),GSON.toJson(proceed),methodName,classname,"金蝶接口调用");
             }
         } catch (Throwable throwable) {
-            k3CloudLog = new K3CloudLog(null,new Date(),null,new Gson().toJson(arg),new Gson().toJson(proceed),methodName,classname,"金蝶接口访问不通！");
+            k3CloudLog = new K3CloudLog(null,new Date(),null,GSON.toJson(arg),GSON.toJson(proceed),methodName,classname,"金蝶接口访问不通！");
         }
-        k3CloudLogMapper.add(k3CloudLog);
+        k3CloudLogWriter.offer(k3CloudLog);
         return proceed;
     }
 
@@ -0,0 +1,81 @@
+package com.qunjie.jindie.aop;
+
+import com.qunjie.common.metrics.IntegrationMetrics;
+import com.qunjie.common.resilience.Resilience;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.jindie.aop.K3CloudResilienceAspect
+ * Description: 金蝶k3cloud接口调用经过熔断、并发限制和超时，并按 方法.表单 记录耗时和结果；在K3CloudAspect内层执行，
+ *              快速失败的异常同样由K3CloudAspect记录日志。超时只用于查询(view、executeBillQuery)，
+ *              保存、提交、审核等写操作不是幂等的，超时返回后请求仍会在金蝶执行，由客户端自身超时结束
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+@Aspect
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE)
+public class K3CloudResilienceAspect {
+
+    /**
+     * 使用resilience.systems.k3cloud.timeout的只读方法
+     */
+    private static final Set<String> READ_METHODS = new HashSet<>(Arrays.asList("view", "executeBillQuery"));
+
+    @Pointcut("execution(* kingdee.bos.webapi.client.K3CloudApiClient.*(..))")
+    public void K3CloudPointCut(){};
+
+    @Around("K3CloudPointCut()")
+    public Object doAround(ProceedingJoinPoint joinPoint) throws Throwable {
+        Resilience.Call<Object, Exception> call = () -> {
+            try {
+                return joinPoint.proceed();
+            } catch (Exception | Error e) {
+                throw e;
+            } catch (Throwable throwable) {
+                throw new UndeclaredThrowableException(throwable);
+            }
+        };
+        boolean read = READ_METHODS.contains(joinPoint.getSignature().getName());
+        return IntegrationMetrics.timed(Resilience.K3CLOUD, endpoint(joinPoint),
+                () -> read ? Resilience.call(Resilience.K3CLOUD, Exception.class, call)
+                        : Resilience.callWithoutTimeout(Resilience.K3CLOUD, Exception.class, call),
+                K3CloudResilienceAspect::resultTag);
+    }
+
+    /**
+     * save、view、audit等第一个参数为表单id，指标按 方法.表单 区分；login、executeBillQuery只按方法
+     */
+    private static String endpoint(ProceedingJoinPoint joinPoint) {
+        String methodName = joinPoint.getSignature().getName();
+        Object[] args = joinPoint.getArgs();
+        if (!"login".equals(methodName) && args.length >= 2 && args[0] instanceof String) {
+            return methodName + "." + args[0];
+        }
+        return methodName;
+    }
+
+    /**
+     * 接口返回的ResponseStatus.IsSuccess为false、登录失败记为fail
+     */
+    private static String resultTag(Object result) {
+        if (Boolean.FALSE.equals(result)
+                || (result instanceof String && ((String) result).replace(" ", "").contains("\"IsSuccess\":false"))) {
+            return IntegrationMetrics.FAIL;
+        }
+        return IntegrationMetrics.SUCCESS;
+    }
+}
@@ -0,0 +1,62 @@
+package com.qunjie.jindie.aop;
+
+import com.qunjie.jindie.session.K3CloudSessionManager;
+import kingdee.bos.webapi.client.K3CloudApiClient;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.jindie.aop.K3CloudSessionAspect
+ * Description: 金蝶接口返回上下文丢失时经K3CloudSessionManager重新登录后重试一次；在K3CloudAspect外层执行，两次调用都记日志。
+ *              K3CloudSessionManager以外直接调用login会替换共享client的会话，之后由K3CloudSessionManager重新登录
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+@Aspect
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 2)
+public class K3CloudSessionAspect {
+
+    private static final Logger LOG = LoggerFactory.getLogger(K3CloudSessionAspect.class);
+
+    @Autowired
+    private K3CloudSessionManager k3CloudSessionManager;
+
+    @Pointcut("execution(* kingdee.bos.webapi.client.K3CloudApiClient.*(..))")
+    public void K3CloudPointCut(){};
+
+    @Around("K3CloudPointCut()")
+    public Object doAround(ProceedingJoinPoint joinPoint) throws Throwable {
+        K3CloudApiClient client = (K3CloudApiClient) joinPoint.getThis();
+        if ("login".equals(joinPoint.getSignature().getName())) {
+            Object result = joinPoint.proceed();
+            if (!k3CloudSessionManager.isLoggingIn()) {
+                k3CloudSessionManager.invalidate(client);
+            }
+            return result;
+        }
+        int generation = k3CloudSessionManager.getGeneration(client);
+        Object result = joinPoint.proceed();
+        if (K3CloudSessionManager.isContextLost(result)) {
+            LOG.info("k3cloud {} context lost, login again and retry", joinPoint.getSignature().getName());
+            if (!k3CloudSessionManager.relogin(client, generation)) {
+                return result;
+            }
+            result = joinPoint.proceed();
+        }
+        if (!K3CloudSessionManager.isContextLost(result)) {
+            k3CloudSessionManager.touch(client);
+        }
+        return result;
+    }
+}
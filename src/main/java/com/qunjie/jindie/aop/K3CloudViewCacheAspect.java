@@ -0,0 +1,105 @@
+package com.qunjie.jindie.aop;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.qunjie.jindie.cache.K3CloudViewCache;
+import org.apache.commons.lang3.StringUtils;
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.annotation.After;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.jindie.aop.K3CloudViewCacheAspect
+ * Description: 金蝶单据写操作(保存、提交、审核、反审核、删除、操作)后清除K3CloudViewCache中对应单据，
+ *              不论调用成功与否；单据从入参的Numbers、Ids及Model的FBillNo、FNumber、FID中取，取不到时清除全部
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+@Aspect
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 3)
+public class K3CloudViewCacheAspect {
+
+    private static final Logger LOG = LoggerFactory.getLogger(K3CloudViewCacheAspect.class);
+
+    @Autowired
+    private K3CloudViewCache k3CloudViewCache;
+
+    @Pointcut("execution(* kingdee.bos.webapi.client.K3CloudApiClient.save(..)) " +
+            "|| execution(* kingdee.bos.webapi.client.K3CloudApiClient.batchSave(..)) " +
+            "|| execution(* kingdee.bos.webapi.client.K3CloudApiClient.submit(..)) " +
+            "|| execution(* kingdee.bos.webapi.client.K3CloudApiClient.audit(..)) " +
+            "|| execution(* kingdee.bos.webapi.client.K3CloudApiClient.unAudit(..)) " +
+            "|| execution(* kingdee.bos.webapi.client.K3CloudApiClient.delete(..)) " +
+            "|| execution(* kingdee.bos.webapi.client.K3CloudApiClient.excuteOperation(..))")
+    public void K3CloudWritePointCut(){};
+
+    @After("K3CloudWritePointCut()")
+    public void doAfter(JoinPoint joinPoint) {
+        Object[] args = joinPoint.getArgs();
+        String formId = String.valueOf(args[0]);
+        List<String> numbers = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        try {
+            JSONObject content = JSON.parseObject(String.valueOf(args[args.length - 1]));
+            if (content != null) {
+                addAll(numbers, content.get("Numbers"));
+                addAll(ids, content.get("Ids"));
+                Object model = content.get("Model");
+                if (model instanceof JSONObject) {
+                    addModel(numbers, ids, (JSONObject) model);
+                } else if (model instanceof JSONArray) {
+                    for (Object item : (JSONArray) model) {
+                        if (item instanceof JSONObject) {
+                            addModel(numbers, ids, (JSONObject) item);
+                        }
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            LOG.debug("k3cloud {} content not parsed: {}", joinPoint.getSignature().getName(), e.getMessage());
+        }
+        if (numbers.isEmpty() && ids.isEmpty()) {
+            k3CloudViewCache.clear();
+        } else {
+            k3CloudViewCache.evict(formId, numbers, ids);
+        }
+    }
+
+    private static void addModel(List<String> numbers, List<String> ids, JSONObject model) {
+        addAll(numbers, model.get("FBillNo"));
+        addAll(numbers, model.get("FNumber"));
+        Object id = model.get("FID");
+        if (id != null && !"0".equals(String.valueOf(id))) {
+            ids.add(String.valueOf(id));
+        }
+    }
+
+    /**
+     * 数组或英文逗号分割的字符串
+     */
+    private static void addAll(List<String> values, Object value) {
+        if (value instanceof JSONArray) {
+            ((JSONArray) value).forEach(v -> addAll(values, v));
+        } else if (value != null && StringUtils.isNotBlank(String.valueOf(value))) {
+            Arrays.stream(String.valueOf(value).split(","))
+                    .map(String::trim)
+                    .filter(StringUtils::isNotBlank)
+                    .forEach(values::add);
+        }
+    }
+}
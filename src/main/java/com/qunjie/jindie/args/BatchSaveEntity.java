@@ -0,0 +1,28 @@
+package com.qunjie.jindie.args;
+
+import com.qunjie.common.annotation.Describe;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.jindie.args.BatchSaveEntity
+ * Description: 金蝶批量保存(BatchSave)参数，返回结果中SuccessEntitys、Errors的DIndex为Model中的下标
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+@Data
+public class BatchSaveEntity extends BaseArg {
+
+    @Describe("表单数据包集合，数组类型（必录）")
+    private List<?> Model;
+
+    @Describe("服务端开启的线程数，整型（非必录） 注（数据包数应大于此值，否则无效）")
+    private Integer BatchCount;
+
+    public BatchSaveEntity(List<?> model) {
+        Model = model;
+    }
+}
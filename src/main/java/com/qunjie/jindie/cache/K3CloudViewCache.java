@@ -0,0 +1,124 @@
+package com.qunjie.jindie.cache;
+
+import com.alibaba.fastjson.JSONObject;
+import com.google.gson.Gson;
+import com.qunjie.crm.cache.LocalCache;
+import com.qunjie.jindie.config.K3CloudConfig;
+import kingdee.bos.webapi.client.K3CloudApiClient;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Collection;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.jindie.cache.K3CloudViewCache
+ * Description: 金蝶单据查看(view)结果缓存，按表单 + 编号、表单 + 内码两个key指向同一份解析后的结果，
+ *              按条数LRU + 过期时间淘汰；单据不存在时不缓存。
+ *              保存、提交、审核、反审核、删除单据时由K3CloudViewCacheAspect清除对应单据
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+@Component
+@Slf4j
+public class K3CloudViewCache {
+
+    @Autowired
+    private K3CloudConfig k3CloudConfig;
+
+    private LocalCache<String, JSONObject> cache;
+
+    @PostConstruct
+    public void init() {
+        cache = new LocalCache<>(k3CloudConfig.getViewCacheSize());
+    }
+
+    /**
+     * 按编号查看单据，返回的结果为缓存共用，只读
+     */
+    public JSONObject view(K3CloudApiClient client, String formId, String number) throws Exception {
+        return view(client, formId, numberKey(formId, number), "Number", number);
+    }
+
+    /**
+     * 按内码查看单据，返回的结果为缓存共用，只读
+     */
+    public JSONObject viewById(K3CloudApiClient client, String formId, String id) throws Exception {
+        return view(client, formId, idKey(formId, id), "Id", id);
+    }
+
+    private JSONObject view(K3CloudApiClient client, String formId, String key, String field, String value) throws Exception {
+        LocalCache.Entry<JSONObject> entry = cache.get(key);
+        if (entry != null) {
+            return entry.getValue();
+        }
+        JSONObject content = new JSONObject();
+        content.put("CreateOrgId", 0);
+        content.put(field, value);
+        JSONObject view = JSONObject.parseObject(client.view(formId, new Gson().toJson(content)));
+        JSONObject bill = bill(view);
+        if (bill != null) {
+            long ttl = k3CloudConfig.getViewCacheTtl();
+            String number = bill.getString("BillNo") != null ? bill.getString("BillNo") : bill.getString("Number");
+            if (StringUtils.isNotBlank(number)) {
+                cache.put(numberKey(formId, number), view, ttl);
+            }
+            if (bill.get("Id") != null) {
+                cache.put(idKey(formId, bill.getString("Id")), view, ttl);
+            }
+            cache.put(key, view, ttl);
+        }
+        return view;
+    }
+
+    /**
+     * 清除单据的查看结果，编号和内码任一匹配即同时清除两个key
+     */
+    public void evict(String formId, Collection<String> numbers, Collection<String> ids) {
+        numbers.forEach(number -> evict(numberKey(formId, number)));
+        ids.forEach(id -> evict(idKey(formId, id)));
+    }
+
+    private void evict(String key) {
+        LocalCache.Entry<JSONObject> entry = cache.get(key);
+        cache.remove(key);
+        JSONObject bill = entry == null ? null : bill(entry.getValue());
+        if (bill == null) {
+            return;
+        }
+        String formId = key.substring(0, key.indexOf('#'));
+        if (bill.getString("BillNo") != null) {
+            cache.remove(numberKey(formId, bill.getString("BillNo")));
+        }
+        if (bill.getString("Number") != null) {
+            cache.remove(numberKey(formId, bill.getString("Number")));
+        }
+        if (bill.get("Id") != null) {
+            cache.remove(idKey(formId, bill.getString("Id")));
+        }
+    }
+
+    /**
+     * 无法确定单据时清除全部
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    private static JSONObject bill(JSONObject view) {
+        JSONObject result = view == null ? null : view.getJSONObject("Result");
+        return result == null ? null : result.getJSONObject("Result");
+    }
+
+    private static String numberKey(String formId, String number) {
+        return formId + "#N:" + number;
+    }
+
+    private static String idKey(String formId, String id) {
+        return formId + "#I:" + id;
+    }
+}
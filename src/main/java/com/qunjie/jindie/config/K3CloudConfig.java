@@ -11,7 +11,7 @@ import org.springframework.context.annotation.Configuration;
  *
  * @author whs
  *         Date:   2020/12/10  18:28
- *         Description: 配置金蝶服务连接信息
+ *         Description: 配置金蝶服务连接信息、登录会话复用、客户端池、批量保存、销售订单内码缓存、单据查看缓存及接口调用日志异步写入
  *         History:
  *         &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
  *         修改人姓名           修改时间           版本号          描述
@@ -30,6 +30,71 @@ public class K3CloudConfig {
 
     private String lang;
 
+    /**
+     * 会话闲置多久后调用前先重新登录(毫秒)，小于金蝶服务端会话超时时间，避免先收到会话丢失再重试
+     */
+    private long sessionIdleTimeout = 900000;
+
+    /**
+     * 并行写入用的客户端池大小，每个客户端各自登录
+     */
+    private int poolSize = 6;
+
+    /**
+     * 从客户端池借用客户端的最长等待时间(毫秒)
+     */
+    private long poolMaxWait = 30000;
+
+    /**
+     * 批量保存(BatchSave)每次请求的单据数
+     */
+    private int batchSize = 50;
+
+    /**
+     * 销售订单编号 -> 内码缓存的最大条数
+     */
+    private int saleOrderIdCacheSize = 2000;
+
+    /**
+     * 销售订单编号 -> 内码缓存的过期时间(毫秒)
+     */
+    private long saleOrderIdCacheTtl = 3600000;
+
+    /**
+     * 单据查看结果缓存的最大条数
+     */
+    private int viewCacheSize = 500;
+
+    /**
+     * 单据查看结果缓存的过期时间(毫秒)
+     */
+    private long viewCacheTtl = 600000;
+
+    /**
+     * 接口调用日志待写入队列容量
+     */
+    private int logQueueCapacity = 10000;
+
+    /**
+     * 接口调用日志每次最多写入条数
+     */
+    private int logBatchSize = 200;
+
+    /**
+     * 接口调用日志写入间隔(毫秒)，未攒够logBatchSize条时到时间也写入
+     */
+    private long logFlushInterval = 1000;
+
+    /**
+     * 日志队列满时最多等待(毫秒)，超时丢弃该条日志
+     */
+    private long logOfferTimeout = 20;
+
+    /**
+     * 接口调用日志每次写入的最大字节数(按utf8估算)，需小于mysql的max_allowed_packet
+     */
+    private long logBatchBytes = 1024 * 1024;
+
     public String getUrl() {
         return url;
     }
@@ -70,6 +135,110 @@ public class K3CloudConfig {
         this.lang = lang;
     }
 
+    public long getSessionIdleTimeout() {
+        return sessionIdleTimeout;
+    }
+
+    public void setSessionIdleTimeout(long sessionIdleTimeout) {
+        this.sessionIdleTimeout = sessionIdleTimeout;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    public long getPoolMaxWait() {
+        return poolMaxWait;
+    }
+
+    public void setPoolMaxWait(long poolMaxWait) {
+        this.poolMaxWait = poolMaxWait;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getSaleOrderIdCacheSize() {
+        return saleOrderIdCacheSize;
+    }
+
+    public void setSaleOrderIdCacheSize(int saleOrderIdCacheSize) {
+        this.saleOrderIdCacheSize = saleOrderIdCacheSize;
+    }
+
+    public long getSaleOrderIdCacheTtl() {
+        return saleOrderIdCacheTtl;
+    }
+
+    public void setSaleOrderIdCacheTtl(long saleOrderIdCacheTtl) {
+        this.saleOrderIdCacheTtl = saleOrderIdCacheTtl;
+    }
+
+    public int getViewCacheSize() {
+        return viewCacheSize;
+    }
+
+    public void setViewCacheSize(int viewCacheSize) {
+        this.viewCacheSize = viewCacheSize;
+    }
+
+    public long getViewCacheTtl() {
+        return viewCacheTtl;
+    }
+
+    public void setViewCacheTtl(long viewCacheTtl) {
+        this.viewCacheTtl = viewCacheTtl;
+    }
+
+    public int getLogQueueCapacity() {
+        return logQueueCapacity;
+    }
+
+    public void setLogQueueCapacity(int logQueueCapacity) {
+        this.logQueueCapacity = logQueueCapacity;
+    }
+
+    public int getLogBatchSize() {
+        return logBatchSize;
+    }
+
+    public void setLogBatchSize(int logBatchSize) {
+        this.logBatchSize = logBatchSize;
+    }
+
+    public long getLogFlushInterval() {
+        return logFlushInterval;
+    }
+
+    public void setLogFlushInterval(long logFlushInterval) {
+        this.logFlushInterval = logFlushInterval;
+    }
+
+    public long getLogOfferTimeout() {
+        return logOfferTimeout;
+    }
+
+    public void setLogOfferTimeout(long logOfferTimeout) {
+        this.logOfferTimeout = logOfferTimeout;
+    }
+
+    public long getLogBatchBytes() {
+        return logBatchBytes;
+    }
+
+    public void setLogBatchBytes(long logBatchBytes) {
+        this.logBatchBytes = logBatchBytes;
+    }
+
     @Override
     public String toString() {
         return "K3CloudConfig{" +
@@ -78,6 +247,19 @@ public class K3CloudConfig {
                 ", uid='" + uid + '\'' +
                 ", pwd='" + pwd + '\'' +
                 ", lang='" + lang + '\'' +
+                ", sessionIdleTimeout=" + sessionIdleTimeout +
+                ", poolSize=" + poolSize +
+                ", poolMaxWait=" + poolMaxWait +
+                ", batchSize=" + batchSize +
+                ", saleOrderIdCacheSize=" + saleOrderIdCacheSize +
+                ", saleOrderIdCacheTtl=" + saleOrderIdCacheTtl +
+                ", viewCacheSize=" + viewCacheSize +
+                ", viewCacheTtl=" + viewCacheTtl +
+                ", logQueueCapacity=" + logQueueCapacity +
+                ", logBatchSize=" + logBatchSize +
+                ", logFlushInterval=" + logFlushInterval +
+                ", logOfferTimeout=" + logOfferTimeout +
+                ", logBatchBytes=" + logBatchBytes +
                 '}';
     }
 }
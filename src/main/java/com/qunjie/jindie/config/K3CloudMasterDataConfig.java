@@ -0,0 +1,57 @@
+package com.qunjie.jindie.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.jindie.config.K3CloudMasterDataConfig
+ * Description: 金蝶基础资料(物料、客户、销售员、组织)编码快照配置，单据保存前用快照校验编码是否存在
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+@ConfigurationProperties(prefix = "k3cloud.master-data")
+@Configuration
+@Data
+public class K3CloudMasterDataConfig {
+
+    /**
+     * 关闭时不校验
+     */
+    private boolean enabled = true;
+
+    /**
+     * 全量重新加载间隔(毫秒)
+     */
+    private long refreshInterval = 3600000;
+
+    /**
+     * 启动后首次加载及加载失败后再次尝试的间隔(毫秒)，加载完成前不校验
+     */
+    private long retryInterval = 60000;
+
+    /**
+     * 分页查询每页条数
+     */
+    private int pageSize = 10000;
+
+    /**
+     * 物料、客户、销售员只取分配给该使用组织(FUseOrgId)的，为空时不按组织过滤
+     */
+    private String useOrgNumber = "100";
+
+    /**
+     * 只取未禁用(FForbidStatus=A)且已审核(FDocumentStatus=C)的
+     */
+    private boolean onlyAvailable = true;
+
+    private String materialFormId = "BD_MATERIAL";
+
+    private String customerFormId = "BD_Customer";
+
+    private String salerFormId = "BD_Saler";
+
+    private String orgFormId = "ORG_Organizations";
+}
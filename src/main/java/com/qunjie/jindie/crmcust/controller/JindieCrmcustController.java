@@ -2,6 +2,7 @@ package com.qunjie.jindie.crmcust.controller;
 
 import com.alibaba.fastjson.JSONObject;
 import com.google.gson.Gson;
+import com.qunjie.jindie.session.K3CloudSessionManager;
 import kingdee.bos.webapi.client.K3CloudApiClient;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -25,6 +26,8 @@ import org.springframework.web.bind.annotation.RestController;
 public class JindieCrmcustController {
     @Autowired
     K3CloudApiClient k3CloudApiClient;
+    @Autowired
+    K3CloudSessionManager k3CloudSessionManager;
     @Value("${k3cloud.url}")
     private String K3CloudURL ;
     @Value("${k3cloud.dbId}")
@@ -38,7 +41,7 @@ public class JindieCrmcustController {
 
     @GetMapping("view")
     public String view(String Number) throws Exception {
-        Boolean result = k3CloudApiClient.login(dbId, uid, pwd, lang);
+        Boolean result = k3CloudSessionManager.login();
         if (result) {
             JSONObject jsonObject = new JSONObject();
             jsonObject.put("CreateOrgId", 0);
@@ -6,10 +6,12 @@ import com.alibaba.fastjson.JSONObject;
 import com.google.gson.Gson;
 import com.qunjie.common.response.ApiResult;
 import com.qunjie.common.util.SpringBeanUtils;
+import com.qunjie.jindie.cache.K3CloudViewCache;
 import com.qunjie.jindie.crmcust.common.CrmCust;
 import com.qunjie.jindie.crmcust.common.CrmCustHB;
 import com.qunjie.jindie.crmcust.common.model.CrmCustEntity;
 import com.qunjie.jindie.crmcust.common.model.CrmCustModel;
+import com.qunjie.jindie.session.K3CloudSessionManager;
 import com.qunjie.jindie.util.JindieHelperUtil;
 import com.qunjie.mysql.mapper.CrmJindieHbMapper;
 import com.qunjie.mysql.model.CrmJindieHb;
@@ -34,9 +36,15 @@ import org.springframework.stereotype.Service;
 @Slf4j
 public class CrmcustService {
 
+    @Autowired
+    private K3CloudSessionManager k3CloudSessionManager;
+
     @Autowired
     private CrmJindieHbMapper crmJindieHbMapper;
 
+    @Autowired
+    private K3CloudViewCache k3CloudViewCache;
+
     @Value("${k3cloud.url}")
     private String K3CloudURL ;
     @Value("${k3cloud.dbId}")
@@ -52,7 +60,7 @@ public class CrmcustService {
     public String crmcustSave(CrmCust crmCust) throws Exception {
         log.info("=========================crm客户推送金蝶===============add=====================start");
         K3CloudApiClient client = SpringBeanUtils.getBean(K3CloudApiClient.class);
-        Boolean result = client.login(dbId, uid, pwd, lang);
+        Boolean result = k3CloudSessionManager.login();
         if (result){
             CrmCustModel crmCustModel = CrmCustModel.valuesOf(crmCust);
             CrmCustEntity crmCustEntity = new CrmCustEntity(crmCustModel);
@@ -70,7 +78,7 @@ public class CrmcustService {
     public String crmcustSave(CrmCustHB crmCustHB) throws Exception {
         log.info("=========================crm合作伙伴推送金蝶===============add=====================start");
         K3CloudApiClient client = SpringBeanUtils.getBean(K3CloudApiClient.class);
-        Boolean result = client.login(dbId, uid, pwd, lang);
+        Boolean result = k3CloudSessionManager.login();
         if (result){
             CrmCustModel crmCustModel = CrmCustModel.valuesOf(crmCustHB);
             CrmCustEntity crmCustEntity = new CrmCustEntity(crmCustModel);
@@ -103,13 +111,13 @@ public class CrmcustService {
     public String crmcustUpd(CrmCust crmCust) throws Exception {
         log.info("=========================crm客户修改推送金蝶=============update=======================start");
         K3CloudApiClient client = SpringBeanUtils.getBean(K3CloudApiClient.class);
-        Boolean result = client.login(dbId, uid, pwd, lang);
+        Boolean result = k3CloudSessionManager.login();
         if (result){
+            Integer id = this.View(crmCust.getAccount_no(), client);
             String[] numbers = {crmCust.getAccount_no()};
             JindieHelperUtil.UnAudit(numbers,client,sFormId);
 
             CrmCustModel crmCustModel = CrmCustModel.valuesOf(crmCust);
-            Integer id = this.View(crmCust.getAccount_no(), client);
             CrmCustEntity crmCustEntity ;
             if (id != 0){
                 crmCustModel.setFCUSTID(id);
@@ -132,7 +140,7 @@ public class CrmcustService {
     public String crmcustUpd(CrmCustHB crmCust) throws Exception {
         log.info("=========================crm合作伙伴修改推送金蝶=============update=======================start");
         K3CloudApiClient client = SpringBeanUtils.getBean(K3CloudApiClient.class);
-        Boolean result = client.login(dbId, uid, pwd, lang);
+        Boolean result = k3CloudSessionManager.login();
         if (result){
             String id1 = crmCust.get_id();
             CrmJindieHb crmJindieHb = crmJindieHbMapper.selectByCrmHbId(id1);
@@ -170,7 +178,7 @@ public class CrmcustService {
     public String crmcustForbid(CrmCust crmCust) throws Exception {
         log.info("=========================crm客户禁用推送金蝶=============forbid=======================start");
         K3CloudApiClient client = SpringBeanUtils.getBean(K3CloudApiClient.class);
-        Boolean result = client.login(dbId, uid, pwd, lang);
+        Boolean result = k3CloudSessionManager.login();
         if (result){
             String[] numbers = {crmCust.getAccount_no()};
             JindieHelperUtil.UnAudit(numbers,client,sFormId);
@@ -188,7 +196,7 @@ public class CrmcustService {
     public String crmcustForbid(CrmCustHB crmCust) throws Exception {
         log.info("=========================crm客户禁用推送金蝶=============forbid=======================start");
         K3CloudApiClient client = SpringBeanUtils.getBean(K3CloudApiClient.class);
-        Boolean result = client.login(dbId, uid, pwd, lang);
+        Boolean result = k3CloudSessionManager.login();
         if (result){
             CrmJindieHb crmJindieHb = crmJindieHbMapper.selectByCrmHbId(crmCust.get_id());
             if (crmJindieHb != null){
@@ -207,11 +215,7 @@ public class CrmcustService {
     }
 
     private Integer View(String Number, K3CloudApiClient client) throws Exception {
-        JSONObject jsonObject = new JSONObject();
-        jsonObject.put("CreateOrgId",0);
-        jsonObject.put("Number",Number);
-        String view = client.view(sFormId, new Gson().toJson(jsonObject));
-        JSONObject jsonObject1 = JSONObject.parseObject(view);
+        JSONObject jsonObject1 = k3CloudViewCache.view(client, sFormId, Number);
         Integer id = 0;
         try{
             Object o = jsonObject1.getJSONObject("Result").getJSONObject("Result").get("Id");
@@ -223,11 +227,7 @@ public class CrmcustService {
     }
 
     private Integer ViewByid(String jjindie_id, K3CloudApiClient client) throws Exception {
-        JSONObject jsonObject = new JSONObject();
-        jsonObject.put("CreateOrgId",0);
-        jsonObject.put("Id",jjindie_id);
-        String view = client.view(sFormId, new Gson().toJson(jsonObject));
-        JSONObject jsonObject1 = JSONObject.parseObject(view);
+        JSONObject jsonObject1 = k3CloudViewCache.viewById(client, sFormId, jjindie_id);
         Integer id = 0;
         try{
             Object o = jsonObject1.getJSONObject("Result").getJSONObject("Result").get("Id");
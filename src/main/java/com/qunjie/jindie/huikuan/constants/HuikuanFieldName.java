@@ -1,5 +1,9 @@
 package com.qunjie.jindie.huikuan.constants;
 
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
 /**
  * Copyright (C),2020-2021,群杰印章物联网
  * FileName: com.qunjie.jindie.huikuan.constants.HuikuanFieldName
@@ -54,12 +58,18 @@ public enum  HuikuanFieldName {
     KHBM,                   //客户编码
     XSYBM;                  //销售员编码
 
-    public static HuikuanFieldName valuesOf(String value) {
+    /**
+     * 名称(大写) -> 字段，忽略大小写查找
+     */
+    private static final Map<String, HuikuanFieldName> BY_NAME = new HashMap<>();
+
+    static {
         for (HuikuanFieldName huikuanFieldName : HuikuanFieldName.values()) {
-            if (huikuanFieldName.name().equalsIgnoreCase(value)){
-                return huikuanFieldName;
-            }
+            BY_NAME.put(huikuanFieldName.name().toUpperCase(Locale.ROOT), huikuanFieldName);
         }
-        return null;
+    }
+
+    public static HuikuanFieldName valuesOf(String value) {
+        return value == null ? null : BY_NAME.get(value.toUpperCase(Locale.ROOT));
     }
 }
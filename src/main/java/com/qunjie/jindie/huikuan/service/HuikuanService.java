@@ -10,9 +10,15 @@ import com.qunjie.common.email.service.EmailServiceHelper;
 import com.qunjie.common.response.ApiResult;
 import com.qunjie.common.util.SpringBeanUtils;
 import com.qunjie.jindie.config.K3CloudConfig;
+import com.qunjie.jindie.huikuan.constants.DefaultValue;
+import com.qunjie.jindie.huikuan.constants.HuikuanFieldName;
 import com.qunjie.jindie.huikuan.model.HuikuanEntity;
 import com.qunjie.jindie.huikuan.vo.FBillHead;
 import com.qunjie.jindie.huikuan.vo.FReceiveBillEntry;
+import com.qunjie.jindie.masterdata.service.K3CloudMasterDataService;
+import com.qunjie.jindie.saleorder.view.service.SaleOrderIdResolver;
+import com.qunjie.jindie.session.K3CloudClientPool;
+import com.qunjie.jindie.session.K3CloudSessionManager;
 import com.qunjie.jindie.util.JindieHelperUtil;
 import kingdee.bos.webapi.client.K3CloudApiClient;
 import lombok.extern.slf4j.Slf4j;
@@ -27,6 +33,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 
 /**
@@ -44,6 +51,18 @@ import java.util.concurrent.atomic.AtomicBoolean;
 @Slf4j
 public class HuikuanService {
 
+    @Autowired
+    private K3CloudSessionManager k3CloudSessionManager;
+
+    @Autowired
+    private K3CloudClientPool k3CloudClientPool;
+
+    @Autowired
+    private SaleOrderIdResolver saleOrderIdResolver;
+
+    @Autowired
+    private K3CloudMasterDataService k3CloudMasterDataService;
+
     @Autowired
     EmailServiceHelper emailServiceHelper;
     @Autowired
@@ -64,7 +83,7 @@ public class HuikuanService {
     public int save(WorkflowRequestTable workflowRequestTable) throws Exception {
         log.info("=============================回款推送金蝶==================start!===============");
         K3CloudApiClient client = SpringBeanUtils.getBean(K3CloudApiClient.class);
-        Boolean result = client.login(dbId, uid, pwd, lang);
+        Boolean result = k3CloudSessionManager.login();
         if(result){
             if (!CollectionUtils.isEmpty(workflowRequestTable.getDetails())){
                 //为减少响应时间，采用多线程处理数据
@@ -74,17 +93,35 @@ public class HuikuanService {
                 AtomicBoolean flag = new AtomicBoolean(true);
                 int size = workflowRequestTable.getDetails().size();
                 CountDownLatch countDownLatch = new CountDownLatch(size);
+                List<FBillHead> models = new CopyOnWriteArrayList<>();
+                //所有明细的销售订单内码一次查出，各明细组装时从缓存取
+                saleOrderIdResolver.resolve(workflowRequestTable.getDetails().stream()
+                        .flatMap(List::stream)
+                        .filter(f -> f.getFieldName() != null && HuikuanFieldName.valuesOf(f.getFieldName()) == HuikuanFieldName.HTBHX)
+                        .map(WorkflowRequestTableField::getFieldValue)
+                        .collect(Collectors.toList()));
                 for (List<WorkflowRequestTableField> e : workflowRequestTable.getDetails()){
                     poolExecutor.execute(()->{
                         try {
-                            this.save(e,flag,client,Ids,list1,list2);
+                            FBillHead model = this.model(e,flag,list1,list2);
+                            if (model != null){
+                                models.add(model);
+                            }
                         } catch (Exception ex) {
+                            flag.set(false);
                             ex.printStackTrace();
                         }
                         countDownLatch.countDown();
                     });
                 }
                 countDownLatch.await();
+                /**
+                 * 所有回款单分批batchSave，保存成功的一次提交、一次审核；
+                 * 已有明细校验失败时整单都不保存，免得保存后再删除
+                 */
+                if (flag.get() && !models.isEmpty()){
+                    this.batchSave(models,flag,Ids,list2);
+                }
                 /**
                  * 有一条明细保存失败，则删除之前保存成功的数据(此操作可做异步处理，懒得做了...)
                  */
@@ -115,7 +152,10 @@ public class HuikuanService {
         return 0;
     }
 
-    private void save(List<WorkflowRequestTableField> e,AtomicBoolean flag,K3CloudApiClient client,List<String> Ids,List<String> list1,List<String> list2) throws Exception {
+    /**
+     * 一条明细生成一张回款单，金蝶中无关联的销售订单时返回null
+     */
+    private FBillHead model(List<WorkflowRequestTableField> e,AtomicBoolean flag,List<String> list1,List<String> list2) throws Exception {
         FBillHead model = new FBillHead();
         List<FReceiveBillEntry> detail = new ArrayList<>();
         model.valueOf(e);
@@ -130,29 +170,47 @@ public class HuikuanService {
             log.info("===============================金蝶中不存在此销售订单============="+freceiveBillEntry.getFSALEORDERNO()+"=====================");
             list1.add(freceiveBillEntry.getFSALEORDERNO());
             flag.set(false);
-            return;
+            return null;
         }
-        HuikuanEntity huikuanEntity = new HuikuanEntity(model);
-        String s = new Gson().toJson(huikuanEntity);
-        log.debug("==================入参========================"+s);
-        String sResult = null;
+        /**
+         * 往来单位、销售员、组织编码在金蝶中不存在，数据不传
+         */
+        K3CloudMasterDataService.Check check = K3CloudMasterDataService.check()
+                .saler(model.getFSALEERID())
+                .org(model.getFSALEORGID())
+                .org(model.getFSETTLEORGID())
+                .org(model.getFPAYORGID());
+        if (DefaultValue.WLDWLX.equals(model.getFCONTACTUNITTYPE())){
+            check.customer(model.getFCONTACTUNIT());
+        }
+        if (DefaultValue.FKDJLX.equals(model.getFPAYUNITTYPE())){
+            check.customer(model.getFPAYUNIT());
+        }
+        List<String> missing = k3CloudMasterDataService.validate(check);
+        if (!missing.isEmpty()){
+            log.info("===============================基础资料在金蝶中不存在============="+missing+"=====================");
+            list2.add(freceiveBillEntry.getFSALEORDERNO()+"基础资料在金蝶中不存在:"+String.join(",",missing));
+            flag.set(false);
+            return null;
+        }
+        return model;
+    }
+
+    private void batchSave(List<FBillHead> models,AtomicBoolean flag,List<String> Ids,List<String> list2) {
         try {
-            sResult = client.save(sFormId, s);
-            ApiResult apiResult = ApiResult.isSuccess(sResult);
-            ApiResult apiResult1 = JindieHelperUtil.commitAndAudit(apiResult, client, sFormId);
-            if (apiResult != null && apiResult.getCode() == 1){
-                Ids.add(apiResult.getMessage());
-            }else {
+            ApiResult result = k3CloudClientPool.execute(c ->
+                    JindieHelperUtil.batchSaveCommitAndAudit(models, c, sFormId, k3CloudConfig.getBatchSize()));
+            log.debug("==================回款批量保存结果========================"+new Gson().toJson(result));
+            if (!JindieHelperUtil.collect(result, Ids, list2)){
                 flag.set(false);
-                list2.add(sResult);
             }
         } catch (Exception ex) {
+            flag.set(false);
+            list2.add(ex.getMessage());
             ex.printStackTrace();
         }
     }
 
-
-
     //单线程回款推送金蝶，因响应时间过长，注掉，采用多线程处理
 //    public int save(WorkflowRequestTable workflowRequestTable) throws Exception {
 //        log.info("=============================回款推送金蝶==================start!===============");
@@ -7,7 +7,7 @@ import com.qunjie.jindie.huikuan.constants.DefaultValue;
 import com.qunjie.jindie.huikuan.constants.HuikuanFieldName;
 import com.qunjie.jindie.saleorder.save.pojo.Entity1;
 import com.qunjie.jindie.saleorder.save.pojo.Entity2;
-import com.qunjie.jindie.saleorder.save.service.SaveService;
+import com.qunjie.jindie.saleorder.view.service.SaleOrderIdResolver;
 import lombok.Data;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.util.CollectionUtils;
@@ -149,8 +149,7 @@ public class FReceiveBillEntry {
                 }
             });
 
-            SaveService saveService = SpringBeanUtils.getBean(SaveService.class);
-            Integer id = (Integer) saveService.findId(billno.get()).get("id");
+            Integer id = SpringBeanUtils.getBean(SaleOrderIdResolver.class).resolve(billno.get());
             if (null != id){
                 FAsssalesOrder fAsssalesOrder = new FAsssalesOrder();
                 fAsssalesOrder.setFASSBILLNO(billno.get());
@@ -14,8 +14,10 @@ import com.qunjie.jindie.invoice.constants.FieldNameMain;
 import com.qunjie.jindie.invoice.model.InvoiceEntity;
 import com.qunjie.jindie.invoice.vo.FBillHead;
 import com.qunjie.jindie.invoice.vo.FSaleSicentry;
+import com.qunjie.jindie.masterdata.service.K3CloudMasterDataService;
 import com.qunjie.jindie.saleorder.save.pojo.Entity2;
 import com.qunjie.jindie.saleorder.view.service.SaleOrderViewService;
+import com.qunjie.jindie.session.K3CloudSessionManager;
 import com.qunjie.jindie.util.JindieHelperUtil;
 import kingdee.bos.webapi.client.K3CloudApiClient;
 import org.apache.commons.lang.StringUtils;
@@ -46,10 +48,15 @@ import java.util.concurrent.atomic.AtomicBoolean;
 @Service
 public class InvoiceSaveService {
 
+    @Autowired
+    private K3CloudSessionManager k3CloudSessionManager;
+
     @Autowired
     EmailServiceHelper emailServiceHelper;
     @Autowired
     SaleOrderViewService saleOrderViewService;
+    @Autowired
+    K3CloudMasterDataService k3CloudMasterDataService;
 
     private static Logger log = LoggerFactory.getLogger(InvoiceSaveService.class);
 
@@ -68,7 +75,7 @@ public class InvoiceSaveService {
     public int save(WorkflowRequestTable workflowRequestTable) throws Exception {
 
         K3CloudApiClient client = SpringBeanUtils.getBean(K3CloudApiClient.class);
-        Boolean result = client.login(dbId, uid, pwd, lang);
+        Boolean result = k3CloudSessionManager.login();
         if(result){
             FBillHead model = new FBillHead();
             Map map = model.valueOf(workflowRequestTable.getMains());
@@ -115,6 +122,18 @@ public class InvoiceSaveService {
                 emailServiceHelper.sendSimpleMail(DefaultEmailAddress.SENDTOAll,"开票推送金蝶失败","时间："+sdf.format(new Date())+"\n泛微中销售订单号为:"+htbh+"\n在金蝶中不存在此销售订单或者销售订单明细不匹配，请查看!!");
                 return 0;
             }
+            K3CloudMasterDataService.Check check = K3CloudMasterDataService.check()
+                    .customer(model.getFCUSTOMERID())
+                    .saler(model.getFSALEERID())
+                    .org(model.getFSALEORGID())
+                    .org(model.getFSETTLEORGID());
+            fSaleSicentries.forEach(entry -> check.material(entry.getFMATERIALID()));
+            List<String> missing = k3CloudMasterDataService.validate(check);
+            if (!missing.isEmpty()){
+                log.info("=================="+htbh+"==================基础资料在金蝶中不存在:"+missing);
+                emailServiceHelper.sendSimpleMail(DefaultEmailAddress.SENDTOAll,"开票推送金蝶失败","时间："+sdf.format(new Date())+"\n泛微中销售订单号为:"+htbh+"\n基础资料在金蝶中不存在:"+String.join(",",missing));
+                return 0;
+            }
             InvoiceEntity invoiceEntity = new InvoiceEntity(model);
             String s = new Gson().toJson(invoiceEntity);
             log.debug("==================入参========================"+s);
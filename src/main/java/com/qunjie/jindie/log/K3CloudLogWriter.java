@@ -0,0 +1,188 @@
+package com.qunjie.jindie.log;
+
+import com.qunjie.jindie.config.K3CloudConfig;
+import com.qunjie.mysql.mapper.K3CloudLogMapper;
+import com.qunjie.mysql.model.K3CloudLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.jindie.log.K3CloudLogWriter
+ * Description: 金蝶接口调用日志异步写入jindie_k3cloud_logs：调用线程只放入有界队列，
+ *              后台线程攒够logBatchSize条或每logFlushInterval毫秒一次多行insert，单次insert不超过logBatchBytes，
+ *              多行insert失败时逐条重新写入，只丢弃写不进去的那几条；
+ *              队列满时调用线程最多等待logOfferTimeout毫秒，仍放不进则丢弃并计数；应用关闭时写完队列中剩余日志
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+@Component
+public class K3CloudLogWriter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(K3CloudLogWriter.class);
+
+    @Autowired
+    private K3CloudConfig k3CloudConfig;
+
+    @Autowired
+    private K3CloudLogMapper k3CloudLogMapper;
+
+    private BlockingQueue<K3CloudLog> queue;
+
+    private Thread worker;
+
+    private volatile boolean running;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final AtomicLong written = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(Math.max(1, k3CloudConfig.getLogQueueCapacity()));
+        running = true;
+        worker = new Thread(this::run, "k3cloud-log-writer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * 放入待写入队列，队列满且等待超时时丢弃
+     *
+     * @return 是否放入
+     */
+    public boolean offer(K3CloudLog k3CloudLog) {
+        try {
+            if (queue.offer(k3CloudLog, k3CloudConfig.getLogOfferTimeout(), TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (dropped.incrementAndGet() % 1000 == 1) {
+            LOG.warn("k3cloud log queue full, dropped:{}", dropped.get());
+        }
+        return false;
+    }
+
+    private void run() {
+        int batchSize = Math.max(1, k3CloudConfig.getLogBatchSize());
+        List<K3CloudLog> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                long deadline = System.currentTimeMillis() + k3CloudConfig.getLogFlushInterval();
+                while (batch.size() < batchSize) {
+                    long wait = deadline - System.currentTimeMillis();
+                    K3CloudLog k3CloudLog = wait > 0 ? queue.poll(wait, TimeUnit.MILLISECONDS) : null;
+                    if (k3CloudLog == null) {
+                        break;
+                    }
+                    batch.add(k3CloudLog);
+                    queue.drainTo(batch, batchSize - batch.size());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+            write(batch);
+        }
+    }
+
+    private void write(List<K3CloudLog> batch) {
+        long maxBytes = Math.max(1, k3CloudConfig.getLogBatchBytes());
+        int from = 0;
+        long bytes = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            long size = estimate(batch.get(i));
+            if (i > from && bytes + size > maxBytes) {
+                insert(new ArrayList<>(batch.subList(from, i)));
+                from = i;
+                bytes = 0;
+            }
+            bytes += size;
+        }
+        if (from < batch.size()) {
+            insert(new ArrayList<>(batch.subList(from, batch.size())));
+        }
+        batch.clear();
+    }
+
+    private void insert(List<K3CloudLog> logs) {
+        try {
+            k3CloudLogMapper.addBatch(logs);
+            written.addAndGet(logs.size());
+            return;
+        } catch (RuntimeException e) {
+            if (logs.size() == 1) {
+                failed.incrementAndGet();
+                LOG.error("write k3cloud log error, details:", e);
+                return;
+            }
+            LOG.warn("write {} k3cloud logs error, retry one by one: {}", logs.size(), e.getMessage());
+        }
+        for (K3CloudLog k3CloudLog : logs) {
+            try {
+                k3CloudLogMapper.add(k3CloudLog);
+                written.incrementAndGet();
+            } catch (RuntimeException e) {
+                failed.incrementAndGet();
+                LOG.error("write k3cloud log error, method:{} sformid:{}, details:", k3CloudLog.getMethod(), k3CloudLog.getSformid(), e);
+            }
+        }
+    }
+
+    /**
+     * 一条日志在insert语句中的字节数，字符按utf8最多3字节估算
+     */
+    private static long estimate(K3CloudLog k3CloudLog) {
+        return 64L + 3L * (length(k3CloudLog.getSformid()) + length(k3CloudLog.getArgs()) + length(k3CloudLog.getResponse())
+                + length(k3CloudLog.getMethod()) + length(k3CloudLog.getClazz()) + length(k3CloudLog.getSystemnm()));
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        // 不中断写入线程，以免正在执行的insert失败；最多等一个写入间隔后由当前线程写完剩余日志
+        running = false;
+        worker.join(k3CloudConfig.getLogFlushInterval() + 5000);
+        int batchSize = Math.max(1, k3CloudConfig.getLogBatchSize());
+        List<K3CloudLog> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            write(batch);
+        }
+        LOG.info("k3cloud log writer stopped, written:{} failed:{} dropped:{}", written.get(), failed.get(), dropped.get());
+    }
+
+    public int getQueued() {
+        return queue.size();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+}
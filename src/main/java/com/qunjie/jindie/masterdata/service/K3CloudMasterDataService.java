@@ -0,0 +1,283 @@
+package com.qunjie.jindie.masterdata.service;
+
+import com.qunjie.jindie.config.K3CloudMasterDataConfig;
+import com.qunjie.jindie.saleorder.save.pojo.Entity1;
+import com.qunjie.jindie.saleorder.save.pojo.Entity2;
+import com.qunjie.jindie.session.K3CloudClientPool;
+import com.qunjie.jindie.util.JindieHelperUtil;
+import kingdee.bos.webapi.client.K3CloudApiClient;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.jindie.masterdata.service.K3CloudMasterDataService
+ * Description: 金蝶基础资料编码快照：物料、客户、销售员、组织的可用编码(使用组织、未禁用、已审核)经executeBillQuery
+ *              分页拉取到内存，启动后由定时任务在后台加载，之后定时全量重新加载；
+ *              单据保存前校验引用的编码是否存在，快照中没有的编码再合并为一次IN查询确认(快照之后新建的)，
+ *              确认不存在的直接返回，不再调用金蝶保存。快照加载完成前不校验
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+@Service
+public class K3CloudMasterDataService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(K3CloudMasterDataService.class);
+
+    /**
+     * 每次IN查询的最多编码数
+     */
+    private static final int MAX_IN_SIZE = 100;
+
+    public enum Kind {
+        MATERIAL("物料"), CUSTOMER("客户"), SALER("销售员"), ORG("组织");
+
+        private final String describe;
+
+        Kind(String describe) {
+            this.describe = describe;
+        }
+
+        public String getDescribe() {
+            return describe;
+        }
+    }
+
+    @Autowired
+    private K3CloudMasterDataConfig config;
+
+    @Autowired
+    private K3CloudClientPool k3CloudClientPool;
+
+    private volatile Map<Kind, Set<String>> snapshot;
+
+    /**
+     * 快照之后经IN查询确认存在的编码，替换快照时清空
+     */
+    private volatile Map<Kind, Set<String>> confirmed = newConfirmed();
+
+    /**
+     * 待校验的编码
+     */
+    public static class Check {
+
+        private final Map<Kind, Set<String>> numbers = new EnumMap<>(Kind.class);
+
+        public Check add(Kind kind, String number) {
+            if (StringUtils.isNotBlank(number)) {
+                numbers.computeIfAbsent(kind, k -> new LinkedHashSet<>()).add(number);
+            }
+            return this;
+        }
+
+        public Check add(Kind kind, Entity2 entity) {
+            return add(kind, entity == null ? null : entity.getFNumber());
+        }
+
+        public Check add(Kind kind, Entity1 entity) {
+            return add(kind, entity == null ? null : entity.getFNUMBER());
+        }
+
+        public Check material(Entity2 entity) {
+            return add(Kind.MATERIAL, entity);
+        }
+
+        public Check customer(Entity2 entity) {
+            return add(Kind.CUSTOMER, entity);
+        }
+
+        public Check saler(Entity2 entity) {
+            return add(Kind.SALER, entity);
+        }
+
+        public Check org(Entity2 entity) {
+            return add(Kind.ORG, entity);
+        }
+    }
+
+    public static Check check() {
+        return new Check();
+    }
+
+    /**
+     * @return 金蝶中不存在的编码，如 "客户:C0001"；全部存在、未启用或快照尚未加载时为空
+     */
+    public List<String> validate(Check check) {
+        List<String> missing = new ArrayList<>();
+        Map<Kind, Set<String>> current = snapshot;
+        if (!config.isEnabled() || current == null) {
+            return missing;
+        }
+        Map<Kind, Set<String>> currentConfirmed = confirmed;
+        for (Map.Entry<Kind, Set<String>> entry : check.numbers.entrySet()) {
+            Set<String> known = current.get(entry.getKey());
+            Set<String> knownLater = currentConfirmed.get(entry.getKey());
+            List<String> unknown = new ArrayList<>();
+            for (String number : entry.getValue()) {
+                if (!known.contains(number) && !knownLater.contains(number)) {
+                    unknown.add(number);
+                }
+            }
+            if (unknown.isEmpty()) {
+                continue;
+            }
+            try {
+                Set<String> found = query(entry.getKey(), unknown);
+                knownLater.addAll(found);
+                unknown.removeAll(found);
+            } catch (Exception e) {
+                LOG.warn("confirm k3cloud {} {} error, skip: {}", entry.getKey(), unknown, e.getMessage());
+                continue;
+            }
+            unknown.forEach(number -> missing.add(entry.getKey().getDescribe() + ":" + number));
+        }
+        return missing;
+    }
+
+    /**
+     * 启动后在后台加载快照，失败时每retryInterval再次尝试，加载完成后由refresh定时重新加载
+     */
+    @Scheduled(fixedDelayString = "${k3cloud.master-data.retry-interval:60000}")
+    public void loadIfAbsent() {
+        if (!config.isEnabled() || snapshot != null) {
+            return;
+        }
+        try {
+            replace(load());
+        } catch (Exception e) {
+            LOG.error("load k3cloud master data error, skip validation until loaded, details:", e);
+        }
+    }
+
+    /**
+     * 全量重新加载，失败时保留旧快照
+     */
+    @Scheduled(initialDelayString = "${k3cloud.master-data.refresh-interval:3600000}",
+            fixedDelayString = "${k3cloud.master-data.refresh-interval:3600000}")
+    public void refresh() {
+        if (!config.isEnabled() || snapshot == null) {
+            return;
+        }
+        try {
+            replace(load());
+        } catch (Exception e) {
+            LOG.error("refresh k3cloud master data error, keep old snapshot, details:", e);
+        }
+    }
+
+    private void replace(Map<Kind, Set<String>> loaded) {
+        confirmed = newConfirmed();
+        snapshot = loaded;
+    }
+
+    private static Map<Kind, Set<String>> newConfirmed() {
+        Map<Kind, Set<String>> map = new EnumMap<>(Kind.class);
+        for (Kind kind : Kind.values()) {
+            map.put(kind, ConcurrentHashMap.newKeySet());
+        }
+        return map;
+    }
+
+    private Map<Kind, Set<String>> load() throws Exception {
+        long start = System.currentTimeMillis();
+        Map<Kind, Set<String>> loaded = new EnumMap<>(Kind.class);
+        int pageSize = Math.max(1, config.getPageSize());
+        for (Kind kind : Kind.values()) {
+            Set<String> numbers = new HashSet<>();
+            String filter = filter(kind);
+            int startRow = 0;
+            int rows;
+            // 金蝶单页返回条数可能少于Limit，取到空页为止
+            do {
+                String query = JindieHelperUtil.billQuery(formId(kind), "FNumber", filter, "FNumber", startRow, pageSize);
+                rows = k3CloudClientPool.execute(client -> numbers(client, query, numbers));
+                startRow += rows;
+            } while (rows > 0);
+            loaded.put(kind, numbers);
+        }
+        LOG.info("k3cloud master data loaded, material:{} customer:{} saler:{} org:{} in {}ms",
+                loaded.get(Kind.MATERIAL).size(), loaded.get(Kind.CUSTOMER).size(),
+                loaded.get(Kind.SALER).size(), loaded.get(Kind.ORG).size(), System.currentTimeMillis() - start);
+        return loaded;
+    }
+
+    private Set<String> query(Kind kind, List<String> numbers) throws Exception {
+        Set<String> found = new LinkedHashSet<>();
+        for (int from = 0; from < numbers.size(); from += MAX_IN_SIZE) {
+            String query = JindieHelperUtil.billQuery(formId(kind), "FNumber", and(filter(kind),
+                    JindieHelperUtil.inFilter("FNumber", numbers.subList(from, Math.min(numbers.size(), from + MAX_IN_SIZE)))),
+                    "", 0, 0);
+            k3CloudClientPool.execute(client -> numbers(client, query, found));
+        }
+        return found;
+    }
+
+    /**
+     * 查询结果中的编码放入numbers，返回行数
+     *
+     * @throws IllegalStateException 金蝶返回错误信息
+     */
+    private static int numbers(K3CloudApiClient client, String query, Collection<String> numbers) throws Exception {
+        List<List<Object>> rows = client.executeBillQuery(query);
+        if (rows == null) {
+            return 0;
+        }
+        for (List<Object> row : rows) {
+            if (row == null || row.isEmpty() || row.get(0) == null) {
+                continue;
+            }
+            // 查询出错时返回的是一行错误信息
+            if (row.get(0) instanceof Map) {
+                throw new IllegalStateException("金蝶单据查询失败:" + row.get(0));
+            }
+            numbers.add(String.valueOf(row.get(0)));
+        }
+        return rows.size();
+    }
+
+    /**
+     * 组织本身不按使用组织过滤
+     */
+    private String filter(Kind kind) {
+        String filter = "";
+        if (kind != Kind.ORG && StringUtils.isNotBlank(config.getUseOrgNumber())) {
+            filter = "FUseOrgId.FNumber = '" + config.getUseOrgNumber().replace("'", "''") + "'";
+        }
+        if (config.isOnlyAvailable()) {
+            filter = and(filter, "FForbidStatus = 'A' AND FDocumentStatus = 'C'");
+        }
+        return filter;
+    }
+
+    private static String and(String filter, String condition) {
+        return StringUtils.isBlank(filter) ? condition : filter + " AND " + condition;
+    }
+
+    private String formId(Kind kind) {
+        switch (kind) {
+            case MATERIAL:
+                return config.getMaterialFormId();
+            case CUSTOMER:
+                return config.getCustomerFormId();
+            case SALER:
+                return config.getSalerFormId();
+            default:
+                return config.getOrgFormId();
+        }
+    }
+}
@@ -2,6 +2,10 @@ package com.qunjie.jindie.saleorder.save.enums;/**
  * Created by whs on 2020/12/10.
  */
 
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
 /**
  * Copyright (C),2020-2020,群杰印章物联网
  * FileName: com.qunjie.jindie.saleorder.save.enums.FieldName
@@ -48,12 +52,18 @@ public enum FieldName {
     XSYSZDQ;    //销售员所属大区
 
 
-    public static FieldName valuesOf(String value) {
+    /**
+     * 名称(大写) -> 字段，忽略大小写查找
+     */
+    private static final Map<String, FieldName> BY_NAME = new HashMap<>();
+
+    static {
         for (FieldName fieldName : FieldName.values()) {
-            if (fieldName.name().equalsIgnoreCase(value)){
-                return fieldName;
-            }
+            BY_NAME.put(fieldName.name().toUpperCase(Locale.ROOT), fieldName);
         }
-        return null;
+    }
+
+    public static FieldName valuesOf(String value) {
+        return value == null ? null : BY_NAME.get(value.toUpperCase(Locale.ROOT));
     }
 }
\ No newline at end of file
@@ -1,5 +1,9 @@
 package com.qunjie.jindie.saleorder.save.enums;
 
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
 /**
  * Copyright (C),2020-2021,群杰印章物联网
  * FileName: com.qunjie.jindie.saleorder.save.enums.QDXSDDFieldName
@@ -39,12 +43,18 @@ public enum QDXSDDFieldName {
 
 
 
-    public static QDXSDDFieldName valuesOf(String value) {
+    /**
+     * 名称(大写) -> 字段，忽略大小写查找
+     */
+    private static final Map<String, QDXSDDFieldName> BY_NAME = new HashMap<>();
+
+    static {
         for (QDXSDDFieldName fieldName : QDXSDDFieldName.values()) {
-            if (fieldName.name().equalsIgnoreCase(value)){
-                return fieldName;
-            }
+            BY_NAME.put(fieldName.name().toUpperCase(Locale.ROOT), fieldName);
         }
-        return null;
+    }
+
+    public static QDXSDDFieldName valuesOf(String value) {
+        return value == null ? null : BY_NAME.get(value.toUpperCase(Locale.ROOT));
     }
 }
@@ -11,13 +11,16 @@ import com.qunjie.common.email.DefaultEmailAddress;
 import com.qunjie.common.email.service.EmailServiceHelper;
 import com.qunjie.common.response.ApiResult;
 import com.qunjie.common.util.SpringBeanUtils;
+import com.qunjie.jindie.cache.K3CloudViewCache;
 import com.qunjie.jindie.config.K3CloudConfig;
+import com.qunjie.jindie.masterdata.service.K3CloudMasterDataService;
 import com.qunjie.jindie.saleorder.audit.model.AuditEntity;
 import com.qunjie.jindie.saleorder.save.enums.FieldName;
 import com.qunjie.jindie.saleorder.save.model.SaleOrderEntity;
 import com.qunjie.jindie.saleorder.save.vo.FBillHead;
 import com.qunjie.jindie.saleorder.submit.model.SubmitEntity;
-import com.qunjie.jindie.saleorder.view.model.ViewEntity;
+import com.qunjie.jindie.saleorder.view.service.SaleOrderIdResolver;
+import com.qunjie.jindie.session.K3CloudSessionManager;
 import kingdee.bos.webapi.client.K3CloudApiClient;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -25,6 +28,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -42,9 +46,21 @@ import java.util.Map;
 @Slf4j
 public class SaveService {
 
+    @Autowired
+    private K3CloudSessionManager k3CloudSessionManager;
+
     @Autowired
     private EmailServiceHelper emailServiceHelper;
 
+    @Autowired
+    private SaleOrderIdResolver saleOrderIdResolver;
+
+    @Autowired
+    private K3CloudViewCache k3CloudViewCache;
+
+    @Autowired
+    private K3CloudMasterDataService k3CloudMasterDataService;
+
     static final K3CloudConfig k3CloudConfig = SpringBeanUtils.getBean(K3CloudConfig.class);
     static String K3CloudURL = k3CloudConfig.getUrl();
     static String dbId = k3CloudConfig.getDbId();
@@ -58,7 +74,7 @@ public class SaveService {
     public ApiResult save(WorkflowRequestTable workflowRequestTable,Integer workflowid) throws Exception {
 
         K3CloudApiClient client = SpringBeanUtils.getBean(K3CloudApiClient.class);
-        Boolean result = client.login(dbId, uid, pwd, lang);
+        Boolean result = k3CloudSessionManager.login();
         if(result){
             FBillHead model = new FBillHead();
             Map<String, String> map = null;
@@ -83,6 +99,22 @@ public class SaveService {
                 return new ApiResult(1, SaveSaleOrderMessage.SUCCESS,null);
             }
 
+            /**
+             * 客户、销售员、组织、物料编码在金蝶中不存在的，不调用金蝶保存
+             */
+            K3CloudMasterDataService.Check check = K3CloudMasterDataService.check()
+                    .customer(model.getFCustId())
+                    .saler(model.getFSalerId())
+                    .org(model.getFSaleOrgId());
+            model.getFSaleOrderEntry().forEach(entry -> check.material(entry.getFMaterialId()));
+            List<String> missing = k3CloudMasterDataService.validate(check);
+            if (!missing.isEmpty()) {
+                log.info("销售订单"+model.getFBillNo()+"基础资料在金蝶中不存在:"+missing);
+                emailServiceHelper.sendSimpleMail(DefaultEmailAddress.SENDTOAll,"销售订单:"+
+                        model.getFBillNo()+"保存金蝶失败","原因:基础资料在金蝶中不存在 "+String.join(",",missing));
+                return new ApiResult(0,SaveSaleOrderMessage.ERROR5,null);
+            }
+
             SaleOrderEntity saleOrderEntity = new SaleOrderEntity(model);
 
             String s = new Gson().toJson(saleOrderEntity);
@@ -122,9 +154,10 @@ public class SaveService {
     public String delete(String billno) throws Exception {
         log.debug("SaleOrder delete billno =============" +billno);
         K3CloudApiClient client = SpringBeanUtils.getBean(K3CloudApiClient.class);
-        Boolean result = client.login(dbId, uid, pwd, lang);
+        Boolean result = k3CloudSessionManager.login();
         if(result){
             String[] split = billno.split(",");
+            saleOrderIdResolver.evict(split);
             JSONObject jsonObject = new JSONObject();
             jsonObject.put("Numbers",split);
             String sContent = new Gson().toJson(jsonObject);
@@ -142,14 +175,9 @@ public class SaveService {
 
     public JSONObject view(String billno) throws Exception{
         K3CloudApiClient client = SpringBeanUtils.getBean(K3CloudApiClient.class);
-        Boolean result = client.login(dbId, uid, pwd, lang);
+        Boolean result = k3CloudSessionManager.login();
         if(result){
-            ViewEntity viewEntity = new ViewEntity();
-            viewEntity.setNumber(billno);
-            viewEntity.setCreateOrgId("0");
-            String view = client.view(sFormId, new Gson().toJson(viewEntity));
-//            log.info("view========================="+view);
-            return JSONObject.parseObject(view);
+            return k3CloudViewCache.view(client, sFormId, billno);
         }
         return null;
     }
@@ -158,14 +186,9 @@ public class SaveService {
         Integer id = null;
         String number = null;
         K3CloudApiClient client = SpringBeanUtils.getBean(K3CloudApiClient.class);
-        Boolean result = client.login(dbId, uid, pwd, lang);
+        Boolean result = k3CloudSessionManager.login();
         if(result){
-            ViewEntity viewEntity = new ViewEntity();
-            viewEntity.setNumber(billno);
-            viewEntity.setCreateOrgId("0");
-            String view = client.view(sFormId, new Gson().toJson(viewEntity));
-//            log.info("view========================="+view);
-            JSONObject jsonObject = JSONObject.parseObject(view);
+            JSONObject jsonObject = k3CloudViewCache.view(client, sFormId, billno);
             try {
                 id = jsonObject.getJSONObject("Result").getJSONObject("Result").getInteger("Id");
                 number = jsonObject.getJSONObject("Result").getJSONObject("Result").getJSONObject("CustId").getString("Number");
@@ -12,13 +12,16 @@ import com.qunjie.jindie.saleorder.save.pojo.Entity1;
 import com.qunjie.jindie.saleorder.save.pojo.Entity2;
 import com.qunjie.jindie.saleorder.save.pojo.Entity3;
 import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.util.CollectionUtils;
 
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 
 /**
  * Copyright (C),2020-2020,群杰印章物联网
@@ -32,6 +35,7 @@ import java.util.Map;
  *         修改人姓名           修改时间           版本号          描述
  */
 @Data
+@Slf4j
 @Describe("基本信息")
 public class FBillHead {
 
@@ -219,9 +223,68 @@ public class FBillHead {
         this.FSalOrderTrace = FSalOrderTrace;
     }
 
+    /**
+     * 主表字段赋值
+     */
+    @FunctionalInterface
+    private interface MainSetter {
+        void set(FBillHead head, Map<String, String> map, String value);
+    }
+
+    /**
+     * 明细字段赋值
+     */
+    @FunctionalInterface
+    private interface DetailSetter {
+        void set(FSaleOrderEntry entry, FOrderEntryPlan plan, String value);
+    }
+
+    /**
+     * 泛微字段 -> 赋值，类加载时建好，代替逐字段switch
+     */
+    private static final Map<FieldName, MainSetter> MAIN_SETTERS = new EnumMap<>(FieldName.class);
+    private static final Map<FieldName, DetailSetter> DETAIL_SETTERS = new EnumMap<>(FieldName.class);
+    private static final Map<QDXSDDFieldName, MainSetter> QDXSDD_MAIN_SETTERS = new EnumMap<>(QDXSDDFieldName.class);
+    private static final Map<QDXSDDFieldName, DetailSetter> QDXSDD_DETAIL_SETTERS = new EnumMap<>(QDXSDDFieldName.class);
+
+    static {
+        MAIN_SETTERS.put(FieldName.KH, (head, map, value) -> head.setCustId(value));
+        MAIN_SETTERS.put(FieldName.HBKHBM, (head, map, value) -> head.setCustId(value));
+        MAIN_SETTERS.put(FieldName.HZHBMC, (head, map, value) -> head.setTomText(value));
+        MAIN_SETTERS.put(FieldName.XSY, (head, map, value) -> head.setFSalerId(new Entity2(value)));
+        MAIN_SETTERS.put(FieldName.BILLNO, (head, map, value) -> head.setFBillNo(value));
+        MAIN_SETTERS.put(FieldName.QYRQ, (head, map, value) -> head.setFDate(value));
+        MAIN_SETTERS.put(FieldName.SFKJXY, (head, map, value) -> map.put(FieldName.SFKJXY.name(), value));
+
+        DETAIL_SETTERS.put(FieldName.JHRQ, (entry, plan, value) -> entry.setFDeliveryDate(value));
+        DETAIL_SETTERS.put(FieldName.CPBM, (entry, plan, value) -> entry.setFMaterialId(new Entity2(value)));
+        DETAIL_SETTERS.put(FieldName.SL, FBillHead::setQty);
+        DETAIL_SETTERS.put(FieldName.JDHSDJ, FBillHead::setPrice);
+        DETAIL_SETTERS.put(FieldName.JDSFZP, FBillHead::setFree);
+
+        QDXSDD_MAIN_SETTERS.put(QDXSDDFieldName.KHBM, (head, map, value) -> head.setCustId(value));
+        QDXSDD_MAIN_SETTERS.put(QDXSDDFieldName.DLSMC, (head, map, value) -> head.setTomText(value));
+        QDXSDD_MAIN_SETTERS.put(QDXSDDFieldName.XSYBM, (head, map, value) -> head.setFSalerId(new Entity2(value)));
+        QDXSDD_MAIN_SETTERS.put(QDXSDDFieldName.DH, (head, map, value) -> head.setFBillNo(value));
+        QDXSDD_MAIN_SETTERS.put(QDXSDDFieldName.SQRQ, (head, map, value) -> head.setFDate(value));
+
+        QDXSDD_DETAIL_SETTERS.put(QDXSDDFieldName.FHRQ, (entry, plan, value) -> entry.setFDeliveryDate(value));
+        QDXSDD_DETAIL_SETTERS.put(QDXSDDFieldName.CPBM, (entry, plan, value) -> entry.setFMaterialId(new Entity2(value)));
+        QDXSDD_DETAIL_SETTERS.put(QDXSDDFieldName.SL, FBillHead::setQty);
+        QDXSDD_DETAIL_SETTERS.put(QDXSDDFieldName.DJ, FBillHead::setPrice);
+        QDXSDD_DETAIL_SETTERS.put(QDXSDDFieldName.SFZP, FBillHead::setFree);
+    }
+
     public Map<String,String> valueOf(WorkflowRequestTable workflowRequestTable){
+        return valueOf(workflowRequestTable, FieldName::valuesOf, MAIN_SETTERS, DETAIL_SETTERS);
+    }
 
+    public Map<String, String> QDXSDDvalueOf(WorkflowRequestTable workflowRequestTable) {
+        return valueOf(workflowRequestTable, QDXSDDFieldName::valuesOf, QDXSDD_MAIN_SETTERS, QDXSDD_DETAIL_SETTERS);
+    }
 
+    private <E> Map<String, String> valueOf(WorkflowRequestTable workflowRequestTable, Function<String, E> fieldName,
+                                            Map<E, MainSetter> mainSetters, Map<E, DetailSetter> detailSetters) {
         Map<String,String> map = new HashMap<>();
         List<List<WorkflowRequestTableField>> details = workflowRequestTable.getDetails();
         List<WorkflowRequestTableField> mains = workflowRequestTable.getMains();
@@ -238,37 +301,9 @@ public class FBillHead {
 
         //单据主数据赋值动态值
         mains.forEach(e->{
-            if (!StringUtils.isBlank(e.getFieldName()) && null != FieldName.valuesOf(e.getFieldName())){
-                switch (FieldName.valuesOf(e.getFieldName())){
-                    case KH:
-                        if (!StringUtils.isBlank(e.getFieldValue())) {
-                            this.setFCustId(new Entity2(e.getFieldValue()));
-                        }
-                        break;
-                    case HBKHBM:
-                        if (!StringUtils.isBlank(e.getFieldValue())) {
-                            this.setFCustId(new Entity2(e.getFieldValue()));
-                        }
-                        break;
-                    case HZHBMC:
-                        if (!StringUtils.isBlank(e.getFieldValue())) {
-                            this.F_TOM_TEXT = e.getFieldValue();
-                        }
-                        break;
-                    case XSY:
-                        this.setFSalerId(new Entity2(e.getFieldValue()));
-                        break;
-                    case BILLNO:
-                        this.setFBillNo(e.getFieldValue());
-                        break;
-                    case QYRQ:
-                        this.setFDate(e.getFieldValue());
-                        break;
-                    case SFKJXY:
-                        map.put(FieldName.SFKJXY.name(),e.getFieldValue());
-                    default:
-                        break;
-                }
+            MainSetter setter = StringUtils.isBlank(e.getFieldName()) ? null : mainSetters.get(fieldName.apply(e.getFieldName()));
+            if (setter != null){
+                setter.set(this, map, e.getFieldValue());
             }
         });
         //单据明细赋值--遍历明细条数
@@ -283,41 +318,9 @@ public class FBillHead {
                 //遍历每条明细属性
                 if (!CollectionUtils.isEmpty(detail)) {
                     detail.forEach(e -> {
-                        if (!StringUtils.isBlank(e.getFieldName()) && null != FieldName.valuesOf(e.getFieldName())){
-                            switch (FieldName.valuesOf(e.getFieldName())){
-                                case JHRQ:
-                                    fSaleOrderEntry.setFDeliveryDate(e.getFieldValue());
-                                    break;
-                                case CPBM:
-                                    fSaleOrderEntry.setFMaterialId(new Entity2(e.getFieldValue()));
-                                    break;
-                                case SL:
-                                    Long num = 0L;
-                                    try {
-                                        num = Long.valueOf(e.getFieldValue());
-                                    } catch (NumberFormatException e1) {
-                                        e1.printStackTrace();
-                                    }
-                                    fOrderEntryPlan.setFPlanQty(num);
-                                    fSaleOrderEntry.setFQty(num);
-                                    break;
-                                case JDHSDJ:
-                                    Double price = 0.0;
-                                    try {
-                                        price = Double.valueOf(e.getFieldValue());
-                                    }catch (NumberFormatException e2){
-                                        e2.printStackTrace();
-                                    }
-                                    fSaleOrderEntry.setFTaxPrice(price);
-                                    break;
-                                case JDSFZP:
-                                    int i = Integer.valueOf(e.getFieldValue()).intValue();
-                                    if (i == 0)
-                                        fSaleOrderEntry.setFIsFree("1");
-                                    break;
-                                default:
-                                    break;
-                            }
+                        DetailSetter setter = StringUtils.isBlank(e.getFieldName()) ? null : detailSetters.get(fieldName.apply(e.getFieldName()));
+                        if (setter != null){
+                            setter.set(fSaleOrderEntry, fOrderEntryPlan, e.getFieldValue());
                         }
                     });
                 }
@@ -334,109 +337,42 @@ public class FBillHead {
         return map;
     }
 
-    public Map<String, String> QDXSDDvalueOf(WorkflowRequestTable workflowRequestTable) {
-        Map<String,String> map = new HashMap<>();
-        List<List<WorkflowRequestTableField>> details = workflowRequestTable.getDetails();
-        List<WorkflowRequestTableField> mains = workflowRequestTable.getMains();
-        //赋值默认值
-        this.setFBillTypeID(new Entity1(DefaultValue.FBILLTYPEID));
-        this.setFSaleOrgId(new Entity2(DefaultValue.FSALEORGID));
+    private void setCustId(String value) {
+        if (!StringUtils.isBlank(value)) {
+            this.setFCustId(new Entity2(value));
+        }
+    }
 
-        //财务信息
-        FSaleOrderFinance fSaleOrderFInance = new FSaleOrderFinance();
-        fSaleOrderFInance.setFSettleCurrId(new Entity2(DefaultValue.FSETTLECURRID));
-        fSaleOrderFInance.setFExchangeRate(DefaultValue.FEXCHANGERATE);
-        fSaleOrderFInance.setFExchangeTypeId(new Entity2(DefaultValue.FEXCHANGETYPEID));
-        fSaleOrderFInance.setFLocalCurrId(new Entity2(DefaultValue.FLOCALCURRID));
+    private void setTomText(String value) {
+        if (!StringUtils.isBlank(value)) {
+            this.F_TOM_TEXT = value;
+        }
+    }
 
-        //单据主数据赋值动态值
-        mains.forEach(e->{
-            if (!StringUtils.isBlank(e.getFieldName()) && null != QDXSDDFieldName.valuesOf(e.getFieldName())){
-                switch (QDXSDDFieldName.valuesOf(e.getFieldName())){
-                    case KHBM:
-                        if (!StringUtils.isBlank(e.getFieldValue())) {
-                            this.setFCustId(new Entity2(e.getFieldValue()));
-                        }
-                        break;
-                    case DLSMC:
-                        if (!StringUtils.isBlank(e.getFieldValue())) {
-                            this.F_TOM_TEXT = e.getFieldValue();
-                        }
-                        break;
-                    case XSYBM:
-                        this.setFSalerId(new Entity2(e.getFieldValue()));
-                        break;
-                    case DH:
-                        this.setFBillNo(e.getFieldValue());
-                        break;
-                    case SQRQ:
-                        this.setFDate(e.getFieldValue());
-                        break;
-                    default:
-                        break;
-                }
-            }
-        });
-        //单据明细赋值--遍历明细条数
-        if (!CollectionUtils.isEmpty(details)) {
-            details.forEach(detail -> {
-                //订单明细
-                FSaleOrderEntry fSaleOrderEntry = new FSaleOrderEntry();
-                fSaleOrderEntry.setFSettleOrgIds(new Entity2(DefaultValue.FSETTLEORGIDS));
-                //订单明细-----交货明细
-                List<FOrderEntryPlan> lists = new ArrayList<>();
-                FOrderEntryPlan fOrderEntryPlan = new FOrderEntryPlan();
-                //遍历每条明细属性
-                if (!CollectionUtils.isEmpty(detail)) {
-                    detail.forEach(e -> {
-                        if (!StringUtils.isBlank(e.getFieldName()) && null != QDXSDDFieldName.valuesOf(e.getFieldName())){
-                            switch (QDXSDDFieldName.valuesOf(e.getFieldName())){
-                                case FHRQ:
-                                    fSaleOrderEntry.setFDeliveryDate(e.getFieldValue());
-                                    break;
-                                case CPBM:
-                                    fSaleOrderEntry.setFMaterialId(new Entity2(e.getFieldValue()));
-                                    break;
-                                case SL:
-                                    Long num = 0L;
-                                    try {
-                                        num = Long.valueOf(e.getFieldValue());
-                                    } catch (NumberFormatException e1) {
-                                        e1.printStackTrace();
-                                    }
-                                    fOrderEntryPlan.setFPlanQty(num);
-                                    fSaleOrderEntry.setFQty(num);
-                                    break;
-                                case DJ:
-                                    Double price = 0.0;
-                                    try {
-                                        price = Double.valueOf(e.getFieldValue());
-                                    }catch (NumberFormatException e2){
-                                        e2.printStackTrace();
-                                    }
-                                    fSaleOrderEntry.setFTaxPrice(price);
-                                    break;
-                                case SFZP:
-                                    int i = Integer.valueOf(e.getFieldValue()).intValue();
-                                    if (i == 0)
-                                        fSaleOrderEntry.setFIsFree("1");
-                                    break;
-                                default:
-                                    break;
-                            }
-                        }
-                    });
-                }
-                //明细数量为0的不传
-                if (fOrderEntryPlan.getFPlanQty() != null && fOrderEntryPlan.getFPlanQty().intValue() != 0) {
-                    lists.add(fOrderEntryPlan);
-                    fSaleOrderEntry.setFOrderEntryPlan(lists);
-                    this.FSaleOrderEntry.add(fSaleOrderEntry);
-                }
-            });
+    private static void setQty(FSaleOrderEntry entry, FOrderEntryPlan plan, String value) {
+        Long num = 0L;
+        try {
+            num = Long.valueOf(value);
+        } catch (NumberFormatException e1) {
+            log.warn("sale order qty [{}] is not a number, use 0", value);
         }
-        this.FSaleOrderFinance = fSaleOrderFInance;
-        this.FSaleOrderPlan.add(new FSaleOrderPlan());
-        return map;
+        plan.setFPlanQty(num);
+        entry.setFQty(num);
+    }
+
+    private static void setPrice(FSaleOrderEntry entry, FOrderEntryPlan plan, String value) {
+        Double price = 0.0;
+        try {
+            price = Double.valueOf(value);
+        }catch (NumberFormatException e2){
+            log.warn("sale order price [{}] is not a number, use 0", value);
+        }
+        entry.setFTaxPrice(price);
+    }
+
+    private static void setFree(FSaleOrderEntry entry, FOrderEntryPlan plan, String value) {
+        int i = Integer.valueOf(value).intValue();
+        if (i == 0)
+            entry.setFIsFree("1");
     }
 }
@@ -0,0 +1,125 @@
+package com.qunjie.jindie.saleorder.view.service;
+
+import com.qunjie.crm.cache.LocalCache;
+import com.qunjie.jindie.config.K3CloudConfig;
+import com.qunjie.jindie.session.K3CloudSessionManager;
+import com.qunjie.jindie.util.JindieHelperUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.jindie.saleorder.view.service.SaleOrderIdResolver
+ * Description: 金蝶销售订单编号 -> 内码(FID)：一张单据的所有订单编号用一次executeBillQuery(FBillNo IN)查询，
+ *              只取FID、FBillNo；查到的结果本地缓存(按条数LRU + 过期时间)，查不到的不缓存
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+@Service
+@Slf4j
+public class SaleOrderIdResolver {
+
+    static String sFormId = "SAL_SaleOrder";
+
+    /**
+     * 每次IN查询的最多编号数
+     */
+    private static final int MAX_IN_SIZE = 100;
+
+    @Autowired
+    private K3CloudConfig k3CloudConfig;
+
+    @Autowired
+    private K3CloudSessionManager k3CloudSessionManager;
+
+    private LocalCache<String, Integer> cache;
+
+    @PostConstruct
+    public void init() {
+        cache = new LocalCache<>(k3CloudConfig.getSaleOrderIdCacheSize());
+    }
+
+    /**
+     * @return 订单内码，金蝶中不存在时返回null
+     */
+    public Integer resolve(String billNo) throws Exception {
+        if (StringUtils.isBlank(billNo)) {
+            return null;
+        }
+        return resolve(Collections.singletonList(billNo)).get(billNo);
+    }
+
+    /**
+     * 批量查询订单内码，未缓存的编号合并为一次查询
+     *
+     * @return 订单编号 -> 内码，金蝶中不存在的编号不在结果中
+     */
+    public Map<String, Integer> resolve(Collection<String> billNos) throws Exception {
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> misses = new ArrayList<>();
+        for (String billNo : new LinkedHashSet<>(billNos)) {
+            if (StringUtils.isBlank(billNo)) {
+                continue;
+            }
+            LocalCache.Entry<Integer> entry = cache.get(billNo);
+            if (entry != null) {
+                ids.put(billNo, entry.getValue());
+            } else {
+                misses.add(billNo);
+            }
+        }
+        for (int from = 0; from < misses.size(); from += MAX_IN_SIZE) {
+            Map<String, Integer> loaded = query(misses.subList(from, Math.min(misses.size(), from + MAX_IN_SIZE)));
+            loaded.forEach((billNo, id) -> cache.put(billNo, id, k3CloudConfig.getSaleOrderIdCacheTtl()));
+            ids.putAll(loaded);
+        }
+        return ids;
+    }
+
+    /**
+     * 订单被删除后重新创建时内码会变化
+     */
+    public void evict(String... billNos) {
+        for (String billNo : billNos) {
+            cache.remove(billNo);
+        }
+    }
+
+    private Map<String, Integer> query(List<String> billNos) throws Exception {
+        Map<String, Integer> ids = new HashMap<>();
+        if (!k3CloudSessionManager.login()) {
+            log.info("金蝶登录失败，销售订单内码查询失败:" + billNos);
+            return ids;
+        }
+        String query = JindieHelperUtil.billQuery(sFormId, "FID,FBillNo",
+                JindieHelperUtil.inFilter("FBillNo", billNos), "", 0, 0);
+        List<List<Object>> rows = k3CloudSessionManager.getClient().executeBillQuery(query);
+        if (rows == null) {
+            return ids;
+        }
+        for (List<Object> row : rows) {
+            // 查询出错时返回的是一行错误信息
+            if (row == null || row.size() < 2 || row.get(0) == null || row.get(1) == null
+                    || !StringUtils.isNumeric(StringUtils.substringBefore(String.valueOf(row.get(0)), "."))) {
+                log.info("销售订单内码查询返回:" + row);
+                continue;
+            }
+            ids.put(String.valueOf(row.get(1)), new BigDecimal(String.valueOf(row.get(0))).intValue());
+        }
+        log.debug("销售订单内码查询 " + billNos.size() + " 个编号，查到 " + ids.size() + " 个");
+        return ids;
+    }
+}
@@ -1,10 +1,10 @@
 package com.qunjie.jindie.saleorder.view.service;
 
 import com.alibaba.fastjson.JSONObject;
-import com.google.gson.Gson;
-import com.qunjie.jindie.saleorder.view.model.ViewEntity;
+import com.qunjie.jindie.cache.K3CloudViewCache;
 import kingdee.bos.webapi.client.K3CloudApiClient;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 /**
@@ -22,13 +22,13 @@ import org.springframework.stereotype.Service;
 @Slf4j
 public class SaleOrderViewService {
 
+    @Autowired
+    private K3CloudViewCache k3CloudViewCache;
+
+    /**
+     * 结果为缓存共用，只读
+     */
     public JSONObject view (K3CloudApiClient client , String htbh) throws Exception {
-        ViewEntity viewEntity = new ViewEntity();
-        viewEntity.setNumber(htbh);
-        viewEntity.setCreateOrgId("0");
-        String view = client.view("SAL_SaleOrder", new Gson().toJson(viewEntity));
-//        log.info("view========================="+view);
-        JSONObject jsonObject = JSONObject.parseObject(view);
-        return jsonObject;
+        return k3CloudViewCache.view(client, "SAL_SaleOrder", htbh);
     }
 }
@@ -0,0 +1,149 @@
+package com.qunjie.jindie.session;
+
+import com.qunjie.common.resilience.DependencyUnavailableException;
+import com.qunjie.common.resilience.Resilience;
+import com.qunjie.jindie.config.K3CloudConfig;
+import com.qunjie.jindie.util.K3CloudSpringHelper;
+import kingdee.bos.webapi.client.K3CloudApiClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.jindie.session.K3CloudClientPool
+ * Description: 金蝶客户端池：最多k3cloud.pool-size个各自登录的K3CloudApiClient，借出期间只有一个线程使用，
+ *              并行保存不再共用一个client的cookie；借出前检查会话(闲置超时或失效时重新登录，登录失败丢弃该client)，
+ *              调用抛异常的client丢弃后按需新建，长时间闲置的client定时关闭
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+@Component
+public class K3CloudClientPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(K3CloudClientPool.class);
+
+    /**
+     * 借用client执行的操作
+     */
+    @FunctionalInterface
+    public interface Call<T> {
+        T call(K3CloudApiClient client) throws Exception;
+    }
+
+    @Autowired
+    private K3CloudConfig k3CloudConfig;
+
+    @Autowired
+    private K3CloudSessionManager k3CloudSessionManager;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    /**
+     * 空闲的client，最近归还的在队首
+     */
+    private final BlockingDeque<K3CloudApiClient> idle = new LinkedBlockingDeque<>();
+
+    private Semaphore permits;
+
+    private final AtomicInteger created = new AtomicInteger();
+
+    @PostConstruct
+    public void init() {
+        permits = new Semaphore(Math.max(1, k3CloudConfig.getPoolSize()), true);
+    }
+
+    /**
+     * 借用一个已登录的client执行操作后归还，抛异常时丢弃该client
+     */
+    public <T> T execute(Call<T> call) throws Exception {
+        K3CloudApiClient client = borrow();
+        boolean broken = true;
+        try {
+            T result = call.call(client);
+            broken = false;
+            return result;
+        } finally {
+            release(client, broken);
+        }
+    }
+
+    /**
+     * 借用一个已登录的client，用完必须release
+     *
+     * @throws DependencyUnavailableException 等待超过k3cloud.pool-max-wait或登录失败
+     */
+    public K3CloudApiClient borrow() throws Exception {
+        if (!permits.tryAcquire(k3CloudConfig.getPoolMaxWait(), TimeUnit.MILLISECONDS)) {
+            throw new DependencyUnavailableException(Resilience.K3CLOUD,
+                    "客户端池已全部借出，等待超过" + k3CloudConfig.getPoolMaxWait() + "ms");
+        }
+        try {
+            K3CloudApiClient client = idle.pollFirst();
+            if (client == null) {
+                client = applicationContext.getBean(K3CloudSpringHelper.POOLED_CLIENT, K3CloudApiClient.class);
+                LOG.info("k3cloud client pool create client, total created:{}", created.incrementAndGet());
+            }
+            if (!k3CloudSessionManager.login(client)) {
+                k3CloudSessionManager.remove(client);
+                throw new DependencyUnavailableException(Resilience.K3CLOUD, "客户端池client登录失败");
+            }
+            return client;
+        } catch (Exception | Error e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 归还client
+     *
+     * @param broken 使用中出现异常，不再放回池中
+     */
+    public void release(K3CloudApiClient client, boolean broken) {
+        if (broken) {
+            k3CloudSessionManager.remove(client);
+        } else {
+            idle.offerFirst(client);
+        }
+        permits.release();
+    }
+
+    /**
+     * 关闭会话已闲置超时的client，下次借用时再新建登录
+     */
+    @Scheduled(initialDelayString = "${k3cloud.session-idle-timeout:900000}",
+            fixedDelayString = "${k3cloud.session-idle-timeout:900000}")
+    public void evictIdle() {
+        int evicted = 0;
+        for (K3CloudApiClient client : idle) {
+            if (!k3CloudSessionManager.isActive(client) && idle.remove(client)) {
+                k3CloudSessionManager.remove(client);
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            LOG.info("k3cloud client pool evicted {} idle clients", evicted);
+        }
+    }
+
+    public int getIdle() {
+        return idle.size();
+    }
+
+    public int getBorrowed() {
+        return Math.max(1, k3CloudConfig.getPoolSize()) - permits.availablePermits();
+    }
+}
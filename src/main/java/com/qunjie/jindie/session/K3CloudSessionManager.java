@@ -0,0 +1,174 @@
+package com.qunjie.jindie.session;
+
+import com.qunjie.common.util.SpringBeanUtils;
+import com.qunjie.jindie.config.K3CloudConfig;
+import kingdee.bos.webapi.client.K3CloudApiClient;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Copyright (C),2020-2021,群杰印章物联网
+ * FileName: com.qunjie.jindie.session.K3CloudSessionManager
+ * Description: 金蝶k3cloud登录会话复用：每个K3CloudApiClient(共享client及K3CloudClientPool中的client)登录一次后保存会话cookie，
+ *              后续操作不再登录；会话闲置超时或接口返回上下文丢失(MsgCode=1)时重新登录，同一client并发只有一个线程实际登录
+ * History:
+ * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
+ * 修改人姓名           修改时间           版本号          描述
+ */
+@Component
+public class K3CloudSessionManager {
+
+    private static final Logger LOG = LoggerFactory.getLogger(K3CloudSessionManager.class);
+
+    private static final int DEFAULT_LANG = 2052;
+
+    /**
+     * 金蝶ResponseStatus.MsgCode：1 上下文丢失(会话失效)
+     */
+    private static final Pattern CONTEXT_LOST = Pattern.compile("\"?MsgCode\"?\\s*[:=]\\s*1(?!\\d)");
+
+    /**
+     * 当前线程正在由本类登录，K3CloudSessionAspect据此区分其他地方直接调用的login
+     */
+    private static final ThreadLocal<Boolean> LOGGING_IN = new ThreadLocal<>();
+
+    @Autowired
+    private K3CloudConfig k3CloudConfig;
+
+    /**
+     * 每个client(共享client及连接池中的client)各自的会话
+     */
+    private final Map<K3CloudApiClient, Session> sessions = new ConcurrentHashMap<>();
+
+    public K3CloudApiClient getClient() {
+        return SpringBeanUtils.getBean(K3CloudApiClient.class);
+    }
+
+    /**
+     * 共享client已有可用会话直接返回true，否则登录
+     */
+    public Boolean login() throws Exception {
+        return login(getClient());
+    }
+
+    /**
+     * client已有可用会话直接返回true，否则登录
+     */
+    public Boolean login(K3CloudApiClient client) throws Exception {
+        Session session = session(client);
+        if (session.isActive()) {
+            return true;
+        }
+        return relogin(client, session.generation);
+    }
+
+    /**
+     * 会话在observedGeneration时失效：其他线程已重新登录则直接复用，否则登录
+     */
+    public boolean relogin(K3CloudApiClient client, int observedGeneration) throws Exception {
+        Session session = session(client);
+        synchronized (session) {
+            if (session.generation != observedGeneration && session.isActive()) {
+                return true;
+            }
+            session.loggedIn = false;
+            LOGGING_IN.set(Boolean.TRUE);
+            try {
+                Boolean result = client.login(k3CloudConfig.getDbId(), k3CloudConfig.getUid(),
+                        k3CloudConfig.getPwd(), lang());
+                if (Boolean.TRUE.equals(result)) {
+                    session.generation++;
+                    session.lastUsedAt = System.currentTimeMillis();
+                    session.loggedIn = true;
+                    LOG.info("k3cloud login success, session generation {}", session.generation);
+                    return true;
+                }
+                LOG.warn("k3cloud login failed, dbId:{} uid:{}", k3CloudConfig.getDbId(), k3CloudConfig.getUid());
+                return false;
+            } finally {
+                LOGGING_IN.remove();
+            }
+        }
+    }
+
+    public int getGeneration(K3CloudApiClient client) {
+        return session(client).generation;
+    }
+
+    /**
+     * 调用成功，刷新闲置时间
+     */
+    public void touch(K3CloudApiClient client) {
+        session(client).lastUsedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * client的cookie已被替换(如测试接口用其他账套登录)，下次使用前重新登录
+     */
+    public void invalidate(K3CloudApiClient client) {
+        session(client).loggedIn = false;
+    }
+
+    /**
+     * client有可用会话且未闲置超时
+     */
+    public boolean isActive(K3CloudApiClient client) {
+        Session session = sessions.get(client);
+        return session != null && session.isActive();
+    }
+
+    /**
+     * client不再使用(连接池丢弃)
+     */
+    public void remove(K3CloudApiClient client) {
+        sessions.remove(client);
+    }
+
+    public boolean isLoggingIn() {
+        return Boolean.TRUE.equals(LOGGING_IN.get());
+    }
+
+    private Session session(K3CloudApiClient client) {
+        return sessions.computeIfAbsent(client, c -> new Session());
+    }
+
+    private int lang() {
+        return StringUtils.isNumeric(k3CloudConfig.getLang()) ? Integer.parseInt(k3CloudConfig.getLang()) : DEFAULT_LANG;
+    }
+
+    /**
+     * 接口返回上下文丢失，需要重新登录
+     */
+    public static boolean isContextLost(Object result) {
+        if (result == null || result instanceof Boolean) {
+            return false;
+        }
+        return CONTEXT_LOST.matcher(String.valueOf(result)).find();
+    }
+
+    /**
+     * 一个client的登录状态，登录时以此对象加锁
+     */
+    private class Session {
+
+        private volatile boolean loggedIn;
+
+        /**
+         * 每次登录成功加1，调用前记下，失败后据此判断是否已有其他线程重新登录过
+         */
+        private volatile int generation;
+
+        private volatile long lastUsedAt;
+
+        private boolean isActive() {
+            return loggedIn && System.currentTimeMillis() - lastUsedAt < k3CloudConfig.getSessionIdleTimeout();
+        }
+    }
+}
@@ -2,15 +2,24 @@ package com.qunjie.jindie.util;/**
  * Created by whs on 2021/1/5.
  */
 
+import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
 import com.google.gson.Gson;
 import com.qunjie.common.consts.SaveSaleOrderMessage;
 import com.qunjie.common.response.ApiResult;
+import com.qunjie.jindie.args.BatchSaveEntity;
 import com.qunjie.jindie.saleorder.audit.model.AuditEntity;
 import com.qunjie.jindie.saleorder.submit.model.SubmitEntity;
 import kingdee.bos.webapi.client.K3CloudApiClient;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
 /**
  * Copyright (C),2020-2021,群杰印章物联网
  * FileName: com.qunjie.jindie.util.JindieHelperUtil
@@ -20,6 +29,8 @@ import lombok.extern.slf4j.Slf4j;
  *         Description:  对金蝶数据保存后，提交+审核；
  *                      对修改的数据，先反审核+修改+提交+审核
  *                      对删除的数据，反审核+删除
+ *                      批量保存的数据，分批保存后一次提交+一次审核
+ *                      单据查询参数
  *         History:
  *         &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
  *         修改人姓名           修改时间           版本号          描述
@@ -73,4 +84,153 @@ public class JindieHelperUtil {
         return issuccess;
     }
 
+    /**
+     * 批量保存+提交+审核：按batchSize分批batchSave，保存成功的单据合并为一次提交、一次审核
+     *
+     * @return code全部成功为1；list为保存成功的单据内码；detail为models下标 -> 该单据结果，
+     *         保存成功的data为单据内码，失败的message为金蝶返回的错误信息
+     */
+    public static ApiResult batchSaveCommitAndAudit(List<?> models, K3CloudApiClient client, String sFormId,
+                                                    int batchSize) throws Exception {
+        ApiResult result = new ApiResult(1, "SUCCESS", null);
+        List<String> ids = new ArrayList<>();
+        Map<String, Long> indexById = new HashMap<>();
+        int size = Math.max(1, batchSize);
+        for (int from = 0; from < models.size(); from += size) {
+            List<?> batch = models.subList(from, Math.min(models.size(), from + size));
+            String batchSave = client.batchSave(sFormId, new Gson().toJson(new BatchSaveEntity(batch)));
+            log.debug("batchSave results:" + batchSave);
+            JSONObject status = responseStatus(batchSave);
+            Map<Integer, String> saved = byIndex(status, "SuccessEntitys", "Id");
+            Map<Integer, String> errors = byIndex(status, "Errors", "Message");
+            for (int i = 0; i < batch.size(); i++) {
+                long index = from + i;
+                String id = saved.get(i);
+                if (id != null) {
+                    ids.add(id);
+                    indexById.put(id, index);
+                    result.getDetail().put(index, new ApiResult(1, "SUCCESS", id));
+                } else {
+                    result.setCode(0);
+                    result.getDetail().put(index, new ApiResult(0, errors.getOrDefault(i, batchSave), null));
+                }
+            }
+        }
+        result.getList().addAll(ids);
+        if (ids.isEmpty()) {
+            return result;
+        }
+        List<String> submitted = operate(ids, indexById, result, SaveSaleOrderMessage.ERROR3,
+                sContent -> client.submit(sFormId, sContent), new SubmitEntity(0L, String.join(",", ids)));
+        if (!submitted.isEmpty()) {
+            operate(submitted, indexById, result, SaveSaleOrderMessage.ERROR4,
+                    sContent -> client.audit(sFormId, sContent), new AuditEntity(0L, String.join(",", submitted)));
+        }
+        return result;
+    }
+
+    /**
+     * 拆分batchSaveCommitAndAudit的结果：已保存的单据内码(含提交、审核失败的，回滚时需要删除)放入savedIds，
+     * 保存、提交、审核任一步失败的错误信息放入errors
+     *
+     * @return 全部单据都审核成功
+     */
+    public static boolean collect(ApiResult result, List<String> savedIds, List<String> errors) {
+        boolean success = true;
+        for (Object r : result.getDetail().values()) {
+            ApiResult itemResult = (ApiResult) r;
+            if (itemResult.getData() != null) {
+                savedIds.add(String.valueOf(itemResult.getData()));
+            }
+            if (itemResult.getCode() != 1) {
+                success = false;
+                errors.add(itemResult.getMessage());
+            }
+        }
+        return success;
+    }
+
+    /**
+     * 对一组单据内码做一次提交/审核，失败的单据在result中标记失败
+     *
+     * @return 操作成功的单据内码
+     */
+    private static List<String> operate(List<String> ids, Map<String, Long> indexById, ApiResult result, String failMessage,
+                                        Operation operation, Object entity) throws Exception {
+        String response = operation.execute(new Gson().toJson(entity));
+        JSONObject status = responseStatus(response);
+        if (status != null && Boolean.TRUE.equals(status.getBoolean("IsSuccess"))) {
+            return ids;
+        }
+        Map<Integer, String> succeeded = byIndex(status, "SuccessEntitys", "Id");
+        Map<Integer, String> errors = byIndex(status, "Errors", "Message");
+        List<String> done = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            String id = ids.get(i);
+            if (succeeded.containsValue(id)) {
+                done.add(id);
+            } else {
+                result.setCode(0);
+                result.getDetail().put(indexById.get(id),
+                        new ApiResult(0, failMessage + ":" + errors.getOrDefault(i, response), id));
+            }
+        }
+        return done;
+    }
+
+    /**
+     * 单据查询(executeBillQuery)参数，limit为0时不分页
+     */
+    public static String billQuery(String sFormId, String fieldKeys, String filterString, String orderString,
+                                   int startRow, int limit) {
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("FormId", sFormId);
+        jsonObject.put("FieldKeys", fieldKeys);
+        jsonObject.put("FilterString", filterString == null ? "" : filterString);
+        jsonObject.put("OrderString", orderString == null ? "" : orderString);
+        jsonObject.put("TopRowCount", 0);
+        jsonObject.put("StartRow", startRow);
+        jsonObject.put("Limit", limit);
+        return new Gson().toJson(jsonObject);
+    }
+
+    /**
+     * 过滤条件 field IN ('a','b')，值中的单引号转义
+     */
+    public static String inFilter(String field, Collection<String> values) {
+        return field + " IN (" + values.stream()
+                .map(value -> "'" + value.replace("'", "''") + "'")
+                .collect(Collectors.joining(",")) + ")";
+    }
+
+    @FunctionalInterface
+    private interface Operation {
+        String execute(String sContent) throws Exception;
+    }
+
+    private static JSONObject responseStatus(String response) {
+        try {
+            return JSONObject.parseObject(response).getJSONObject("Result").getJSONObject("ResponseStatus");
+        } catch (Exception e) {
+            log.error("金蝶返回结果解析失败:" + response);
+            return null;
+        }
+    }
+
+    /**
+     * ResponseStatus中SuccessEntitys、Errors按DIndex取字段
+     */
+    private static Map<Integer, String> byIndex(JSONObject status, String key, String field) {
+        Map<Integer, String> values = new HashMap<>();
+        JSONArray array = status == null ? null : status.getJSONArray(key);
+        if (array != null) {
+            for (int i = 0; i < array.size(); i++) {
+                JSONObject item = array.getJSONObject(i);
+                Integer index = item.getInteger("DIndex");
+                values.put(index == null ? i : index, item.getString(field));
+            }
+        }
+        return values;
+    }
+
 }
@@ -4,7 +4,10 @@ import kingdee.bos.webapi.client.ApiClient;
 import kingdee.bos.webapi.client.K3CloudApiClient;
 import lombok.Data;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 import org.springframework.stereotype.Service;
 
@@ -25,8 +28,23 @@ public class K3CloudSpringHelper {
     @Value("${k3cloud.url}")
     private String K3CloudURL;
 
+    public static final String POOLED_CLIENT = "pooledK3CloudApiClient";
+
+    /**
+     * 共享client，按类型注入、SpringBeanUtils.getBean取到的都是这个
+     */
     @Bean
+    @Primary
     public K3CloudApiClient k3CloudApiClient(){
         return new K3CloudApiClient(K3CloudURL);
     }
+
+    /**
+     * K3CloudClientPool中的client，每次获取新建一个，同样经过金蝶接口的切面
+     */
+    @Bean(POOLED_CLIENT)
+    @Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
+    public K3CloudApiClient pooledK3CloudApiClient(){
+        return new K3CloudApiClient(K3CloudURL);
+    }
 }
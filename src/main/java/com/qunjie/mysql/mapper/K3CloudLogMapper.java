@@ -5,6 +5,8 @@ import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 /**
  * Copyright (C),2020-2021,群杰印章物联网
  * FileName: com.qunjie.mysql.mapper.K3CloudLogMapper
@@ -22,4 +24,10 @@ public interface K3CloudLogMapper {
     @Insert("insert into jindie_k3cloud_logs(indocno,date,sformid,args,response,method,clazz,systemnm)\n" +
             "        VALUES (#{condition.indocno},#{condition.date},#{condition.sformid},#{condition.args},#{condition.response},#{condition.method},#{condition.clazz},#{condition.systemnm})")
     int add(@Param("condition") K3CloudLog condition);
+
+    @Insert("<script>insert into jindie_k3cloud_logs(indocno,date,sformid,args,response,method,clazz,systemnm)\n" +
+            "        VALUES <foreach collection=\"list\" item=\"item\" separator=\",\">" +
+            "(#{item.indocno},#{item.date},#{item.sformid},#{item.args},#{item.response},#{item.method},#{item.clazz},#{item.systemnm})" +
+            "</foreach></script>")
+    int addBatch(@Param("list") List<K3CloudLog> list);
 }
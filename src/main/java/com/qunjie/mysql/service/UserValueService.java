@@ -1,5 +1,8 @@
 package com.qunjie.mysql.service;
 
+import com.google.gson.reflect.TypeToken;
+import com.qunjie.crm.cache.CrmReferenceCache;
+import com.qunjie.crm.utils.JsonCodec;
 import com.qunjie.mysql.mapper.UserValueMapper;
 import com.qunjie.mysql.model.UserValue;
 import com.qunjie.mysql.param.UserValueParam;
@@ -7,6 +10,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 
+import java.lang.reflect.Type;
 import java.util.List;
 
 /**
@@ -26,18 +30,27 @@ public class UserValueService {
     @Autowired
     private UserValueMapper userValueMapper;
 
+    @Autowired
+    private CrmReferenceCache referenceCache;
+
+    private static final Type USER_VALUE_LIST = new TypeToken<List<UserValue>>(){}.getType();
+
     public int add(UserValue userValue){
         if (userValue == null || userValue.getUserid() == null || userValue.getOpenuserid() == null){
             return 1;
         }
-        return userValueMapper.insertUser(userValue);
+        int res = userValueMapper.insertUser(userValue);
+        referenceCache.evictAll(CrmReferenceCache.USER_VALUE);
+        return res;
     }
 
     public int update(UserValue value){
         if (value == null || value.getUserid() == null || value.getOpenuserid() == null){
             return 1;
         }
-        return userValueMapper.updUser(value);
+        int res = userValueMapper.updUser(value);
+        referenceCache.evictAll(CrmReferenceCache.USER_VALUE);
+        return res;
     }
 
     public UserValue findByCondition(UserValueParam valueParam){
@@ -53,11 +66,17 @@ public class UserValueService {
     public int delete(Integer userId){
         UserValueParam userValueParam = new UserValueParam();
         userValueParam.setUserid(userId);
-        return userValueMapper.delete(userValueParam);
+        int res = userValueMapper.delete(userValueParam);
+        referenceCache.evictAll(CrmReferenceCache.USER_VALUE);
+        return res;
     }
 
+    /**
+     * 人员对照按查询条件缓存，新增、修改、删除人员时清空
+     */
     public List<UserValue> findByCondition2(UserValue userValue){
-        return userValueMapper.findByCondition2(userValue);
+        return referenceCache.get(CrmReferenceCache.USER_VALUE, JsonCodec.toJson(userValue), USER_VALUE_LIST,
+                () -> userValueMapper.findByCondition2(userValue));
     }
 
     public String getCrmOpenUserIdByNm(String fanweinm){
@@ -2,6 +2,8 @@ package com.qunjie.ocean.aop;
 
 import com.alibaba.fastjson.JSONObject;
 import com.google.gson.Gson;
+import com.qunjie.common.metrics.IntegrationMetrics;
+import com.qunjie.common.resilience.Resilience;
 import com.qunjie.mysql.mapper.OceanLogMapper;
 import com.qunjie.mysql.model.OceanLog;
 import org.aspectj.lang.ProceedingJoinPoint;
@@ -31,6 +33,11 @@ public class OceanAspect {
     @Autowired
     OceanLogMapper oceanLogMapper;
 
+    /**
+     * 40100(请求过于频繁)最多重试次数，不再无限重试占用线程
+     */
+    private static final int MAX_RETRIES = 10;
+
     @Pointcut("execution(* com.qunjie.ocean.utils.HttpRequestUtil.*(..))")
     public void pointcut(){};
 
@@ -44,7 +51,9 @@ public class OceanAspect {
         if (proceed instanceof JSONObject){
             JSONObject jsonObject = (JSONObject) proceed;
             int Code = jsonObject.getInteger("code");
-            while (Code == 40100){
+            int retries = 0;
+            while (Code == 40100 && retries++ < MAX_RETRIES){
+                IntegrationMetrics.retry(Resilience.OCEAN, "40100");
                 Thread.sleep(1*1000);
                 proceed = joinPoint.proceed(joinPoint.getArgs());
                 if (proceed instanceof JSONObject){
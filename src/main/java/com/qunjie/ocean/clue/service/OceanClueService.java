@@ -5,6 +5,7 @@ import com.alibaba.fastjson.JSONObject;
 import com.qunjie.crm.leadsObj.service.LeadsObjService;
 import com.qunjie.ocean.clue.model.OceanClueModel;
 import com.qunjie.ocean.servcie.OCeanService;
+import com.qunjie.crm.aop.CrmLane;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -27,6 +28,7 @@ import java.util.stream.Collectors;
  * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
  * 修改人姓名           修改时间           版本号          描述
  */
+@CrmLane
 @Service
 @Slf4j
 public class OceanClueService {
@@ -2,14 +2,19 @@ package com.qunjie.ocean.utils;
 
 import com.alibaba.fastjson.JSONObject;
 import com.google.gson.Gson;
+import com.qunjie.common.metrics.IntegrationMetrics;
+import com.qunjie.common.resilience.Resilience;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import java.io.BufferedReader;
@@ -32,6 +37,8 @@ import java.util.Map;
 @Service
 public class HttpHelper {
 
+    private static final Logger LOG = LoggerFactory.getLogger(HttpHelper.class);
+
     public JSONObject doGet(String url,String access_token,Map data) {
 
         // 构造请求
@@ -53,7 +60,7 @@ public class HttpHelper {
             httpEntity.setURI(URI.create(url));
             httpEntity.setEntity(new StringEntity(JSONObject.toJSONString(data), ContentType.APPLICATION_JSON));
 
-            response = client.execute(httpEntity);
+            response = execute(client, httpEntity);
             if (response != null && response.getStatusLine().getStatusCode() == 200) {
                 BufferedReader bufferedReader  = new BufferedReader(new InputStreamReader(response.getEntity().getContent()));
                 StringBuffer result = new StringBuffer();
@@ -95,7 +102,7 @@ public class HttpHelper {
             client = HttpClientBuilder.create().build();
             httpEntity.setEntity(new StringEntity(new Gson().toJson(data), ContentType.APPLICATION_JSON));
 
-            response = client.execute(httpEntity);
+            response = execute(client, httpEntity);
             if (response != null && response.getStatusLine().getStatusCode() == 200) {
                 BufferedReader bufferedReader  = new BufferedReader(new InputStreamReader(response.getEntity().getContent()));
                 StringBuffer result = new StringBuffer();
@@ -135,7 +142,7 @@ public class HttpHelper {
             client = HttpClientBuilder.create().build();
             httpEntity.setEntity(new StringEntity(JSONObject.toJSONString(data), ContentType.APPLICATION_JSON));
 
-            response = client.execute(httpEntity);
+            response = execute(client, httpEntity);
             if (response != null && response.getStatusLine().getStatusCode() == 200) {
                 BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(response.getEntity().getContent()));
                 StringBuffer result = new StringBuffer();
@@ -163,4 +170,22 @@ public class HttpHelper {
         }
         return null;
     }
+
+    /**
+     * 经过巨量引擎的熔断和并发限制发送请求，按url路径记录耗时和http状态码；
+     * 超时后才返回的响应没有调用方读取，直接关闭释放连接
+     */
+    private static CloseableHttpResponse execute(CloseableHttpClient client, HttpUriRequest request) throws IOException {
+        return IntegrationMetrics.timed(Resilience.OCEAN, request.getURI().getPath(),
+                () -> Resilience.call(Resilience.OCEAN, IOException.class, () -> client.execute(request), HttpHelper::closeQuietly),
+                response -> String.valueOf(response.getStatusLine().getStatusCode()));
+    }
+
+    private static void closeQuietly(CloseableHttpResponse response) {
+        try {
+            response.close();
+        } catch (IOException e) {
+            LOG.warn("close abandoned ocean response error: {}", e.getMessage());
+        }
+    }
 }
@@ -12,6 +12,7 @@ import com.qunjie.mysql.model.UserValue;
 import com.qunjie.mysql.service.DeptValueService;
 import com.qunjie.mysql.service.UserValueService;
 import com.qunjie.sync.model.*;
+import com.qunjie.crm.aop.CrmLane;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -33,6 +34,7 @@ import java.util.stream.Collectors;
  * &lt;author&gt;    &lt;time&gt;  &lt;version&gt;  &lt;desc&gt;
  * 修改人姓名           修改时间           版本号          描述
  */
+@CrmLane
 @Service
 @Slf4j
 public class SyncUser {
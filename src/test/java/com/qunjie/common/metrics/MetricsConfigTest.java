@@ -0,0 +1,17 @@
+package com.qunjie.common.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MetricsConfigTest {
+
+    @Test
+    void soapOperationOnlyForPublishedOperations() {
+        assertEquals("SaveSaleOrder", MetricsConfig.soapOperation("\"urn:SaveSaleOrder\""));
+        assertEquals("SavePayment", MetricsConfig.soapOperation("http://impl.service.axis.qunjie.com/SavePayment"));
+        assertEquals("unknown", MetricsConfig.soapOperation("urn:Random" + System.nanoTime()));
+        assertEquals("unknown", MetricsConfig.soapOperation(""));
+        assertEquals("unknown", MetricsConfig.soapOperation(null));
+    }
+}
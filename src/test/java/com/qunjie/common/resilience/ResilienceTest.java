@@ -0,0 +1,99 @@
+package com.qunjie.common.resilience;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResilienceTest {
+
+    private static final String TIMED = "test-timed";
+
+    private static final String FAILING = "test-failing";
+
+    private static final String ASYNC = "test-async";
+
+    @BeforeAll
+    static void init() {
+        ResilienceConfig config = new ResilienceConfig();
+        config.getSystems().put(TIMED, new ResilienceConfig.Policy(50, 100, 100, 60000L, 1, 10, 0L, 50L));
+        config.getSystems().put(FAILING, new ResilienceConfig.Policy(50, 2, 10, 60000L, 1, 10, 0L, 0L));
+        config.getSystems().put(ASYNC, new ResilienceConfig.Policy(50, 2, 10, 60000L, 1, 1, 0L, 0L));
+        Resilience.init(config);
+    }
+
+    @AfterAll
+    static void reset() {
+        Resilience.init(new ResilienceConfig());
+    }
+
+    @Test
+    void timesOutAndHandsLateResultToAbandoned() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<String> abandoned = new AtomicReference<>();
+        CountDownLatch closed = new CountDownLatch(1);
+
+        DependencyUnavailableException e = assertThrows(DependencyUnavailableException.class,
+                () -> Resilience.call(TIMED, Exception.class, () -> {
+                    release.await();
+                    return "late";
+                }, value -> {
+                    abandoned.set(value);
+                    closed.countDown();
+                }));
+        assertTrue(e.getMessage().contains("调用超时"));
+
+        release.countDown();
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+        assertEquals("late", abandoned.get());
+    }
+
+    @Test
+    void withoutTimeoutWaitsForSlowCall() throws Exception {
+        String value = Resilience.callWithoutTimeout(TIMED, Exception.class, () -> {
+            Thread.sleep(150);
+            return "done";
+        });
+        assertEquals("done", value);
+    }
+
+    @Test
+    void opensBreakerAfterFailures() {
+        for (int i = 0; i < 2; i++) {
+            assertThrows(IllegalStateException.class, () -> Resilience.call(FAILING, RuntimeException.class, () -> {
+                throw new IllegalStateException("down");
+            }));
+        }
+        DependencyUnavailableException e = assertThrows(DependencyUnavailableException.class,
+                () -> Resilience.call(FAILING, RuntimeException.class, () -> "never"));
+        assertTrue(e.getMessage().contains("已熔断"));
+        assertEquals("OPEN", Resilience.stats().get(FAILING).get("state"));
+    }
+
+    @Test
+    void asyncPermitHoldsBulkheadAndRecordsOutcome() {
+        Resilience.Permit permit = Resilience.acquire(ASYNC);
+        DependencyUnavailableException e = assertThrows(DependencyUnavailableException.class, () -> Resilience.acquire(ASYNC));
+        assertTrue(e.getMessage().contains("并发调用数已达上限"));
+
+        // 重复释放只生效一次，取消不计入熔断统计
+        permit.ignore();
+        permit.failure();
+        Resilience.acquire(ASYNC).ignore();
+        assertEquals("CLOSED", Resilience.stats().get(ASYNC).get("state"));
+
+        Resilience.acquire(ASYNC).failure();
+        Resilience.acquire(ASYNC).failure();
+        assertEquals("OPEN", Resilience.stats().get(ASYNC).get("state"));
+        assertEquals(0, Resilience.stats().get(ASYNC).get("inFlight"));
+        e = assertThrows(DependencyUnavailableException.class, () -> Resilience.acquire(ASYNC));
+        assertTrue(e.getMessage().contains("已熔断"));
+    }
+}
@@ -0,0 +1,127 @@
+package com.qunjie.crm.aop;
+
+import com.qunjie.crm.beans.results.BaseResult;
+import com.qunjie.crm.config.CrmQuotaConfig;
+import com.qunjie.crm.manager.AccessTokenManager;
+import com.qunjie.crm.utils.Constants;
+import com.qunjie.crm.utils.CrmQuotaGate;
+import com.qunjie.mysql.mapper.CrmHuikuanLogMapper;
+import com.qunjie.mysql.model.CrmHuikuanLog;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.Signature;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AccessTokenExpiredExceptionAspectTest {
+
+    private AccessTokenExpiredExceptionAspect aspect;
+
+    private AccessTokenManager accessTokenManager;
+
+    private CrmHuikuanLogMapper crmHuikuanLogMapper;
+
+    private ProceedingJoinPoint joinPoint;
+
+    @BeforeEach
+    void setUp() {
+        CrmQuotaConfig quotaConfig = new CrmQuotaConfig();
+        quotaConfig.setBackoffBase(10);
+        quotaConfig.setBackoffMax(20);
+        CrmQuotaGate.init(quotaConfig);
+
+        accessTokenManager = mock(AccessTokenManager.class);
+        crmHuikuanLogMapper = mock(CrmHuikuanLogMapper.class);
+        aspect = new AccessTokenExpiredExceptionAspect();
+        ReflectionTestUtils.setField(aspect, "accessTokenManager", accessTokenManager);
+        ReflectionTestUtils.setField(aspect, "crmHuikuanLogMapper", crmHuikuanLogMapper);
+
+        Signature signature = mock(Signature.class);
+        when(signature.getName()).thenReturn("savePaymentAsync");
+        when(signature.getDeclaringTypeName()).thenReturn("com.qunjie.crm.manager.HuikuanManager");
+        joinPoint = mock(ProceedingJoinPoint.class);
+        when(joinPoint.getSignature()).thenReturn(signature);
+        when(joinPoint.getTarget()).thenReturn(this);
+        when(joinPoint.getArgs()).thenReturn(new Object[]{"model"});
+    }
+
+    @AfterEach
+    void tearDown() {
+        CrmQuotaGate.init(new CrmQuotaConfig());
+    }
+
+    private static BaseResult result(int errorCode) {
+        BaseResult result = new BaseResult();
+        result.setErrorCode(errorCode);
+        return result;
+    }
+
+    @Test
+    void asyncRateLimitedIsRetriedAndLogged() throws Throwable {
+        when(joinPoint.proceed(any(Object[].class)))
+                .thenReturn(CompletableFuture.completedFuture(result(CrmQuotaGate.RATE_LIMITED_CODE)))
+                .thenReturn(CompletableFuture.completedFuture(result(0)));
+
+        Object proceed = aspect.aroundHuikuan(joinPoint);
+
+        assertTrue(proceed instanceof CompletableFuture);
+        BaseResult result = (BaseResult) ((CompletableFuture<?>) proceed).get(5, TimeUnit.SECONDS);
+        assertEquals(0, result.getErrorCode());
+        verify(joinPoint, times(2)).proceed(any(Object[].class));
+        ArgumentCaptor<CrmHuikuanLog> log = ArgumentCaptor.forClass(CrmHuikuanLog.class);
+        verify(crmHuikuanLogMapper, timeout(5000)).add(log.capture());
+        assertEquals("[\"model\"]", log.getValue().getArgs());
+    }
+
+    @Test
+    void asyncRetryRunsOnAsyncThreadInCallerLane() throws Throwable {
+        List<String> threads = new ArrayList<>();
+        List<CrmQuotaGate.Lane> lanes = new ArrayList<>();
+        when(joinPoint.proceed(any(Object[].class)))
+                .thenReturn(CompletableFuture.completedFuture(result(CrmQuotaGate.RATE_LIMITED_CODE)))
+                .thenAnswer(invocation -> {
+                    threads.add(Thread.currentThread().getName());
+                    lanes.add(CrmQuotaGate.currentLane());
+                    return CompletableFuture.completedFuture(result(0));
+                });
+
+        Object proceed;
+        CrmQuotaGate.LaneScope scope = CrmQuotaGate.lane(CrmQuotaGate.Lane.BULK);
+        try {
+            proceed = aspect.aroundHuikuan(joinPoint);
+        } finally {
+            scope.close();
+        }
+
+        ((CompletableFuture<?>) proceed).get(5, TimeUnit.SECONDS);
+        assertTrue(threads.get(0).startsWith("crm-async-"));
+        assertEquals(Collections.singletonList(CrmQuotaGate.Lane.BULK), lanes);
+    }
+
+    @Test
+    void asyncExpiredTokenIsReset() throws Exception {
+        CompletableFuture<BaseResult> future = new CompletableFuture<>();
+
+        aspect.afterReturning(joinPoint, future);
+        future.complete(result(Constants.interfaceResponseCode.CORP_ACCESS_TOKEN_EXPIRED.code));
+
+        verify(accessTokenManager, timeout(5000)).resetCorpAccessToken();
+    }
+}
@@ -0,0 +1,83 @@
+package com.qunjie.crm.cache;
+
+import com.qunjie.crm.config.CrmCacheConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.listener.MessageListener;
+import org.redisson.client.codec.Codec;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CrmReferenceCacheTest {
+
+    private CrmReferenceCache cache;
+
+    private RTopic<String> topic;
+
+    private MessageListener<String> listener;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        RedisTemplate<String, Object> redisTemplate = mock(RedisTemplate.class);
+        when(redisTemplate.opsForValue()).thenReturn(mock(ValueOperations.class));
+        RedissonClient redissonClient = mock(RedissonClient.class);
+        topic = mock(RTopic.class);
+        when(redissonClient.<String>getTopic(anyString(), any(Codec.class))).thenReturn(topic);
+
+        cache = new CrmReferenceCache();
+        ReflectionTestUtils.setField(cache, "cacheConfig", new CrmCacheConfig());
+        ReflectionTestUtils.setField(cache, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(cache, "redissonClient", redissonClient);
+        cache.subscribe();
+
+        ArgumentCaptor<MessageListener<String>> captor = ArgumentCaptor.forClass(MessageListener.class);
+        verify(topic).addListener(captor.capture());
+        listener = captor.getValue();
+    }
+
+    private String load(AtomicInteger loads) {
+        return cache.get(CrmReferenceCache.PRODUCT, "P001", String.class, () -> "v" + loads.incrementAndGet());
+    }
+
+    @Test
+    void evictPublishesAndIgnoresOwnMessage() {
+        AtomicInteger loads = new AtomicInteger();
+        load(loads);
+
+        cache.evict(CrmReferenceCache.PRODUCT, "P001");
+        ArgumentCaptor<String> message = ArgumentCaptor.forClass(String.class);
+        verify(topic).publish(message.capture());
+        assertTrue(message.getValue().contains("P001"));
+
+        load(loads);
+        listener.onMessage("crm:ref:invalidate", message.getValue());
+        assertEquals("v2", load(loads));
+    }
+
+    @Test
+    void otherNodeInvalidationClearsLocal() {
+        AtomicInteger loads = new AtomicInteger();
+        load(loads);
+
+        listener.onMessage("crm:ref:invalidate", "{\"node\":\"other\",\"cacheName\":\"product\",\"key\":\"P001\"}");
+        assertEquals("v2", load(loads));
+
+        listener.onMessage("crm:ref:invalidate", "{\"node\":\"other\",\"cacheName\":\"product\"}");
+        assertEquals("v3", load(loads));
+    }
+}
@@ -0,0 +1,71 @@
+package com.qunjie.crm.query.service;
+
+import com.alibaba.fastjson.JSONObject;
+import com.qunjie.crm.query.args.QueryFilterField;
+import com.qunjie.crm.query.results.QueryResult;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CrmQueryBatchTest {
+
+    private static final String API_NAME = "PartnerObj";
+
+    private static JSONObject row(String id, String name) {
+        JSONObject row = new JSONObject();
+        row.put("_id", id);
+        row.put("name", name);
+        return row;
+    }
+
+    @Test
+    void returnsLoadedRowsAndNullForMisses() {
+        CrmQueryService crmQueryService = mock(CrmQueryService.class);
+        when(crmQueryService.stream(eq(API_NAME), anyList())).thenReturn(Stream.of(row("1", "a"), row("2", "a")));
+
+        CrmQueryBatch batch = new CrmQueryBatch(crmQueryService).load(API_NAME, "name", Arrays.asList("a", "b", "a", " "));
+
+        QueryResult hit = batch.get(API_NAME, "name", "a");
+        assertEquals(0, hit.getErrorCode());
+        assertEquals(2, hit.getData().getJSONArray("dataList").size());
+        // IN查询没返回的值不当作不存在，由调用方再单条查询
+        assertNull(batch.get(API_NAME, "name", "b"));
+        assertNull(batch.get(API_NAME, "other", "a"));
+        assertNull(CrmQueryBatch.get(null, API_NAME, "name", "a"));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<QueryFilterField>> filters = ArgumentCaptor.forClass(List.class);
+        verify(crmQueryService).stream(eq(API_NAME), filters.capture());
+        assertEquals("IN", filters.getValue().get(0).getOperator());
+        assertEquals(Arrays.asList("a", "b"), filters.getValue().get(0).getField_values());
+    }
+
+    @Test
+    void splitsInQueryAndKeepsNothingOnFailure() {
+        CrmQueryService crmQueryService = mock(CrmQueryService.class);
+        when(crmQueryService.stream(eq(API_NAME), anyList()))
+                .thenReturn(Stream.of(row("1", "v0")))
+                .thenThrow(new IllegalStateException("crm error"));
+        String[] values = new String[150];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = "v" + i;
+        }
+
+        CrmQueryBatch batch = new CrmQueryBatch(crmQueryService).load(API_NAME, "name", Arrays.asList(values));
+
+        verify(crmQueryService, times(2)).stream(eq(API_NAME), anyList());
+        assertNull(batch.get(API_NAME, "name", "v0"));
+    }
+}
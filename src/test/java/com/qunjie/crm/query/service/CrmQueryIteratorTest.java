@@ -0,0 +1,158 @@
+package com.qunjie.crm.query.service;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.qunjie.crm.manager.impl.AddressBookManagerImpl;
+import com.qunjie.crm.query.args.QueryData;
+import com.qunjie.crm.query.args.QueryFilterField;
+import com.qunjie.crm.query.args.SearchQueryInfo;
+import com.qunjie.crm.query.results.QueryResult;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CrmQueryIteratorTest {
+
+    private static final Executor DIRECT = Runnable::run;
+
+    private static JSONObject row(String id, long modified) {
+        JSONObject row = new JSONObject();
+        row.put(CrmQueryIterator.ID, id);
+        row.put(CrmQueryIterator.LAST_MODIFIED_TIME, modified);
+        return row;
+    }
+
+    private static QueryResult page(List<JSONObject> rows) {
+        JSONObject data = new JSONObject();
+        data.put("dataList", new JSONArray(new ArrayList<>(rows)));
+        QueryResult result = new QueryResult();
+        result.setErrorCode(0);
+        result.setData(data);
+        return result;
+    }
+
+    private static List<String> ids(CrmQueryIterator iterator) {
+        List<String> ids = new ArrayList<>();
+        iterator.forEachRemaining(row -> ids.add(row.getString(CrmQueryIterator.ID)));
+        return ids;
+    }
+
+    @Test
+    void pagesByOffsetUntilShortPage() {
+        List<JSONObject> all = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            all.add(row("r" + i, i));
+        }
+        List<Integer> offsets = new ArrayList<>();
+        CrmQueryIterator iterator = new CrmQueryIterator(info -> {
+            offsets.add(info.getOffset());
+            int from = Math.min(all.size(), info.getOffset());
+            return page(all.subList(from, Math.min(all.size(), from + info.getLimit())));
+        }, null, 2, false, null, DIRECT);
+
+        assertEquals(all.stream().map(r -> r.getString(CrmQueryIterator.ID)).collect(Collectors.toList()), ids(iterator));
+        assertEquals(Arrays.asList(0, 2, 4), offsets);
+        assertThrows(NoSuchElementException.class, iterator::next);
+    }
+
+    @Test
+    void exactMultipleEndsOnEmptyPage() {
+        List<JSONObject> all = Arrays.asList(row("a", 1), row("b", 2));
+        List<Integer> offsets = new ArrayList<>();
+        CrmQueryIterator iterator = new CrmQueryIterator(info -> {
+            offsets.add(info.getOffset());
+            int from = Math.min(all.size(), info.getOffset());
+            return page(all.subList(from, Math.min(all.size(), from + info.getLimit())));
+        }, null, 2, false, null, DIRECT);
+
+        assertEquals(Arrays.asList("a", "b"), ids(iterator));
+        assertEquals(Arrays.asList(0, 2), offsets);
+    }
+
+    @Test
+    void cursorSkipsRowsAlreadyReturned() {
+        List<SearchQueryInfo> requests = new ArrayList<>();
+        CrmQueryIterator iterator = new CrmQueryIterator(info -> {
+            requests.add(info);
+            switch (requests.size()) {
+                case 1:
+                    return page(Arrays.asList(row("a", 1), row("b", 2)));
+                case 2:
+                    // GTE 2 时b会再次返回
+                    return page(Arrays.asList(row("b", 2), row("c", 3)));
+                default:
+                    return page(Collections.singletonList(row("c", 3)));
+            }
+        }, null, 2, true, null, DIRECT);
+
+        assertEquals(Arrays.asList("a", "b", "c"), ids(iterator));
+        assertEquals(3, requests.size());
+        QueryFilterField cursor = requests.get(2).getFilters().get(0);
+        assertEquals("GTE", cursor.getOperator());
+        assertEquals(Collections.singletonList("3"), cursor.getField_values());
+    }
+
+    @Test
+    void failedPageIsThrownToConsumer() {
+        QueryResult error = new QueryResult();
+        error.setErrorCode(20016);
+        error.setErrorMessage("error");
+        CrmQueryIterator iterator = new CrmQueryIterator(info -> error, null, 2, false, null, DIRECT);
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, iterator::hasNext);
+        assertTrue(e.getMessage().contains("20016"));
+    }
+
+    @Test
+    void closeCancelsPrefetchAndEnds() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CrmQueryIterator iterator = new CrmQueryIterator(info -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return page(Collections.singletonList(row("a", 1)));
+        }, null, 2, false, null, r -> CompletableFuture.runAsync(r));
+
+        started.await();
+        iterator.close();
+        release.countDown();
+
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    void serviceStillPagesAfterShutdown() throws Exception {
+        AddressBookManagerImpl manager = mock(AddressBookManagerImpl.class);
+        when(manager.queryData(any(QueryData.class))).thenReturn(page(Collections.singletonList(row("a", 1))));
+        CrmQueryService service = new CrmQueryService();
+        ReflectionTestUtils.setField(service, "addressBookManager", manager);
+
+        service.shutdown();
+
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) ReflectionTestUtils.getField(service, "prefetchExecutor");
+        assertTrue(executor.isShutdown());
+        assertEquals(Collections.singletonList("a"), ids(service.iterator("AccountObj", null, false, false, null)));
+    }
+}
@@ -0,0 +1,104 @@
+package com.qunjie.crm.utils;
+
+import com.qunjie.crm.config.CrmQuotaConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CrmQuotaGateTest {
+
+    private static CrmQuotaConfig config(int permits, long period, long maxWait, double interactiveShare) {
+        CrmQuotaConfig config = new CrmQuotaConfig();
+        config.setPermits(permits);
+        config.setPeriod(period);
+        config.setMaxWait(maxWait);
+        config.setInteractiveShare(interactiveShare);
+        config.setBackoffBase(10);
+        config.setBackoffMax(20);
+        return config;
+    }
+
+    /**
+     * 用掉当前积攒的许可
+     */
+    private static void drain() {
+        CrmQuotaGate.init(config(1000, 1000, 60000, 0.8));
+        assertTrue(CrmQuotaGate.acquire());
+    }
+
+    @AfterEach
+    @SuppressWarnings("unchecked")
+    void tearDown() {
+        CrmQuotaGate.init(new CrmQuotaConfig());
+        Map<CrmQuotaGate.Lane, Double> passes = (Map<CrmQuotaGate.Lane, Double>) ReflectionTestUtils.getField(CrmQuotaGate.class, "passes");
+        synchronized (CrmQuotaGate.class) {
+            passes.replaceAll((lane, pass) -> 0D);
+        }
+    }
+
+    @Test
+    void rejectsAfterMaxWait() {
+        drain();
+        CrmQuotaGate.init(config(1, 60000, 50, 0.8));
+        long rejected = CrmQuotaGate.getRejectedCount();
+
+        assertFalse(CrmQuotaGate.acquire());
+        assertEquals(rejected + 1, CrmQuotaGate.getRejectedCount());
+        assertEquals(0, CrmQuotaGate.getQueued(CrmQuotaGate.Lane.INTERACTIVE));
+    }
+
+    @Test
+    void interactiveGrantedBeforeQueuedBulk() {
+        drain();
+        CrmQuotaGate.init(config(1, 200, 60000, 1));
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+
+        CrmQuotaGate.LaneScope scope = CrmQuotaGate.lane(CrmQuotaGate.Lane.BULK);
+        try {
+            futures.add(CrmQuotaGate.acquireAsync().thenRun(() -> order.add("bulk")));
+            futures.add(CrmQuotaGate.acquireAsync().thenRun(() -> order.add("bulk")));
+        } finally {
+            scope.close();
+        }
+        futures.add(CrmQuotaGate.acquireAsync().thenRun(() -> order.add("interactive")));
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        assertEquals(Arrays.asList("interactive", "bulk", "bulk"), order);
+    }
+
+    @Test
+    void laneIsRestoredAndCarriedToTask() throws Exception {
+        assertEquals(CrmQuotaGate.Lane.INTERACTIVE, CrmQuotaGate.currentLane());
+        CompletableFuture<CrmQuotaGate.Lane> carried;
+        CrmQuotaGate.LaneScope scope = CrmQuotaGate.lane(CrmQuotaGate.Lane.BULK);
+        try {
+            carried = CompletableFuture.supplyAsync(CrmQuotaGate.wrap(CrmQuotaGate::currentLane));
+        } finally {
+            scope.close();
+        }
+
+        assertEquals(CrmQuotaGate.Lane.BULK, carried.get(5, TimeUnit.SECONDS));
+        assertEquals(CrmQuotaGate.Lane.INTERACTIVE, CrmQuotaGate.currentLane());
+    }
+
+    @Test
+    void backoffAsyncCompletes() throws Exception {
+        CrmQuotaGate.init(config(60, 20000, 60000, 0.8));
+
+        assertNull(CrmQuotaGate.backoffAsync(3).get(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,45 @@
+package com.qunjie.crm.utils;
+
+import com.google.gson.Gson;
+import org.apache.http.HttpEntity;
+import org.apache.http.util.EntityUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JsonCodecTest {
+
+    @Test
+    void entityIsSameBytesAsGsonWithKnownLength() throws Exception {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("name", "回款<a&b>='c'");
+        body.put("amount", 12.5);
+        body.put("empty", null);
+        String expected = new Gson().toJson(body);
+
+        HttpEntity entity = JsonCodec.toEntity(body);
+
+        assertFalse(entity.isChunked());
+        assertTrue(entity.isRepeatable());
+        assertNull(entity.getContentType());
+        assertEquals(expected.getBytes(StandardCharsets.UTF_8).length, entity.getContentLength());
+        assertEquals(expected, EntityUtils.toString(entity, "UTF-8"));
+    }
+
+    @Test
+    void readsFromStream() {
+        byte[] json = "{\"errorCode\":0,\"errorMessage\":\"成功\"}".getBytes(StandardCharsets.UTF_8);
+
+        Map<?, ?> result = JsonCodec.fromJson(new ByteArrayInputStream(json), Map.class);
+
+        assertEquals("成功", result.get("errorMessage"));
+    }
+}
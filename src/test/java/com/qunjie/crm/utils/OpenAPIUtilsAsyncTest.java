@@ -0,0 +1,65 @@
+package com.qunjie.crm.utils;
+
+import com.qunjie.common.resilience.Resilience;
+import com.qunjie.common.resilience.ResilienceConfig;
+import com.qunjie.crm.beans.args.BaseArg;
+import com.qunjie.crm.beans.results.BaseResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OpenAPIUtilsAsyncTest {
+
+    /**
+     * Gson不能序列化Class类型字段
+     */
+    static class UnserializableArg extends BaseArg {
+        private final Class<?> type = String.class;
+    }
+
+    @Test
+    void localFailureCompletesFuture() {
+        CompletableFuture<BaseResult> future = OpenAPIUtils.saveDataAsync(new UnserializableArg(), BaseResult.class);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof UnsupportedOperationException);
+    }
+
+    @AfterEach
+    void tearDown() {
+        Resilience.init(new ResilienceConfig());
+    }
+
+    @Test
+    void openBreakerFailsFastWithoutSending() throws Exception {
+        ResilienceConfig config = new ResilienceConfig();
+        config.getSystems().put(Resilience.CRM, new ResilienceConfig.Policy(50, 1, 10, 60000L, 1, 10, 0L, 0L));
+        Resilience.init(config);
+        Resilience.acquire(Resilience.CRM).failure();
+
+        BaseResult result = OpenAPIUtils.saveDataAsync(new UnserializableArg(), BaseResult.class).get(5, TimeUnit.SECONDS);
+
+        assertEquals(Constants.interfaceException.INTERFACE_EXCEPTION.code, result.getErrorCode());
+        assertTrue(result.getErrorMessage().contains("已熔断"));
+    }
+
+    @Test
+    void localFailureReleasesPermit() {
+        ResilienceConfig config = new ResilienceConfig();
+        config.getSystems().put(Resilience.CRM, new ResilienceConfig.Policy(50, 1, 10, 60000L, 1, 1, 0L, 0L));
+        Resilience.init(config);
+
+        CompletableFuture<BaseResult> future = OpenAPIUtils.saveDataAsync(new UnserializableArg(), BaseResult.class);
+
+        assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertEquals(0, Resilience.stats().get(Resilience.CRM).get("inFlight"));
+        assertEquals("CLOSED", Resilience.stats().get(Resilience.CRM).get("state"));
+    }
+}
@@ -0,0 +1,94 @@
+package com.qunjie.jindie.log;
+
+import com.qunjie.jindie.config.K3CloudConfig;
+import com.qunjie.mysql.mapper.K3CloudLogMapper;
+import com.qunjie.mysql.model.K3CloudLog;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class K3CloudLogWriterTest {
+
+    private K3CloudConfig config;
+
+    private K3CloudLogMapper mapper;
+
+    private K3CloudLogWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        config = new K3CloudConfig();
+        mapper = mock(K3CloudLogMapper.class);
+        writer = new K3CloudLogWriter();
+        ReflectionTestUtils.setField(writer, "k3CloudConfig", config);
+        ReflectionTestUtils.setField(writer, "k3CloudLogMapper", mapper);
+    }
+
+    private static K3CloudLog log(String args) {
+        return new K3CloudLog(null, new Date(), "SAL_SaleOrder", args, "{}", "save", "K3CloudApiClient", "金蝶接口调用");
+    }
+
+    private void write(List<K3CloudLog> batch) {
+        ReflectionTestUtils.invokeMethod(writer, "write", batch);
+    }
+
+    @Test
+    void splitsByBytes() {
+        config.setLogBatchBytes(10000);
+        List<K3CloudLog> batch = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            batch.add(log(StringUtils.repeat('a', 1500)));
+        }
+
+        write(batch);
+
+        // 每条约4.6KB，每次最多两条
+        verify(mapper, times(3)).addBatch(anyList());
+        verify(mapper).addBatch(argThat(list -> list.size() == 1));
+        assertEquals(5, writer.getWritten());
+        assertTrue(batch.isEmpty());
+    }
+
+    @Test
+    void oversizedSingleLogIsStillWritten() {
+        config.setLogBatchBytes(100);
+
+        write(new ArrayList<>(Collections.singletonList(log(StringUtils.repeat('a', 1000)))));
+
+        verify(mapper).addBatch(argThat(list -> list.size() == 1));
+        assertEquals(1, writer.getWritten());
+    }
+
+    @Test
+    void failedBatchIsRetriedOneByOne() {
+        K3CloudLog bad = log("bad");
+        when(mapper.addBatch(anyList())).thenThrow(new IllegalStateException("Packet too large"));
+        when(mapper.add(bad)).thenThrow(new IllegalStateException("Data too long"));
+        List<K3CloudLog> batch = new ArrayList<>();
+        batch.add(log("a"));
+        batch.add(bad);
+        batch.add(log("c"));
+
+        write(batch);
+
+        verify(mapper, times(3)).add(any(K3CloudLog.class));
+        assertEquals(2, writer.getWritten());
+        assertEquals(1, writer.getFailed());
+    }
+}
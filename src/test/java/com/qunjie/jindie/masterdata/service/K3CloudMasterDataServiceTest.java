@@ -0,0 +1,130 @@
+package com.qunjie.jindie.masterdata.service;
+
+import com.alibaba.fastjson.JSONObject;
+import com.qunjie.jindie.config.K3CloudMasterDataConfig;
+import com.qunjie.jindie.session.K3CloudClientPool;
+import kingdee.bos.webapi.client.K3CloudApiClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class K3CloudMasterDataServiceTest {
+
+    private final K3CloudMasterDataConfig config = new K3CloudMasterDataConfig();
+
+    private final K3CloudApiClient client = mock(K3CloudApiClient.class);
+
+    private final K3CloudMasterDataService service = new K3CloudMasterDataService();
+
+    /**
+     * 物料表中的编码，其余表为空
+     */
+    private final List<String> materials = new ArrayList<>(Arrays.asList("M1", "M2", "M3"));
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws Exception {
+        config.setPageSize(2);
+        K3CloudClientPool pool = mock(K3CloudClientPool.class);
+        when(pool.execute(any())).thenAnswer(invocation ->
+                ((K3CloudClientPool.Call<Object>) invocation.getArgument(0)).call(client));
+        when(client.executeBillQuery(anyString())).thenAnswer(invocation -> rows(invocation.getArgument(0)));
+        ReflectionTestUtils.setField(service, "config", config);
+        ReflectionTestUtils.setField(service, "k3CloudClientPool", pool);
+    }
+
+    private List<List<Object>> rows(String json) {
+        JSONObject query = JSONObject.parseObject(json);
+        if (!"BD_MATERIAL".equals(query.getString("FormId"))) {
+            return Collections.emptyList();
+        }
+        String filter = query.getString("FilterString");
+        List<List<Object>> rows = new ArrayList<>();
+        if (filter.contains(" IN (")) {
+            materials.stream().filter(m -> filter.contains("'" + m + "'"))
+                    .forEach(m -> rows.add(Collections.singletonList(m)));
+            return rows;
+        }
+        // 模拟金蝶单页返回少于Limit的情况：每页最多1条
+        int startRow = query.getIntValue("StartRow");
+        if (startRow < materials.size()) {
+            rows.add(Collections.singletonList(materials.get(startRow)));
+        }
+        return rows;
+    }
+
+    private K3CloudMasterDataService.Check materials(String... numbers) {
+        K3CloudMasterDataService.Check check = K3CloudMasterDataService.check();
+        Arrays.stream(numbers).forEach(number -> check.add(K3CloudMasterDataService.Kind.MATERIAL, number));
+        return check;
+    }
+
+    @Test
+    void skipsValidationUntilLoaded() throws Exception {
+        assertTrue(service.validate(materials("X")).isEmpty());
+        verify(client, never()).executeBillQuery(anyString());
+    }
+
+    @Test
+    void pagesUntilEmptyResult() throws Exception {
+        service.loadIfAbsent();
+
+        assertTrue(service.validate(materials("M1", "M2", "M3")).isEmpty());
+        // 三个编码都在快照中，不再IN查询
+        ArgumentCaptor<String> queries = ArgumentCaptor.forClass(String.class);
+        verify(client, atLeastOnce()).executeBillQuery(queries.capture());
+        assertFalse(queries.getAllValues().stream().anyMatch(q -> q.contains(" IN (")));
+    }
+
+    @Test
+    void confirmsNewNumbersWithoutChangingSnapshot() {
+        service.loadIfAbsent();
+        materials.add("M4");
+
+        assertEquals(Collections.singletonList("物料:X"), service.validate(materials("M4", "X")));
+
+        @SuppressWarnings("unchecked")
+        Map<K3CloudMasterDataService.Kind, Set<String>> snapshot =
+                (Map<K3CloudMasterDataService.Kind, Set<String>>) ReflectionTestUtils.getField(service, "snapshot");
+        assertFalse(snapshot.get(K3CloudMasterDataService.Kind.MATERIAL).contains("M4"));
+
+        // 重新加载后确认过的编码以新快照为准
+        materials.remove("M4");
+        service.refresh();
+        assertEquals(Collections.singletonList("物料:M4"), service.validate(materials("M4")));
+    }
+
+    @Test
+    void filtersByUseOrgAndStatus() throws Exception {
+        service.loadIfAbsent();
+
+        ArgumentCaptor<String> queries = ArgumentCaptor.forClass(String.class);
+        verify(client, atLeastOnce()).executeBillQuery(queries.capture());
+        for (String json : queries.getAllValues()) {
+            JSONObject query = JSONObject.parseObject(json);
+            String filter = query.getString("FilterString");
+            assertTrue(filter.contains("FForbidStatus = 'A' AND FDocumentStatus = 'C'"), filter);
+            assertEquals(!"ORG_Organizations".equals(query.getString("FormId")),
+                    filter.contains("FUseOrgId.FNumber = '100'"), filter);
+        }
+    }
+}
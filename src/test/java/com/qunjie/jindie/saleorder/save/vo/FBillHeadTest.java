@@ -0,0 +1,86 @@
+package com.qunjie.jindie.saleorder.save.vo;
+
+import com.qunjie.axis.model.WorkflowRequestTable;
+import com.qunjie.axis.model.WorkflowRequestTableField;
+import com.qunjie.jindie.saleorder.save.constants.DefaultValue;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FBillHeadTest {
+
+    private static WorkflowRequestTableField field(String name, String value) {
+        WorkflowRequestTableField field = new WorkflowRequestTableField();
+        field.setFieldName(name);
+        field.setFieldValue(value);
+        return field;
+    }
+
+    @Test
+    void mainAndDetailFieldsAreSetCaseInsensitive() {
+        List<WorkflowRequestTableField> mains = Arrays.asList(
+                field("kh", "C001"), field("XSY", "S001"), field("billno", "HT001"),
+                field("qyrq", "2021-04-01"), field("sfkjxy", "1"), field("hzhbmc", " "),
+                // 明细字段出现在主表中不处理
+                field("cpbm", "M999"), field(null, "x"));
+        List<WorkflowRequestTableField> detail = Arrays.asList(
+                field("jhrq", "2021-04-10"), field("CPBM", "M001"), field("sl", "3"),
+                field("jdhsdj", "12.5"), field("jdsfzp", "0"), field("kh", "C999"));
+        FBillHead head = new FBillHead();
+
+        Map<String, String> map = head.valueOf(new WorkflowRequestTable(Collections.singletonList(detail), mains));
+
+        assertEquals("1", map.get("SFKJXY"));
+        assertEquals("C001", head.getFCustId().getFNumber());
+        assertEquals("S001", head.getFSalerId().getFNumber());
+        assertEquals("HT001", head.getFBillNo());
+        assertEquals("2021-04-01", head.getFDate());
+        assertNull(head.getF_TOM_TEXT());
+        assertEquals(DefaultValue.FSALEORGID, head.getFSaleOrgId().getFNumber());
+        assertEquals(1, head.getFSaleOrderEntry().size());
+        FSaleOrderEntry entry = head.getFSaleOrderEntry().get(0);
+        assertEquals("M001", entry.getFMaterialId().getFNumber());
+        assertEquals("2021-04-10", entry.getFDeliveryDate());
+        assertEquals(Long.valueOf(3), entry.getFQty());
+        assertEquals(Double.valueOf(12.5), entry.getFTaxPrice());
+        assertEquals("1", entry.getFIsFree());
+        assertEquals(Long.valueOf(3), entry.getFOrderEntryPlan().get(0).getFPlanQty());
+    }
+
+    @Test
+    void zeroOrInvalidQtyEntryIsDropped() {
+        List<WorkflowRequestTableField> zero = Arrays.asList(field("cpbm", "M001"), field("sl", "0"));
+        List<WorkflowRequestTableField> invalid = Arrays.asList(field("cpbm", "M002"), field("sl", "abc"), field("jdhsdj", "x"));
+        FBillHead head = new FBillHead();
+
+        head.valueOf(new WorkflowRequestTable(Arrays.asList(zero, invalid), Collections.emptyList()));
+
+        assertTrue(head.getFSaleOrderEntry().isEmpty());
+    }
+
+    @Test
+    void qdxsddFieldsUseTheirOwnTable() {
+        List<WorkflowRequestTableField> mains = Arrays.asList(
+                field("khbm", "C002"), field("dh", "DH001"), field("kh", "C999"));
+        List<WorkflowRequestTableField> detail = Arrays.asList(
+                field("fhrq", "2021-04-20"), field("cpbm", "M003"), field("sl", "2"), field("dj", "8"));
+        FBillHead head = new FBillHead();
+
+        Map<String, String> map = head.QDXSDDvalueOf(new WorkflowRequestTable(Collections.singletonList(detail), mains));
+
+        assertTrue(map.isEmpty());
+        assertEquals("C002", head.getFCustId().getFNumber());
+        assertEquals("DH001", head.getFBillNo());
+        FSaleOrderEntry entry = head.getFSaleOrderEntry().get(0);
+        assertEquals("M003", entry.getFMaterialId().getFNumber());
+        assertEquals("2021-04-20", entry.getFDeliveryDate());
+        assertEquals(Double.valueOf(8), entry.getFTaxPrice());
+    }
+}
@@ -0,0 +1,105 @@
+package com.qunjie.jindie.util;
+
+import com.qunjie.common.response.ApiResult;
+import kingdee.bos.webapi.client.K3CloudApiClient;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class JindieHelperUtilTest {
+
+    private static final String FORM_ID = "AR_RECEIVEBILL";
+
+    private static String status(boolean success, String successEntitys, String errors) {
+        return "{\"Result\":{\"ResponseStatus\":{\"IsSuccess\":" + success
+                + ",\"SuccessEntitys\":[" + successEntitys + "],\"Errors\":[" + errors + "]}}}";
+    }
+
+    private static String entity(int index, String id) {
+        return "{\"Id\":" + id + ",\"DIndex\":" + index + "}";
+    }
+
+    @Test
+    void allSucceeded() throws Exception {
+        K3CloudApiClient client = mock(K3CloudApiClient.class);
+        when(client.batchSave(eq(FORM_ID), anyString())).thenReturn(status(true, entity(0, "100") + "," + entity(1, "101"), ""));
+        when(client.submit(eq(FORM_ID), anyString())).thenReturn(status(true, "", ""));
+        when(client.audit(eq(FORM_ID), anyString())).thenReturn(status(true, "", ""));
+
+        ApiResult result = JindieHelperUtil.batchSaveCommitAndAudit(Arrays.asList("a", "b"), client, FORM_ID, 50);
+
+        List<String> savedIds = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        assertEquals(1, result.getCode());
+        assertTrue(JindieHelperUtil.collect(result, savedIds, errors));
+        assertEquals(Arrays.asList("100", "101"), savedIds);
+        assertTrue(errors.isEmpty());
+    }
+
+    @Test
+    void failedAuditItemIsFailureButStillRolledBack() throws Exception {
+        K3CloudApiClient client = mock(K3CloudApiClient.class);
+        when(client.batchSave(eq(FORM_ID), anyString())).thenReturn(status(true, entity(0, "100") + "," + entity(1, "101"), ""));
+        when(client.submit(eq(FORM_ID), anyString())).thenReturn(status(true, "", ""));
+        when(client.audit(eq(FORM_ID), anyString())).thenReturn(status(false, entity(0, "100"),
+                "{\"Message\":\"审核失败\",\"DIndex\":1}"));
+
+        ApiResult result = JindieHelperUtil.batchSaveCommitAndAudit(Arrays.asList("a", "b"), client, FORM_ID, 50);
+
+        assertEquals(0, result.getCode());
+        ApiResult failed = (ApiResult) result.getDetail().get(1L);
+        assertEquals(0, failed.getCode());
+        assertEquals("101", failed.getData());
+
+        List<String> savedIds = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        assertFalse(JindieHelperUtil.collect(result, savedIds, errors));
+        assertTrue(savedIds.containsAll(Arrays.asList("100", "101")));
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).contains("审核失败"));
+    }
+
+    @Test
+    void failedSaveIsNotSubmitted() throws Exception {
+        K3CloudApiClient client = mock(K3CloudApiClient.class);
+        when(client.batchSave(eq(FORM_ID), anyString())).thenReturn(status(false, "",
+                "{\"Message\":\"物料不存在\",\"DIndex\":0}"));
+
+        ApiResult result = JindieHelperUtil.batchSaveCommitAndAudit(Arrays.asList("a"), client, FORM_ID, 50);
+
+        List<String> savedIds = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        assertFalse(JindieHelperUtil.collect(result, savedIds, errors));
+        assertTrue(savedIds.isEmpty());
+        assertEquals(Arrays.asList("物料不存在"), errors);
+        verify(client, never()).submit(anyString(), anyString());
+    }
+
+    @Test
+    void splitsIntoBatches() throws Exception {
+        K3CloudApiClient client = mock(K3CloudApiClient.class);
+        when(client.batchSave(eq(FORM_ID), anyString()))
+                .thenReturn(status(true, entity(0, "100") + "," + entity(1, "101"), ""))
+                .thenReturn(status(true, entity(0, "102"), ""));
+        when(client.submit(eq(FORM_ID), anyString())).thenReturn(status(true, "", ""));
+        when(client.audit(eq(FORM_ID), anyString())).thenReturn(status(true, "", ""));
+
+        ApiResult result = JindieHelperUtil.batchSaveCommitAndAudit(Arrays.asList("a", "b", "c"), client, FORM_ID, 2);
+
+        assertEquals(1, result.getCode());
+        assertEquals("102", ((ApiResult) result.getDetail().get(2L)).getData());
+        verify(client).submit(eq(FORM_ID), org.mockito.ArgumentMatchers.contains("100,101,102"));
+    }
+}